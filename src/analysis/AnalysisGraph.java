@@ -0,0 +1,142 @@
+package analysis;
+
+import model.AssociationLink;
+import model.BasicObject;
+import model.CanvasModel;
+import model.CompositionLink;
+import model.GeneralizationLink;
+import model.LinkObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * AnalysisGraph 把 CanvasModel 的連線編譯成精簡的 CSR 鄰接表，供 GraphAnalysis 的線性時間演算法使用。
+ *
+ * 與 LayoutGraph 不同，這裡的節點是連線實際連到的物件（可能在群組內），
+ * 而不是最上層物件，沒有任何連線的物件不會出現在圖中；
+ * 圖的結構只取決於連線，因此可以用 CanvasModel 的連線版本判斷快照是否過期。每條邊另外記錄連線種類，演算法以位元遮罩挑選要看的種類，不需要複製子圖。
+ */
+public final class AnalysisGraph {
+    public static final int ASSOCIATION = 1;
+    public static final int GENERALIZATION = 2;
+    public static final int COMPOSITION = 4;
+    public static final int ALL = ASSOCIATION | GENERALIZATION | COMPOSITION;
+
+    private final BasicObject[] nodes;
+    private final Map<BasicObject, Integer> index;
+
+    // CSR：outStart[v] ~ outStart[v + 1] 為 v 的出邊，outTarget 存終點，outKind 存種類
+    private final int[] outStart, outTarget;
+    private final byte[] outKind;
+    private final int[] inStart, inSource;
+    private final byte[] inKind;
+
+    private AnalysisGraph(BasicObject[] nodes, Map<BasicObject, Integer> index, int[] src, int[] dst, byte[] kind) {
+        int n = nodes.length;
+        int m = src.length;
+        this.nodes = nodes;
+        this.index = index;
+        this.outStart = new int[n + 1];
+        this.inStart = new int[n + 1];
+        this.outTarget = new int[m];
+        this.outKind = new byte[m];
+        this.inSource = new int[m];
+        this.inKind = new byte[m];
+        buildCsr(src, dst, kind, outStart, outTarget, outKind);
+        buildCsr(dst, src, kind, inStart, inSource, inKind);
+    }
+
+    /**
+     * 從 model 建立快照，必須在 EDT 上呼叫。
+     *
+     * @param model 畫布模型
+     * @return 圖結構快照
+     */
+    public static AnalysisGraph fromModel(CanvasModel model) {
+        return fromLinks(model.getLinks());
+    }
+
+    /**
+     * 從一組連線建立圖，只會讀取連線的兩端物件，
+     * 因此持有連線列表快照的背景執行緒也可以呼叫。
+     *
+     * @param links 連線
+     * @return 圖結構快照
+     */
+    public static AnalysisGraph fromLinks(List<LinkObject> links) {
+        List<BasicObject> nodes = new ArrayList<>();
+        Map<BasicObject, Integer> index = new IdentityHashMap<>();
+
+        int[] src = new int[links.size()];
+        int[] dst = new int[links.size()];
+        byte[] kind = new byte[links.size()];
+        int m = 0;
+        for (LinkObject link : links) {
+            int k = kindOf(link);
+            if (k == 0) continue;
+            src[m] = indexOf(link.getStartObject(), nodes, index);
+            dst[m] = indexOf(link.getEndObject(), nodes, index);
+            kind[m] = (byte) k;
+            m++;
+        }
+        return new AnalysisGraph(nodes.toArray(new BasicObject[0]), index,
+                Arrays.copyOf(src, m), Arrays.copyOf(dst, m), Arrays.copyOf(kind, m));
+    }
+
+    private static int indexOf(BasicObject obj, List<BasicObject> nodes, Map<BasicObject, Integer> index) {
+        Integer i = index.get(obj);
+        if (i != null) return i;
+        index.put(obj, nodes.size());
+        nodes.add(obj);
+        return nodes.size() - 1;
+    }
+
+    private static int kindOf(LinkObject link) {
+        if (link instanceof GeneralizationLink) return GENERALIZATION;
+        if (link instanceof CompositionLink) return COMPOSITION;
+        if (link instanceof AssociationLink) return ASSOCIATION;
+        return 0;
+    }
+
+    private static void buildCsr(int[] keys, int[] values, byte[] kind, int[] start, int[] outValues, byte[] outKind) {
+        for (int key : keys) {
+            start[key + 1]++;
+        }
+        for (int i = 0; i < start.length - 1; i++) {
+            start[i + 1] += start[i];
+        }
+        int[] cursor = Arrays.copyOf(start, start.length - 1);
+        for (int e = 0; e < keys.length; e++) {
+            int pos = cursor[keys[e]]++;
+            outValues[pos] = values[e];
+            outKind[pos] = kind[e];
+        }
+    }
+
+    public int nodeCount() { return nodes.length; }
+    public int edgeCount() { return outTarget.length; }
+
+    public BasicObject getNode(int i) { return nodes[i]; }
+
+    /**
+     * 取得物件在圖中的編號，不在圖中時回傳 -1
+     */
+    public int indexOf(BasicObject obj) {
+        Integer i = index.get(obj);
+        return i == null ? -1 : i;
+    }
+
+    public int outStart(int v) { return outStart[v]; }
+    public int outEnd(int v) { return outStart[v + 1]; }
+    public int outTarget(int k) { return outTarget[k]; }
+    public int outKind(int k) { return outKind[k]; }
+
+    public int inStart(int v) { return inStart[v]; }
+    public int inEnd(int v) { return inStart[v + 1]; }
+    public int inSource(int k) { return inSource[k]; }
+    public int inKind(int k) { return inKind[k]; }
+}
@@ -0,0 +1,246 @@
+package analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * GraphAnalysis 提供在 AnalysisGraph 上執行的圖演算法，全部是 O(V + E) 且不遞迴，
+ * 百萬條邊的圖也不會遇到堆疊溢位，結果都以節點編號表示。
+ *
+ * 每個方法都以 kindMask（AnalysisGraph.ASSOCIATION 等常數的組合）挑選要看的連線種類。
+ */
+public final class GraphAnalysis {
+    // compositionOwners 中表示同時被多個整體擁有
+    public static final int MULTIPLE_OWNERS = -2;
+
+    private GraphAnalysis() {
+    }
+
+    /**
+     * 以迭代版 Tarjan 演算法計算強連通元件。
+     *
+     * @param g        圖
+     * @param kindMask 要看的連線種類
+     * @return 每個節點所屬的元件編號（0 起算）
+     */
+    public static int[] stronglyConnectedComponents(AnalysisGraph g, int kindMask) {
+        int n = g.nodeCount();
+        int[] comp = new int[n];
+        int[] order = new int[n];   // 拜訪順序，0 表示尚未拜訪
+        int[] low = new int[n];
+        int[] edgePos = new int[n];
+        boolean[] onStack = new boolean[n];
+        int[] stack = new int[n];
+        int[] call = new int[n];
+        int sp = 0, counter = 0, compCount = 0;
+        Arrays.fill(comp, -1);
+
+        for (int s = 0; s < n; s++) {
+            if (order[s] != 0) continue;
+            int depth = 0;
+            call[depth++] = s;
+            order[s] = low[s] = ++counter;
+            edgePos[s] = g.outStart(s);
+            stack[sp++] = s;
+            onStack[s] = true;
+
+            while (depth > 0) {
+                int v = call[depth - 1];
+                if (edgePos[v] < g.outEnd(v)) {
+                    int k = edgePos[v]++;
+                    if ((g.outKind(k) & kindMask) == 0) continue;
+                    int w = g.outTarget(k);
+                    if (order[w] == 0) {
+                        order[w] = low[w] = ++counter;
+                        edgePos[w] = g.outStart(w);
+                        stack[sp++] = w;
+                        onStack[w] = true;
+                        call[depth++] = w;
+                    } else if (onStack[w]) {
+                        low[v] = Math.min(low[v], order[w]);
+                    }
+                } else {
+                    depth--;
+                    if (low[v] == order[v]) {
+                        int w;
+                        do {
+                            w = stack[--sp];
+                            onStack[w] = false;
+                            comp[w] = compCount;
+                        } while (w != v);
+                        compCount++;
+                    }
+                    if (depth > 0) {
+                        int parent = call[depth - 1];
+                        low[parent] = Math.min(low[parent], low[v]);
+                    }
+                }
+            }
+        }
+        return comp;
+    }
+
+    /**
+     * 找出包含環的強連通元件：大小超過 1，或是有自我連線的單一節點。
+     * 對 GENERALIZATION 使用即為繼承循環。
+     *
+     * @param g        圖
+     * @param kindMask 要看的連線種類
+     * @return 每個元件的節點編號
+     */
+    public static List<int[]> cycles(AnalysisGraph g, int kindMask) {
+        int n = g.nodeCount();
+        int[] comp = stronglyConnectedComponents(g, kindMask);
+        int compCount = 0;
+        for (int c : comp) compCount = Math.max(compCount, c + 1);
+
+        int[] size = new int[compCount];
+        for (int c : comp) size[c]++;
+        boolean[] cyclic = new boolean[compCount];
+        for (int v = 0; v < n; v++) {
+            if (size[comp[v]] > 1) {
+                cyclic[comp[v]] = true;
+                continue;
+            }
+            for (int k = g.outStart(v); k < g.outEnd(v); k++) {
+                if ((g.outKind(k) & kindMask) != 0 && g.outTarget(k) == v) {
+                    cyclic[comp[v]] = true;
+                }
+            }
+        }
+
+        int[][] members = new int[compCount][];
+        int[] fill = new int[compCount];
+        List<int[]> result = new ArrayList<>();
+        for (int v = 0; v < n; v++) {
+            int c = comp[v];
+            if (!cyclic[c]) continue;
+            if (members[c] == null) {
+                members[c] = new int[size[c]];
+                result.add(members[c]);
+            }
+            members[c][fill[c]++] = v;
+        }
+        return result;
+    }
+
+    /**
+     * 以廣度優先搜尋找出從起點可以到達的節點（包含起點本身）。
+     *
+     * @param g        圖
+     * @param sources  起點
+     * @param kindMask 要看的連線種類
+     * @param forward  true 沿連線方向走，false 逆著走（找出能到達起點的節點）
+     * @return 每個節點是否可達
+     */
+    public static boolean[] reachable(AnalysisGraph g, int[] sources, int kindMask, boolean forward) {
+        int n = g.nodeCount();
+        boolean[] visited = new boolean[n];
+        int[] queue = new int[n];
+        int head = 0, tail = 0;
+        for (int s : sources) {
+            if (s >= 0 && !visited[s]) {
+                visited[s] = true;
+                queue[tail++] = s;
+            }
+        }
+        while (head < tail) {
+            int v = queue[head++];
+            int begin = forward ? g.outStart(v) : g.inStart(v);
+            int end = forward ? g.outEnd(v) : g.inEnd(v);
+            for (int k = begin; k < end; k++) {
+                if (((forward ? g.outKind(k) : g.inKind(k)) & kindMask) == 0) continue;
+                int w = forward ? g.outTarget(k) : g.inSource(k);
+                if (!visited[w]) {
+                    visited[w] = true;
+                    queue[tail++] = w;
+                }
+            }
+        }
+        return visited;
+    }
+
+    /**
+     * 計算組合關係的擁有者。CompositionLink 的菱形畫在終點，終點是整體、起點是部分。
+     *
+     * @param g 圖
+     * @return 每個節點的擁有者編號；沒有擁有者為 -1，同時被多個整體擁有為 MULTIPLE_OWNERS
+     */
+    public static int[] compositionOwners(AnalysisGraph g) {
+        int n = g.nodeCount();
+        int[] owner = new int[n];
+        Arrays.fill(owner, -1);
+        for (int v = 0; v < n; v++) {
+            for (int k = g.outStart(v); k < g.outEnd(v); k++) {
+                if ((g.outKind(k) & AnalysisGraph.COMPOSITION) == 0) continue;
+                int whole = g.outTarget(k);
+                owner[v] = (owner[v] == -1 || owner[v] == whole) ? whole : MULTIPLE_OWNERS;
+            }
+        }
+        return owner;
+    }
+
+    /**
+     * 找出某個整體直接或間接擁有的所有部分（包含整體本身）。
+     *
+     * @param g     圖
+     * @param roots 整體
+     * @return 每個節點是否在組合樹內
+     */
+    public static boolean[] compositionTree(AnalysisGraph g, int[] roots) {
+        return reachable(g, roots, AnalysisGraph.COMPOSITION, false);
+    }
+
+    /**
+     * 計算每個節點的連線數量。
+     *
+     * @param g        圖
+     * @param kindMask 要看的連線種類
+     * @param incoming true 為 fan-in，false 為 fan-out
+     * @return 每個節點的連線數量
+     */
+    public static int[] degrees(AnalysisGraph g, int kindMask, boolean incoming) {
+        int n = g.nodeCount();
+        int[] degree = new int[n];
+        for (int v = 0; v < n; v++) {
+            int begin = incoming ? g.inStart(v) : g.outStart(v);
+            int end = incoming ? g.inEnd(v) : g.outEnd(v);
+            for (int k = begin; k < end; k++) {
+                if (((incoming ? g.inKind(k) : g.outKind(k)) & kindMask) != 0) degree[v]++;
+            }
+        }
+        return degree;
+    }
+
+    /**
+     * 找出 fan-in 加 fan-out 最多的前 limit 個節點，由多到少排列。
+     *
+     * @param g        圖
+     * @param kindMask 要看的連線種類
+     * @param limit    最多回傳幾個
+     * @return 節點編號
+     */
+    public static int[] hotSpots(AnalysisGraph g, int kindMask, int limit) {
+        int[] in = degrees(g, kindMask, true);
+        int[] out = degrees(g, kindMask, false);
+        int n = g.nodeCount();
+        int count = 0;
+        int[] top = new int[Math.min(limit, n)];
+        int[] topDegree = new int[top.length];
+        // limit 通常很小，以插入排序維護前幾名即可，整體仍是 O(V * limit)
+        for (int v = 0; v < n && top.length > 0; v++) {
+            int d = in[v] + out[v];
+            if (d == 0 || (count == top.length && d <= topDegree[count - 1])) continue;
+            int pos = count < top.length ? count++ : count - 1;
+            while (pos > 0 && topDegree[pos - 1] < d) {
+                top[pos] = top[pos - 1];
+                topDegree[pos] = topDegree[pos - 1];
+                pos--;
+            }
+            top[pos] = v;
+            topDegree[pos] = d;
+        }
+        return Arrays.copyOf(top, count);
+    }
+}
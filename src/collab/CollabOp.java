@@ -0,0 +1,160 @@
+package collab;
+
+import enums.LabelShape;
+import enums.LinkKind;
+import enums.NodeKind;
+import enums.OpType;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * CollabOp 是在編輯器之間傳遞的一個 CRDT 操作。
+ *
+ * 物件與連線構成 OR-set：每次新增都帶著全域唯一的識別碼（即新增的標籤），
+ * 刪除只作用在看過的識別碼上，因此同時新增與刪除不會互相吃掉；刪除過的識別碼不會再被加回來。
+ * 位置尺寸（MOVE）與標籤樣式（RESTYLE）各是一個 last-writer-wins register，
+ * 以 (Lamport 時鐘, 編輯器識別碼) 比較先後，所有編輯器收到同一組操作後會得到相同的結果。
+ *
+ * 為了編碼簡單，所有種類共用一個類別，只有該種類用得到的欄位有意義。
+ * 解碼時檢查每個欄位，不合法的操作以 IOException 拒絕，不會進到 model。
+ */
+public final class CollabOp {
+    final OpType type;
+    final long id;
+    final long clock;
+    final long replica;
+
+    // ADD_NODE / MOVE
+    NodeKind nodeKind;
+    int x, y, width, height;
+    // ADD_NODE / RESTYLE
+    String label;
+    LabelShape labelShape;
+    int labelColor;
+    int fontSize;
+    // ADD_LINK；連接埠以相對於端點物件左上角的偏移表示，與 ClipboardContent 相同
+    LinkKind linkKind;
+    long start, end;
+    int startPortX, startPortY, endPortX, endPortY;
+
+    CollabOp(OpType type, long id, long clock, long replica) {
+        this.type = type;
+        this.id = id;
+        this.clock = clock;
+        this.replica = replica;
+    }
+
+    /**
+     * 這個操作是否比 (clock, replica) 新
+     */
+    boolean isNewerThan(long otherClock, long otherReplica) {
+        return clock != otherClock ? clock > otherClock : replica > otherReplica;
+    }
+
+    void write(DataOutput out) throws IOException {
+        out.writeByte(type.ordinal());
+        out.writeLong(id);
+        out.writeLong(clock);
+        out.writeLong(replica);
+        switch (type) {
+            case ADD_NODE:
+                out.writeByte(nodeKind.ordinal());
+                writeGeometry(out);
+                writeStyle(out);
+                break;
+            case MOVE:
+                writeGeometry(out);
+                break;
+            case RESTYLE:
+                writeStyle(out);
+                break;
+            case ADD_LINK:
+                out.writeByte(linkKind.ordinal());
+                out.writeLong(start);
+                out.writeLong(end);
+                out.writeInt(startPortX);
+                out.writeInt(startPortY);
+                out.writeInt(endPortX);
+                out.writeInt(endPortY);
+                break;
+            default:
+                break;
+        }
+    }
+
+    static CollabOp read(DataInput in) throws IOException {
+        OpType type = valueOf(OpType.values(), in.readUnsignedByte(), "操作種類");
+        CollabOp op = new CollabOp(type, in.readLong(), in.readLong(), in.readLong());
+        switch (type) {
+            case ADD_NODE:
+                op.nodeKind = valueOf(NodeKind.values(), in.readUnsignedByte(), "物件種類");
+                // 群組只在本機有效，不會同步
+                if (op.nodeKind == NodeKind.GROUP) throw new IOException("不合法的物件種類：GROUP");
+                op.readGeometry(in);
+                op.readStyle(in);
+                break;
+            case MOVE:
+                op.readGeometry(in);
+                break;
+            case RESTYLE:
+                op.readStyle(in);
+                break;
+            case ADD_LINK:
+                op.linkKind = valueOf(LinkKind.values(), in.readUnsignedByte(), "連線種類");
+                op.start = in.readLong();
+                op.end = in.readLong();
+                op.startPortX = in.readInt();
+                op.startPortY = in.readInt();
+                op.endPortX = in.readInt();
+                op.endPortY = in.readInt();
+                break;
+            default:
+                break;
+        }
+        return op;
+    }
+
+    private void writeGeometry(DataOutput out) throws IOException {
+        out.writeInt(x);
+        out.writeInt(y);
+        out.writeInt(width);
+        out.writeInt(height);
+    }
+
+    private void readGeometry(DataInput in) throws IOException {
+        x = in.readInt();
+        y = in.readInt();
+        width = in.readInt();
+        height = in.readInt();
+        if (width < 0 || height < 0) {
+            throw new IOException("不合法的尺寸：" + width + "x" + height);
+        }
+    }
+
+    private void writeStyle(DataOutput out) throws IOException {
+        out.writeUTF(label);
+        out.writeByte(labelShape.ordinal());
+        out.writeInt(labelColor);
+        out.writeInt(fontSize);
+    }
+
+    private void readStyle(DataInput in) throws IOException {
+        label = in.readUTF();
+        labelShape = valueOf(LabelShape.values(), in.readUnsignedByte(), "標籤形狀");
+        labelColor = in.readInt();
+        fontSize = in.readInt();
+        // 與 LabelStyle.of 接受的範圍相同
+        if (fontSize <= 0 || fontSize >= (1 << 24)) {
+            throw new IOException("不合法的字體大小：" + fontSize);
+        }
+    }
+
+    private static <E> E valueOf(E[] values, int ordinal, String what) throws IOException {
+        if (ordinal >= values.length) {
+            throw new IOException("不合法的" + what + "：" + ordinal);
+        }
+        return values[ordinal];
+    }
+}
@@ -0,0 +1,393 @@
+package collab;
+
+import enums.ChangeType;
+import enums.LinkKind;
+import enums.NodeKind;
+import enums.OpType;
+import model.AssociationLink;
+import model.BasicObject;
+import model.CanvasModel;
+import model.CompositeObject;
+import model.CompositionLink;
+import model.DiagramBuilder;
+import model.GeneralizationLink;
+import model.LabelStyle;
+import model.LinkObject;
+import model.ModelChangeBatch;
+import model.ModelListener;
+import model.OvalObject;
+import model.RectObject;
+
+import javax.swing.SwingUtilities;
+import java.awt.Point;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * CollabSession 讓這個編輯器加入一個 SyncServer 上的共同編輯。
+ *
+ * 作為 CanvasModel 的監聽者，把 CanvasController 造成的每一批變動轉成 CollabOp 送出
+ * （新增、刪除物件與連線，物件的位置尺寸與標籤樣式）；收到的操作則依 CRDT 規則套用回 model，
+ * 套用時產生的變動不會再被送出去。群組只在本機有效，不會同步，但群組內物件的位置會同步。
+ *
+ * 除了網路執行緒把收到的操作放進佇列之外，所有狀態只在 EDT 上存取。
+ * 收到的操作每次只套用約 APPLY_BUDGET_NANOS 時間內做得完的量（包括之後的 commit 與監聽者），剩下的留到下一個 EDT 事件，
+ * 對方大量編輯時這邊仍能繼續回應輸入；同一段內的操作在一個交易內套用，畫面只重畫一次。
+ */
+public class CollabSession implements ModelListener, Closeable {
+    // 每次套用遠端操作的時間上限，約半個影格
+    private static final long APPLY_BUDGET_NANOS = 8_000_000L;
+    private static final int MIN_OPS_PER_SLICE = 64;
+    private static final int MAX_OPS_PER_SLICE = 65536;
+
+    private final CanvasModel model;
+    private final SyncClient client;
+    private final long replica = ThreadLocalRandom.current().nextLong();
+    private long clock = 0;
+
+    // 目前同步中的物件與連線，以及已經刪除、不會再加回來的識別碼
+    private final Map<Long, BasicObject> nodes = new HashMap<>();
+    private final Map<Long, LinkObject> links = new HashMap<>();
+    private final Set<Long> removed = new HashSet<>();
+    // LWW register 目前值的時間戳記 {clock, replica}
+    private final Map<Long, long[]> moveStamps = new HashMap<>();
+    private final Map<Long, long[]> styleStamps = new HashMap<>();
+
+    private final ConcurrentLinkedQueue<CollabOp> incoming = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+    private boolean applyingRemote = false;
+    private Runnable onDisconnected;
+    // 每次最多套用幾個操作：建立物件之後的 commit 與監聽者也要時間，依實際花費的時間調整
+    private int opsPerSlice = 1024;
+
+    private CollabSession(CanvasModel model, int port) throws IOException {
+        this.model = model;
+        this.client = new SyncClient(port, this::received, () -> SwingUtilities.invokeLater(this::disconnected));
+    }
+
+    /**
+     * 加入本機 port 上的共同編輯，必須在 EDT 上呼叫。畫布上原有的內容會一併送給其他編輯器。
+     *
+     * @param model 要同步的 model
+     * @param port  SyncServer 的連接埠
+     */
+    public static CollabSession join(CanvasModel model, int port) throws IOException {
+        CollabSession session = new CollabSession(model, port);
+        List<CollabOp> ops = new ArrayList<>();
+        for (BasicObject obj : model.getObjects()) {
+            session.addLeaves(obj, ops);
+        }
+        for (LinkObject link : model.getLinks()) {
+            session.addLink(link, ops);
+        }
+        session.client.send(ops);
+        model.addModelListener(session);
+        return session;
+    }
+
+    @Override
+    public void modelChanged(ModelChangeBatch batch) {
+        if (applyingRemote) return;
+        List<CollabOp> ops = new ArrayList<>();
+        for (BasicObject obj : batch.getObjects(ChangeType.OBJECT_ADDED)) {
+            addLeaves(obj, ops);
+        }
+        for (BasicObject obj : batch.getObjects(ChangeType.OBJECT_REMOVED)) {
+            // 被包進群組或解散的群組不算刪除：前者有父群組，後者已經沒有子物件
+            if (obj.getParent() == null) removeLeaves(obj, ops);
+        }
+        for (BasicObject obj : batch.getObjects(ChangeType.GEOMETRY_CHANGED)) {
+            moveLeaves(obj, ops);
+        }
+        for (BasicObject obj : batch.getObjects(ChangeType.LABEL_CHANGED)) {
+            if (nodes.get(obj.getId()) == obj) ops.add(restyleOp(obj));
+        }
+        for (LinkObject link : batch.getLinks(ChangeType.LINK_ADDED)) {
+            addLink(link, ops);
+        }
+        for (LinkObject link : batch.getLinks(ChangeType.LINK_REMOVED)) {
+            if (links.remove(link.getId()) != null) {
+                removed.add(link.getId());
+                ops.add(new CollabOp(OpType.REMOVE_LINK, link.getId(), ++clock, replica));
+            }
+        }
+        client.send(ops);
+    }
+
+    private void addLeaves(BasicObject obj, List<CollabOp> ops) {
+        if (obj instanceof CompositeObject) {
+            for (BasicObject child : obj.getChildren()) {
+                addLeaves(child, ops);
+            }
+            return;
+        }
+        if (nodes.containsKey(obj.getId()) || removed.contains(obj.getId())) return;
+        nodes.put(obj.getId(), obj);
+        CollabOp op = new CollabOp(OpType.ADD_NODE, obj.getId(), ++clock, replica);
+        op.nodeKind = obj instanceof OvalObject ? NodeKind.OVAL : NodeKind.RECT;
+        setGeometry(op, obj);
+        setStyle(op, obj);
+        moveStamps.put(obj.getId(), new long[]{op.clock, replica});
+        styleStamps.put(obj.getId(), new long[]{op.clock, replica});
+        ops.add(op);
+    }
+
+    private void removeLeaves(BasicObject obj, List<CollabOp> ops) {
+        for (BasicObject child : obj.getChildren()) {
+            removeLeaves(child, ops);
+        }
+        if (nodes.remove(obj.getId()) != null) {
+            removed.add(obj.getId());
+            ops.add(new CollabOp(OpType.REMOVE_NODE, obj.getId(), ++clock, replica));
+        }
+    }
+
+    private void moveLeaves(BasicObject obj, List<CollabOp> ops) {
+        for (BasicObject child : obj.getChildren()) {
+            moveLeaves(child, ops);
+        }
+        if (nodes.get(obj.getId()) != obj) return;
+        CollabOp op = new CollabOp(OpType.MOVE, obj.getId(), ++clock, replica);
+        setGeometry(op, obj);
+        moveStamps.put(obj.getId(), new long[]{op.clock, replica});
+        ops.add(op);
+    }
+
+    private CollabOp restyleOp(BasicObject obj) {
+        CollabOp op = new CollabOp(OpType.RESTYLE, obj.getId(), ++clock, replica);
+        setStyle(op, obj);
+        styleStamps.put(obj.getId(), new long[]{op.clock, replica});
+        return op;
+    }
+
+    private void addLink(LinkObject link, List<CollabOp> ops) {
+        long start = link.getStartObject().getId();
+        long end = link.getEndObject().getId();
+        if (links.containsKey(link.getId()) || !nodes.containsKey(start) || !nodes.containsKey(end)) return;
+        links.put(link.getId(), link);
+        CollabOp op = new CollabOp(OpType.ADD_LINK, link.getId(), ++clock, replica);
+        op.linkKind = link instanceof GeneralizationLink ? LinkKind.GENERALIZATION
+                : link instanceof CompositionLink ? LinkKind.COMPOSITION
+                : LinkKind.ASSOCIATION;
+        op.start = start;
+        op.end = end;
+        op.startPortX = link.getStartPortOffsetX();
+        op.startPortY = link.getStartPortOffsetY();
+        op.endPortX = link.getEndPortOffsetX();
+        op.endPortY = link.getEndPortOffsetY();
+        ops.add(op);
+    }
+
+    private static void setGeometry(CollabOp op, BasicObject obj) {
+        op.x = obj.getX();
+        op.y = obj.getY();
+        op.width = obj.getWidth();
+        op.height = obj.getHeight();
+    }
+
+    private static void setStyle(CollabOp op, BasicObject obj) {
+        op.label = obj.getLabel() == null ? "" : obj.getLabel();
+        op.labelShape = obj.getLabelShape();
+        op.labelColor = obj.getLabelColor().getRGB();
+        op.fontSize = obj.getFontSize();
+    }
+
+    /**
+     * 網路執行緒收到操作：放進佇列，需要時排一次 EDT 上的套用
+     */
+    private void received(List<CollabOp> ops) {
+        incoming.addAll(ops);
+        if (drainScheduled.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(this::drain);
+        }
+    }
+
+    /**
+     * 在 EDT 上套用收到的操作，超過時間上限就把剩下的留到下一次，並依這次花的時間調整下次的數量
+     */
+    private void drain() {
+        long start = System.nanoTime();
+        // 先送出本機尚未送出的變動，否則會和遠端的變動併成同一批而被略過
+        model.flushChanges();
+        applyingRemote = true;
+        try {
+            model.runInTransaction(() -> applySlice(start + APPLY_BUDGET_NANOS));
+        } finally {
+            applyingRemote = false;
+            // 套用失敗時也要排下一次，否則 drainScheduled 維持 true，之後收到的操作都不會再套用
+            scheduleNext();
+        }
+        long elapsed = System.nanoTime() - start;
+        if (elapsed > APPLY_BUDGET_NANOS) {
+            opsPerSlice = Math.max(MIN_OPS_PER_SLICE, opsPerSlice / 2);
+        } else if (elapsed < APPLY_BUDGET_NANOS / 2) {
+            opsPerSlice = Math.min(MAX_OPS_PER_SLICE, opsPerSlice * 2);
+        }
+    }
+
+    private void scheduleNext() {
+        if (!incoming.isEmpty()) {
+            SwingUtilities.invokeLater(this::drain);
+            return;
+        }
+        drainScheduled.set(false);
+        // 清除旗標前剛好有新的操作進來時，由這裡補排
+        if (!incoming.isEmpty() && drainScheduled.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(this::drain);
+        }
+    }
+
+    private void applySlice(long deadline) {
+        DiagramBuilder builder = model.newBuilder();
+        List<BasicObject> removedNodes = new ArrayList<>();
+        List<LinkObject> removedLinks = new ArrayList<>();
+        int applied = 0;
+        CollabOp op;
+        // 每 64 個操作檢查一次時間，避免頻繁呼叫 nanoTime
+        while (applied < opsPerSlice && ((applied & 63) != 0 || System.nanoTime() < deadline)) {
+            op = incoming.poll();
+            if (op == null) break;
+            applied++;
+            clock = Math.max(clock, op.clock);
+            switch (op.type) {
+                case ADD_NODE:
+                    addRemoteNode(op, builder);
+                    break;
+                case REMOVE_NODE:
+                    removed.add(op.id);
+                    BasicObject obj = nodes.remove(op.id);
+                    if (obj != null) removedNodes.add(obj);
+                    break;
+                case MOVE:
+                    moveRemote(op);
+                    break;
+                case RESTYLE:
+                    restyleRemote(op);
+                    break;
+                case ADD_LINK:
+                    addRemoteLink(op, builder);
+                    break;
+                case REMOVE_LINK:
+                    removed.add(op.id);
+                    LinkObject link = links.remove(op.id);
+                    if (link != null) removedLinks.add(link);
+                    break;
+                default:
+                    break;
+            }
+        }
+        builder.commit();
+        if (!removedNodes.isEmpty()) {
+            // 端點被刪除的連線也一起刪除，每個編輯器都做同樣的事，結果一致
+            Set<BasicObject> gone = Collections.newSetFromMap(new IdentityHashMap<>());
+            gone.addAll(removedNodes);
+            links.values().removeIf(l -> {
+                if (!gone.contains(l.getStartObject()) && !gone.contains(l.getEndObject())) return false;
+                removed.add(l.getId());
+                removedLinks.add(l);
+                return true;
+            });
+        }
+        if (!removedLinks.isEmpty()) model.removeLinks(removedLinks);
+        // 本機已經放進群組的物件會從群組中拿掉，群組因此變空時一起刪除
+        if (!removedNodes.isEmpty()) model.removeObjects(removedNodes);
+    }
+
+    private void addRemoteNode(CollabOp op, DiagramBuilder builder) {
+        if (nodes.containsKey(op.id) || removed.contains(op.id)) return;
+        BasicObject obj = op.nodeKind == NodeKind.OVAL
+                ? new OvalObject(op.x, op.y, op.width, op.height)
+                : new RectObject(op.x, op.y, op.width, op.height);
+        obj.setId(op.id);
+        applyStyle(obj, op);
+        builder.addObject(obj);
+        nodes.put(op.id, obj);
+        moveStamps.put(op.id, new long[]{op.clock, op.replica});
+        styleStamps.put(op.id, new long[]{op.clock, op.replica});
+    }
+
+    private void moveRemote(CollabOp op) {
+        BasicObject obj = nodes.get(op.id);
+        long[] stamp = moveStamps.get(op.id);
+        if (obj == null || (stamp != null && !op.isNewerThan(stamp[0], stamp[1]))) return;
+        moveStamps.put(op.id, new long[]{op.clock, op.replica});
+        obj.setX(op.x);
+        obj.setY(op.y);
+        obj.setWidth(op.width);
+        obj.setHeight(op.height);
+    }
+
+    private void restyleRemote(CollabOp op) {
+        BasicObject obj = nodes.get(op.id);
+        long[] stamp = styleStamps.get(op.id);
+        if (obj == null || (stamp != null && !op.isNewerThan(stamp[0], stamp[1]))) return;
+        styleStamps.put(op.id, new long[]{op.clock, op.replica});
+        applyStyle(obj, op);
+    }
+
+    private static void applyStyle(BasicObject obj, CollabOp op) {
+        obj.setLabel(op.label);
+        obj.setLabelStyle(LabelStyle.of(op.labelShape, op.labelColor, op.fontSize));
+    }
+
+    private void addRemoteLink(CollabOp op, DiagramBuilder builder) {
+        if (links.containsKey(op.id) || removed.contains(op.id)) return;
+        BasicObject start = nodes.get(op.start);
+        BasicObject end = nodes.get(op.end);
+        if (start == null || end == null) return;
+        // 沿用送出端的連接埠，各編輯器上的連線接在同樣的位置
+        Point startPort = new Point(start.getX() + op.startPortX, start.getY() + op.startPortY);
+        Point endPort = new Point(end.getX() + op.endPortX, end.getY() + op.endPortY);
+        LinkObject link;
+        switch (op.linkKind) {
+            case GENERALIZATION:
+                link = builder.addLink(new GeneralizationLink(start, end, startPort, endPort));
+                break;
+            case COMPOSITION:
+                link = builder.addLink(new CompositionLink(start, end, startPort, endPort));
+                break;
+            default:
+                link = builder.addLink(new AssociationLink(start, end, startPort, endPort));
+        }
+        link.setId(op.id);
+        links.put(op.id, link);
+    }
+
+    /**
+     * 設定連線意外中斷時要在 EDT 上執行的動作，例如通知使用者；自己呼叫 close 時不會執行
+     */
+    public void setOnDisconnected(Runnable onDisconnected) {
+        this.onDisconnected = onDisconnected;
+    }
+
+    private void disconnected() {
+        model.removeModelListener(this);
+        incoming.clear();
+        try {
+            client.close();
+        } catch (IOException ignored) {
+            // 連線已經斷了
+        }
+        if (onDisconnected != null) onDisconnected.run();
+    }
+
+    /**
+     * 離開共同編輯，畫布上的內容保留
+     */
+    @Override
+    public void close() throws IOException {
+        model.removeModelListener(this);
+        client.close();
+    }
+}
@@ -0,0 +1,92 @@
+package collab;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.List;
+
+/**
+ * FrameBuffer 是一條非阻塞連線兩個方向的緩衝：讀入的位元組切成「4 位元組長度 + 內容」的 frame，
+ * 要送出的 frame 排隊等待 socket 可寫。只由該連線所屬的網路執行緒使用。
+ */
+final class FrameBuffer {
+    // 單一 frame 的上限，超過視為協定錯誤
+    static final int MAX_FRAME = 64 << 20;
+
+    private final SocketChannel channel;
+    private ByteBuffer in = ByteBuffer.allocate(64 * 1024);
+    private final ArrayDeque<ByteBuffer> out = new ArrayDeque<>();
+
+    FrameBuffer(SocketChannel channel) {
+        this.channel = channel;
+    }
+
+    SocketChannel channel() {
+        return channel;
+    }
+
+    /**
+     * 從 socket 讀取目前可讀的資料，完整的 frame（含長度前綴）加入 frames
+     *
+     * @return 對方已經關閉連線時回傳 false
+     */
+    boolean read(List<ByteBuffer> frames) throws IOException {
+        while (true) {
+            int n = channel.read(in);
+            if (n < 0) return false;
+            if (n == 0) break;
+            if (!in.hasRemaining()) {
+                in = grow(in, in.capacity() * 2);
+            }
+        }
+        in.flip();
+        while (in.remaining() >= 4) {
+            int length = in.getInt(in.position());
+            if (length < 0 || length > MAX_FRAME) throw new IOException("frame 長度不正確：" + length);
+            if (in.remaining() < 4 + length) break;
+            ByteBuffer frame = ByteBuffer.allocate(4 + length);
+            int limit = in.limit();
+            in.limit(in.position() + 4 + length);
+            frame.put(in);
+            in.limit(limit);
+            frame.flip();
+            frames.add(frame.asReadOnlyBuffer());
+        }
+        in.compact();
+        // 剩下不完整的 frame 比緩衝大時先擴大，下次才讀得完
+        if (in.position() >= 4 && in.capacity() < 4 + in.getInt(0)) {
+            in = grow(in, 4 + in.getInt(0));
+        }
+        return true;
+    }
+
+    /**
+     * 排入一個要送出的 frame；同一個 frame 可以排給多條連線，各自使用獨立的位置
+     */
+    void enqueue(ByteBuffer frame) {
+        out.add(frame.duplicate());
+    }
+
+    /**
+     * 盡量寫出排隊中的 frame
+     *
+     * @return 全部寫完時回傳 true
+     */
+    boolean flush() throws IOException {
+        while (!out.isEmpty()) {
+            ByteBuffer head = out.peek();
+            channel.write(head);
+            if (head.hasRemaining()) return false;
+            out.poll();
+        }
+        return true;
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer, int capacity) {
+        ByteBuffer bigger = ByteBuffer.allocate(Math.max(capacity, buffer.capacity()));
+        buffer.flip();
+        bigger.put(buffer);
+        return bigger;
+    }
+}
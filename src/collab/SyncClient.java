@@ -0,0 +1,133 @@
+package collab;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * SyncClient 是編輯器與 SyncServer 之間的非阻塞連線。
+ *
+ * 編碼、解碼與 socket 讀寫都在自己的網路執行緒上進行，EDT 只需要把操作列表丟進佇列。
+ * 一批操作最多 MAX_OPS_PER_FRAME 個一個 frame，大量編輯時對方可以邊收邊套用。
+ */
+final class SyncClient implements Closeable {
+    static final int MAX_OPS_PER_FRAME = 4096;
+
+    private final SocketChannel channel;
+    private final Selector selector;
+    private final FrameBuffer connection;
+    private final Thread thread;
+    private final ConcurrentLinkedQueue<List<CollabOp>> outgoing = new ConcurrentLinkedQueue<>();
+    private final Consumer<List<CollabOp>> receiver;
+    private final Runnable onDisconnect;
+    private volatile boolean running = true;
+
+    /**
+     * 連上本機的伺服器
+     *
+     * @param receiver     收到操作時在網路執行緒上呼叫
+     * @param onDisconnect 連線中斷時在網路執行緒上呼叫
+     */
+    SyncClient(int port, Consumer<List<CollabOp>> receiver, Runnable onDisconnect) throws IOException {
+        this.receiver = receiver;
+        this.onDisconnect = onDisconnect;
+        channel = SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        channel.socket().setTcpNoDelay(true);
+        channel.configureBlocking(false);
+        selector = Selector.open();
+        channel.register(selector, SelectionKey.OP_READ);
+        connection = new FrameBuffer(channel);
+        thread = new Thread(this::run, "collab-client");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 送出一批操作，可以在任何執行緒上呼叫
+     */
+    void send(List<CollabOp> ops) {
+        if (ops.isEmpty()) return;
+        outgoing.add(ops);
+        selector.wakeup();
+    }
+
+    private void run() {
+        List<ByteBuffer> frames = new ArrayList<>();
+        SelectionKey key = channel.keyFor(selector);
+        try {
+            while (running) {
+                selector.select();
+                selector.selectedKeys().clear();
+                List<CollabOp> ops;
+                while ((ops = outgoing.poll()) != null) {
+                    for (int from = 0; from < ops.size(); from += MAX_OPS_PER_FRAME) {
+                        connection.enqueue(encode(ops, from, Math.min(ops.size(), from + MAX_OPS_PER_FRAME)));
+                    }
+                }
+                frames.clear();
+                if (key.isReadable() && !connection.read(frames)) break;
+                for (ByteBuffer frame : frames) {
+                    receiver.accept(decode(frame));
+                }
+                boolean done = connection.flush();
+                key.interestOps(done ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            }
+        } catch (IOException e) {
+            if (running) System.err.println("Sync connection lost: " + e);
+        }
+        if (running) onDisconnect.run();
+    }
+
+    static ByteBuffer encode(List<CollabOp> ops, int from, int to) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * (to - from) + 8);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0);
+        out.writeInt(to - from);
+        for (int i = from; i < to; i++) {
+            ops.get(i).write(out);
+        }
+        out.flush();
+        ByteBuffer frame = ByteBuffer.wrap(bytes.toByteArray());
+        frame.putInt(0, frame.remaining() - 4);
+        return frame;
+    }
+
+    static List<CollabOp> decode(ByteBuffer frame) throws IOException {
+        byte[] bytes = new byte[frame.remaining() - 4];
+        frame.position(frame.position() + 4);
+        frame.get(bytes);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        int count = in.readInt();
+        List<CollabOp> ops = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ops.add(CollabOp.read(in));
+        }
+        return ops;
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+        selector.close();
+    }
+}
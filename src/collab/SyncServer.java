@@ -0,0 +1,227 @@
+package collab;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SyncServer 是共同編輯用的轉送伺服器，只監聽本機（loopback）位址。
+ *
+ * 伺服器把每個編輯器送來的 frame 原樣轉送給其他編輯器，所有編輯器因此看到同一個全序的操作序列，
+ * 而且每個編輯器的操作一定排在它已經看過的操作之後，合併交給各編輯器的 CRDT 處理。
+ *
+ * 新加入的編輯器需要先收到目前的狀態。伺服器不保留完整的操作紀錄（長時間編輯後會無限增長），
+ * 而是把收到的操作壓縮成目前的狀態：每個還存在的物件與連線的新增操作、
+ * 每個 LWW register 最新的一個 MOVE 與 RESTYLE，以及刪除過的識別碼（tombstone）。
+ * 依序重播這些操作得到的結果與重播完整紀錄相同。
+ *
+ * 以一個 Selector 執行緒處理所有連線，不會因為某個編輯器讀得慢而卡住其他人。
+ */
+public final class SyncServer implements Closeable {
+    private final ServerSocketChannel server;
+    private final Selector selector;
+    private final Thread thread;
+    // 壓縮後的狀態：新增操作依收到的順序保存，連線排在物件之後重播
+    private final Map<Long, CollabOp> nodes = new LinkedHashMap<>();
+    private final Map<Long, CollabOp> links = new LinkedHashMap<>();
+    private final Map<Long, CollabOp> moves = new HashMap<>();
+    private final Map<Long, CollabOp> styles = new HashMap<>();
+    private final Map<Long, CollabOp> tombstones = new LinkedHashMap<>();
+    private final List<FrameBuffer> clients = new ArrayList<>();
+    private volatile boolean running = true;
+
+    private SyncServer(int port) throws IOException {
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        thread = new Thread(this::run, "collab-server");
+        thread.setDaemon(true);
+    }
+
+    /**
+     * 在本機啟動伺服器
+     *
+     * @param port 連接埠，0 表示由系統選一個可用的
+     */
+    public static SyncServer start(int port) throws IOException {
+        SyncServer s = new SyncServer(port);
+        s.thread.start();
+        return s;
+    }
+
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    private void run() {
+        List<ByteBuffer> frames = new ArrayList<>();
+        try {
+            while (running) {
+                selector.select();
+                for (SelectionKey key : selector.selectedKeys()) {
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    FrameBuffer client = (FrameBuffer) key.attachment();
+                    try {
+                        if (key.isReadable()) {
+                            frames.clear();
+                            if (!client.read(frames)) {
+                                disconnect(key, client);
+                                continue;
+                            }
+                            for (ByteBuffer frame : frames) {
+                                broadcast(frame, client);
+                            }
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            flush(client);
+                        }
+                    } catch (IOException e) {
+                        disconnect(key, client);
+                    }
+                }
+                selector.selectedKeys().clear();
+            }
+        } catch (IOException e) {
+            if (running) System.err.println("Sync server stopped: " + e);
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null) return;
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        FrameBuffer client = new FrameBuffer(channel);
+        channel.register(selector, SelectionKey.OP_READ, client);
+        clients.add(client);
+        List<CollabOp> snapshot = snapshot();
+        for (int from = 0; from < snapshot.size(); from += SyncClient.MAX_OPS_PER_FRAME) {
+            client.enqueue(SyncClient.encode(snapshot, from, Math.min(snapshot.size(), from + SyncClient.MAX_OPS_PER_FRAME)));
+        }
+        flush(client);
+    }
+
+    private void broadcast(ByteBuffer frame, FrameBuffer sender) throws IOException {
+        for (CollabOp op : SyncClient.decode(frame.duplicate())) {
+            record(op);
+        }
+        for (FrameBuffer client : new ArrayList<>(clients)) {
+            if (client == sender) continue;
+            client.enqueue(frame);
+            try {
+                flush(client);
+            } catch (IOException e) {
+                disconnect(client.channel().keyFor(selector), client);
+            }
+        }
+    }
+
+    /**
+     * 把一個操作併入目前的狀態：刪除時丟掉該識別碼的所有操作只留 tombstone，
+     * MOVE 與 RESTYLE 只留 LWW 規則下勝出的一個
+     */
+    private void record(CollabOp op) {
+        if (tombstones.containsKey(op.id)) return;
+        switch (op.type) {
+            case ADD_NODE:
+                nodes.put(op.id, op);
+                break;
+            case ADD_LINK:
+                links.put(op.id, op);
+                break;
+            case MOVE:
+                keepNewest(moves, op);
+                break;
+            case RESTYLE:
+                keepNewest(styles, op);
+                break;
+            case REMOVE_NODE:
+            case REMOVE_LINK:
+                nodes.remove(op.id);
+                links.remove(op.id);
+                moves.remove(op.id);
+                styles.remove(op.id);
+                tombstones.put(op.id, op);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static void keepNewest(Map<Long, CollabOp> register, CollabOp op) {
+        CollabOp current = register.get(op.id);
+        if (current == null || op.isNewerThan(current.clock, current.replica)) {
+            register.put(op.id, op);
+        }
+    }
+
+    /**
+     * 依重播順序列出目前的狀態：物件、連線、位置、樣式，最後是 tombstone。
+     * 端點已經被刪除的連線每個編輯器都會自己刪掉，不必再送。
+     */
+    private List<CollabOp> snapshot() {
+        List<CollabOp> ops = new ArrayList<>(nodes.size() + links.size() + moves.size() + styles.size() + tombstones.size());
+        ops.addAll(nodes.values());
+        for (CollabOp link : links.values()) {
+            if (!tombstones.containsKey(link.start) && !tombstones.containsKey(link.end)) ops.add(link);
+        }
+        ops.addAll(moves.values());
+        ops.addAll(styles.values());
+        ops.addAll(tombstones.values());
+        return ops;
+    }
+
+    /**
+     * 寫出排隊中的資料；寫不完時等 socket 可寫再繼續
+     */
+    private void flush(FrameBuffer client) throws IOException {
+        SelectionKey key = client.channel().keyFor(selector);
+        boolean done = client.flush();
+        if (key != null && key.isValid()) {
+            key.interestOps(done ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+
+    private void disconnect(SelectionKey key, FrameBuffer client) {
+        clients.remove(client);
+        if (key != null) key.cancel();
+        try {
+            client.channel().close();
+        } catch (IOException ignored) {
+            // 連線已經斷了
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (FrameBuffer client : new ArrayList<>(clients)) {
+            client.channel().close();
+        }
+        server.close();
+        selector.close();
+    }
+}
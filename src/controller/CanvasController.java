@@ -2,13 +2,25 @@ package controller;
 
 import model.*;
 import view.Canvas;
+import enums.Alignment;
 import enums.Mode;
 import view.ToolPanel;
 
+import layout.LayoutGraph;
+import layout.LayoutResult;
+import validation.ModelValidator;
+import collab.CollabSession;
+import collab.SyncServer;
+
+import javax.swing.undo.UndoManager;
+import javax.swing.undo.UndoableEdit;
 import java.awt.*;
 import java.awt.event.*;
+import java.io.IOException;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -39,14 +51,44 @@ public class CanvasController extends MouseAdapter implements MouseMotionListene
     private boolean isGroupDragging = false;
     private Point groupDragStartPoint = null;
     private Map<BasicObject, Point> initialPositions = new HashMap<>(); // 記錄拖曳時各個物件原本位置
+    private Rectangle initialBounds = null; // 拖曳開始時所有拖曳物件的範圍，吸附以它為準
+    private final SnapEngine snapEngine = new SnapEngine();
     private Map<Mode, CanvasMouseStrategy> strategyMap = new HashMap<>();
+
+    private BasicObject hoveredObject = null; // 目前 hover 中、顯示 port 的物件
+
+    private final UndoManager undoManager = new UndoManager();
+
+    // 連線繞線在背景執行緒計算
+    private final LinkRoutingService linkRouter;
+
+    // 編輯時在背景檢查規則，結果以標記顯示在畫布上
+    private final ModelValidator validator;
+
+    // 每次貼上時相對於原物件錯開的距離
+    private static final int PASTE_OFFSET = 20;
+    private ClipboardContent clipboard;
+    private int pasteCount = 0;
+
+    // 共同編輯的連線，以及由這個編輯器啟動的同步伺服器
+    private CollabSession collabSession;
+    private SyncServer syncServer;
+    // 共同編輯的連線意外中斷時在 EDT 上呼叫
+    private Runnable onSessionLost;
     
     private CanvasMouseStrategy currentStrategy = new NullStrategy();
 
+    // 拖曳事件以影格為單位合併後再交給目前的 strategy
+    private final DragCoalescer dragCoalescer = new DragCoalescer(e -> currentStrategy.mouseDragged(e));
+
     public CanvasController(ToolPanel toolPanel, CanvasModel model, Canvas canvas) {
         this.toolPanel = toolPanel;
         this.model = CanvasModel.getInstance();
         this.canvas = canvas;
+        this.linkRouter = new LinkRoutingService(this.model, canvas);
+        this.validator = new ModelValidator(this.model, canvas::setDiagnostics);
+        this.model.addModelListener(linkRouter);
+        this.model.addModelListener(validator);
         initStrategies();
 
     }
@@ -64,7 +106,11 @@ public class CanvasController extends MouseAdapter implements MouseMotionListene
 
     private void updateCurrentStrategy() {
         Mode mode = toolPanel.getCurrentMode();
-        this.currentStrategy = strategyMap.getOrDefault(mode, new NullStrategy());
+        CanvasMouseStrategy next = strategyMap.getOrDefault(mode, new NullStrategy());
+        if (next != currentStrategy) {
+            hidePortHighlights();
+        }
+        this.currentStrategy = next;
 //        this.currentStrategy = StrategyFactory.createStrategy(mode, this); // for factory pattern
 
     }
@@ -81,12 +127,14 @@ public class CanvasController extends MouseAdapter implements MouseMotionListene
 //    	        case SELECT: ...
 //    	    }
 //    	}
+        dragCoalescer.cancel();
         updateCurrentStrategy();
         currentStrategy.mousePressed(e);
     }
 
     @Override
     public void mouseReleased(MouseEvent e) {
+        dragCoalescer.flush();
         updateCurrentStrategy();
         currentStrategy.mouseReleased(e);
     }
@@ -94,7 +142,7 @@ public class CanvasController extends MouseAdapter implements MouseMotionListene
     @Override
     public void mouseDragged(MouseEvent e) {
         updateCurrentStrategy();
-        currentStrategy.mouseDragged(e);
+        dragCoalescer.submit(e);
     }
 
     @Override
@@ -104,8 +152,8 @@ public class CanvasController extends MouseAdapter implements MouseMotionListene
     }
 
     public void startLinkDragging(MouseEvent e) {
-        BasicObject startObj = findObjectAt(e.getPoint());
-        startObj = resolveConnectableObject(startObj);
+        BasicObject startObj = model.findObjectAt(e.getPoint());
+        startObj = resolveConnectableObject(startObj, e.getPoint());
         if (startObj == null) return;
 
         linkStartObject = startObj;
@@ -117,8 +165,8 @@ public class CanvasController extends MouseAdapter implements MouseMotionListene
     public void endLinkDragging(MouseEvent e) {
         if (!isLinkDragging) return;
 
-        BasicObject endObj = findObjectAt(e.getPoint());
-        endObj = resolveConnectableObject(endObj);
+        BasicObject endObj = model.findObjectAt(e.getPoint());
+        endObj = resolveConnectableObject(endObj, e.getPoint());
         if (endObj == null || endObj == linkStartObject) {
             cleanupLinkDragging();
             return;
@@ -140,7 +188,7 @@ public class CanvasController extends MouseAdapter implements MouseMotionListene
             default:
                 break;
         }
-        if (link != null) model.getLinks().add(link);
+        if (link != null) model.addLink(link);
         cleanupLinkDragging();
     }
 
@@ -156,8 +204,15 @@ public class CanvasController extends MouseAdapter implements MouseMotionListene
         return isLinkDragging;
     }
 
+    /*
+     *    更新拖曳中連線的終點，只重畫新舊兩條拖曳線所涵蓋的範圍
+     */
     public void setCurrentDragPoint(Point p) {
+        Rectangle dirty = new Rectangle(linkStartPoint);
+        if (currentDragPoint != null) dirty.add(currentDragPoint);
+        dirty.add(p);
         this.currentDragPoint = p;
+        canvas.repaint(dirty.x - 1, dirty.y - 1, dirty.width + 2, dirty.height + 2);
     }
 
     public Canvas getCanvas() {
@@ -169,14 +224,40 @@ public class CanvasController extends MouseAdapter implements MouseMotionListene
     }
 
     /*
-     *    友善設計 :D 拖曳線的時候 hover 會顯示 port 
+     *    友善設計 :D 拖曳線的時候 hover 會顯示 port（群組內則顯示實際會連到的子物件）
+     *    只記錄目前 hover 的物件，hover 目標沒變就什麼都不做，
+     *    有變的話只重畫舊的與新的目標所在範圍
      */
     public void handleHoveringObjectPort(MouseEvent e) {
-        BasicObject hovered = findObjectAt(e.getPoint());
-        for (BasicObject obj : model.getObjects()) {
-            obj.setShowPorts(obj == hovered);
+        BasicObject hovered = resolveConnectableObject(model.findObjectAt(e.getPoint()), e.getPoint());
+        if (hovered == hoveredObject) return;
+
+        if (hoveredObject != null) {
+            hoveredObject.setShowPorts(false);
+            canvas.repaintObject(hoveredObject);
+        }
+        if (hovered != null) {
+            hovered.setShowPorts(true);
+            canvas.repaintObject(hovered);
+        }
+        hoveredObject = hovered;
+    }
+
+    /*
+     *    切換模式時把 hover 與選取物件的 port 都先隱藏
+     */
+    private void hidePortHighlights() {
+        if (hoveredObject != null) {
+            hoveredObject.setShowPorts(false);
+            canvas.repaintObject(hoveredObject);
+            hoveredObject = null;
+        }
+        for (BasicObject obj : model.getSelectedObjects()) {
+            if (obj.isShowPorts()) {
+                obj.setShowPorts(false);
+                canvas.repaintObject(obj);
+            }
         }
-        canvas.repaint();
     }
 
     /*
@@ -184,108 +265,151 @@ public class CanvasController extends MouseAdapter implements MouseMotionListene
      *     沒點到物件 : 開始建立 selected Area 
      */
     public void handleSelectPressed(MouseEvent e) {
-        BasicObject clickedObj = findObjectAt(e.getPoint());
-        List<BasicObject> selectedObjects = model.getSelectedObjects();
+        BasicObject clickedObj = model.findObjectAt(e.getPoint());
 
         if (clickedObj != null) {
-            if (selectedObjects.contains(clickedObj)) {
+            if (model.isSelected(clickedObj)) {
                 isGroupDragging = true;
                 groupDragStartPoint = e.getPoint();
                 initialPositions.clear();
-                for (BasicObject obj : selectedObjects) {
+                for (BasicObject obj : model.getSelectedObjects()) {
                     initialPositions.put(obj, new Point(obj.getX(), obj.getY()));
                 }
+                initialBounds = unionBounds(model.getSelectedObjects());
             } else {
-                selectedObjects.clear();
-                for (BasicObject obj : model.getObjects()) {
-                    obj.setShowPorts(false);
-                }
-                selectedObjects.add(clickedObj);
-                clickedObj.setShowPorts(true);
+                model.clearSelection();
+                model.select(clickedObj);
 
                 isGroupDragging = true;
                 groupDragStartPoint = e.getPoint();
                 initialPositions.clear();
                 initialPositions.put(clickedObj, new Point(clickedObj.getX(), clickedObj.getY()));
+                initialBounds = clickedObj.getBounds();
             }
             selectionStart = null;
             selectionEnd = null;
-            canvas.repaint();
         } else {
-            for (BasicObject obj : model.getObjects()) {
-                obj.setShowPorts(false);
-            }
-            selectedObjects.clear();
+            model.clearSelection();
             selectionStart = e.getPoint();
             selectionEnd = e.getPoint();
-            canvas.repaint();
         }
     }
 
     public void handleSelectReleased(MouseEvent e) {
-        List<BasicObject> selectedObjects = model.getSelectedObjects();
         if (isGroupDragging) {
             isGroupDragging = false;
             initialPositions.clear();
-            canvas.repaint();
-        } else if (selectionStart != null && selectionEnd != null) {
-        	// selected Area 內所有物件都顯示 port
-            Rectangle selectionRect = new Rectangle(
-                Math.min(selectionStart.x, selectionEnd.x),
-                Math.min(selectionStart.y, selectionEnd.y),
-                Math.abs(selectionStart.x - selectionEnd.x),
-                Math.abs(selectionStart.y - selectionEnd.y)
-            );
-            selectedObjects.clear();
-            for (BasicObject obj : model.getObjects()) {
-                Rectangle objRect = new Rectangle(obj.getX(), obj.getY(), obj.getWidth(), obj.getHeight());
-                if (selectionRect.contains(objRect)) {
-                    obj.setShowPorts(true);
-                    selectedObjects.add(obj);
-                } else {
-                    obj.setShowPorts(false);
-                }
+            initialBounds = null;
+            Rectangle guides = snapEngine.getGuideBounds();
+            snapEngine.clearGuides();
+            if (guides != null) {
+                repaintSelectionArea(guides);
             }
+        } else if (selectionStart != null && selectionEnd != null) {
+            // 選取結果在拖曳過程中已經即時更新，這裡只需要收起選取框
+            Rectangle dirty = getSelectionRect();
             selectionStart = null;
             selectionEnd = null;
-            for (LinkObject link : model.getLinks(	)) {
-                link.reCalcDepth();
-            }
-            canvas.repaint();
+            repaintSelectionArea(dirty);
         }
     }
 
     public void handleSelectDragged(MouseEvent e) {
-        List<BasicObject> selectedObjects = model.getSelectedObjects();
         if (isGroupDragging) {
-        	// 用相對位移之後若要加上 undo 功能會比較方便，但其實也可以直接用絕對座標
-            int deltaX = e.getX() - groupDragStartPoint.x;
-            int deltaY = e.getY() - groupDragStartPoint.y;
-            for (BasicObject child : selectedObjects) {
-                child.moveBy(deltaX, deltaY);
+            // 以拖曳開始時的位置加上總位移計算，吸附修正不會隨著事件累積誤差；按住 Alt 暫時不吸附
+            int offsetX = e.getX() - groupDragStartPoint.x;
+            int offsetY = e.getY() - groupDragStartPoint.y;
+            Rectangle oldGuides = snapEngine.getGuideBounds();
+            if (e.isAltDown()) {
+                snapEngine.clearGuides();
+            } else {
+                Rectangle moving = new Rectangle(initialBounds);
+                moving.translate(offsetX, offsetY);
+                Point adjust = snapEngine.snap(moving, model);
+                offsetX += adjust.x;
+                offsetY += adjust.y;
             }
-            groupDragStartPoint = e.getPoint();
-            canvas.repaint();
+            for (Map.Entry<BasicObject, Point> entry : initialPositions.entrySet()) {
+                BasicObject obj = entry.getKey();
+                Point start = entry.getValue();
+                int dx = start.x + offsetX - obj.getX(), dy = start.y + offsetY - obj.getY();
+                if (dx != 0 || dy != 0) {
+                    obj.moveBy(dx, dy);
+                }
+            }
+            // 物件沒有移動時不會整張重畫，輔助線改變的範圍要自己重畫
+            Rectangle newGuides = snapEngine.getGuideBounds();
+            if (oldGuides != null) repaintSelectionArea(oldGuides);
+            if (newGuides != null) repaintSelectionArea(newGuides);
         } else if (selectionStart != null) {
+            Rectangle oldRect = getSelectionRect();
             selectionEnd = e.getPoint();
-            canvas.repaint();
+            Rectangle newRect = getSelectionRect();
+            updateAreaSelection(newRect);
+            oldRect.add(newRect);
+            repaintSelectionArea(oldRect);
         }
     }
 
+    /*
+     *     拖曳選取框時即時更新選取結果 : 
+     *     已選取但不再完全落在框內的物件取消選取，
+     *     再透過空間索引找出框內、尚未選取的物件加入選取
+     */
+    private void updateAreaSelection(Rectangle selectionRect) {
+        List<BasicObject> leaving = new ArrayList<>();
+        for (BasicObject obj : model.getSelectedObjects()) {
+            if (!selectionRect.contains(obj.getBounds())) {
+                leaving.add(obj);
+            }
+        }
+        model.deselectAll(leaving);
+
+        for (BasicObject obj : model.queryObjects(selectionRect)) {
+            if (!model.isSelected(obj) && selectionRect.contains(obj.getBounds())) {
+                model.select(obj);
+            }
+        }
+    }
+
+    private static Rectangle unionBounds(List<BasicObject> objs) {
+        Rectangle bounds = null;
+        for (BasicObject obj : objs) {
+            if (bounds == null) {
+                bounds = obj.getBounds();
+            } else {
+                bounds.add(obj.getBounds());
+            }
+        }
+        return bounds;
+    }
+
+    private Rectangle getSelectionRect() {
+        return new Rectangle(
+            Math.min(selectionStart.x, selectionEnd.x),
+            Math.min(selectionStart.y, selectionEnd.y),
+            Math.abs(selectionStart.x - selectionEnd.x),
+            Math.abs(selectionStart.y - selectionEnd.y)
+        );
+    }
+
+    /*
+     *     選取框與框內物件的 port 都在這個範圍內，多留邊界給 port 與框線
+     */
+    private void repaintSelectionArea(Rectangle area) {
+        canvas.repaint(area.x - 5, area.y - 5, area.width + 10, area.height + 10);
+    }
+
     public void groupSelectedObjects() {
         List<BasicObject> selected = model.getSelectedObjects();
         if (selected.size() >= 2) {
             List<BasicObject> newChildren = new ArrayList<>(selected);
-            model.getObjects().removeAll(selected);
-
-            CompositeObject composite = new CompositeObject(newChildren);
-            model.getObjects().add(composite);
+            model.runInTransaction(() -> {
+                CompositeObject composite = model.group(newChildren);
 
-            selected.clear();
-            composite.setShowPorts(true);
-            selected.add(composite);
-
-            canvas.repaint();
+                model.clearSelection();
+                model.select(composite);
+            });
         }
     }
 
@@ -293,19 +417,251 @@ public class CanvasController extends MouseAdapter implements MouseMotionListene
         List<BasicObject> selected = model.getSelectedObjects();
         if (selected.size() == 1 && selected.get(0).isGroup()) {
             BasicObject group = selected.get(0);
-            model.getObjects().remove(group);
-            
-            List<BasicObject> children = new ArrayList<>();
-            group.ungroupTo(children);  // dynamic dispatch : 會去呼叫 compositeObject 的 ungroupTo
-            model.getObjects().addAll(children);
-
-            selected.clear();
-            for (BasicObject child : children) {
-                child.setShowPorts(true);
-                selected.add(child);
+            model.runInTransaction(() -> {
+                List<BasicObject> children = model.ungroup(group);
+
+                model.clearSelection();
+                for (BasicObject child : children) {
+                    model.select(child);
+                }
+            });
+        }
+    }
+
+    /**
+     * 複製選取的物件（含群組內容與彼此之間的連線）到剪貼簿
+     */
+    public void copySelection() {
+        List<BasicObject> selected = model.getSelectedObjects();
+        if (!selected.isEmpty()) {
+            clipboard = ClipboardContent.copy(new ArrayList<>(selected), model.getLinks());
+            pasteCount = 0;
+        }
+    }
+
+    /**
+     * 貼上剪貼簿的內容，每貼一次就多錯開一些，貼上的物件成為新的選取
+     */
+    public void paste() {
+        if (clipboard == null || clipboard.isEmpty()) return;
+        pasteCount++;
+        insertCopy(clipboard, PASTE_OFFSET * pasteCount);
+    }
+
+    /**
+     * 直接複製一份選取的物件，不影響剪貼簿
+     */
+    public void duplicateSelection() {
+        List<BasicObject> selected = model.getSelectedObjects();
+        if (!selected.isEmpty()) {
+            insertCopy(ClipboardContent.copy(new ArrayList<>(selected), model.getLinks()), PASTE_OFFSET);
+        }
+    }
+
+    private void insertCopy(ClipboardContent content, int offset) {
+        model.runInTransaction(() -> {
+            DiagramBuilder builder = model.newBuilder();
+            List<BasicObject> roots = content.pasteInto(builder, offset, offset);
+            builder.commit();
+            model.clearSelection();
+            for (BasicObject obj : roots) {
+                model.select(obj);
+            }
+        });
+    }
+
+    /**
+     * 把標籤樣板與外觀套用到所有選取的物件；選到群組時改的是群組內的葉物件，群組本身不編號也不修改。
+     * 整批修改在同一個 transaction 中完成，監聽者只收到一批變動、畫布只重畫一次。
+     *
+     * @param pattern 標籤樣板，{n} 依走訪順序編號
+     * @param style   新的外觀
+     * @return 修改的物件數
+     */
+    public int restyleSelection(LabelPattern pattern, LabelStyle style) {
+        List<BasicObject> targets = new ArrayList<>();
+        for (BasicObject obj : model.getSelectedObjects()) {
+            collectLeaves(obj, targets);
+        }
+        model.runInTransaction(() -> {
+            int number = 1;
+            for (BasicObject obj : targets) {
+                obj.applyLabel(pattern.apply(obj.getLabel(), number++), style);
+            }
+        });
+        return targets.size();
+    }
+
+    private static void collectLeaves(BasicObject obj, List<BasicObject> output) {
+        if (obj.getChildren().isEmpty()) {
+            output.add(obj);
+        }
+        for (BasicObject child : obj.getChildren()) {
+            collectLeaves(child, output);
+        }
+    }
+
+    public SnapEngine getSnapEngine() {
+        return snapEngine;
+    }
+
+    /**
+     * 把選取的物件對齊到選取範圍的某一邊或中線，整批可以復原
+     *
+     * @param alignment 對齊方式
+     */
+    public void alignSelection(Alignment alignment) {
+        List<BasicObject> selected = model.getSelectedObjects();
+        if (selected.size() < 2) return;
+        Rectangle bounds = unionBounds(selected);
+        int n = selected.size();
+        BasicObject[] objects = selected.toArray(new BasicObject[0]);
+        int[] xs = new int[n], ys = new int[n];
+        for (int i = 0; i < n; i++) {
+            BasicObject obj = objects[i];
+            xs[i] = obj.getX();
+            ys[i] = obj.getY();
+            switch (alignment) {
+                case LEFT:   xs[i] = bounds.x; break;
+                case CENTER: xs[i] = bounds.x + bounds.width / 2 - obj.getWidth() / 2; break;
+                case RIGHT:  xs[i] = bounds.x + bounds.width - obj.getWidth(); break;
+                case TOP:    ys[i] = bounds.y; break;
+                case MIDDLE: ys[i] = bounds.y + bounds.height / 2 - obj.getHeight() / 2; break;
+                case BOTTOM: ys[i] = bounds.y + bounds.height - obj.getHeight(); break;
             }
+        }
+        MoveObjectsEdit edit = new MoveObjectsEdit("Align " + alignment.name().toLowerCase(), objects, xs, ys);
+        model.runInTransaction(edit::apply);
+        undoManager.addEdit(edit);
+    }
 
-            canvas.repaint();
+    /**
+     * 讓選取的物件在水平或垂直方向等距排列：最前與最後的物件不動，
+     * 其餘物件依目前順序重新放置，使相鄰物件之間的間隔相同。整批可以復原
+     *
+     * @param horizontal true 為水平方向，false 為垂直方向
+     */
+    public void distributeSelection(boolean horizontal) {
+        List<BasicObject> selected = model.getSelectedObjects();
+        if (selected.size() < 3) return;
+        BasicObject[] objects = selected.toArray(new BasicObject[0]);
+        Arrays.sort(objects, Comparator.comparingInt(obj -> horizontal ? obj.getX() : obj.getY()));
+        int n = objects.length;
+        // 範圍由依起點排序後的最前與最後物件決定，這兩個物件留在原位；
+        // 較大的物件即使遠端超出最後一個物件，也不會改變範圍
+        BasicObject first = objects[0], last = objects[n - 1];
+        long start = horizontal ? first.getX() : first.getY();
+        long end = horizontal ? last.getX() + last.getWidth() : last.getY() + last.getHeight();
+        long total = 0;
+        for (BasicObject obj : objects) {
+            total += horizontal ? obj.getWidth() : obj.getHeight();
+        }
+        // 間隔可能是負的（物件總長超過範圍），此時物件會依序重疊
+        double gap = (double) (end - start - total) / (n - 1);
+        int[] xs = new int[n], ys = new int[n];
+        double pos = start;
+        for (int i = 0; i < n; i++) {
+            BasicObject obj = objects[i];
+            xs[i] = obj.getX();
+            ys[i] = obj.getY();
+            // 頭尾直接保留原座標，不受間隔的捨入誤差影響
+            if (i > 0 && i < n - 1) {
+                if (horizontal) xs[i] = (int) Math.round(pos);
+                else ys[i] = (int) Math.round(pos);
+            }
+            pos += (horizontal ? obj.getWidth() : obj.getHeight()) + gap;
+        }
+        MoveObjectsEdit edit = new MoveObjectsEdit(horizontal ? "Distribute horizontally" : "Distribute vertically",
+                objects, xs, ys);
+        model.runInTransaction(edit::apply);
+        undoManager.addEdit(edit);
+    }
+
+    /*
+     *    把排版結果當成一個可復原的批次套用，只重畫一次
+     */
+    public void applyLayout(String name, LayoutGraph graph, LayoutResult result) {
+        int n = graph.nodeCount();
+        BasicObject[] objects = new BasicObject[n];
+        int[] xs = new int[n], ys = new int[n];
+        for (int i = 0; i < n; i++) {
+            objects[i] = graph.getNode(i);
+            xs[i] = result.getX(i);
+            ys[i] = result.getY(i);
+        }
+        MoveObjectsEdit edit = new MoveObjectsEdit(name, objects, xs, ys);
+        model.runInTransaction(edit::apply);
+        undoManager.addEdit(edit);
+    }
+
+    public void undo() {
+        if (undoManager.canUndo()) {
+            model.runInTransaction(undoManager::undo);
+        }
+    }
+
+    public void redo() {
+        if (undoManager.canRedo()) {
+            model.runInTransaction(undoManager::redo);
+        }
+    }
+
+    public UndoManager getUndoManager() {
+        return undoManager;
+    }
+
+    public LinkRoutingService getLinkRouter() {
+        return linkRouter;
+    }
+
+    public void addUndoableEdit(UndoableEdit edit) {
+        undoManager.addEdit(edit);
+    }
+
+    /**
+     * 在本機啟動同步伺服器並加入，回傳其他編輯器要連的連接埠
+     */
+    public int hostSession() throws IOException {
+        leaveSession();
+        syncServer = SyncServer.start(0);
+        joinSession(syncServer.getPort());
+        return syncServer.getPort();
+    }
+
+    /**
+     * 加入本機 port 上的共同編輯，之後 model 的變動都會同步給其他編輯器
+     */
+    public void joinSession(int port) throws IOException {
+        if (collabSession != null) {
+            collabSession.close();
+        }
+        CollabSession session = CollabSession.join(model, port);
+        session.setOnDisconnected(() -> {
+            if (collabSession != session) return;
+            collabSession = null;
+            if (onSessionLost != null) onSessionLost.run();
+        });
+        collabSession = session;
+    }
+
+    /**
+     * 設定共同編輯的連線意外中斷時要執行的動作，例如通知使用者；離開共同編輯時不會執行
+     */
+    public void setOnSessionLost(Runnable onSessionLost) {
+        this.onSessionLost = onSessionLost;
+    }
+
+    /**
+     * 離開共同編輯；自己啟動的伺服器也一併關閉
+     */
+    public void leaveSession() throws IOException {
+        if (collabSession != null) {
+            collabSession.close();
+            collabSession = null;
+        }
+        if (syncServer != null) {
+            syncServer.close();
+            syncServer = null;
         }
     }
 
@@ -322,23 +678,20 @@ public class CanvasController extends MouseAdapter implements MouseMotionListene
             int h = Math.abs(selectionStart.y - selectionEnd.y);
             g.drawRect(x, y, w, h);
         }
+        if (isGroupDragging && snapEngine.hasGuides()) {
+            g.setColor(Color.MAGENTA);
+            snapEngine.drawGuides(g);
+        }
     }
 
-    private BasicObject resolveConnectableObject(BasicObject obj) {
-        if (obj instanceof CompositeObject) return null;
-        return obj;
-    }
-
-    private BasicObject findObjectAt(Point p) {
-        List<BasicObject> hitObjects = new ArrayList<>();
-        for (BasicObject obj : model.getObjects()) {
-            if (obj.contains(p)) {
-                hitObjects.add(obj);
-            }
+    /*
+     *    點到群組時往下找出群組內最深層、實際可連線的子物件
+     */
+    private BasicObject resolveConnectableObject(BasicObject obj, Point p) {
+        if (obj instanceof CompositeObject) {
+            return ((CompositeObject) obj).getConnectableChild(p);
         }
-        if (hitObjects.isEmpty()) return null;
-        hitObjects.sort((o1, o2) -> Integer.compare(o1.getDepth(), o2.getDepth()));
-        return hitObjects.get(0);
+        return obj;
     }
 
 }
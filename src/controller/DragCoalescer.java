@@ -0,0 +1,68 @@
+package controller;
+
+import javax.swing.Timer;
+import java.awt.event.MouseEvent;
+import java.util.function.Consumer;
+
+/**
+ * DragCoalescer 把高頻率的 mouseDragged 事件合併成每個畫面影格最多處理一次。
+ *
+ * 拖曳開始的第一個事件會立即處理，之後影格間隔內收到的事件只保留最新的一個，
+ * 由 Swing Timer 在下一個影格（約 60fps）交給 handler，
+ * 因此滑鼠回報率再高，model 更新與 repaint 的次數也不會超過畫面更新率。
+ */
+public class DragCoalescer {
+    public static final int FRAME_INTERVAL_MS = 16;
+
+    private final Consumer<MouseEvent> handler;
+    private final Timer frameTimer;
+    private MouseEvent pending = null;
+
+    public DragCoalescer(Consumer<MouseEvent> handler) {
+        this.handler = handler;
+        this.frameTimer = new Timer(FRAME_INTERVAL_MS, e -> onFrame());
+    }
+
+    /**
+     * 提交一個拖曳事件，閒置時立即處理，否則等到下一個影格。
+     */
+    public void submit(MouseEvent e) {
+        if (frameTimer.isRunning()) {
+            pending = e;
+        } else {
+            handler.accept(e);
+            frameTimer.start();
+        }
+    }
+
+    /**
+     * 立即處理尚未處理的事件，放開滑鼠前呼叫，確保最後位置不會遺失。
+     */
+    public void flush() {
+        frameTimer.stop();
+        if (pending != null) {
+            MouseEvent e = pending;
+            pending = null;
+            handler.accept(e);
+        }
+    }
+
+    /**
+     * 丟棄尚未處理的事件。
+     */
+    public void cancel() {
+        frameTimer.stop();
+        pending = null;
+    }
+
+    private void onFrame() {
+        if (pending == null) {
+            // 這個影格沒有新的事件，停下 timer 等下一次拖曳
+            frameTimer.stop();
+            return;
+        }
+        MouseEvent e = pending;
+        pending = null;
+        handler.accept(e);
+    }
+}
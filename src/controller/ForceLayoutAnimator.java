@@ -0,0 +1,157 @@
+package controller;
+
+import enums.ChangeType;
+import layout.ForceDirectedLayout;
+import layout.LayoutGraph;
+import layout.LayoutResult;
+import model.BasicObject;
+import model.CanvasModel;
+import model.ModelChangeBatch;
+import model.ModelListener;
+import model.MoveObjectsEdit;
+
+import javax.swing.Timer;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * ForceLayoutAnimator 讓力導向排版在畫布上即時播放：
+ * EDT 上的 Timer 每個影格放行背景執行緒一次，背景執行緒跑 STEPS_PER_FRAME 步模擬後發布一份位置快照，
+ * Timer 在下一個影格套用到物件並重畫。模擬的速度跟著影格走，不會空轉或每一步都配置快照，EDT 也不會被計算卡住。
+ * 結束或被使用者操作打斷時，整段動畫記錄成一個可復原的移動。
+ * 播放期間 model 有物件或連線增減、或有不是動畫本身造成的變動時立即停止，快照不會套用到已改變的圖上。
+ */
+public class ForceLayoutAnimator implements ModelListener {
+    private static final String NAME = "Force-Directed Layout";
+    // 每個影格執行的模擬步數
+    private static final int STEPS_PER_FRAME = 4;
+
+    private final CanvasController controller;
+    private final Timer frameTimer;
+
+    // 以下欄位只在 EDT 上存取。每次播放重新建立，停止後還在收尾的背景執行緒不會影響下一次播放
+    private AtomicBoolean running;
+    private AtomicReference<LayoutResult> latest;
+    private Semaphore frames;
+    private Thread worker;
+    private LayoutGraph graph;
+    private int[] startX, startY;
+    // onFrame 套用快照期間為 true，這段期間的變動是動畫自己造成的
+    private boolean applying = false;
+
+    public ForceLayoutAnimator(CanvasController controller) {
+        this.controller = controller;
+        this.frameTimer = new Timer(DragCoalescer.FRAME_INTERVAL_MS, e -> onFrame());
+    }
+
+    public boolean isRunning() {
+        return frameTimer.isRunning();
+    }
+
+    /**
+     * 開始播放，必須在 EDT 上呼叫
+     */
+    public void start() {
+        if (isRunning()) return;
+        graph = LayoutGraph.fromModel(controller.getModel());
+        int n = graph.nodeCount();
+        startX = new int[n];
+        startY = new int[n];
+        for (int i = 0; i < n; i++) {
+            startX[i] = graph.getX(i);
+            startY[i] = graph.getY(i);
+        }
+
+        ForceDirectedLayout.Simulation simulation = new ForceDirectedLayout.Simulation(graph);
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<LayoutResult> latest = new AtomicReference<>();
+        Semaphore frames = new Semaphore(1);
+        worker = new Thread(() -> {
+            try {
+                boolean more = true;
+                while (more && running.get()) {
+                    frames.acquire();
+                    for (int i = 0; i < STEPS_PER_FRAME && more; i++) {
+                        more = simulation.step();
+                    }
+                    latest.set(simulation.snapshot());
+                }
+            } catch (InterruptedException e) {
+                // 被 stop() 打斷，結果不再使用
+            }
+            running.set(false);
+        }, "force-layout");
+        worker.setDaemon(true);
+        this.running = running;
+        this.latest = latest;
+        this.frames = frames;
+        worker.start();
+        frameTimer.start();
+        controller.getModel().addModelListener(this);
+    }
+
+    /**
+     * 停在畫面上目前的位置，之後算出的結果都不再套用，必須在 EDT 上呼叫。
+     * 使用者在畫布上操作時也會呼叫，動畫不會蓋掉使用者的拖曳。
+     */
+    public void stop() {
+        if (!isRunning()) return;
+        running.set(false);
+        worker.interrupt();
+        frameTimer.stop();
+        finish();
+    }
+
+    @Override
+    public void modelChanged(ModelChangeBatch batch) {
+        if (applying || !isRunning()) return;
+        if (batch.contains(ChangeType.OBJECT_ADDED) || batch.contains(ChangeType.OBJECT_REMOVED)
+                || batch.contains(ChangeType.LINK_ADDED) || batch.contains(ChangeType.LINK_REMOVED)
+                || batch.contains(ChangeType.GEOMETRY_CHANGED)) {
+            stop();
+        }
+    }
+
+    private void onFrame() {
+        CanvasModel model = controller.getModel();
+        // 先送出累積中的其他變動，讓它們與動畫的移動分成不同批；送出時可能已經因此停止
+        model.flushChanges();
+        if (!isRunning()) return;
+        LayoutResult result = latest.getAndSet(null);
+        if (result != null) {
+            applying = true;
+            try {
+                model.runInTransaction(() -> {
+                    for (int i = 0; i < result.size(); i++) {
+                        BasicObject obj = graph.getNode(i);
+                        obj.moveBy(result.getX(i) - obj.getX(), result.getY(i) - obj.getY());
+                    }
+                });
+            } finally {
+                applying = false;
+            }
+        }
+        if (running.get()) {
+            // 每個影格最多放行一次，背景執行緒比畫面慢時不會累積
+            if (frames.availablePermits() == 0) frames.release();
+        } else if (!worker.isAlive() && latest.get() == null) {
+            frameTimer.stop();
+            finish();
+        }
+    }
+
+    private void finish() {
+        controller.getModel().removeModelListener(this);
+        int n = graph.nodeCount();
+        BasicObject[] objects = new BasicObject[n];
+        int[] endX = new int[n], endY = new int[n];
+        for (int i = 0; i < n; i++) {
+            objects[i] = graph.getNode(i);
+            endX[i] = objects[i].getX();
+            endY[i] = objects[i].getY();
+        }
+        controller.addUndoableEdit(new MoveObjectsEdit(NAME, objects, startX, startY, endX, endY));
+        graph = null;
+    }
+}
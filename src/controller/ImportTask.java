@@ -0,0 +1,263 @@
+package controller;
+
+import enums.LabelShape;
+import enums.LinkKind;
+import importer.GraphReader;
+import importer.GraphRecord;
+import model.BasicObject;
+import model.CanvasModel;
+import model.DiagramBuilder;
+import view.Canvas;
+
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ImportTask 在背景執行緒上串流解析 CSV / JSON 檔案，把節點與連線分批加入 model。
+ *
+ * 背景執行緒只負責解析與對照 id，不建立任何 model 物件；
+ * 每累積一批資料就交給 EDT，以 DiagramBuilder 在單一交易內建立物件與連線，畫面會逐批出現。
+ * 批次從小到大成長（上限 MAX_CHUNK），一開始很快就能看到內容，後面的批次也不會讓驗證器反覆全面檢查太多次。
+ * 尚未交給 EDT 的批次最多 MAX_PENDING_CHUNKS 個，EDT 跟不上時解析會暫停，記憶體用量有上限。
+ *
+ * 連線的端點可以出現在連線之後，這樣的連線會留到檔案讀完再建立；
+ * 端點始終不存在或連回同一個節點的連線會被略過並計數。
+ * 取消或失敗時，已經加入的物件與連線會被移除。
+ */
+public class ImportTask extends SwingWorker<ImportTask.Summary, Void> {
+    private static final int FIRST_CHUNK = 1024;
+    private static final int MAX_CHUNK = 65536;
+    private static final int MAX_PENDING_CHUNKS = 4;
+
+    // 沒有座標的節點依序排成格狀，放在現有內容的下方
+    private static final int AUTO_COLUMNS = 40;
+    private static final int AUTO_GAP = 40;
+
+    private final CanvasModel model;
+    private final Path file;
+    private final Semaphore pendingChunks = new Semaphore(MAX_PENDING_CHUNKS);
+
+    // 以下欄位只在 EDT 上存取；created 的索引就是背景執行緒配給節點的編號
+    private final List<BasicObject> created = new ArrayList<>();
+    private final int autoOriginY;
+    private int autoPlaced = 0;
+    private boolean rolledBack = false;
+
+    /**
+     * 匯入的結果統計
+     */
+    public static final class Summary {
+        public final int objects;
+        public final int links;
+        // 端點不存在或連回同一個節點而略過的連線
+        public final int skippedLinks;
+
+        Summary(int objects, int links, int skippedLinks) {
+            this.objects = objects;
+            this.links = links;
+            this.skippedLinks = skippedLinks;
+        }
+    }
+
+    public ImportTask(CanvasModel model, Path file) {
+        this.model = model;
+        this.file = file;
+        int bottom = 0;
+        for (BasicObject obj : model.getObjects()) {
+            bottom = Math.max(bottom, obj.getY() + obj.getHeight());
+        }
+        this.autoOriginY = bottom + AUTO_GAP;
+    }
+
+    @Override
+    protected Summary doInBackground() throws IOException, InterruptedException {
+        long size = Math.max(1, Files.size(file));
+        Map<String, Integer> ids = new HashMap<>();
+        List<GraphRecord.Edge> deferred = new ArrayList<>();
+        int links = 0;
+        int skipped = 0;
+        int chunkLimit = FIRST_CHUNK;
+        Chunk chunk = new Chunk();
+
+        try (CountingInputStream counting = new CountingInputStream(Files.newInputStream(file));
+             GraphReader reader = GraphReader.open(
+                     new InputStreamReader(counting, StandardCharsets.UTF_8), file.getFileName().toString())) {
+            GraphRecord record;
+            while ((record = reader.next()) != null) {
+                if (isCancelled()) return null;
+                if (record instanceof GraphRecord.Node) {
+                    GraphRecord.Node node = (GraphRecord.Node) record;
+                    if (ids.putIfAbsent(node.id, ids.size()) != null) {
+                        throw new IOException("節點 id「" + node.id + "」重複");
+                    }
+                    chunk.nodes.add(node);
+                } else {
+                    GraphRecord.Edge edge = (GraphRecord.Edge) record;
+                    Integer source = ids.get(edge.source);
+                    Integer target = ids.get(edge.target);
+                    if (edge.source.equals(edge.target)) {
+                        // 連回自己的連線畫不出來，驗證器也會把它標成錯誤
+                        skipped++;
+                    } else if (source == null || target == null) {
+                        deferred.add(edge);
+                    } else {
+                        chunk.addEdge(source, target, edge.kind);
+                        links++;
+                    }
+                }
+                if (chunk.size() >= chunkLimit) {
+                    if (!deliver(chunk)) return null;
+                    chunk = new Chunk();
+                    chunkLimit = Math.min(chunkLimit * 2, MAX_CHUNK);
+                    setProgress((int) Math.min(99, counting.count * 100 / size));
+                }
+            }
+        }
+
+        for (GraphRecord.Edge edge : deferred) {
+            Integer source = ids.get(edge.source);
+            Integer target = ids.get(edge.target);
+            if (source == null || target == null) {
+                skipped++;
+            } else {
+                chunk.addEdge(source, target, edge.kind);
+                links++;
+            }
+        }
+        if (!deliver(chunk)) return null;
+        setProgress(100);
+        return new Summary(ids.size(), links, skipped);
+    }
+
+    /**
+     * 把一批資料交給 EDT；已經有太多批次在排隊時先等待，取消時回傳 false
+     */
+    private boolean deliver(Chunk chunk) throws InterruptedException {
+        while (!pendingChunks.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+            if (isCancelled()) return false;
+        }
+        SwingUtilities.invokeLater(() -> {
+            pendingChunks.release();
+            if (!isCancelled() && !rolledBack) insert(chunk);
+        });
+        return true;
+    }
+
+    /**
+     * 在 EDT 上以一個 DiagramBuilder 建立一批物件與連線
+     */
+    private void insert(Chunk chunk) {
+        DiagramBuilder builder = model.newBuilder();
+        for (GraphRecord.Node node : chunk.nodes) {
+            int width = node.width > 0 ? node.width : Canvas.DEFAULT_WIDTH;
+            int height = node.height > 0 ? node.height : Canvas.DEFAULT_HEIGHT;
+            int x = node.x;
+            int y = node.y;
+            if (!node.hasPosition) {
+                x = AUTO_GAP + (autoPlaced % AUTO_COLUMNS) * (Canvas.DEFAULT_WIDTH + AUTO_GAP);
+                y = autoOriginY + (autoPlaced / AUTO_COLUMNS) * (Canvas.DEFAULT_HEIGHT + AUTO_GAP);
+                autoPlaced++;
+            }
+            BasicObject obj = node.shape == LabelShape.OVAL
+                    ? builder.addOval(x, y, width, height, node.label)
+                    : builder.addRect(x, y, width, height, node.label);
+            if (node.labelColor != null) {
+                obj.setLabelColor(node.labelColor);
+            }
+            created.add(obj);
+        }
+        for (int i = 0; i < chunk.edgeCount; i++) {
+            BasicObject from = created.get(chunk.edges[3 * i]);
+            BasicObject to = created.get(chunk.edges[3 * i + 1]);
+            switch (LinkKind.values()[chunk.edges[3 * i + 2]]) {
+                case GENERALIZATION:
+                    builder.generalize(from, to);
+                    break;
+                case COMPOSITION:
+                    builder.compose(from, to);
+                    break;
+                default:
+                    builder.associate(from, to);
+            }
+        }
+        builder.commit();
+    }
+
+    @Override
+    protected void done() {
+        boolean failed = isCancelled();
+        if (!failed) {
+            try {
+                get();
+            } catch (Exception e) {
+                failed = true;
+            }
+        }
+        if (failed) {
+            rolledBack = true;
+            // 連到匯入物件的連線（包括使用者在匯入期間自己畫的）由 removeObjects 一併刪除
+            model.runInTransaction(() -> model.removeObjects(created));
+            created.clear();
+        }
+    }
+
+    /**
+     * 一批解析好的資料；連線以 {起點編號, 終點編號, 種類} 三個一組存放
+     */
+    private static final class Chunk {
+        final List<GraphRecord.Node> nodes = new ArrayList<>();
+        int[] edges = new int[48];
+        int edgeCount = 0;
+
+        void addEdge(int source, int target, LinkKind kind) {
+            if (3 * edgeCount == edges.length) edges = Arrays.copyOf(edges, edges.length * 2);
+            edges[3 * edgeCount] = source;
+            edges[3 * edgeCount + 1] = target;
+            edges[3 * edgeCount + 2] = kind.ordinal();
+            edgeCount++;
+        }
+
+        int size() {
+            return nodes.size() + edgeCount;
+        }
+    }
+
+    /**
+     * 記錄已經讀了多少位元組，用來估計進度
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        long count = 0;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+    }
+}
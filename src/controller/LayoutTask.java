@@ -0,0 +1,92 @@
+package controller;
+
+import layout.LayoutAlgorithm;
+import layout.LayoutGraph;
+import layout.LayoutProgress;
+import layout.LayoutResult;
+import model.CanvasModel;
+
+import javax.swing.SwingWorker;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * LayoutTask 在背景執行緒上執行排版演算法，透過 SwingWorker 的 progress 屬性回報進度，
+ * 完成後回到 EDT 把結果當成一個可復原的批次套用到 model。
+ *
+ * 圖結構快照在建構時（EDT 上）建立，背景計算期間不會讀取 model。
+ * 計算期間物件或連線有增減時快照已經過時，結果直接丟棄，由呼叫端決定是否重新排版。
+ */
+public class LayoutTask extends SwingWorker<LayoutResult, Void> {
+    private final CanvasController controller;
+    private final LayoutAlgorithm algorithm;
+    private final LayoutGraph graph;
+    private final String name;
+    // 建立快照時 model 的物件與連線版本
+    private final long objectVersion;
+    private final long linkVersion;
+    private Runnable onDiscarded;
+    private Consumer<Throwable> onFailed;
+
+    public LayoutTask(CanvasController controller, LayoutAlgorithm algorithm, String name) {
+        this.controller = controller;
+        this.algorithm = algorithm;
+        this.name = name;
+        this.graph = LayoutGraph.fromModel(controller.getModel());
+        this.objectVersion = controller.getModel().getObjectVersion();
+        this.linkVersion = controller.getModel().getLinkVersion();
+    }
+
+    /**
+     * 設定計算期間圖結構改變、結果被丟棄時要在 EDT 上執行的動作，例如重新排版
+     */
+    public void setOnDiscarded(Runnable onDiscarded) {
+        this.onDiscarded = onDiscarded;
+    }
+
+    /**
+     * 設定排版演算法丟出例外時要在 EDT 上執行的動作，例如顯示錯誤訊息；沒有設定時只印到標準錯誤
+     */
+    public void setOnFailed(Consumer<Throwable> onFailed) {
+        this.onFailed = onFailed;
+    }
+
+    @Override
+    protected LayoutResult doInBackground() {
+        return algorithm.layout(graph, new LayoutProgress() {
+            @Override
+            public void report(int percent) {
+                setProgress(Math.max(0, Math.min(100, percent)));
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return LayoutTask.this.isCancelled();
+            }
+        });
+    }
+
+    @Override
+    protected void done() {
+        if (isCancelled()) return;
+        CanvasModel model = controller.getModel();
+        if (model.getObjectVersion() != objectVersion || model.getLinkVersion() != linkVersion) {
+            if (onDiscarded != null) onDiscarded.run();
+            return;
+        }
+        try {
+            LayoutResult result = get();
+            if (result != null) {
+                controller.applyLayout(name, graph, result);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            if (onFailed != null) {
+                onFailed.accept(e.getCause());
+            } else {
+                System.err.println("Layout failed: " + e.getCause());
+            }
+        }
+    }
+}
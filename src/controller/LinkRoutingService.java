@@ -0,0 +1,227 @@
+package controller;
+
+import enums.ChangeType;
+import model.BasicObject;
+import model.CanvasModel;
+import model.LinkObject;
+import model.ModelChangeBatch;
+import model.ModelListener;
+import routing.OrthogonalRouter;
+import view.Canvas;
+
+import javax.swing.SwingUtilities;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * LinkRoutingService 在背景執行緒為連線計算避開物件的正交路徑。
+ *
+ * 需要重新繞線的連線先收進 pending，在 EDT 上把連接埠與附近的障礙物拍成快照後交給背景執行緒，
+ * 算完再回到 EDT 寫回連線並只重畫受影響的範圍。同一時間只有一批在計算，
+ * 計算期間進來的請求會合併到下一批，拖曳時不會累積一長串過時的工作。
+ *
+ * 預設關閉，連線畫成直線；由 View 選單開啟後才開始繞線。
+ */
+public class LinkRoutingService implements ModelListener {
+    // 以兩端連接埠的外框再往外擴這麼多，範圍內的物件才當作障礙物
+    private static final int SEARCH_MARGIN = 160;
+    // 一批移動超過這麼多物件（例如自動排版）時幾乎所有連線的端點都動了，不再另外找被穿過的連線
+    private static final int MAX_OBSTACLE_CHECK = 64;
+
+    private final CanvasModel model;
+    private final Canvas canvas;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "link-routing");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // 以下欄位只在 EDT 上存取
+    private final Set<LinkObject> pending = Collections.newSetFromMap(new IdentityHashMap<>());
+    private boolean scheduled = false;
+    private boolean busy = false;
+    private boolean enabled = false;
+
+    public LinkRoutingService(CanvasModel model, Canvas canvas) {
+        this.model = model;
+        this.canvas = canvas;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 開啟或關閉正交繞線。關閉時丟掉所有繞線結果，連線改回直線；計算中的那一批算完後也會被丟棄。
+     *
+     * @param enabled true 表示開啟
+     */
+    public void setEnabled(boolean enabled) {
+        if (this.enabled == enabled) return;
+        this.enabled = enabled;
+        if (!enabled) {
+            pending.clear();
+            for (LinkObject link : model.getLinks()) {
+                link.clearRoute();
+            }
+        }
+    }
+
+    /**
+     * 要求重新計算一條連線的路徑，同一個事件迴圈內的多次請求會合併成一批
+     *
+     * @param link 需要繞線的連線
+     */
+    public void request(LinkObject link) {
+        if (!enabled) return;
+        if (pending.add(link) && !scheduled && !busy) {
+            scheduled = true;
+            SwingUtilities.invokeLater(this::submitPending);
+        }
+    }
+
+    @Override
+    public void modelChanged(ModelChangeBatch batch) {
+        if (!enabled) return;
+        List<BasicObject> moved = batch.getObjects(ChangeType.GEOMETRY_CHANGED);
+        if (moved.size() <= MAX_OBSTACLE_CHECK) {
+            objectsMoved(moved);
+        }
+    }
+
+    /**
+     * 物件移動後呼叫：除了端點在這些物件上的連線（由 isRouteStale 自動偵測）之外，
+     * 目前路徑經過這些物件新位置的連線也要重新繞線
+     *
+     * @param moved 移動過的物件
+     */
+    public void objectsMoved(Collection<BasicObject> moved) {
+        // 逐一以物件的新邊界查詢連線索引，只檢查附近的連線；同一條連線重複請求會被 pending 合併
+        for (BasicObject obj : moved) {
+            for (LinkObject link : model.queryLinks(obj.getBounds())) {
+                request(link);
+            }
+        }
+    }
+
+    private void submitPending() {
+        scheduled = false;
+        if (pending.isEmpty()) return;
+        List<Job> jobs = new ArrayList<>(pending.size());
+        for (LinkObject link : pending) {
+            jobs.add(snapshot(link));
+        }
+        pending.clear();
+        busy = true;
+        executor.execute(() -> {
+            int[][] routes = new int[jobs.size()][];
+            try {
+                for (int i = 0; i < routes.length; i++) {
+                    Job job = jobs.get(i);
+                    routes[i] = OrthogonalRouter.route(job.sx, job.sy, job.sDir, job.ex, job.ey, job.eDir, job.obstacles);
+                }
+            } finally {
+                // 計算失敗時也要回到 EDT 清掉 busy，否則之後的請求永遠不會再送出；沒算到的連線畫成直線
+                SwingUtilities.invokeLater(() -> apply(jobs, routes));
+            }
+        });
+    }
+
+    private void apply(List<Job> jobs, int[][] routes) {
+        busy = false;
+        if (!enabled) return;
+        Rectangle dirty = null;
+        for (int i = 0; i < routes.length; i++) {
+            Job job = jobs.get(i);
+            Rectangle before = job.link.getBounds();
+            if (job.link.setRoute(routes[i], job.startVersion, job.endVersion)) {
+                before.add(job.link.getBounds());
+                if (dirty == null) dirty = before;
+                else dirty.add(before);
+            }
+        }
+        if (dirty != null) {
+            dirty.grow(2, 2);
+            canvas.repaint(dirty);
+        }
+        if (!pending.isEmpty()) {
+            submitPending();
+        }
+    }
+
+    /**
+     * 在 EDT 上記錄計算一條路徑所需的全部資料
+     */
+    private Job snapshot(LinkObject link) {
+        BasicObject start = link.getStartObject();
+        BasicObject end = link.getEndObject();
+        Job job = new Job();
+        job.link = link;
+        job.startVersion = start.getGeometryVersion();
+        job.endVersion = end.getGeometryVersion();
+        job.sx = start.getX() + link.getStartPortOffsetX();
+        job.sy = start.getY() + link.getStartPortOffsetY();
+        job.ex = end.getX() + link.getEndPortOffsetX();
+        job.ey = end.getY() + link.getEndPortOffsetY();
+        job.sDir = exitDirection(start, link.getStartPortOffsetX(), link.getStartPortOffsetY());
+        job.eDir = exitDirection(end, link.getEndPortOffsetX(), link.getEndPortOffsetY());
+
+        Rectangle area = new Rectangle(job.sx, job.sy, 0, 0);
+        area.add(job.ex, job.ey);
+        area.grow(SEARCH_MARGIN, SEARCH_MARGIN);
+        List<BasicObject> nearby = model.queryObjects(area);
+
+        // 端點所在的最上層物件改以端點物件本身當障礙物，避免群組把自己的連接埠包住
+        BasicObject startRoot = start.getRoot();
+        BasicObject endRoot = end.getRoot();
+        int[] obstacles = new int[4 * (nearby.size() + 2)];
+        int n = 0;
+        n = putBounds(obstacles, n, start);
+        if (end != start) n = putBounds(obstacles, n, end);
+        for (BasicObject obj : nearby) {
+            if (obj == startRoot || obj == endRoot) continue;
+            n = putBounds(obstacles, n, obj);
+        }
+        job.obstacles = Arrays.copyOf(obstacles, n);
+        return job;
+    }
+
+    private static int putBounds(int[] out, int n, BasicObject obj) {
+        out[n++] = obj.getX();
+        out[n++] = obj.getY();
+        out[n++] = obj.getWidth();
+        out[n++] = obj.getHeight();
+        return n;
+    }
+
+    /**
+     * 依連接埠最靠近物件的哪一邊，決定連線離開物件的方向
+     */
+    private static int[] exitDirection(BasicObject obj, int offsetX, int offsetY) {
+        int left = offsetX;
+        int right = obj.getWidth() - offsetX;
+        int top = offsetY;
+        int bottom = obj.getHeight() - offsetY;
+        int min = Math.min(Math.min(left, right), Math.min(top, bottom));
+        if (min == top) return new int[]{0, -1};
+        if (min == bottom) return new int[]{0, 1};
+        if (min == left) return new int[]{-1, 0};
+        return new int[]{1, 0};
+    }
+
+    private static final class Job {
+        LinkObject link;
+        long startVersion, endVersion;
+        int sx, sy, ex, ey;
+        int[] sDir, eDir;
+        int[] obstacles;
+    }
+}
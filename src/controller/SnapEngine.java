@@ -0,0 +1,165 @@
+package controller;
+
+import model.BasicObject;
+import model.CanvasModel;
+
+import java.awt.Graphics;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * SnapEngine 計算拖曳物件時的吸附位置，並記下要畫出的對齊輔助線。
+ *
+ * 拖曳中的範圍會先嘗試對齊附近物件的左緣、中線、右緣（以及上緣、中線、下緣），
+ * 某一軸沒有可對齊的物件時才吸附到格線。附近的物件由空間索引以範圍查詢取得，
+ * 只看拖曳範圍周圍 GUIDE_RANGE 內的物件，圖再大每個影格的工作量也只和附近的物件數有關。
+ */
+public class SnapEngine {
+    public static final int GRID_SIZE = 10;
+    // 與候選邊線的距離在此範圍內才會吸附
+    private static final int SNAP_DISTANCE = 6;
+    // 只從拖曳範圍外擴這麼多的區域內找對齊的候選物件
+    private static final int GUIDE_RANGE = 400;
+
+    private boolean snapToGrid = true;
+    private boolean snapToObjects = true;
+
+    // 對齊輔助線：垂直線以 x 為 key、水平線以 y 為 key，value 為 {起點, 終點}
+    private final TreeMap<Integer, int[]> verticalGuides = new TreeMap<>();
+    private final TreeMap<Integer, int[]> horizontalGuides = new TreeMap<>();
+
+    public boolean isSnapToGrid() { return snapToGrid; }
+    public void setSnapToGrid(boolean snapToGrid) { this.snapToGrid = snapToGrid; }
+
+    public boolean isSnapToObjects() { return snapToObjects; }
+    public void setSnapToObjects(boolean snapToObjects) { this.snapToObjects = snapToObjects; }
+
+    /**
+     * 計算吸附後的位移修正量，並更新對齊輔助線
+     *
+     * @param moving 拖曳中物件（未吸附前）的範圍
+     * @param model  用來查詢附近物件；選取中的物件不當作候選
+     * @return 要再加到拖曳位移上的修正量
+     */
+    public Point snap(Rectangle moving, CanvasModel model) {
+        clearGuides();
+        List<BasicObject> candidates = new ArrayList<>();
+        int bestDx = SNAP_DISTANCE + 1, bestDy = SNAP_DISTANCE + 1;
+        if (snapToObjects) {
+            Rectangle range = new Rectangle(moving.x - GUIDE_RANGE, moving.y - GUIDE_RANGE,
+                    moving.width + 2 * GUIDE_RANGE, moving.height + 2 * GUIDE_RANGE);
+            int[] movingXs = edges(moving.x, moving.width);
+            int[] movingYs = edges(moving.y, moving.height);
+            for (BasicObject obj : model.queryObjects(range)) {
+                if (model.isSelected(obj)) continue;
+                candidates.add(obj);
+                int dx = closest(movingXs, edges(obj.getX(), obj.getWidth()));
+                if (Math.abs(dx) < Math.abs(bestDx)) bestDx = dx;
+                int dy = closest(movingYs, edges(obj.getY(), obj.getHeight()));
+                if (Math.abs(dy) < Math.abs(bestDy)) bestDy = dy;
+            }
+        }
+        boolean alignedX = Math.abs(bestDx) <= SNAP_DISTANCE;
+        boolean alignedY = Math.abs(bestDy) <= SNAP_DISTANCE;
+        int dx = alignedX ? bestDx : snapToGrid ? toGrid(moving.x) - moving.x : 0;
+        int dy = alignedY ? bestDy : snapToGrid ? toGrid(moving.y) - moving.y : 0;
+
+        if (alignedX || alignedY) {
+            Rectangle snapped = new Rectangle(moving.x + dx, moving.y + dy, moving.width, moving.height);
+            for (BasicObject obj : candidates) {
+                if (alignedX) addGuides(verticalGuides, edges(snapped.x, snapped.width),
+                        edges(obj.getX(), obj.getWidth()), snapped.y, snapped.y + snapped.height,
+                        obj.getY(), obj.getY() + obj.getHeight());
+                if (alignedY) addGuides(horizontalGuides, edges(snapped.y, snapped.height),
+                        edges(obj.getY(), obj.getHeight()), snapped.x, snapped.x + snapped.width,
+                        obj.getX(), obj.getX() + obj.getWidth());
+            }
+        }
+        return new Point(dx, dy);
+    }
+
+    /**
+     * 把座標吸附到最近的格線
+     */
+    public static int toGrid(int value) {
+        return Math.floorDiv(value + GRID_SIZE / 2, GRID_SIZE) * GRID_SIZE;
+    }
+
+    public void clearGuides() {
+        verticalGuides.clear();
+        horizontalGuides.clear();
+    }
+
+    public boolean hasGuides() {
+        return !verticalGuides.isEmpty() || !horizontalGuides.isEmpty();
+    }
+
+    /**
+     * 畫出對齊輔助線，顏色由呼叫端設定
+     */
+    public void drawGuides(Graphics g) {
+        verticalGuides.forEach((x, span) -> g.drawLine(x, span[0], x, span[1]));
+        horizontalGuides.forEach((y, span) -> g.drawLine(span[0], y, span[1], y));
+    }
+
+    /**
+     * 取得輔助線涵蓋的範圍，沒有輔助線時回傳 null
+     */
+    public Rectangle getGuideBounds() {
+        Rectangle bounds = null;
+        for (Map.Entry<Integer, int[]> e : verticalGuides.entrySet()) {
+            bounds = include(bounds, new Rectangle(e.getKey(), e.getValue()[0], 1, e.getValue()[1] - e.getValue()[0] + 1));
+        }
+        for (Map.Entry<Integer, int[]> e : horizontalGuides.entrySet()) {
+            bounds = include(bounds, new Rectangle(e.getValue()[0], e.getKey(), e.getValue()[1] - e.getValue()[0] + 1, 1));
+        }
+        return bounds;
+    }
+
+    private static Rectangle include(Rectangle bounds, Rectangle r) {
+        if (bounds == null) return r;
+        bounds.add(r);
+        return bounds;
+    }
+
+    // 前緣、中線、後緣
+    private static int[] edges(int start, int length) {
+        return new int[]{start, start + length / 2, start + length};
+    }
+
+    /**
+     * 兩組邊線之間距離最小的位移（target - source）
+     */
+    private static int closest(int[] sources, int[] targets) {
+        int best = Integer.MAX_VALUE;
+        for (int s : sources) {
+            for (int t : targets) {
+                if (Math.abs(t - s) < Math.abs(best)) best = t - s;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 對齊的邊線各加一條輔助線，同一位置的輔助線延伸到涵蓋所有對齊的物件
+     */
+    private static void addGuides(TreeMap<Integer, int[]> guides, int[] movingEdges, int[] otherEdges,
+                                  int movingStart, int movingEnd, int otherStart, int otherEnd) {
+        for (int m : movingEdges) {
+            for (int o : otherEdges) {
+                if (m != o) continue;
+                int[] span = guides.get(m);
+                if (span == null) {
+                    guides.put(m, new int[]{Math.min(movingStart, otherStart), Math.max(movingEnd, otherEnd)});
+                } else {
+                    span[0] = Math.min(span[0], otherStart);
+                    span[1] = Math.max(span[1], otherEnd);
+                }
+            }
+        }
+    }
+}
@@ -24,7 +24,6 @@ public class AssociationModeStrategy implements CanvasMouseStrategy {
     public void mouseDragged(MouseEvent e) {
         if (controller.isLinkDragging()) {
             controller.setCurrentDragPoint(e.getPoint());
-            controller.getCanvas().repaint();
         }
     }
 
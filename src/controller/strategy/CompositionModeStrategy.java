@@ -24,9 +24,8 @@ public class CompositionModeStrategy implements CanvasMouseStrategy {
     @Override
     public void mouseDragged(MouseEvent e) {
         if (controller.isLinkDragging()) {
-            controller.setCurrentDragPoint(e.getPoint());
             // 終點會隨著滑鼠移動更新
-            controller.getCanvas().repaint();
+            controller.setCurrentDragPoint(e.getPoint());
         }
     }
 
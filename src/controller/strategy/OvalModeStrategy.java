@@ -14,10 +14,9 @@ public class OvalModeStrategy implements CanvasMouseStrategy {
 
     @Override
     public void mousePressed(MouseEvent e) {
-        controller.getModel().getObjects().add(new OvalObject(
+        controller.getModel().addObject(new OvalObject(
             e.getX(), e.getY(), Canvas.DEFAULT_WIDTH, Canvas.DEFAULT_HEIGHT
         ));
-        controller.getCanvas().repaint();
     }
 
     @Override public void mouseReleased(MouseEvent e) {}
@@ -14,10 +14,9 @@ public class RectModeStrategy implements CanvasMouseStrategy {
 
     @Override
     public void mousePressed(MouseEvent e) {
-        controller.getModel().getObjects().add(new RectObject(
+        controller.getModel().addObject(new RectObject(
             e.getX(), e.getY(), Canvas.DEFAULT_WIDTH, Canvas.DEFAULT_HEIGHT
         ));
-        controller.getCanvas().repaint();
     }
 
     @Override public void mouseReleased(MouseEvent e) {}
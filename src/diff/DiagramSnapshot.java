@@ -0,0 +1,212 @@
+package diff;
+
+import enums.LabelShape;
+import enums.LinkKind;
+import enums.NodeKind;
+import model.BasicObject;
+import model.CanvasModel;
+import model.CompositeObject;
+import model.CompositionLink;
+import model.DiagramBuilder;
+import model.GeneralizationLink;
+import model.LabelStyle;
+import model.LinkObject;
+import model.OvalObject;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * DiagramSnapshot 是某一個版本的圖的不可變快照，只保存識別碼與屬性值，
+ * 可以在任何執行緒上比對或合併，不會受到之後的編輯影響。
+ *
+ * 座標為絕對座標；群組的位置與尺寸是由子物件推算出來的邊界。
+ */
+public final class DiagramSnapshot {
+    public static final long NO_PARENT = 0;
+
+    private final Map<Long, Node> nodes;
+    private final Map<Long, Link> links;
+
+    /**
+     * 一個物件在快照中的狀態
+     */
+    public static final class Node {
+        public final long id;
+        public final NodeKind kind;
+        public final long parent;
+        public final int x;
+        public final int y;
+        public final int width;
+        public final int height;
+        public final String label;
+        public final LabelShape labelShape;
+        public final int labelColor;
+        public final int fontSize;
+
+        public Node(long id, NodeKind kind, long parent, int x, int y, int width, int height,
+                    String label, LabelShape labelShape, int labelColor, int fontSize) {
+            this.id = id;
+            this.kind = kind;
+            this.parent = parent;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.label = label == null ? "" : label;
+            this.labelShape = labelShape;
+            this.labelColor = labelColor;
+            this.fontSize = fontSize;
+        }
+
+        boolean sameStyle(Node other) {
+            return labelShape == other.labelShape && labelColor == other.labelColor && fontSize == other.fontSize;
+        }
+
+        boolean sameSize(Node other) {
+            return width == other.width && height == other.height;
+        }
+    }
+
+    /**
+     * 一條連線在快照中的狀態，start / end 為端點物件的識別碼
+     */
+    public static final class Link {
+        public final long id;
+        public final LinkKind kind;
+        public final long start;
+        public final long end;
+
+        public Link(long id, LinkKind kind, long start, long end) {
+            this.id = id;
+            this.kind = kind;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    public DiagramSnapshot(Collection<Node> nodes, Collection<Link> links) {
+        Map<Long, Node> nodeMap = new LinkedHashMap<>();
+        for (Node node : nodes) {
+            nodeMap.put(node.id, node);
+        }
+        Map<Long, Link> linkMap = new LinkedHashMap<>();
+        for (Link link : links) {
+            linkMap.put(link.id, link);
+        }
+        this.nodes = Collections.unmodifiableMap(nodeMap);
+        this.links = Collections.unmodifiableMap(linkMap);
+    }
+
+    /**
+     * 擷取 model 目前的狀態，必須在 EDT 上呼叫
+     */
+    public static DiagramSnapshot capture(CanvasModel model) {
+        Map<Long, Node> nodes = new LinkedHashMap<>();
+        for (BasicObject obj : model.getObjects()) {
+            captureTree(obj, NO_PARENT, nodes);
+        }
+        Map<Long, Link> links = new LinkedHashMap<>();
+        for (LinkObject link : model.getLinks()) {
+            LinkKind kind = link instanceof GeneralizationLink ? LinkKind.GENERALIZATION
+                    : link instanceof CompositionLink ? LinkKind.COMPOSITION
+                    : LinkKind.ASSOCIATION;
+            links.put(link.getId(), new Link(link.getId(), kind, link.getStartObject().getId(), link.getEndObject().getId()));
+        }
+        return new DiagramSnapshot(nodes.values(), links.values());
+    }
+
+    private static void captureTree(BasicObject obj, long parent, Map<Long, Node> nodes) {
+        NodeKind kind = obj instanceof CompositeObject ? NodeKind.GROUP
+                : obj instanceof OvalObject ? NodeKind.OVAL
+                : NodeKind.RECT;
+        nodes.put(obj.getId(), new Node(obj.getId(), kind, parent, obj.getX(), obj.getY(), obj.getWidth(), obj.getHeight(),
+                obj.getLabel(), obj.getLabelShape(), obj.getLabelColor().getRGB(), obj.getFontSize()));
+        for (BasicObject child : obj.getChildren()) {
+            captureTree(child, obj.getId(), nodes);
+        }
+    }
+
+    /**
+     * 把 model 的內容換成這個快照：刪除目前所有物件與連線，再依快照重建，整批在單一交易內完成。
+     * 重建的物件使用新的識別碼（刪除過的識別碼在共同編輯中不能再使用），之後比較時由 DiagramDiff 的對應方式對上；
+     * 連線兩端取最靠近對方中心的連接埠。必須在 EDT 上呼叫
+     *
+     * @param model 要套用的 model
+     */
+    public void applyTo(CanvasModel model) {
+        Map<Long, List<Node>> children = new HashMap<>();
+        List<Node> roots = new ArrayList<>();
+        for (Node node : nodes.values()) {
+            if (node.parent == NO_PARENT) {
+                roots.add(node);
+            } else {
+                children.computeIfAbsent(node.parent, k -> new ArrayList<>()).add(node);
+            }
+        }
+        model.runInTransaction(() -> {
+            model.removeObjects(new ArrayList<>(model.getObjects()));
+            DiagramBuilder builder = model.newBuilder();
+            Map<Long, BasicObject> created = new HashMap<>();
+            for (Node root : roots) {
+                build(root, children, builder, created);
+            }
+            for (Link link : links.values()) {
+                BasicObject start = created.get(link.start);
+                BasicObject end = created.get(link.end);
+                if (start == null || end == null) continue;
+                switch (link.kind) {
+                    case GENERALIZATION: builder.generalize(start, end); break;
+                    case COMPOSITION:    builder.compose(start, end); break;
+                    default:             builder.associate(start, end); break;
+                }
+            }
+            builder.commit();
+        });
+    }
+
+    private static BasicObject build(Node node, Map<Long, List<Node>> children, DiagramBuilder builder,
+                                     Map<Long, BasicObject> created) {
+        BasicObject obj;
+        if (node.kind == NodeKind.GROUP) {
+            List<BasicObject> members = new ArrayList<>();
+            for (Node child : children.getOrDefault(node.id, Collections.emptyList())) {
+                members.add(build(child, children, builder, created));
+            }
+            obj = builder.group(members);
+        } else if (node.kind == NodeKind.OVAL) {
+            obj = builder.addOval(node.x, node.y, node.width, node.height, node.label);
+        } else {
+            obj = builder.addRect(node.x, node.y, node.width, node.height, node.label);
+        }
+        obj.applyLabel(node.label, LabelStyle.of(node.labelShape, node.labelColor, node.fontSize));
+        created.put(node.id, obj);
+        return obj;
+    }
+
+    public Collection<Node> getNodes() {
+        return nodes.values();
+    }
+
+    public Collection<Link> getLinks() {
+        return links.values();
+    }
+
+    public Node getNode(long id) {
+        return nodes.get(id);
+    }
+
+    public Link getLink(long id) {
+        return links.get(id);
+    }
+
+    @Override
+    public String toString() {
+        return "DiagramSnapshot[" + nodes.size() + " nodes, " + links.size() + " links]";
+    }
+}
@@ -0,0 +1,31 @@
+package diff;
+
+import enums.DiffKind;
+
+/**
+ * 兩個版本之間的一項差異。baseId / otherId 為兩邊對應的物件或連線識別碼，
+ * 只存在於其中一邊時另一邊為 0。
+ */
+public final class Difference {
+    private final DiffKind kind;
+    private final long baseId;
+    private final long otherId;
+    private final String description;
+
+    Difference(DiffKind kind, long baseId, long otherId, String description) {
+        this.kind = kind;
+        this.baseId = baseId;
+        this.otherId = otherId;
+        this.description = description;
+    }
+
+    public DiffKind getKind() { return kind; }
+    public long getBaseId() { return baseId; }
+    public long getOtherId() { return otherId; }
+    public String getDescription() { return description; }
+
+    @Override
+    public String toString() {
+        return kind + ": " + description;
+    }
+}
@@ -0,0 +1,169 @@
+package diff;
+
+import enums.LinkKind;
+import enums.NodeKind;
+import model.HashKeys;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Matching 找出兩個快照之間對應的物件與連線。
+ *
+ * 先以識別碼對應；剩下的物件依序以「種類、標籤與位置尺寸完全相同」、「種類、標籤與尺寸相同」、
+ * 「種類與位置尺寸相同」三種特徵配對，後兩種只接受兩邊都唯一的特徵，避免把不相干的物件配在一起。
+ * 連線以識別碼或「種類與兩端對應的物件」配對。每一步都是一次雜湊分組，整體與元素數量呈線性關係。
+ */
+final class Matching {
+    final Map<Long, Long> baseToOther = new HashMap<>();
+    final Map<Long, Long> otherToBase = new HashMap<>();
+    final Map<Long, Long> linkBaseToOther = new HashMap<>();
+    final Map<Long, Long> linkOtherToBase = new HashMap<>();
+
+    private Matching() {
+    }
+
+    static Matching match(DiagramSnapshot base, DiagramSnapshot other) {
+        Matching m = new Matching();
+        for (DiagramSnapshot.Node node : other.getNodes()) {
+            DiagramSnapshot.Node b = base.getNode(node.id);
+            if (b != null && b.kind == node.kind) m.pair(b.id, node.id);
+        }
+
+        List<DiagramSnapshot.Node> baseLeft = new ArrayList<>();
+        for (DiagramSnapshot.Node node : base.getNodes()) {
+            if (!m.baseToOther.containsKey(node.id)) baseLeft.add(node);
+        }
+        List<DiagramSnapshot.Node> otherLeft = new ArrayList<>();
+        for (DiagramSnapshot.Node node : other.getNodes()) {
+            if (!m.otherToBase.containsKey(node.id)) otherLeft.add(node);
+        }
+        if (!baseLeft.isEmpty() && !otherLeft.isEmpty()) {
+            // 完全相同的物件彼此可以互換，依序配對即可
+            m.pairByKey(baseLeft, otherLeft, n -> new Key(n.kind, n.label, n.x, n.y, n.width, n.height), false);
+            m.pairByKey(baseLeft, otherLeft, n -> new Key(n.kind, n.label, Integer.MIN_VALUE, Integer.MIN_VALUE, n.width, n.height), true);
+            m.pairByKey(baseLeft, otherLeft, n -> new Key(n.kind, null, n.x, n.y, n.width, n.height), true);
+        }
+
+        Map<LinkKey, ArrayDeque<DiagramSnapshot.Link>> baseLinks = new HashMap<>();
+        for (DiagramSnapshot.Link link : base.getLinks()) {
+            DiagramSnapshot.Link o = other.getLink(link.id);
+            if (o != null && o.kind == link.kind) {
+                m.linkBaseToOther.put(link.id, o.id);
+                m.linkOtherToBase.put(o.id, link.id);
+            } else {
+                baseLinks.computeIfAbsent(new LinkKey(link.kind, link.start, link.end), k -> new ArrayDeque<>()).add(link);
+            }
+        }
+        if (!baseLinks.isEmpty()) {
+            for (DiagramSnapshot.Link link : other.getLinks()) {
+                if (m.linkOtherToBase.containsKey(link.id)) continue;
+                Long start = m.otherToBase.get(link.start);
+                Long end = m.otherToBase.get(link.end);
+                if (start == null || end == null) continue;
+                ArrayDeque<DiagramSnapshot.Link> candidates = baseLinks.get(new LinkKey(link.kind, start, end));
+                while (candidates != null && !candidates.isEmpty()) {
+                    DiagramSnapshot.Link b = candidates.poll();
+                    if (m.linkBaseToOther.containsKey(b.id)) continue;
+                    m.linkBaseToOther.put(b.id, link.id);
+                    m.linkOtherToBase.put(link.id, b.id);
+                    break;
+                }
+            }
+        }
+        return m;
+    }
+
+    /**
+     * 依特徵分組後配對，配好的物件從 baseLeft / otherLeft 移除
+     *
+     * @param uniqueOnly 只配對兩邊都只有一個物件的特徵
+     */
+    private void pairByKey(List<DiagramSnapshot.Node> baseLeft, List<DiagramSnapshot.Node> otherLeft,
+                           Function<DiagramSnapshot.Node, Key> keyOf, boolean uniqueOnly) {
+        Map<Key, List<DiagramSnapshot.Node>> byKey = new HashMap<>();
+        for (DiagramSnapshot.Node node : baseLeft) {
+            byKey.computeIfAbsent(keyOf.apply(node), k -> new ArrayList<>(1)).add(node);
+        }
+        Map<Key, List<DiagramSnapshot.Node>> otherByKey = new HashMap<>();
+        for (DiagramSnapshot.Node node : otherLeft) {
+            otherByKey.computeIfAbsent(keyOf.apply(node), k -> new ArrayList<>(1)).add(node);
+        }
+        for (Map.Entry<Key, List<DiagramSnapshot.Node>> entry : otherByKey.entrySet()) {
+            List<DiagramSnapshot.Node> bs = byKey.get(entry.getKey());
+            List<DiagramSnapshot.Node> os = entry.getValue();
+            if (bs == null || (uniqueOnly && (bs.size() != 1 || os.size() != 1))) continue;
+            for (int i = 0; i < Math.min(bs.size(), os.size()); i++) {
+                pair(bs.get(i).id, os.get(i).id);
+            }
+        }
+        baseLeft.removeIf(n -> baseToOther.containsKey(n.id));
+        otherLeft.removeIf(n -> otherToBase.containsKey(n.id));
+    }
+
+    private void pair(long baseId, long otherId) {
+        baseToOther.put(baseId, otherId);
+        otherToBase.put(otherId, baseId);
+    }
+
+    private static final class Key {
+        final NodeKind kind;
+        final String label;
+        final int x, y, width, height;
+
+        Key(NodeKind kind, String label, int x, int y, int width, int height) {
+            this.kind = kind;
+            this.label = label;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return kind == k.kind && x == k.x && y == k.y && width == k.width && height == k.height
+                    && Objects.equals(label, k.label);
+        }
+
+        @Override
+        public int hashCode() {
+            int h = kind.hashCode();
+            h = 31 * h + Objects.hashCode(label);
+            h = 31 * h + x;
+            h = 31 * h + y;
+            h = 31 * h + width;
+            return 31 * h + height;
+        }
+    }
+
+    private static final class LinkKey {
+        final LinkKind kind;
+        final long start, end;
+
+        LinkKey(LinkKind kind, long start, long end) {
+            this.kind = kind;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof LinkKey)) return false;
+            LinkKey k = (LinkKey) o;
+            return kind == k.kind && start == k.start && end == k.end;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(HashKeys.spread(start) ^ end) * 31 + kind.ordinal();
+        }
+    }
+}
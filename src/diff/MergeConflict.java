@@ -0,0 +1,25 @@
+package diff;
+
+/**
+ * 合併時兩邊對同一個物件或連線做了不相容的修改
+ */
+public final class MergeConflict {
+    private final long id;
+    private final String description;
+
+    MergeConflict(long id, String description) {
+        this.id = id;
+        this.description = description;
+    }
+
+    /**
+     * 發生衝突的物件或連線在合併結果中的識別碼
+     */
+    public long getId() { return id; }
+    public String getDescription() { return description; }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+}
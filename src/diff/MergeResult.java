@@ -0,0 +1,24 @@
+package diff;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 三方合併的結果：合併後的快照，以及無法自動決定、暫時採用 ours 的衝突。
+ */
+public final class MergeResult {
+    private final DiagramSnapshot merged;
+    private final List<MergeConflict> conflicts;
+
+    MergeResult(DiagramSnapshot merged, List<MergeConflict> conflicts) {
+        this.merged = merged;
+        this.conflicts = Collections.unmodifiableList(conflicts);
+    }
+
+    public DiagramSnapshot getMerged() { return merged; }
+    public List<MergeConflict> getConflicts() { return conflicts; }
+
+    public boolean isClean() {
+        return conflicts.isEmpty();
+    }
+}
@@ -0,0 +1,312 @@
+package diff;
+
+import enums.LabelShape;
+import enums.NodeKind;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiPredicate;
+
+/**
+ * ThreeWayMerge 以共同的祖先版本 base 合併兩個各自修改過的版本 ours 與 theirs。
+ *
+ * 每個物件分成位置、尺寸、標籤、樣式、所屬群組幾個面向各自合併：只有一邊改的面向採用那一邊，
+ * 兩邊改成一樣也沒問題，兩邊改得不同才算衝突，此時先採用 ours 並記錄下來。
+ * 一邊刪除、另一邊修改的物件會被保留並記為衝突；端點不存在的連線、所屬群組被刪除或互相包含的群組也會被修正並記錄。
+ * 群組的位置與尺寸由合併後的子物件重新推算。
+ *
+ * ours / theirs 與 base 的對應方式和 DiagramDiff 相同，所以重新建立過的物件也能對上。
+ */
+public final class ThreeWayMerge {
+    private final DiagramSnapshot base;
+    private final DiagramSnapshot ours;
+    private final DiagramSnapshot theirs;
+    private final Matching mo;
+    private final Matching mt;
+    private final List<MergeConflict> conflicts = new ArrayList<>();
+
+    private final Map<Long, Draft> nodes = new LinkedHashMap<>();
+    private final Map<Long, DiagramSnapshot.Link> links = new LinkedHashMap<>();
+    // 被任一邊修改或新增過的連線，端點不存在時需要記為衝突
+    private final Set<Long> touchedLinks = new HashSet<>();
+
+    private ThreeWayMerge(DiagramSnapshot base, DiagramSnapshot ours, DiagramSnapshot theirs) {
+        this.base = base;
+        this.ours = ours;
+        this.theirs = theirs;
+        this.mo = Matching.match(base, ours);
+        this.mt = Matching.match(base, theirs);
+    }
+
+    /**
+     * 合併兩個版本
+     *
+     * @param base   共同的祖先版本
+     * @param ours   我方版本，衝突時優先採用
+     * @param theirs 對方版本
+     * @return 合併後的快照與衝突
+     */
+    public static MergeResult merge(DiagramSnapshot base, DiagramSnapshot ours, DiagramSnapshot theirs) {
+        ThreeWayMerge merge = new ThreeWayMerge(base, ours, theirs);
+        merge.mergeNodes();
+        merge.fixParents();
+        merge.mergeLinks();
+        return new MergeResult(merge.build(), merge.conflicts);
+    }
+
+    private void mergeNodes() {
+        for (DiagramSnapshot.Node b : base.getNodes()) {
+            DiagramSnapshot.Node o = ours.getNode(mo.baseToOther.getOrDefault(b.id, 0L));
+            DiagramSnapshot.Node t = theirs.getNode(mt.baseToOther.getOrDefault(b.id, 0L));
+            if (o == null && t == null) continue;
+            if (o == null || t == null) {
+                DiagramSnapshot.Node kept = o != null ? o : t;
+                Matching m = o != null ? mo : mt;
+                if (changed(b, kept, m)) {
+                    conflict(b.id, describe(b) + "一邊被刪除、另一邊被修改，保留修改後的版本");
+                    nodes.put(b.id, new Draft(b.id, kept, mapParent(kept, m)));
+                }
+                continue;
+            }
+            Draft d = new Draft(b.id, o, 0);
+            // 群組的位置與尺寸是推算出來的，最後由子物件重新計算
+            if (b.kind != NodeKind.GROUP) {
+                DiagramSnapshot.Node pos = choose(b, o, t, (x, y) -> x.x == y.x && x.y == y.y, "位置");
+                DiagramSnapshot.Node size = choose(b, o, t, DiagramSnapshot.Node::sameSize, "尺寸");
+                d.x = pos.x;
+                d.y = pos.y;
+                d.width = size.width;
+                d.height = size.height;
+            }
+            DiagramSnapshot.Node label = choose(b, o, t, (x, y) -> x.label.equals(y.label), "標籤");
+            DiagramSnapshot.Node style = choose(b, o, t, DiagramSnapshot.Node::sameStyle, "樣式");
+            d.label = label.label;
+            d.labelShape = style.labelShape;
+            d.labelColor = style.labelColor;
+            d.fontSize = style.fontSize;
+
+            long op = mapParent(o, mo);
+            long tp = mapParent(t, mt);
+            if (op == b.parent) {
+                d.parent = tp;
+            } else if (tp == b.parent || tp == op) {
+                d.parent = op;
+            } else {
+                conflict(b.id, describe(b) + "兩邊被放進不同的群組，採用 ours");
+                d.parent = op;
+            }
+            nodes.put(b.id, d);
+        }
+        addUnmatched(ours, mo);
+        addUnmatched(theirs, mt);
+    }
+
+    private void addUnmatched(DiagramSnapshot side, Matching m) {
+        for (DiagramSnapshot.Node n : side.getNodes()) {
+            if (!m.otherToBase.containsKey(n.id)) {
+                nodes.put(n.id, new Draft(n.id, n, mapParent(n, m)));
+            }
+        }
+    }
+
+    /**
+     * 所屬群組已經不存在、或群組互相包含時改成最上層物件；之後移除沒有子物件的群組
+     */
+    private void fixParents() {
+        for (Draft d : nodes.values()) {
+            if (d.parent != DiagramSnapshot.NO_PARENT && !nodes.containsKey(d.parent)) {
+                conflict(d.id, describe(d) + "所屬的群組已被刪除，移到最上層");
+                d.parent = DiagramSnapshot.NO_PARENT;
+            }
+        }
+        // 0 = 尚未檢查、1 = 檢查中、2 = 確定沒有循環
+        Map<Long, Integer> state = new HashMap<>();
+        for (Draft d : nodes.values()) {
+            List<Draft> chain = new ArrayList<>();
+            Draft cur = d;
+            while (cur != null && state.getOrDefault(cur.id, 0) == 0) {
+                state.put(cur.id, 1);
+                chain.add(cur);
+                cur = cur.parent == DiagramSnapshot.NO_PARENT ? null : nodes.get(cur.parent);
+            }
+            if (cur != null && state.get(cur.id) == 1) {
+                conflict(cur.id, describe(cur) + "與其他群組互相包含，移到最上層");
+                cur.parent = DiagramSnapshot.NO_PARENT;
+            }
+            for (Draft c : chain) {
+                state.put(c.id, 2);
+            }
+        }
+
+        boolean removed = true;
+        while (removed) {
+            Set<Long> parents = new HashSet<>();
+            for (Draft d : nodes.values()) {
+                parents.add(d.parent);
+            }
+            removed = nodes.values().removeIf(d -> d.kind == NodeKind.GROUP && !parents.contains(d.id));
+        }
+    }
+
+    private void mergeLinks() {
+        for (DiagramSnapshot.Link b : base.getLinks()) {
+            DiagramSnapshot.Link o = ours.getLink(mo.linkBaseToOther.getOrDefault(b.id, 0L));
+            DiagramSnapshot.Link t = theirs.getLink(mt.linkBaseToOther.getOrDefault(b.id, 0L));
+            if (o == null && t == null) continue;
+            if (o == null || t == null) {
+                DiagramSnapshot.Link kept = o != null ? o : t;
+                Matching m = o != null ? mo : mt;
+                long start = mapNode(kept.start, m);
+                long end = mapNode(kept.end, m);
+                if (start != b.start || end != b.end) {
+                    conflict(b.id, "連線一邊被刪除、另一邊被改接，保留改接後的版本");
+                    links.put(b.id, new DiagramSnapshot.Link(b.id, b.kind, start, end));
+                    touchedLinks.add(b.id);
+                }
+                continue;
+            }
+            long os = mapNode(o.start, mo), oe = mapNode(o.end, mo);
+            long ts = mapNode(t.start, mt), te = mapNode(t.end, mt);
+            long start, end;
+            if (os == b.start && oe == b.end) {
+                start = ts;
+                end = te;
+            } else if ((ts == b.start && te == b.end) || (ts == os && te == oe)) {
+                start = os;
+                end = oe;
+            } else {
+                conflict(b.id, "連線兩邊改接到不同的物件，採用 ours");
+                start = os;
+                end = oe;
+            }
+            if (start != b.start || end != b.end) touchedLinks.add(b.id);
+            links.put(b.id, new DiagramSnapshot.Link(b.id, b.kind, start, end));
+        }
+        addUnmatchedLinks(ours, mo);
+        addUnmatchedLinks(theirs, mt);
+
+        links.values().removeIf(l -> {
+            if (nodes.containsKey(l.start) && nodes.containsKey(l.end)) return false;
+            if (touchedLinks.contains(l.id)) conflict(l.id, "連線的端點已被刪除，移除這條連線");
+            return true;
+        });
+    }
+
+    private void addUnmatchedLinks(DiagramSnapshot side, Matching m) {
+        for (DiagramSnapshot.Link l : side.getLinks()) {
+            if (!m.linkOtherToBase.containsKey(l.id)) {
+                links.put(l.id, new DiagramSnapshot.Link(l.id, l.kind, mapNode(l.start, m), mapNode(l.end, m)));
+                touchedLinks.add(l.id);
+            }
+        }
+    }
+
+    /**
+     * 建立合併後的快照，群組的邊界由子物件推算（由內而外）
+     */
+    private DiagramSnapshot build() {
+        Map<Long, List<Draft>> children = new HashMap<>();
+        for (Draft d : nodes.values()) {
+            if (d.parent != DiagramSnapshot.NO_PARENT) {
+                children.computeIfAbsent(d.parent, k -> new ArrayList<>()).add(d);
+            }
+        }
+        for (Draft d : nodes.values()) {
+            if (d.parent == DiagramSnapshot.NO_PARENT) computeBounds(d, children);
+        }
+        List<DiagramSnapshot.Node> result = new ArrayList<>(nodes.size());
+        for (Draft d : nodes.values()) {
+            result.add(new DiagramSnapshot.Node(d.id, d.kind, d.parent, d.x, d.y, d.width, d.height,
+                    d.label, d.labelShape, d.labelColor, d.fontSize));
+        }
+        return new DiagramSnapshot(result, links.values());
+    }
+
+    private static void computeBounds(Draft d, Map<Long, List<Draft>> children) {
+        List<Draft> kids = children.get(d.id);
+        if (kids == null) return;
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+        for (Draft c : kids) {
+            computeBounds(c, children);
+            minX = Math.min(minX, c.x);
+            minY = Math.min(minY, c.y);
+            maxX = Math.max(maxX, c.x + c.width);
+            maxY = Math.max(maxY, c.y + c.height);
+        }
+        d.x = minX;
+        d.y = minY;
+        d.width = maxX - minX;
+        d.height = maxY - minY;
+    }
+
+    private DiagramSnapshot.Node choose(DiagramSnapshot.Node b, DiagramSnapshot.Node o, DiagramSnapshot.Node t,
+                                        BiPredicate<DiagramSnapshot.Node, DiagramSnapshot.Node> same, String aspect) {
+        if (same.test(o, b)) return t;
+        if (same.test(t, b) || same.test(o, t)) return o;
+        conflict(b.id, describe(b) + "的" + aspect + "兩邊改得不同，採用 ours");
+        return o;
+    }
+
+    private boolean changed(DiagramSnapshot.Node b, DiagramSnapshot.Node n, Matching m) {
+        boolean geometry = b.kind != NodeKind.GROUP && (n.x != b.x || n.y != b.y || !n.sameSize(b));
+        return geometry || !n.label.equals(b.label) || !n.sameStyle(b)
+                || mapParent(n, m) != b.parent;
+    }
+
+    private static long mapParent(DiagramSnapshot.Node n, Matching m) {
+        return n.parent == DiagramSnapshot.NO_PARENT ? DiagramSnapshot.NO_PARENT : mapNode(n.parent, m);
+    }
+
+    /**
+     * 把 ours / theirs 中的識別碼換成合併結果中的識別碼：對應得到 base 的用 base 的，新物件沿用自己的
+     */
+    private static long mapNode(long id, Matching m) {
+        return m.otherToBase.getOrDefault(id, id);
+    }
+
+    private void conflict(long id, String description) {
+        conflicts.add(new MergeConflict(id, description));
+    }
+
+    private static String describe(DiagramSnapshot.Node n) {
+        return n.label.isEmpty() ? n.kind.name().toLowerCase() : "「" + n.label + "」";
+    }
+
+    private static String describe(Draft d) {
+        return d.label.isEmpty() ? d.kind.name().toLowerCase() : "「" + d.label + "」";
+    }
+
+    /**
+     * 合併中的物件，欄位在修正群組關係與推算群組邊界時還會改變
+     */
+    private static final class Draft {
+        final long id;
+        final NodeKind kind;
+        long parent;
+        int x, y, width, height;
+        String label;
+        LabelShape labelShape;
+        int labelColor;
+        int fontSize;
+
+        Draft(long id, DiagramSnapshot.Node from, long parent) {
+            this.id = id;
+            this.kind = from.kind;
+            this.parent = parent;
+            this.x = from.x;
+            this.y = from.y;
+            this.width = from.width;
+            this.height = from.height;
+            this.label = from.label;
+            this.labelShape = from.labelShape;
+            this.labelColor = from.labelColor;
+            this.fontSize = from.fontSize;
+        }
+    }
+}
@@ -0,0 +1,5 @@
+package enums;
+
+public enum Alignment {
+    LEFT, CENTER, RIGHT, TOP, MIDDLE, BOTTOM
+}
@@ -0,0 +1,5 @@
+package enums;
+
+public enum ChangeType {
+    OBJECT_ADDED, OBJECT_REMOVED, LINK_ADDED, LINK_REMOVED, GEOMETRY_CHANGED, LABEL_CHANGED, SELECTION_CHANGED
+}
@@ -0,0 +1,5 @@
+package enums;
+
+public enum DiffKind {
+    ADDED, REMOVED, MOVED, RESIZED, RELABELED, RESTYLED, REGROUPED, LINK_ADDED, LINK_REMOVED, LINK_RECONNECTED
+}
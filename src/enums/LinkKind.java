@@ -0,0 +1,5 @@
+package enums;
+
+public enum LinkKind {
+    ASSOCIATION, GENERALIZATION, COMPOSITION
+}
@@ -0,0 +1,5 @@
+package enums;
+
+public enum NodeKind {
+    RECT, OVAL, GROUP
+}
@@ -0,0 +1,5 @@
+package enums;
+
+public enum OpType {
+    ADD_NODE, REMOVE_NODE, MOVE, RESTYLE, ADD_LINK, REMOVE_LINK
+}
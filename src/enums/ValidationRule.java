@@ -0,0 +1,5 @@
+package enums;
+
+public enum ValidationRule {
+    GENERALIZATION_CYCLE, SELF_LINK, COMPOSITION_FOREST, DUPLICATE_LABEL
+}
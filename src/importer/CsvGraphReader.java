@@ -0,0 +1,121 @@
+package importer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * CsvGraphReader 讀取 CSV 格式的圖，每一列是一筆資料，第一欄決定種類：
+ *
+ * <pre>
+ * node,&lt;id&gt;,&lt;shape&gt;,&lt;label&gt;,&lt;x&gt;,&lt;y&gt;,&lt;width&gt;,&lt;height&gt;,&lt;color&gt;
+ * edge,&lt;kind&gt;,&lt;source&gt;,&lt;target&gt;
+ * </pre>
+ *
+ * shape 為 rect / oval，kind 為 association / generalization / composition，
+ * 座標、尺寸與顏色可以留空。以 # 開頭的列與空白列會被略過，第一欄是 kind 的列視為標題列。
+ * 欄位可以用雙引號包住，引號內可以有逗號與換行，兩個連續的雙引號代表一個雙引號。
+ */
+class CsvGraphReader implements GraphReader {
+    private final Reader in;
+    private final List<String> fields = new ArrayList<>();
+    private final StringBuilder field = new StringBuilder();
+    private int line = 1;
+    private boolean eof = false;
+
+    CsvGraphReader(Reader in) {
+        this.in = in instanceof BufferedReader ? in : new BufferedReader(in);
+    }
+
+    @Override
+    public GraphRecord next() throws IOException {
+        while (true) {
+            int recordLine = line;
+            if (!readRecord()) return null;
+            String kind = fields.get(0).trim();
+            if (kind.isEmpty() && fields.size() == 1) continue;
+            if (kind.startsWith("#") || kind.equalsIgnoreCase("kind")) continue;
+
+            String where = "第 " + recordLine + " 行";
+            if (kind.equalsIgnoreCase("node")) {
+                String x = field(4);
+                String y = field(5);
+                return new GraphRecord.Node(
+                        GraphRecord.require(field(1), "id", where),
+                        field(3),
+                        GraphRecord.parseShape(field(2), where),
+                        !x.isEmpty() && !y.isEmpty(),
+                        GraphRecord.parseInt(x, where),
+                        GraphRecord.parseInt(y, where),
+                        GraphRecord.parseInt(field(6), where),
+                        GraphRecord.parseInt(field(7), where),
+                        GraphRecord.parseColor(field(8), where));
+            }
+            if (kind.equalsIgnoreCase("edge")) {
+                return new GraphRecord.Edge(
+                        GraphRecord.parseKind(field(1), where),
+                        GraphRecord.require(field(2), "source", where),
+                        GraphRecord.require(field(3), "target", where));
+            }
+            throw new IOException(where + "：第一欄必須是 node 或 edge，而不是「" + kind + "」");
+        }
+    }
+
+    private String field(int index) {
+        return index < fields.size() ? fields.get(index).trim() : "";
+    }
+
+    /**
+     * 讀一筆紀錄到 fields，輸入已經結束時回傳 false
+     */
+    private boolean readRecord() throws IOException {
+        if (eof) return false;
+        fields.clear();
+        field.setLength(0);
+        boolean quoted = false;
+        boolean any = false;
+        while (true) {
+            int c = in.read();
+            if (c < 0) {
+                eof = true;
+                if (quoted) throw new IOException("第 " + line + " 行：引號沒有結束");
+                if (!any) return false;
+                fields.add(field.toString());
+                return true;
+            }
+            any = true;
+            if (quoted) {
+                if (c == '"') {
+                    in.mark(1);
+                    if (in.read() == '"') {
+                        field.append('"');
+                    } else {
+                        in.reset();
+                        quoted = false;
+                    }
+                } else {
+                    if (c == '\n') line++;
+                    field.append((char) c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n') {
+                line++;
+                fields.add(field.toString());
+                return true;
+            } else if (c != '\r') {
+                field.append((char) c);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
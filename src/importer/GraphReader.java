@@ -0,0 +1,34 @@
+package importer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Locale;
+
+/**
+ * GraphReader 以拉取的方式逐筆讀出節點與連線，同一時間只保留目前這一筆的內容，
+ * 輸入再大也不需要整份讀進記憶體。
+ */
+public interface GraphReader extends Closeable {
+
+    /**
+     * 讀出下一筆資料
+     *
+     * @return 下一個節點或連線，輸入結束時回傳 null
+     * @throws IOException 讀取失敗或格式錯誤，訊息包含出錯的位置
+     */
+    GraphRecord next() throws IOException;
+
+    /**
+     * 依副檔名選擇格式：.json 為 JSON，其餘視為 CSV
+     *
+     * @param reader   輸入
+     * @param fileName 檔名，只用來判斷格式
+     */
+    static GraphReader open(Reader reader, String fileName) {
+        if (fileName.toLowerCase(Locale.ROOT).endsWith(".json")) {
+            return new JsonGraphReader(reader);
+        }
+        return new CsvGraphReader(reader);
+    }
+}
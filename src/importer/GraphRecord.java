@@ -0,0 +1,121 @@
+package importer;
+
+import enums.LabelShape;
+import enums.LinkKind;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * GraphRecord 是匯入時從輸入讀到的一筆資料：一個節點或一條連線。
+ * 只保存欄位值，不建立任何 model 物件，因此可以在背景執行緒上產生。
+ */
+public abstract class GraphRecord {
+
+    private GraphRecord() {
+    }
+
+    /**
+     * 節點：shape 決定建立 RectObject 或 OvalObject；
+     * 沒有座標時 hasPosition 為 false，寬高為 0 時使用預設尺寸
+     */
+    public static final class Node extends GraphRecord {
+        public final String id;
+        public final String label;
+        public final LabelShape shape;
+        public final boolean hasPosition;
+        public final int x;
+        public final int y;
+        public final int width;
+        public final int height;
+        public final Color labelColor;
+
+        public Node(String id, String label, LabelShape shape, boolean hasPosition,
+                    int x, int y, int width, int height, Color labelColor) {
+            this.id = id;
+            this.label = label;
+            this.shape = shape;
+            this.hasPosition = hasPosition;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.labelColor = labelColor;
+        }
+    }
+
+    /**
+     * 連線：從 source 連到 target；組合關係的 source 是部分、target 是整體，與編輯器中拉線的方向相同
+     */
+    public static final class Edge extends GraphRecord {
+        public final LinkKind kind;
+        public final String source;
+        public final String target;
+
+        public Edge(LinkKind kind, String source, String target) {
+            this.kind = kind;
+            this.source = source;
+            this.target = target;
+        }
+    }
+
+    static LabelShape parseShape(String value, String where) throws IOException {
+        if (value == null || value.isEmpty()) return LabelShape.RECTANGLE;
+        switch (value.toLowerCase(Locale.ROOT)) {
+            case "rect":
+            case "rectangle":
+            case "class":
+                return LabelShape.RECTANGLE;
+            case "oval":
+            case "ellipse":
+            case "usecase":
+                return LabelShape.OVAL;
+            default:
+                throw new IOException(where + "：不認得的形狀「" + value + "」");
+        }
+    }
+
+    static LinkKind parseKind(String value, String where) throws IOException {
+        if (value == null || value.isEmpty()) return LinkKind.ASSOCIATION;
+        switch (value.toLowerCase(Locale.ROOT)) {
+            case "association":
+            case "assoc":
+                return LinkKind.ASSOCIATION;
+            case "generalization":
+            case "inheritance":
+            case "extends":
+                return LinkKind.GENERALIZATION;
+            case "composition":
+            case "compose":
+                return LinkKind.COMPOSITION;
+            default:
+                throw new IOException(where + "：不認得的連線種類「" + value + "」");
+        }
+    }
+
+    static int parseInt(String value, String where) throws IOException {
+        if (value == null || value.isEmpty()) return 0;
+        try {
+            return (int) Math.round(Double.parseDouble(value));
+        } catch (NumberFormatException e) {
+            throw new IOException(where + "：「" + value + "」不是數字");
+        }
+    }
+
+    static Color parseColor(String value, String where) throws IOException {
+        if (value == null || value.isEmpty()) return null;
+        try {
+            return Color.decode(value);
+        } catch (NumberFormatException e) {
+            throw new IOException(where + "：「" + value + "」不是顏色");
+        }
+    }
+
+    static String require(String value, String field, String where) throws IOException {
+        if (value == null || value.isEmpty()) {
+            throw new IOException(where + "：缺少 " + field);
+        }
+        return value;
+    }
+}
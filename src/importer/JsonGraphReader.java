@@ -0,0 +1,234 @@
+package importer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * JsonGraphReader 讀取 JSON 格式的圖：
+ *
+ * <pre>
+ * {
+ *   "nodes": [{"id": "order", "label": "Order", "shape": "rect", "x": 100, "y": 100, "width": 120, "height": 80}],
+ *   "edges": [{"source": "item", "target": "order", "type": "composition"}]
+ * }
+ * </pre>
+ *
+ * 最上層也可以是一個陣列，含有 source 欄位的元素視為連線，其餘視為節點。
+ * 欄位意義與 CsvGraphReader 相同，不認得的欄位與巢狀的值會被略過。
+ *
+ * 以逐字元的 tokenizer 實作，一次只解析一個陣列元素；逗號與冒號只當作分隔符號，不嚴格檢查。
+ */
+class JsonGraphReader implements GraphReader {
+    private enum Token { BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, STRING, NUMBER, LITERAL, END }
+
+    private enum Section { NONE, NODES, EDGES, MIXED }
+
+    private final Reader in;
+    private final StringBuilder text = new StringBuilder();
+    private final Map<String, String> element = new HashMap<>();
+    private int pushback = -1;
+    private int line = 1;
+
+    private boolean started = false;
+    private boolean topLevelArray = false;
+    private Section section = Section.NONE;
+
+    JsonGraphReader(Reader in) {
+        this.in = in instanceof BufferedReader ? in : new BufferedReader(in);
+    }
+
+    @Override
+    public GraphRecord next() throws IOException {
+        if (!started) {
+            started = true;
+            Token t = token();
+            if (t == Token.BEGIN_ARRAY) {
+                topLevelArray = true;
+                section = Section.MIXED;
+            } else if (t != Token.BEGIN_OBJECT) {
+                throw error("最上層必須是物件或陣列");
+            }
+        }
+        while (true) {
+            if (section != Section.NONE) {
+                Token t = token();
+                if (t == Token.END_ARRAY) {
+                    if (topLevelArray) return null;
+                    section = Section.NONE;
+                    continue;
+                }
+                if (t != Token.BEGIN_OBJECT) throw error("陣列元素必須是物件");
+                return readElement();
+            }
+            Token t = token();
+            if (t == Token.END_OBJECT || t == Token.END) return null;
+            if (t != Token.STRING) throw error("預期欄位名稱");
+            String name = text.toString();
+            t = token();
+            if (t == Token.BEGIN_ARRAY && name.equals("nodes")) {
+                section = Section.NODES;
+            } else if (t == Token.BEGIN_ARRAY && name.equals("edges")) {
+                section = Section.EDGES;
+            } else if (t == Token.BEGIN_ARRAY && name.equals("elements")) {
+                section = Section.MIXED;
+            } else {
+                skip(t);
+            }
+        }
+    }
+
+    /**
+     * 讀一個陣列元素（已經讀過開頭的大括號）並轉成節點或連線
+     */
+    private GraphRecord readElement() throws IOException {
+        String where = "第 " + line + " 行";
+        element.clear();
+        while (true) {
+            Token t = token();
+            if (t == Token.END_OBJECT) break;
+            if (t != Token.STRING) throw error("預期欄位名稱");
+            String name = text.toString();
+            t = token();
+            if (t == Token.STRING || t == Token.NUMBER || (t == Token.LITERAL && !text.toString().equals("null"))) {
+                element.put(name, text.toString());
+            } else {
+                skip(t);
+            }
+        }
+
+        boolean edge = section == Section.EDGES
+                || (section == Section.MIXED && (element.containsKey("source") || element.containsKey("from")));
+        if (edge) {
+            return new GraphRecord.Edge(
+                    GraphRecord.parseKind(get("type", "kind"), where),
+                    GraphRecord.require(get("source", "from"), "source", where),
+                    GraphRecord.require(get("target", "to"), "target", where));
+        }
+        String x = get("x", "x");
+        String y = get("y", "y");
+        return new GraphRecord.Node(
+                GraphRecord.require(get("id", "id"), "id", where),
+                get("label", "name"),
+                GraphRecord.parseShape(get("shape", "type"), where),
+                !x.isEmpty() && !y.isEmpty(),
+                GraphRecord.parseInt(x, where),
+                GraphRecord.parseInt(y, where),
+                GraphRecord.parseInt(get("width", "w"), where),
+                GraphRecord.parseInt(get("height", "h"), where),
+                GraphRecord.parseColor(get("color", "color"), where));
+    }
+
+    private String get(String name, String alias) {
+        String value = element.get(name);
+        if (value == null) value = element.get(alias);
+        return value == null ? "" : value.trim();
+    }
+
+    /**
+     * 略過一個值；t 是這個值的第一個 token
+     */
+    private void skip(Token t) throws IOException {
+        int depth = 0;
+        while (true) {
+            if (t == Token.BEGIN_OBJECT || t == Token.BEGIN_ARRAY) {
+                depth++;
+            } else if (t == Token.END_OBJECT || t == Token.END_ARRAY) {
+                depth--;
+            } else if (t == Token.END) {
+                throw error("輸入提早結束");
+            }
+            if (depth <= 0) return;
+            t = token();
+        }
+    }
+
+    /**
+     * 讀下一個 token，字串、數字與 true / false / null 的內容放在 text
+     */
+    private Token token() throws IOException {
+        int c;
+        do {
+            c = read();
+        } while (c == ' ' || c == '\t' || c == '\r' || c == '\n' || c == ',' || c == ':');
+
+        switch (c) {
+            case -1: return Token.END;
+            case '{': return Token.BEGIN_OBJECT;
+            case '}': return Token.END_OBJECT;
+            case '[': return Token.BEGIN_ARRAY;
+            case ']': return Token.END_ARRAY;
+            case '"':
+                readString();
+                return Token.STRING;
+            default:
+                break;
+        }
+        text.setLength(0);
+        while (c >= 0 && "{}[],: \t\r\n\"".indexOf(c) < 0) {
+            text.append((char) c);
+            c = read();
+        }
+        pushback = c;
+        char first = text.charAt(0);
+        if (first == '-' || (first >= '0' && first <= '9')) return Token.NUMBER;
+        String word = text.toString();
+        if (word.equals("true") || word.equals("false") || word.equals("null")) return Token.LITERAL;
+        throw error("無法解析「" + word + "」");
+    }
+
+    private void readString() throws IOException {
+        text.setLength(0);
+        while (true) {
+            int c = read();
+            if (c < 0) throw error("字串沒有結束");
+            if (c == '"') return;
+            if (c == '\\') {
+                c = read();
+                switch (c) {
+                    case 'n': text.append('\n'); break;
+                    case 't': text.append('\t'); break;
+                    case 'r': text.append('\r'); break;
+                    case 'b': text.append('\b'); break;
+                    case 'f': text.append('\f'); break;
+                    case 'u':
+                        int code = 0;
+                        for (int i = 0; i < 4; i++) {
+                            int digit = Character.digit(read(), 16);
+                            if (digit < 0) throw error("\\u 後面必須是四位十六進位數字");
+                            code = code * 16 + digit;
+                        }
+                        text.append((char) code);
+                        break;
+                    case -1: throw error("字串沒有結束");
+                    default: text.append((char) c);
+                }
+            } else {
+                text.append((char) c);
+            }
+        }
+    }
+
+    private int read() throws IOException {
+        int c;
+        if (pushback >= 0) {
+            c = pushback;
+            pushback = -1;
+            return c;
+        }
+        c = in.read();
+        if (c == '\n') line++;
+        return c;
+    }
+
+    private IOException error(String message) {
+        return new IOException("第 " + line + " 行：" + message);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
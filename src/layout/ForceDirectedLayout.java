@@ -0,0 +1,156 @@
+package layout;
+
+import java.util.stream.IntStream;
+
+/**
+ * ForceDirectedLayout 以 Fruchterman–Reingold 力導向方式排版，適合沒有明確方向性的圖：
+ * 節點之間互相排斥、連線兩端互相吸引，並隨著溫度下降逐步收斂。
+ *
+ * 斥力以 Barnes–Hut 四元樹近似 (O(n log n))，每一步的力計算以 parallel stream
+ * 分散到多個核心，每個節點只寫入自己的位移欄位，因此不需要同步。
+ * 群組在 LayoutGraph 中是一個節點，整個群組以剛體方式移動，質量依面積放大。
+ */
+public class ForceDirectedLayout implements LayoutAlgorithm {
+    private static final int MAX_ITERATIONS = 400;
+
+    @Override
+    public LayoutResult layout(LayoutGraph graph, LayoutProgress progress) {
+        Simulation simulation = new Simulation(graph);
+        for (int i = 0; i < MAX_ITERATIONS && simulation.step(); i++) {
+            if (progress.isCancelled()) return null;
+            progress.report(Math.max(simulation.getProgress(), 100 * i / MAX_ITERATIONS));
+        }
+        progress.report(100);
+        return simulation.snapshot();
+    }
+
+    /**
+     * 可逐步執行的模擬，讓畫布能在每個影格顯示中間結果。
+     * 同一個 Simulation 只能由一個執行緒呼叫 step()。
+     */
+    public static final class Simulation {
+        private static final double IDEAL_LENGTH = 180;
+        private static final double THETA = 0.8;
+        private static final double GRAVITY = 0.02;
+        private static final double COOLING = 0.95;
+        private static final double MIN_TEMPERATURE = 0.5;
+        private static final double UNIT_AREA = 120 * 80;
+
+        private final LayoutGraph graph;
+        private final int n;
+        private final double[] px, py;       // 節點中心
+        private final double[] mass;
+        private final double[] dispX, dispY;
+        private final int[] halfW, halfH;
+        private final QuadTree tree = new QuadTree();
+        private final ThreadLocal<double[]> forceBuffer = ThreadLocal.withInitial(() -> new double[2]);
+        private final ThreadLocal<int[]> stackBuffer = ThreadLocal.withInitial(() -> new int[256]);
+        private final double initialTemperature;
+        private double temperature;
+        private double centerX, centerY;
+
+        public Simulation(LayoutGraph graph) {
+            this.graph = graph;
+            this.n = graph.nodeCount();
+            px = new double[n];
+            py = new double[n];
+            mass = new double[n];
+            dispX = new double[n];
+            dispY = new double[n];
+            halfW = new int[n];
+            halfH = new int[n];
+            for (int i = 0; i < n; i++) {
+                halfW[i] = graph.getWidth(i) / 2;
+                halfH[i] = graph.getHeight(i) / 2;
+                // 重疊的節點稍微錯開，避免斥力方向無法決定
+                px[i] = graph.getX(i) + halfW[i] + (i % 7) * 0.37;
+                py[i] = graph.getY(i) + halfH[i] + (i % 11) * 0.29;
+                mass[i] = Math.max(1.0, (double) graph.getWidth(i) * graph.getHeight(i) / UNIT_AREA);
+                centerX += px[i];
+                centerY += py[i];
+            }
+            if (n > 0) {
+                centerX /= n;
+                centerY /= n;
+            }
+            initialTemperature = IDEAL_LENGTH * Math.max(1.0, Math.sqrt(n) / 4);
+            temperature = initialTemperature;
+        }
+
+        /**
+         * 執行一步模擬
+         *
+         * @return 尚未收斂時回傳 true
+         */
+        public boolean step() {
+            if (n == 0 || temperature < MIN_TEMPERATURE) return false;
+            tree.build(px, py, mass, n);
+            IntStream.range(0, n).parallel().forEach(this::computeDisplacement);
+            double t = temperature;
+            IntStream.range(0, n).parallel().forEach(i -> {
+                double d = Math.sqrt(dispX[i] * dispX[i] + dispY[i] * dispY[i]);
+                if (d > 0) {
+                    double limited = Math.min(d, t) / d;
+                    px[i] += dispX[i] * limited;
+                    py[i] += dispY[i] * limited;
+                }
+            });
+            temperature *= COOLING;
+            return true;
+        }
+
+        private void computeDisplacement(int i) {
+            double[] force = forceBuffer.get();
+            force[0] = 0;
+            force[1] = 0;
+            double k2 = IDEAL_LENGTH * IDEAL_LENGTH;
+            int[] stack = tree.accumulateRepulsion(i, px[i], py[i], mass[i], THETA, k2, force, stackBuffer.get());
+            stackBuffer.set(stack);
+
+            // 吸引力 d² / k，出邊與入邊各算一次，只寫入自己的欄位
+            for (int k = graph.outStart(i); k < graph.outEnd(i); k++) {
+                attract(i, graph.getTarget(graph.outEdge(k)), force);
+            }
+            for (int k = graph.inStart(i); k < graph.inEnd(i); k++) {
+                attract(i, graph.getSource(graph.inEdge(k)), force);
+            }
+
+            // 輕微的向心力，讓不相連的子圖不會無限遠離
+            force[0] += (centerX - px[i]) * GRAVITY * mass[i];
+            force[1] += (centerY - py[i]) * GRAVITY * mass[i];
+
+            dispX[i] = force[0] / mass[i];
+            dispY[i] = force[1] / mass[i];
+        }
+
+        private void attract(int i, int j, double[] force) {
+            double dx = px[j] - px[i], dy = py[j] - py[i];
+            double d = Math.sqrt(dx * dx + dy * dy);
+            if (d < 1e-6) return;
+            double f = d / IDEAL_LENGTH;
+            force[0] += dx * f;
+            force[1] += dy * f;
+        }
+
+        /**
+         * 依溫度估計的完成百分比
+         */
+        public int getProgress() {
+            if (temperature < MIN_TEMPERATURE) return 100;
+            double done = Math.log(initialTemperature / temperature) / Math.log(initialTemperature / MIN_TEMPERATURE);
+            return (int) Math.round(100 * Math.max(0, Math.min(1, done)));
+        }
+
+        /**
+         * 取得目前各節點的左上角座標
+         */
+        public LayoutResult snapshot() {
+            int[] x = new int[n], y = new int[n];
+            for (int i = 0; i < n; i++) {
+                x[i] = (int) Math.round(px[i]) - halfW[i];
+                y[i] = (int) Math.round(py[i]) - halfH[i];
+            }
+            return new LayoutResult(x, y);
+        }
+    }
+}
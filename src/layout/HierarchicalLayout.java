@@ -0,0 +1,395 @@
+package layout;
+
+import java.util.Arrays;
+
+/**
+ * HierarchicalLayout 以 Sugiyama 分層方式排版，適合由流程定義產生、方向性明確的圖：
+ * 1. 移除循環：以 Eades–Lin–Smyth 貪婪法排出節點順序，反轉逆向的邊讓圖成為 DAG。
+ * 2. 分層：以最長路徑法指定每個節點的層級。
+ * 3. 跨越多層的邊插入虛擬節點，讓每條邊都只連接相鄰兩層。
+ * 4. 減少交叉：上下來回以重心法 (barycenter) 排序每一層。
+ * 5. 座標指定：讓節點靠近相鄰層鄰居的平均位置，同時維持層內順序與間距。
+ *
+ * 所有中間結構都是 primitive array，不會在背景執行緒上碰觸 model 物件。
+ */
+public class HierarchicalLayout implements LayoutAlgorithm {
+    private static final int MARGIN = 20;
+    private static final int LAYER_GAP = 60;
+    private static final int NODE_GAP = 40;
+    private static final int DUMMY_GAP = 10;
+    private static final int ORDERING_SWEEPS = 6;
+    private static final int COORDINATE_SWEEPS = 3;
+
+    @Override
+    public LayoutResult layout(LayoutGraph graph, LayoutProgress progress) {
+        int n = graph.nodeCount();
+        int m = graph.edgeCount();
+        if (n == 0) return new LayoutResult(new int[0], new int[0]);
+
+        // 1. 移除循環
+        boolean[] reversed = findBackEdges(graph);
+        int[] src = new int[m], dst = new int[m];
+        for (int e = 0; e < m; e++) {
+            src[e] = reversed[e] ? graph.getTarget(e) : graph.getSource(e);
+            dst[e] = reversed[e] ? graph.getSource(e) : graph.getTarget(e);
+        }
+        progress.report(10);
+        if (progress.isCancelled()) return null;
+
+        // 2. 分層
+        int[] realLayer = assignLayers(n, src, dst);
+        progress.report(20);
+        if (progress.isCancelled()) return null;
+
+        // 3. 插入虛擬節點，節點編號 n 之後的都是虛擬節點
+        int total = n;
+        int segmentCount = 0;
+        for (int e = 0; e < m; e++) {
+            int span = realLayer[dst[e]] - realLayer[src[e]];
+            total += span - 1;
+            segmentCount += span;
+        }
+        int[] layer = Arrays.copyOf(realLayer, total);
+        int[] width = new int[total];
+        int[] height = new int[total];
+        for (int v = 0; v < n; v++) {
+            width[v] = graph.getWidth(v);
+            height[v] = graph.getHeight(v);
+        }
+        int[] segFrom = new int[segmentCount], segTo = new int[segmentCount];
+        int nextNode = n, seg = 0;
+        for (int e = 0; e < m; e++) {
+            int prev = src[e];
+            for (int l = realLayer[src[e]] + 1; l < realLayer[dst[e]]; l++) {
+                int dummy = nextNode++;
+                layer[dummy] = l;
+                segFrom[seg] = prev;
+                segTo[seg++] = dummy;
+                prev = dummy;
+            }
+            segFrom[seg] = prev;
+            segTo[seg++] = dst[e];
+        }
+        int[][] down = buildAdjacency(total, segFrom, segTo);
+        int[][] up = buildAdjacency(total, segTo, segFrom);
+        progress.report(30);
+        if (progress.isCancelled()) return null;
+
+        // 依層級分組：layerStart[l] ~ layerStart[l + 1] 為第 l 層在 order 中的範圍
+        int layerCount = 0;
+        for (int v = 0; v < total; v++) layerCount = Math.max(layerCount, layer[v] + 1);
+        int[] layerStart = new int[layerCount + 1];
+        for (int v = 0; v < total; v++) layerStart[layer[v] + 1]++;
+        for (int l = 0; l < layerCount; l++) layerStart[l + 1] += layerStart[l];
+        int[] order = new int[total];
+        int[] cursor = Arrays.copyOf(layerStart, layerCount);
+        // 真實節點依原本的 x 座標排在前面，保留使用者原本的左右關係
+        Integer[] byX = new Integer[n];
+        for (int v = 0; v < n; v++) byX[v] = v;
+        Arrays.sort(byX, (a, b) -> Integer.compare(graph.getX(a), graph.getX(b)));
+        for (int v : byX) order[cursor[layer[v]]++] = v;
+        for (int v = n; v < total; v++) order[cursor[layer[v]]++] = v;
+        int[] pos = new int[total];
+        updatePositions(order, layerStart, layerCount, pos);
+
+        // 4. 減少交叉
+        double[] key = new double[total];
+        int[] tmp = new int[total];
+        for (int sweep = 0; sweep < ORDERING_SWEEPS; sweep++) {
+            boolean downward = sweep % 2 == 0;
+            for (int i = 1; i < layerCount; i++) {
+                int l = downward ? i : layerCount - 1 - i;
+                int[][] adj = downward ? up : down;
+                for (int k = layerStart[l]; k < layerStart[l + 1]; k++) {
+                    int v = order[k];
+                    key[v] = barycenter(v, adj, pos, pos[v]);
+                }
+                sortByKey(order, layerStart[l], layerStart[l + 1], key, tmp);
+                for (int k = layerStart[l]; k < layerStart[l + 1]; k++) pos[order[k]] = k - layerStart[l];
+            }
+            progress.report(30 + 50 * (sweep + 1) / ORDERING_SWEEPS);
+            if (progress.isCancelled()) return null;
+        }
+
+        // 5. 座標指定：y 依層級累加，x 以節點中心 cx 計算
+        int[] layerTop = new int[layerCount];
+        int[] layerHeight = new int[layerCount];
+        for (int v = 0; v < total; v++) layerHeight[layer[v]] = Math.max(layerHeight[layer[v]], height[v]);
+        int top = MARGIN;
+        for (int l = 0; l < layerCount; l++) {
+            layerTop[l] = top;
+            top += layerHeight[l] + LAYER_GAP;
+        }
+
+        double[] cx = new double[total];
+        for (int l = 0; l < layerCount; l++) {
+            double left = 0;
+            for (int k = layerStart[l]; k < layerStart[l + 1]; k++) {
+                int v = order[k];
+                if (k > layerStart[l]) left += gap(order[k - 1], v, n);
+                cx[v] = left + width[v] / 2.0;
+                left += width[v];
+            }
+        }
+        double[] desired = new double[total];
+        double[] leftPass = new double[total];
+        for (int sweep = 0; sweep < COORDINATE_SWEEPS * 2; sweep++) {
+            boolean downward = sweep % 2 == 0;
+            for (int i = 1; i < layerCount; i++) {
+                int l = downward ? i : layerCount - 1 - i;
+                int[][] adj = downward ? up : down;
+                placeLayer(order, layerStart[l], layerStart[l + 1], adj, cx, width, n, desired, leftPass);
+            }
+            if (progress.isCancelled()) return null;
+        }
+        progress.report(95);
+
+        double minLeft = Double.MAX_VALUE;
+        for (int v = 0; v < n; v++) minLeft = Math.min(minLeft, cx[v] - width[v] / 2.0);
+        int[] x = new int[n], y = new int[n];
+        for (int v = 0; v < n; v++) {
+            x[v] = (int) Math.round(cx[v] - width[v] / 2.0 - minLeft) + MARGIN;
+            y[v] = layerTop[layer[v]] + (layerHeight[layer[v]] - height[v]) / 2;
+        }
+        progress.report(100);
+        return new LayoutResult(x, y);
+    }
+
+    /**
+     * 以 Eades–Lin–Smyth 貪婪法找出要反轉的邊：
+     * 反覆把 sink 放到序列尾端、source 放到序列前端，
+     * 都沒有時挑 (出度 - 入度) 最大的節點放到前端；最後指向序列前方的邊就是要反轉的邊。
+     * 以依 (出度 - 入度) 分組的雙向鏈結串列維護候選節點，整體為 O(n + m)。
+     */
+    private boolean[] findBackEdges(LayoutGraph g) {
+        int n = g.nodeCount();
+        int m = g.edgeCount();
+        int[] outDeg = new int[n], inDeg = new int[n];
+        for (int e = 0; e < m; e++) {
+            outDeg[g.getSource(e)]++;
+            inDeg[g.getTarget(e)]++;
+        }
+
+        // bucket 索引：0 為 sink、1 為 source、其餘為 (出度 - 入度) + offset + 2。
+        // 平行邊會讓度數超過 n，所以 offset 取最大度數而不是節點數
+        int offset = 0;
+        for (int v = 0; v < n; v++) {
+            offset = Math.max(offset, Math.max(outDeg[v], inDeg[v]));
+        }
+        int bucketCount = 2 * offset + 3;
+        int[] head = new int[bucketCount];
+        Arrays.fill(head, -1);
+        int[] next = new int[n], prev = new int[n], bucketOf = new int[n];
+        boolean[] removed = new boolean[n];
+        int maxDelta = 2; // 目前可能非空的最大 delta bucket
+
+        for (int v = 0; v < n; v++) {
+            int b = bucketFor(outDeg[v], inDeg[v], offset);
+            bucketOf[v] = b;
+            pushBucket(head, next, prev, b, v);
+            if (b > maxDelta) maxDelta = b;
+        }
+
+        int[] rank = new int[n];
+        int front = 0, rear = n - 1;
+        int remaining = n;
+        while (remaining > 0) {
+            int v;
+            if (head[0] >= 0) {
+                v = head[0];
+                rank[v] = rear--;
+            } else if (head[1] >= 0) {
+                v = head[1];
+                rank[v] = front++;
+            } else {
+                while (head[maxDelta] < 0) maxDelta--;
+                v = head[maxDelta];
+                rank[v] = front++;
+            }
+            removeBucket(head, next, prev, bucketOf[v], v);
+            removed[v] = true;
+            remaining--;
+
+            // 更新鄰居的度數並移到新的 bucket
+            for (int k = g.outStart(v); k < g.outEnd(v); k++) {
+                int w = g.getTarget(g.outEdge(k));
+                if (removed[w]) continue;
+                inDeg[w]--;
+                maxDelta = Math.max(maxDelta, rebucket(w, outDeg, inDeg, offset, head, next, prev, bucketOf));
+            }
+            for (int k = g.inStart(v); k < g.inEnd(v); k++) {
+                int w = g.getSource(g.inEdge(k));
+                if (removed[w]) continue;
+                outDeg[w]--;
+                rebucket(w, outDeg, inDeg, offset, head, next, prev, bucketOf);
+            }
+        }
+
+        boolean[] reversed = new boolean[m];
+        for (int e = 0; e < m; e++) {
+            reversed[e] = rank[g.getSource(e)] > rank[g.getTarget(e)];
+        }
+        return reversed;
+    }
+
+    private static int bucketFor(int outDeg, int inDeg, int offset) {
+        if (outDeg == 0) return 0;
+        if (inDeg == 0) return 1;
+        return outDeg - inDeg + offset + 2;
+    }
+
+    private static int rebucket(int v, int[] outDeg, int[] inDeg, int offset,
+                                int[] head, int[] next, int[] prev, int[] bucketOf) {
+        int b = bucketFor(outDeg[v], inDeg[v], offset);
+        if (b != bucketOf[v]) {
+            removeBucket(head, next, prev, bucketOf[v], v);
+            pushBucket(head, next, prev, b, v);
+            bucketOf[v] = b;
+        }
+        return b;
+    }
+
+    private static void pushBucket(int[] head, int[] next, int[] prev, int b, int v) {
+        prev[v] = -1;
+        next[v] = head[b];
+        if (head[b] >= 0) prev[head[b]] = v;
+        head[b] = v;
+    }
+
+    private static void removeBucket(int[] head, int[] next, int[] prev, int b, int v) {
+        if (prev[v] >= 0) next[prev[v]] = next[v]; else head[b] = next[v];
+        if (next[v] >= 0) prev[next[v]] = prev[v];
+    }
+
+    /**
+     * 最長路徑分層：依拓撲順序，每個節點的層級為所有前驅層級 + 1 的最大值
+     */
+    private int[] assignLayers(int n, int[] src, int[] dst) {
+        int[][] out = buildAdjacency(n, src, dst);
+        int[] indegree = new int[n];
+        for (int t : dst) indegree[t]++;
+        int[] queue = new int[n];
+        int head = 0, tail = 0;
+        for (int v = 0; v < n; v++) {
+            if (indegree[v] == 0) queue[tail++] = v;
+        }
+        int[] layer = new int[n];
+        int[] start = out[0], targets = out[1];
+        while (head < tail) {
+            int v = queue[head++];
+            for (int k = start[v]; k < start[v + 1]; k++) {
+                int w = targets[k];
+                layer[w] = Math.max(layer[w], layer[v] + 1);
+                if (--indegree[w] == 0) queue[tail++] = w;
+            }
+        }
+
+        // 反向拓撲順序：出邊比入邊多的節點往下拉到後繼節點的上一層，縮短邊的跨度、減少虛擬節點
+        int[] inCount = new int[n];
+        for (int t : dst) inCount[t]++;
+        for (int i = tail - 1; i >= 0; i--) {
+            int v = queue[i];
+            int outCount = start[v + 1] - start[v];
+            if (outCount == 0 || outCount <= inCount[v]) continue;
+            int minSucc = Integer.MAX_VALUE;
+            for (int k = start[v]; k < start[v + 1]; k++) minSucc = Math.min(minSucc, layer[targets[k]]);
+            if (minSucc - 1 > layer[v]) layer[v] = minSucc - 1;
+        }
+        return layer;
+    }
+
+    /**
+     * 建立 CSR 鄰接表：回傳 {start, neighbors}
+     */
+    private int[][] buildAdjacency(int n, int[] from, int[] to) {
+        int[] start = new int[n + 1];
+        for (int f : from) start[f + 1]++;
+        for (int i = 0; i < n; i++) start[i + 1] += start[i];
+        int[] neighbors = new int[from.length];
+        int[] cursor = Arrays.copyOf(start, n);
+        for (int i = 0; i < from.length; i++) {
+            neighbors[cursor[from[i]]++] = to[i];
+        }
+        return new int[][] { start, neighbors };
+    }
+
+    private void updatePositions(int[] order, int[] layerStart, int layerCount, int[] pos) {
+        for (int l = 0; l < layerCount; l++) {
+            for (int k = layerStart[l]; k < layerStart[l + 1]; k++) {
+                pos[order[k]] = k - layerStart[l];
+            }
+        }
+    }
+
+    private double barycenter(int v, int[][] adj, int[] pos, double fallback) {
+        int[] start = adj[0], neighbors = adj[1];
+        int count = start[v + 1] - start[v];
+        if (count == 0) return fallback;
+        double sum = 0;
+        for (int k = start[v]; k < start[v + 1]; k++) sum += pos[neighbors[k]];
+        return sum / count;
+    }
+
+    /**
+     * 依鄰居中心的平均值放置一層節點：
+     * 先由左往右、再由右往左各推一次維持間距，取兩者平均後再確保不重疊
+     */
+    private void placeLayer(int[] order, int from, int to, int[][] adj, double[] cx, int[] width, int realCount,
+                            double[] desired, double[] leftPass) {
+        int[] start = adj[0], neighbors = adj[1];
+        for (int k = from; k < to; k++) {
+            int v = order[k];
+            int count = start[v + 1] - start[v];
+            if (count == 0) {
+                desired[v] = cx[v];
+            } else {
+                double sum = 0;
+                for (int i = start[v]; i < start[v + 1]; i++) sum += cx[neighbors[i]];
+                desired[v] = sum / count;
+            }
+        }
+        double limit = -Double.MAX_VALUE;
+        for (int k = from; k < to; k++) {
+            int v = order[k];
+            double left = desired[v] - width[v] / 2.0;
+            if (k > from) left = Math.max(left, limit + gap(order[k - 1], v, realCount));
+            leftPass[v] = left;
+            limit = left + width[v];
+        }
+        limit = Double.MAX_VALUE;
+        for (int k = to - 1; k >= from; k--) {
+            int v = order[k];
+            double left = desired[v] - width[v] / 2.0;
+            if (k < to - 1) left = Math.min(left, limit - gap(v, order[k + 1], realCount) - width[v]);
+            cx[v] = (leftPass[v] + left) / 2.0 + width[v] / 2.0;
+            limit = left;
+        }
+        for (int k = from + 1; k < to; k++) {
+            int prev = order[k - 1], v = order[k];
+            double minCenter = cx[prev] + width[prev] / 2.0 + gap(prev, v, realCount) + width[v] / 2.0;
+            if (cx[v] < minCenter) cx[v] = minCenter;
+        }
+    }
+
+    private int gap(int a, int b, int realCount) {
+        return (a < realCount && b < realCount) ? NODE_GAP : DUMMY_GAP;
+    }
+
+    /**
+     * 穩定的合併排序：依 key 排序 order[from, to)
+     */
+    private void sortByKey(int[] order, int from, int to, double[] key, int[] tmp) {
+        if (to - from < 2) return;
+        int mid = (from + to) >>> 1;
+        sortByKey(order, from, mid, key, tmp);
+        sortByKey(order, mid, to, key, tmp);
+        if (key[order[mid - 1]] <= key[order[mid]]) return;
+        int i = from, j = mid, k = from;
+        while (i < mid && j < to) {
+            tmp[k++] = key[order[j]] < key[order[i]] ? order[j++] : order[i++];
+        }
+        while (i < mid) tmp[k++] = order[i++];
+        while (j < to) tmp[k++] = order[j++];
+        System.arraycopy(tmp, from, order, from, to - from);
+    }
+}
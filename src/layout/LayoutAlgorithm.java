@@ -0,0 +1,16 @@
+package layout;
+
+/**
+ * 所有自動排版演算法的共同介面，實作必須可以在背景執行緒上執行。
+ */
+public interface LayoutAlgorithm {
+
+    /**
+     * 計算排版結果。
+     *
+     * @param graph    圖結構快照
+     * @param progress 進度回報與取消查詢
+     * @return 排版結果，被取消時回傳 null
+     */
+    LayoutResult layout(LayoutGraph graph, LayoutProgress progress);
+}
@@ -0,0 +1,115 @@
+package layout;
+
+import model.BasicObject;
+import model.CanvasModel;
+import model.LinkObject;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * LayoutGraph 是 CanvasModel 在某個時間點的圖結構快照，
+ * 節點為最上層物件（群組視為一個整體），邊為連線兩端所屬最上層物件之間的關係。
+ *
+ * 所有資料都存成 primitive array（CSR 鄰接表），在 EDT 上建立後即可交給背景執行緒計算，
+ * 計算過程不會再碰到 model 物件。
+ */
+public final class LayoutGraph {
+    private final BasicObject[] nodes;
+    private final int[] x, y, width, height;
+
+    private final int[] edgeSource, edgeTarget;
+
+    // CSR：outStart[v] ~ outStart[v + 1] 為 v 的出邊在 outEdges 中的範圍（存邊的編號）
+    private final int[] outStart, outEdges;
+    private final int[] inStart, inEdges;
+
+    private LayoutGraph(BasicObject[] nodes, int[] edgeSource, int[] edgeTarget) {
+        int n = nodes.length;
+        this.nodes = nodes;
+        this.x = new int[n];
+        this.y = new int[n];
+        this.width = new int[n];
+        this.height = new int[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = nodes[i].getX();
+            y[i] = nodes[i].getY();
+            width[i] = nodes[i].getWidth();
+            height[i] = nodes[i].getHeight();
+        }
+        this.edgeSource = edgeSource;
+        this.edgeTarget = edgeTarget;
+        this.outStart = new int[n + 1];
+        this.inStart = new int[n + 1];
+        this.outEdges = new int[edgeSource.length];
+        this.inEdges = new int[edgeSource.length];
+        buildCsr(edgeSource, outStart, outEdges);
+        buildCsr(edgeTarget, inStart, inEdges);
+    }
+
+    /**
+     * 從 model 建立快照，必須在 EDT 上呼叫。
+     * 自我連線與同一群組內部的連線不影響排版，會被略過。
+     *
+     * @param model 畫布模型
+     * @return 圖結構快照
+     */
+    public static LayoutGraph fromModel(CanvasModel model) {
+        List<BasicObject> objects = model.getObjects();
+        BasicObject[] nodes = objects.toArray(new BasicObject[0]);
+        Map<BasicObject, Integer> index = new IdentityHashMap<>(nodes.length * 2);
+        for (int i = 0; i < nodes.length; i++) {
+            index.put(nodes[i], i);
+        }
+
+        List<LinkObject> links = model.getLinks();
+        int[] src = new int[links.size()];
+        int[] dst = new int[links.size()];
+        int m = 0;
+        for (LinkObject link : links) {
+            Integer s = index.get(link.getStartObject().getRoot());
+            Integer t = index.get(link.getEndObject().getRoot());
+            if (s == null || t == null || s.intValue() == t.intValue()) continue;
+            src[m] = s;
+            dst[m] = t;
+            m++;
+        }
+        return new LayoutGraph(nodes, Arrays.copyOf(src, m), Arrays.copyOf(dst, m));
+    }
+
+    private void buildCsr(int[] keys, int[] start, int[] edges) {
+        for (int key : keys) {
+            start[key + 1]++;
+        }
+        for (int i = 0; i < start.length - 1; i++) {
+            start[i + 1] += start[i];
+        }
+        int[] cursor = Arrays.copyOf(start, start.length - 1);
+        for (int e = 0; e < keys.length; e++) {
+            edges[cursor[keys[e]]++] = e;
+        }
+    }
+
+    public int nodeCount() { return nodes.length; }
+    public int edgeCount() { return edgeSource.length; }
+
+    public BasicObject getNode(int i) { return nodes[i]; }
+
+    public int getX(int i) { return x[i]; }
+    public int getY(int i) { return y[i]; }
+    public int getWidth(int i) { return width[i]; }
+    public int getHeight(int i) { return height[i]; }
+
+    public int getSource(int e) { return edgeSource[e]; }
+    public int getTarget(int e) { return edgeTarget[e]; }
+
+    public int outStart(int v) { return outStart[v]; }
+    public int outEnd(int v) { return outStart[v + 1]; }
+    public int outEdge(int k) { return outEdges[k]; }
+
+    public int inStart(int v) { return inStart[v]; }
+    public int inEnd(int v) { return inStart[v + 1]; }
+    public int inEdge(int k) { return inEdges[k]; }
+}
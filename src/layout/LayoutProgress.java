@@ -0,0 +1,19 @@
+package layout;
+
+/**
+ * 排版演算法回報進度與查詢是否被取消的介面，讓演算法不需要依賴 Swing。
+ */
+public interface LayoutProgress {
+
+    /**
+     * 回報目前進度。
+     *
+     * @param percent 0 ~ 100
+     */
+    void report(int percent);
+
+    /**
+     * 使用者是否已取消排版，演算法應該在各階段之間檢查並盡早結束。
+     */
+    boolean isCancelled();
+}
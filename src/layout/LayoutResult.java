@@ -0,0 +1,18 @@
+package layout;
+
+/**
+ * LayoutResult 保存排版後每個節點的新左上角座標，索引與 LayoutGraph 的節點編號相同。
+ */
+public final class LayoutResult {
+    private final int[] x;
+    private final int[] y;
+
+    public LayoutResult(int[] x, int[] y) {
+        this.x = x;
+        this.y = y;
+    }
+
+    public int getX(int node) { return x[node]; }
+    public int getY(int node) { return y[node]; }
+    public int size() { return x.length; }
+}
@@ -0,0 +1,158 @@
+package layout;
+
+import java.util.Arrays;
+
+/**
+ * Barnes–Hut 用的四元樹，所有節點資料都存放在 primitive array 中。
+ * 每個格子記錄其中物體的總質量與質心，計算斥力時距離夠遠的格子直接視為一個質點，
+ * 讓每個物體的斥力計算從 O(n) 降到約 O(log n)。
+ *
+ * 建樹為單執行緒；建好後的查詢 (accumulateRepulsion) 為唯讀，可以多執行緒同時呼叫。
+ */
+final class QuadTree {
+    private static final int EMPTY = -1;
+    private static final int MULTI = -2;       // 格子太小無法再分割，多個物體共用同一個葉節點
+    private static final double MIN_HALF = 1e-3;
+
+    private int size;
+    private int[] childBase = new int[0];   // 第一個子格子的索引，-1 表示葉節點
+    private int[] body = new int[0];
+    private double[] mass = new double[0];
+    private double[] sumX = new double[0], sumY = new double[0];
+    private double[] centerX = new double[0], centerY = new double[0], half = new double[0];
+
+    private double[] px, py, m;
+
+    /**
+     * 以目前的位置與質量重新建樹
+     */
+    void build(double[] px, double[] py, double[] m, int n) {
+        this.px = px;
+        this.py = py;
+        this.m = m;
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        for (int i = 0; i < n; i++) {
+            minX = Math.min(minX, px[i]);
+            minY = Math.min(minY, py[i]);
+            maxX = Math.max(maxX, px[i]);
+            maxY = Math.max(maxY, py[i]);
+        }
+        size = 0;
+        ensureCapacity(Math.max(16, 2 * n));
+        int root = newCell((minX + maxX) / 2, (minY + maxY) / 2, Math.max(maxX - minX, maxY - minY) / 2 + 1);
+        for (int i = 0; i < n; i++) {
+            insert(root, i);
+        }
+    }
+
+    private void insert(int root, int i) {
+        int c = root;
+        while (true) {
+            accumulate(c, i);
+            if (childBase[c] < 0) {
+                if (body[c] == EMPTY) {
+                    body[c] = i;
+                    return;
+                }
+                if (body[c] == MULTI || half[c] < MIN_HALF) {
+                    body[c] = MULTI;
+                    return;
+                }
+                // 分割成四個子格子，把原本的物體移到對應的子格子
+                int existing = body[c];
+                body[c] = EMPTY;
+                split(c);
+                int q = quadrant(c, px[existing], py[existing]);
+                accumulate(q, existing);
+                body[q] = existing;
+            }
+            c = quadrant(c, px[i], py[i]);
+        }
+    }
+
+    /**
+     * 計算所有物體對 (x, y) 處、質量 mi 的物體 self 的斥力，結果累加到 out[0], out[1]
+     *
+     * @param theta Barnes–Hut 的開角門檻，越小越精確
+     * @param k2    理想邊長的平方（斥力係數）
+     * @param stack 由呼叫端提供的暫存堆疊，避免每次配置
+     * @return 可能被擴充過的堆疊
+     */
+    int[] accumulateRepulsion(int self, double x, double y, double mi, double theta, double k2,
+                              double[] out, int[] stack) {
+        double theta2 = theta * theta;
+        int sp = 0;
+        stack[sp++] = 0;
+        while (sp > 0) {
+            int c = stack[--sp];
+            if (mass[c] == 0 || body[c] == self) continue;
+            double cx = sumX[c] / mass[c], cy = sumY[c] / mass[c];
+            double dx = x - cx, dy = y - cy;
+            double d2 = dx * dx + dy * dy;
+            double width = 2 * half[c];
+            if (childBase[c] < 0 || width * width < theta2 * d2) {
+                if (d2 < 1e-4) continue;
+                // Fruchterman–Reingold 斥力：k² / d，方向為遠離質心
+                double f = k2 * mass[c] * mi / d2;
+                out[0] += dx * f;
+                out[1] += dy * f;
+            } else {
+                if (sp + 4 > stack.length) stack = Arrays.copyOf(stack, stack.length * 2);
+                int base = childBase[c];
+                stack[sp++] = base;
+                stack[sp++] = base + 1;
+                stack[sp++] = base + 2;
+                stack[sp++] = base + 3;
+            }
+        }
+        return stack;
+    }
+
+    private void accumulate(int c, int i) {
+        mass[c] += m[i];
+        sumX[c] += px[i] * m[i];
+        sumY[c] += py[i] * m[i];
+    }
+
+    private void split(int c) {
+        double h = half[c] / 2;
+        int base = newCell(centerX[c] - h, centerY[c] - h, h);
+        newCell(centerX[c] + h, centerY[c] - h, h);
+        newCell(centerX[c] - h, centerY[c] + h, h);
+        newCell(centerX[c] + h, centerY[c] + h, h);
+        childBase[c] = base;
+    }
+
+    private int quadrant(int c, double x, double y) {
+        int q = (x >= centerX[c] ? 1 : 0) + (y >= centerY[c] ? 2 : 0);
+        return childBase[c] + q;
+    }
+
+    private int newCell(double cx, double cy, double h) {
+        ensureCapacity(size + 1);
+        int c = size++;
+        childBase[c] = -1;
+        body[c] = EMPTY;
+        mass[c] = 0;
+        sumX[c] = 0;
+        sumY[c] = 0;
+        centerX[c] = cx;
+        centerY[c] = cy;
+        half[c] = h;
+        return c;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= childBase.length) return;
+        int newCap = Math.max(capacity, childBase.length * 2);
+        childBase = Arrays.copyOf(childBase, newCap);
+        body = Arrays.copyOf(body, newCap);
+        mass = Arrays.copyOf(mass, newCap);
+        sumX = Arrays.copyOf(sumX, newCap);
+        sumY = Arrays.copyOf(sumY, newCap);
+        centerX = Arrays.copyOf(centerX, newCap);
+        centerY = Arrays.copyOf(centerY, newCap);
+        half = Arrays.copyOf(half, newCap);
+    }
+}
@@ -23,22 +23,20 @@ public class AssociationLink extends LinkObject {
     /**
      * 繪製連線的箭頭裝飾：
      * 1. 設定箭頭的尺寸與角度參數。
-     * 2. 利用 getStartPort() 與 getEndPort() 取得連線的起點與終點座標。
+     * 2. 由參數取得連線的起點與終點座標。
      * 3. 根據起點與終點計算連線的方向角 theta。
      * 4. 計算箭頭兩側頂點的位置，分別位於終點延伸一段距離的方向上。
-     * 5. 利用 Polygon 組成箭頭形狀並填滿。
+     * 5. 利用 Polygon 組成箭頭形狀（由 LinkObject 快取並填滿）。
      *
-     * @param g2d Graphics2D 物件，用於繪製箭頭裝飾
+     * @param start 起點連接埠座標
+     * @param end   終點連接埠座標
+     * @return 箭頭的 Polygon
      */
     @Override
-    protected void drawDecoration(Graphics2D g2d) {
+    protected Shape createDecoration(Point start, Point end) {
         int barb = 15; // 箭頭邊長：決定箭頭的大小
         double phi = Math.toRadians(40); // 箭頭兩側與連線方向的夾角，40 度轉換成弧度
 
-        // 取得連線的起點與終點連接埠座標
-        Point start = getStartPort();
-        Point end = getEndPort();
-
         // 計算連線方向角 theta，利用 atan2(y, x) 計算角度
         double theta = Math.atan2(end.y - start.y, end.x - start.x);
 
@@ -56,7 +54,14 @@ public class AssociationLink extends LinkObject {
         arrowHead.addPoint((int) x1, (int) y1);        // 箭頭右側頂點
         arrowHead.addPoint((int) x2, (int) y2);        // 箭頭左側頂點
 
-        // 填充箭頭，繪製出裝飾效果
-        g2d.fill(arrowHead);
+        return arrowHead;
+    }
+
+    /**
+     * 關聯連線的箭頭以填滿方式繪製
+     */
+    @Override
+    public boolean isDecorationFilled() {
+        return true;
     }
 }
@@ -1,23 +1,47 @@
 package model;
 
+import enums.ChangeType;
 import enums.LabelShape;
 import java.util.List;
 import java.util.Collections;
 
 import java.awt.*;
+import java.awt.font.FontRenderContext;
 
 public abstract class BasicObject extends DisplayObject {
 
+    // 物件的底色，所有物件共用同一個 Color，不在每次繪製時解析色碼
+    protected static final Color FILL_COLOR = new Color(0xF6F0F0);
+
+    // 沒有父群組時為絕對座標，在群組內時為相對於父群組原點的座標
     private int x;
     private int y;
     private int width;
     private int height;
     private boolean showPorts = false;
 
+    // 每次位置或尺寸改變都會取得新的版本號，連線用它判斷端點是否移動過
+    private static long nextGeometryVersion = 0;
+    private long geometryVersion = nextGeometryVersion++;
+
+    // 物件加入 CanvasModel 後所屬的空間索引，幾何改變時通知它
+    SpatialIndex spatialIndex;
+
+    // 物件加入 CanvasModel 後所屬的標籤索引，標籤、顏色或形狀改變時通知它
+    LabelIndex labelIndex;
+
+    // 物件加入 CanvasModel 後用來通知監聽者的 ChangeBus
+    ChangeBus changeBus;
+
+    // 所屬的群組，最上層物件為 null
+    CompositeObject parent;
+
     private String label = "";
-    private LabelShape labelShape = LabelShape.RECTANGLE;
-    private Color labelColor = Color.WHITE;
-    private int fontSize = 12;
+    // 相同外觀的物件共用同一個 LabelStyle，改變外觀只是換參考
+    private LabelStyle style = LabelStyle.DEFAULT;
+
+    // 標籤排版快取，只有標籤文字或字型改變時才會失效
+    private LabelLayout labelLayout;
 
     public BasicObject(int x, int y, int width, int height) {
         super();  // 呼叫 DisplayObject 建構子，設定 depth
@@ -27,39 +51,194 @@ public abstract class BasicObject extends DisplayObject {
         this.height = height;
     }
 
-    // Getter 與 Setter
-    public int getX() { return x; }
-    public void setX(int x) { this.x = x; }
+    // Getter 與 Setter（x, y 皆為絕對座標）
+    public int getX() { return parentOriginX() + x; }
+    public void setX(int x) {
+        this.x = x - parentOriginX();
+        geometryChanged();
+    }
+
+    public int getY() { return parentOriginY() + y; }
+    public void setY(int y) {
+        this.y = y - parentOriginY();
+        geometryChanged();
+    }
+
+    public CompositeObject getParent() { return parent; }
+
+    /**
+     * 取得最外層的祖先（本身為最上層物件時回傳自己）
+     */
+    public BasicObject getRoot() {
+        BasicObject root = this;
+        while (root.parent != null) {
+            root = root.parent;
+        }
+        return root;
+    }
+
+    private int parentOriginX() { return parent == null ? 0 : parent.getOriginX(); }
+    private int parentOriginY() { return parent == null ? 0 : parent.getOriginY(); }
+
+    /**
+     * 取得在父群組座標系中的左上角位置，群組用它計算自己的邊界
+     */
+    int getLocalX() { return x; }
+    int getLocalY() { return y; }
+
+    /**
+     * 平移在父群組座標系中的位置，絕對位置由呼叫端負責維持
+     */
+    void shiftLocal(int dx, int dy) {
+        x += dx;
+        y += dy;
+    }
 
-    public int getY() { return y; }
-    public void setY(int y) { this.y = y; }
+    /**
+     * 改變所屬群組，並換算區域座標讓物件的絕對位置保持不變
+     *
+     * @param newParent 新的父群組，null 表示成為最上層物件
+     */
+    void reparent(CompositeObject newParent) {
+        int oldOriginX = parentOriginX(), oldOriginY = parentOriginY();
+        parent = newParent;
+        shiftLocal(oldOriginX - parentOriginX(), oldOriginY - parentOriginY());
+    }
 
     public int getWidth() { return width; }
-    public void setWidth(int width) { this.width = width; }
+    public void setWidth(int width) {
+        this.width = width;
+        geometryChanged();
+    }
 
     public int getHeight() { return height; }
-    public void setHeight(int height) { this.height = height; }
+    public void setHeight(int height) {
+        this.height = height;
+        geometryChanged();
+    }
+
+    /**
+     * 取得幾何版本號，版本號不同代表位置或尺寸曾經改變。
+     * 祖先群組移動時子物件的絕對位置也會跟著改變，因此取自己與祖先中最新的版本。
+     */
+    public long getGeometryVersion() {
+        return parent == null ? geometryVersion : Math.max(geometryVersion, parent.getGeometryVersion());
+    }
+
+    /**
+     * 取得全域的幾何版本號：任何物件的位置或尺寸改變後都會變大，
+     * 可用來快速判斷整張圖自上次以來是否有物件移動。
+     */
+    public static long getGlobalGeometryVersion() {
+        return nextGeometryVersion;
+    }
+
+    /**
+     * 位置或尺寸改變後呼叫：更新版本號，並通知父群組（邊界需要重算）或空間索引
+     */
+    protected void geometryChanged() {
+        geometryVersion = nextGeometryVersion++;
+        if (parent != null) {
+            parent.childGeometryChanged(this);
+        } else if (spatialIndex != null) {
+            spatialIndex.markDirty(this);
+            if (changeBus != null) {
+                changeBus.fire(ChangeType.GEOMETRY_CHANGED, this);
+            }
+        }
+    }
+
+    /**
+     * 取得物件邊界
+     */
+    public Rectangle getBounds() {
+        return new Rectangle(getX(), getY(), getWidth(), getHeight());
+    }
 
     public void setShowPorts(boolean show) { this.showPorts = show; }
     public boolean isShowPorts() { return showPorts; }
 
     public String getLabel() { return label; }
-    public void setLabel(String label) { this.label = label; }
+    public void setLabel(String label) {
+        this.label = label;
+        invalidateLabelLayout();
+        labelAttributesChanged();
+    }
 
-    public LabelShape getLabelShape() { return labelShape; }
-    public void setLabelShape(LabelShape labelShape) { this.labelShape = labelShape; }
+    public LabelStyle getLabelStyle() { return style; }
 
-    public Color getLabelColor() { return labelColor; }
-    public void setLabelColor(Color labelColor) { this.labelColor = labelColor; }
+    /**
+     * 換成另一個共用的外觀，參考相同時不做任何事
+     */
+    public void setLabelStyle(LabelStyle style) {
+        if (style == this.style) return;
+        if (style.getFont() != this.style.getFont()) {
+            invalidateLabelLayout();
+        }
+        this.style = style;
+        labelAttributesChanged();
+    }
 
-    public int getFontSize() { return fontSize; }
-    public void setFontSize(int fontSize) { this.fontSize = fontSize; }
+    /**
+     * 同時設定標籤文字與外觀：排版快取最多失效一次，索引與監聽者也只通知一次。
+     * 批次修改大量物件時使用。
+     */
+    public void applyLabel(String label, LabelStyle style) {
+        boolean textChanged = !label.equals(this.label);
+        if (!textChanged && style == this.style) return;
+        if (textChanged || style.getFont() != this.style.getFont()) {
+            invalidateLabelLayout();
+        }
+        this.label = label;
+        this.style = style;
+        labelAttributesChanged();
+    }
+
+    public LabelShape getLabelShape() { return style.getShape(); }
+    public void setLabelShape(LabelShape labelShape) {
+        setLabelStyle(style.withShape(labelShape));
+    }
+
+    public Color getLabelColor() { return style.getColor(); }
+    public void setLabelColor(Color labelColor) {
+        setLabelStyle(style.withColor(labelColor));
+    }
+
+    public int getFontSize() { return style.getFontSize(); }
+    public void setFontSize(int fontSize) {
+        setLabelStyle(style.withFontSize(fontSize));
+    }
+
+    private void labelAttributesChanged() {
+        if (labelIndex != null) {
+            labelIndex.update(this);
+        }
+        if (changeBus != null) {
+            changeBus.fire(ChangeType.LABEL_CHANGED, this);
+        }
+    }
+
+    /**
+     * 取得標籤的排版結果，第一次繪製或快取失效後才重新排版
+     */
+    LabelLayout getLabelLayout(Graphics2D g2d) {
+        FontRenderContext frc = g2d.getFontRenderContext();
+        if (labelLayout == null || !labelLayout.isValidFor(frc)) {
+            labelLayout = new LabelLayout(label, style.getFont(), frc);
+        }
+        return labelLayout;
+    }
+
+    private void invalidateLabelLayout() {
+        labelLayout = null;
+    }
 
     /**
      * 判斷點是否在此物件範圍內
      */
     public boolean contains(Point p) {
-        return (p.x >= x && p.x <= x + width && p.y >= y && p.y <= y + height);
+        int x = getX(), y = getY();
+        return (p.x >= x && p.x <= x + getWidth() && p.y >= y && p.y <= y + getHeight());
     }
 
     /**
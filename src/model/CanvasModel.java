@@ -1,7 +1,15 @@
 package model;
 
+import enums.ChangeType;
+
+import java.awt.Point;
+import java.awt.Rectangle;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 
 /**
  * CanvasModel 類別負責儲存與管理畫布上的所有物件和連線，
@@ -18,15 +26,37 @@ public class CanvasModel {
     // 儲存所有連接兩個 BasicObject 物件的 LinkObject 連線
     private List<LinkObject> links;
 
-    // 儲存目前被選取的 BasicObject 物件
+    // 連線外框的空間索引與端點反查表，也讓「連線是否還在畫布上」為 O(1)
+    private final LinkIndex linkIndex = new LinkIndex();
+
+    // 連線集合每次改變就遞增，讓依連線建立的快取判斷是否需要更新
+    private long linkVersion = 0;
+
+    // 最上層物件集合（新增、刪除、群組、解散）每次改變就遞增
+    private long objectVersion = 0;
+
+    // 儲存目前被選取的 BasicObject 物件（保留選取順序）
     private List<BasicObject> selectedObjects;
 
+    // 與 selectedObjects 內容相同的 identity set，讓「是否已選取」為 O(1)
+    private final Set<BasicObject> selectedSet = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    // 最上層物件的空間索引，用於點選與範圍查詢
+    private final SpatialIndex spatialIndex = new SpatialIndex();
+
+    // 標籤的全文與屬性索引，包含群組內的物件
+    private final LabelIndex labelIndex = new LabelIndex();
+
+    // 所有變動都透過它成批通知監聽者
+    private final ChangeBus changeBus = new ChangeBus();
+
     
     // 私有 constructor，禁止外部 new 
     private CanvasModel() {
         objects = new ArrayList<>();
         links = new ArrayList<>();
         selectedObjects = new ArrayList<>();
+        spatialIndex.linkIndex = linkIndex;
     }
 
     
@@ -39,28 +69,481 @@ public class CanvasModel {
 
     /**
      * 取得畫布上所有 BasicObject 物件的列表。
+     * 列表為唯讀，新增或移除物件請透過 addObject / removeObject，以維持空間索引正確。
      *
-     * @return 存有所有 BasicObject 物件的 List
+     * @return 存有所有 BasicObject 物件的唯讀 List
      */
     public List<BasicObject> getObjects() {
-        return objects;
+        return Collections.unmodifiableList(objects);
+    }
+
+    /**
+     * 新增一個最上層物件並放入空間索引。
+     *
+     * @param obj 要新增的物件
+     */
+    public void addObject(BasicObject obj) {
+        objects.add(obj);
+        objectVersion++;
+        obj.spatialIndex = spatialIndex;
+        spatialIndex.insert(obj);
+        attach(obj);
+        changeBus.fire(ChangeType.OBJECT_ADDED, obj);
+    }
+
+    /**
+     * 刪除一個物件：從空間索引或所屬群組移除、取消選取，並一併刪除連到它（或它的子物件）的連線。
+     *
+     * @param obj 要移除的物件
+     */
+    public void removeObject(BasicObject obj) {
+        removeObjects(Collections.singletonList(obj));
+    }
+
+    /**
+     * 一次新增多個最上層物件。
+     *
+     * @param objs 要新增的物件
+     */
+    public void addObjects(Collection<? extends BasicObject> objs) {
+        objects.addAll(objs);
+        objectVersion++;
+        for (BasicObject obj : objs) {
+            obj.spatialIndex = spatialIndex;
+            spatialIndex.insert(obj);
+            attach(obj);
+            changeBus.fire(ChangeType.OBJECT_ADDED, obj);
+        }
+    }
+
+    /**
+     * 一次刪除多個最上層物件：以 identity set 判斷成員，
+     * 物件列表、空間索引與連線列表各只走訪一次，時間與選取數量呈線性關係。
+     * 刪除的物件會取消選取，連到它們或它們子物件的連線也一併刪除。
+     * 群組內的物件則從群組中拿掉，群組因此變空時連同群組一起刪除；它們同樣會送出 OBJECT_REMOVED。
+     *
+     * @param objs 要移除的物件
+     */
+    public void removeObjects(Collection<? extends BasicObject> objs) {
+        List<BasicObject> topLevel = new ArrayList<>();
+        List<BasicObject> nested = new ArrayList<>();
+        for (BasicObject obj : objs) {
+            if (obj.getParent() == null) {
+                topLevel.add(obj);
+            } else if (contains(obj)) {
+                CompositeObject emptied = removeFromGroup(obj, nested);
+                if (emptied != null) topLevel.add(emptied);
+            }
+        }
+        Set<BasicObject> removing = detach(topLevel);
+        if (removing.isEmpty() && nested.isEmpty()) return;
+        objectVersion++;
+        Set<BasicObject> endpoints = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (BasicObject obj : removing) {
+            collectTree(obj, endpoints);
+        }
+        for (BasicObject obj : nested) {
+            collectTree(obj, endpoints);
+            changeBus.fire(ChangeType.OBJECT_REMOVED, obj);
+        }
+        // 刪除的物件之後改變也不再通知索引與監聽者，復原時 attach 會重新接上
+        for (BasicObject obj : endpoints) {
+            labelIndex.remove(obj);
+            obj.changeBus = null;
+        }
+        List<LinkObject> dangling = new ArrayList<>();
+        for (LinkObject link : links) {
+            if (endpoints.contains(link.getStartObject()) || endpoints.contains(link.getEndObject())) {
+                dangling.add(link);
+            }
+        }
+        removeLinks(dangling);
+    }
+
+    /**
+     * 把幾個最上層物件組成群組，群組取代它們成為最上層物件；連線維持不變。
+     *
+     * @param children 要群組的最上層物件
+     * @return 新的群組
+     */
+    public CompositeObject group(List<BasicObject> children) {
+        detach(children);
+        CompositeObject composite = new CompositeObject(children);
+        addObject(composite);
+        return composite;
+    }
+
+    /**
+     * 解散群組，子物件回到最上層；連線維持不變。
+     *
+     * @param group 要解散的最上層群組
+     * @return 回到最上層的子物件
+     */
+    public List<BasicObject> ungroup(BasicObject group) {
+        detach(Collections.singletonList(group));
+        List<BasicObject> children = new ArrayList<>();
+        group.ungroupTo(children);  // dynamic dispatch : 會去呼叫 compositeObject 的 ungroupTo
+        labelIndex.remove(group);
+        addObjects(children);
+        return children;
+    }
+
+    /**
+     * 把物件從最上層移開（取消選取、移出空間索引），不處理連線。
+     * 刪除與群組共用這一步，差別只在刪除會再處理連線。
+     *
+     * @return 實際在最上層、被移開的物件
+     */
+    private Set<BasicObject> detach(Collection<? extends BasicObject> objs) {
+        Set<BasicObject> removing = Collections.newSetFromMap(new IdentityHashMap<>());
+        removing.addAll(objs);
+        Set<BasicObject> present = Collections.newSetFromMap(new IdentityHashMap<>());
+        objects.removeIf(obj -> removing.contains(obj) && present.add(obj));
+        if (present.isEmpty()) return present;
+        objectVersion++;
+        deselectAll(present);
+        spatialIndex.removeAll(present);
+        for (BasicObject obj : present) {
+            obj.spatialIndex = null;
+            changeBus.fire(ChangeType.OBJECT_REMOVED, obj);
+        }
+        return present;
+    }
+
+    /**
+     * 把物件從所屬群組中拿掉，拿掉後變空的群組也從它的父群組中拿掉
+     *
+     * @param removed 輸出被拿掉的物件與群組
+     * @return 因此變空的最上層群組，沒有時回傳 null
+     */
+    private static CompositeObject removeFromGroup(BasicObject obj, List<BasicObject> removed) {
+        CompositeObject group = obj.getParent();
+        group.removeChild(obj);
+        removed.add(obj);
+        while (group.getChildren().isEmpty()) {
+            CompositeObject parent = group.getParent();
+            if (parent == null) return group;
+            parent.removeChild(group);
+            removed.add(group);
+            group = parent;
+        }
+        return null;
+    }
+
+    private static void collectTree(BasicObject obj, Set<BasicObject> output) {
+        output.add(obj);
+        for (BasicObject child : obj.getChildren()) {
+            collectTree(child, output);
+        }
+    }
+
+    /**
+     * 讓物件與其子物件在標籤或幾何改變時能通知標籤索引與監聽者
+     */
+    private void attach(BasicObject obj) {
+        labelIndex.addTree(obj);
+        attachChangeBus(obj);
+    }
+
+    private void attachChangeBus(BasicObject obj) {
+        if (obj.changeBus == changeBus) return;
+        obj.changeBus = changeBus;
+        for (BasicObject child : obj.getChildren()) {
+            attachChangeBus(child);
+        }
+    }
+
+    /**
+     * 找出包含指定點且位於最上層（depth 最小）的物件。
+     *
+     * @param p 查詢點
+     * @return 找到的物件，沒有則回傳 null
+     */
+    public BasicObject findObjectAt(Point p) {
+        return spatialIndex.findTopmostAt(p);
+    }
+
+    /**
+     * 找出邊界與指定範圍相交的所有最上層物件。
+     *
+     * @param area 查詢範圍
+     * @return 與範圍相交的物件（不保證順序）
+     */
+    public List<BasicObject> queryObjects(Rectangle area) {
+        return spatialIndex.query(area);
+    }
+
+    /**
+     * 判斷物件是否在畫布上：它本身或它所在的最上層群組仍在 model 中。
+     *
+     * @param obj 要判斷的物件
+     * @return 在畫布上時回傳 true
+     */
+    public boolean contains(BasicObject obj) {
+        return obj.getRoot().spatialIndex == spatialIndex;
+    }
+
+    /**
+     * 判斷連線是否仍在 model 中。
+     *
+     * @param link 要判斷的連線
+     * @return 在 model 中時回傳 true
+     */
+    public boolean containsLink(LinkObject link) {
+        return link.linkIndex == linkIndex;
+    }
+
+    /**
+     * 找出外框與指定矩形相交的連線（不保證順序），例如局部重畫或移動後檢查繞線。
+     *
+     * @param area 查詢範圍
+     * @return 與範圍相交的連線
+     */
+    public List<LinkObject> queryLinks(Rectangle area) {
+        return linkIndex.query(area);
+    }
+
+    /**
+     * 取得以指定物件為起點或終點的連線，不包含端點在它子物件上的連線。
+     *
+     * @param obj 端點物件
+     * @return 唯讀的連線列表
+     */
+    public List<LinkObject> getLinksOf(BasicObject obj) {
+        return linkIndex.linksOf(obj);
+    }
+
+    /**
+     * 以標籤搜尋物件（包含群組內的物件），查詢語法見 LabelIndex。
+     * 物件被群組後仍保留在標籤索引中，不在畫布上（最上層祖先已被移除）的物件會被濾掉。
+     *
+     * @param query 查詢字串，例如 "order shape:oval"
+     * @param limit 最多回傳幾筆
+     * @return 符合的物件
+     */
+    public List<BasicObject> searchLabels(String query, int limit) {
+        return labelIndex.search(query, limit, this::contains);
     }
 
     /**
      * 取得畫布上所有連線物件的列表。
+     * 列表為唯讀，新增或移除連線請透過 addLink / removeLink，以維持連線版本號正確並通知監聽者。
      *
-     * @return 存有所有 LinkObject 連線物件的 List
+     * @return 存有所有 LinkObject 連線物件的唯讀 List
      */
     public List<LinkObject> getLinks() {
-        return links;
+        return Collections.unmodifiableList(links);
+    }
+
+    /**
+     * 新增一條連線。
+     *
+     * @param link 要新增的連線
+     */
+    public void addLink(LinkObject link) {
+        links.add(link);
+        linkIndex.insert(link);
+        link.linkIndex = linkIndex;
+        linkVersion++;
+        changeBus.fire(ChangeType.LINK_ADDED, link);
+    }
+
+    /**
+     * 移除一條連線。
+     *
+     * @param link 要移除的連線
+     */
+    public void removeLink(LinkObject link) {
+        if (links.remove(link)) {
+            linkIndex.removeAll(Collections.singletonList(link));
+            link.linkIndex = null;
+            linkVersion++;
+            changeBus.fire(ChangeType.LINK_REMOVED, link);
+        }
+    }
+
+    /**
+     * 一次移除多條連線，連線列表只走訪一次。
+     *
+     * @param toRemove 要移除的連線
+     */
+    public void removeLinks(Collection<? extends LinkObject> toRemove) {
+        if (toRemove.isEmpty()) return;
+        Set<LinkObject> removing = Collections.newSetFromMap(new IdentityHashMap<>());
+        removing.addAll(toRemove);
+        // 只通知實際在 model 中、被移除的連線
+        List<LinkObject> removed = new ArrayList<>();
+        links.removeIf(link -> removing.contains(link) && removed.add(link));
+        if (!removed.isEmpty()) {
+            linkIndex.removeAll(removed);
+            for (LinkObject link : removed) {
+                link.linkIndex = null;
+            }
+            linkVersion++;
+            for (LinkObject link : removed) {
+                changeBus.fire(ChangeType.LINK_REMOVED, link);
+            }
+        }
+    }
+
+    /**
+     * 建立一個批次建立物件、連線與群組用的 builder，commit 時才一次加入 model。
+     *
+     * @return 新的 DiagramBuilder
+     */
+    public DiagramBuilder newBuilder() {
+        return new DiagramBuilder(this);
+    }
+
+    /**
+     * 在單一交易內加入大量物件與連線，索引各更新一次、監聽者只收到一批變動
+     */
+    void bulkInsert(List<BasicObject> newObjects, List<LinkObject> newLinks) {
+        runInTransaction(() -> {
+            addObjects(newObjects);
+            if (!newLinks.isEmpty()) {
+                links.addAll(newLinks);
+                for (LinkObject link : newLinks) {
+                    linkIndex.insert(link);
+                    link.linkIndex = linkIndex;
+                }
+                linkVersion++;
+                for (LinkObject link : newLinks) {
+                    changeBus.fire(ChangeType.LINK_ADDED, link);
+                }
+            }
+        });
+    }
+
+    /**
+     * 註冊 model 變動的監聽者，必須在 EDT 上呼叫。
+     *
+     * @param listener 監聽者
+     */
+    public void addModelListener(ModelListener listener) {
+        changeBus.addListener(listener);
+    }
+
+    public void removeModelListener(ModelListener listener) {
+        changeBus.removeListener(listener);
+    }
+
+    /**
+     * 開始一個交易：之後的變動會累積起來，等最外層的 endTransaction 時一次通知。
+     * 交易可以巢狀，必須與 endTransaction 成對呼叫。
+     */
+    public void beginTransaction() {
+        changeBus.begin();
+    }
+
+    /**
+     * 結束交易，最外層的交易結束時立即通知監聽者。
+     */
+    public void endTransaction() {
+        changeBus.end();
+    }
+
+    /**
+     * 不在交易內時，立即把累積中的變動送給監聽者，不等到目前的 EDT 事件處理完。
+     * 要把接下來的變動和先前的分成不同批時使用。
+     */
+    public void flushChanges() {
+        changeBus.flush();
+    }
+
+    /**
+     * 在一個交易內執行一段修改。
+     *
+     * @param action 要執行的修改
+     */
+    public void runInTransaction(Runnable action) {
+        beginTransaction();
+        try {
+            action.run();
+        } finally {
+            endTransaction();
+        }
+    }
+
+    /**
+     * 取得連線集合的版本號，版本號不同代表曾經新增或移除連線。
+     *
+     * @return 連線版本號
+     */
+    public long getLinkVersion() {
+        return linkVersion;
+    }
+
+    /**
+     * 取得物件集合的版本號，版本號不同代表曾經新增、刪除、群組或解散物件（包括從群組中拿掉物件）。
+     *
+     * @return 物件版本號
+     */
+    public long getObjectVersion() {
+        return objectVersion;
     }
 
     /**
      * 取得目前被選取的物件列表。
+     * 列表為唯讀，變更選取請透過 select / deselect / clearSelection。
      *
-     * @return 存有被選取 BasicObject 物件的 List
+     * @return 存有被選取 BasicObject 物件的唯讀 List
      */
     public List<BasicObject> getSelectedObjects() {
-        return selectedObjects;
+        return Collections.unmodifiableList(selectedObjects);
+    }
+
+    /**
+     * 判斷物件是否已被選取。
+     *
+     * @param obj 要檢查的物件
+     * @return 已選取則回傳 true
+     */
+    public boolean isSelected(BasicObject obj) {
+        return selectedSet.contains(obj);
+    }
+
+    /**
+     * 選取物件並顯示它的連接埠，已選取的物件不會重複加入。
+     *
+     * @param obj 要選取的物件
+     */
+    public void select(BasicObject obj) {
+        if (selectedSet.add(obj)) {
+            selectedObjects.add(obj);
+            obj.setShowPorts(true);
+            changeBus.fire(ChangeType.SELECTION_CHANGED, obj);
+        }
+    }
+
+    /**
+     * 一次取消選取多個物件，只走訪選取列表一次。
+     *
+     * @param objs 要取消選取的物件
+     */
+    public void deselectAll(Collection<BasicObject> objs) {
+        boolean changed = false;
+        for (BasicObject obj : objs) {
+            if (selectedSet.remove(obj)) {
+                obj.setShowPorts(false);
+                changeBus.fire(ChangeType.SELECTION_CHANGED, obj);
+                changed = true;
+            }
+        }
+        if (changed) {
+            selectedObjects.removeIf(obj -> !selectedSet.contains(obj));
+        }
+    }
+
+    /**
+     * 清除所有選取，只會更動原本被選取的物件。
+     */
+    public void clearSelection() {
+        for (BasicObject obj : selectedObjects) {
+            obj.setShowPorts(false);
+            changeBus.fire(ChangeType.SELECTION_CHANGED, obj);
+        }
+        selectedObjects.clear();
+        selectedSet.clear();
     }
 }
@@ -0,0 +1,56 @@
+package model;
+
+import enums.ChangeType;
+
+import javax.swing.SwingUtilities;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ChangeBus 收集 model 的變動並成批通知監聽者，只在 EDT 上使用。
+ *
+ * 在交易內發生的變動等到最外層交易結束時一次送出；
+ * 沒有交易時，同一個 EDT 事件中的變動會合併，在事件處理完後送出一次。
+ */
+class ChangeBus {
+    private final List<ModelListener> listeners = new ArrayList<>();
+    private ModelChangeBatch pending = new ModelChangeBatch();
+    private int depth = 0;
+    private boolean flushScheduled = false;
+
+    void addListener(ModelListener listener) {
+        listeners.add(listener);
+    }
+
+    void removeListener(ModelListener listener) {
+        listeners.remove(listener);
+    }
+
+    void fire(ChangeType type, DisplayObject target) {
+        pending.add(type, target);
+        if (depth == 0 && !flushScheduled) {
+            flushScheduled = true;
+            SwingUtilities.invokeLater(this::flush);
+        }
+    }
+
+    void begin() {
+        depth++;
+    }
+
+    void end() {
+        if (--depth == 0) {
+            flush();
+        }
+    }
+
+    void flush() {
+        flushScheduled = false;
+        if (depth > 0 || pending.isEmpty()) return;
+        ModelChangeBatch batch = pending;
+        pending = new ModelChangeBatch();
+        for (ModelListener listener : new ArrayList<>(listeners)) {
+            listener.modelChanged(batch);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package model;
+
+import enums.LinkKind;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ClipboardContent 是複製當下選取物件的內容：物件（含群組的巢狀結構）以及兩端都在選取範圍內的連線。
+ *
+ * 內容以陣列存放（每個欄位一個陣列），不保留原物件，複製之後原物件再怎麼修改都不影響貼上的結果；
+ * 標籤文字與 LabelStyle 等不可變的值只保存參考，貼上多少份都與原物件共用，不會重新配置。
+ * 物件依「子物件在前、群組在後」的順序存放，貼上時一次走訪即可由內而外建好群組；
+ * 連線的端點存成物件的索引，貼上時直接換成新物件，不需要查表。
+ */
+public final class ClipboardContent {
+    private static final byte RECT = 0;
+    private static final byte OVAL = 1;
+    private static final byte GROUP = 2;
+
+    private int count;
+    private byte[] kinds;
+    private int[] parents;
+    private int[] geometry;
+    private String[] labels;
+    private LabelStyle[] styles;
+
+    // 連線：種類與兩端物件的索引，以及兩端連接埠相對於物件左上角的偏移量
+    private LinkKind[] linkKinds;
+    private int[] linkEnds;
+    private int[] portOffsets;
+    private int linkCount;
+
+    private ClipboardContent() {
+    }
+
+    /**
+     * 複製物件與其子物件，以及兩端都在其中的連線
+     *
+     * @param roots 要複製的最上層物件
+     * @param links model 中的所有連線，只走訪一次
+     */
+    public static ClipboardContent copy(List<BasicObject> roots, List<LinkObject> links) {
+        ClipboardContent c = new ClipboardContent();
+        int capacity = 16;
+        c.kinds = new byte[capacity];
+        c.parents = new int[capacity];
+        c.geometry = new int[4 * capacity];
+        c.labels = new String[capacity];
+        c.styles = new LabelStyle[capacity];
+
+        Map<BasicObject, Integer> index = new IdentityHashMap<>();
+        for (BasicObject root : roots) {
+            c.add(root, index);
+        }
+        c.parents = Arrays.copyOf(c.parents, c.count);
+
+        c.linkKinds = new LinkKind[8];
+        c.linkEnds = new int[16];
+        c.portOffsets = new int[32];
+        for (LinkObject link : links) {
+            Integer start = index.get(link.getStartObject());
+            Integer end = index.get(link.getEndObject());
+            if (start == null || end == null) continue;
+            if (c.linkCount == c.linkKinds.length) {
+                c.linkKinds = Arrays.copyOf(c.linkKinds, c.linkKinds.length * 2);
+                c.linkEnds = Arrays.copyOf(c.linkEnds, c.linkEnds.length * 2);
+                c.portOffsets = Arrays.copyOf(c.portOffsets, c.portOffsets.length * 2);
+            }
+            c.linkKinds[c.linkCount] = link instanceof GeneralizationLink ? LinkKind.GENERALIZATION
+                    : link instanceof CompositionLink ? LinkKind.COMPOSITION
+                    : LinkKind.ASSOCIATION;
+            c.linkEnds[2 * c.linkCount] = start;
+            c.linkEnds[2 * c.linkCount + 1] = end;
+            c.portOffsets[4 * c.linkCount] = link.getStartPortOffsetX();
+            c.portOffsets[4 * c.linkCount + 1] = link.getStartPortOffsetY();
+            c.portOffsets[4 * c.linkCount + 2] = link.getEndPortOffsetX();
+            c.portOffsets[4 * c.linkCount + 3] = link.getEndPortOffsetY();
+            c.linkCount++;
+        }
+        return c;
+    }
+
+    /**
+     * 以後序（子物件在前）加入一個物件，回傳它的索引
+     */
+    private int add(BasicObject obj, Map<BasicObject, Integer> index) {
+        List<Integer> children = null;
+        if (obj.isGroup()) {
+            children = new ArrayList<>(obj.getChildren().size());
+            for (BasicObject child : obj.getChildren()) {
+                children.add(add(child, index));
+            }
+        }
+        if (count == kinds.length) grow();
+        int i = count++;
+        kinds[i] = obj.isGroup() ? GROUP : obj instanceof OvalObject ? OVAL : RECT;
+        parents[i] = -1;
+        geometry[4 * i] = obj.getX();
+        geometry[4 * i + 1] = obj.getY();
+        geometry[4 * i + 2] = obj.getWidth();
+        geometry[4 * i + 3] = obj.getHeight();
+        labels[i] = obj.getLabel();
+        styles[i] = obj.getLabelStyle();
+        if (children != null) {
+            for (int child : children) {
+                parents[child] = i;
+            }
+        }
+        index.put(obj, i);
+        return i;
+    }
+
+    private void grow() {
+        int capacity = kinds.length * 2;
+        kinds = Arrays.copyOf(kinds, capacity);
+        parents = Arrays.copyOf(parents, capacity);
+        geometry = Arrays.copyOf(geometry, 4 * capacity);
+        labels = Arrays.copyOf(labels, capacity);
+        styles = Arrays.copyOf(styles, capacity);
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * 把內容平移 (dx, dy) 後建立一份新的物件與連線，加入 builder
+     *
+     * @return 新建立的最上層物件
+     */
+    public List<BasicObject> pasteInto(DiagramBuilder builder, int dx, int dy) {
+        BasicObject[] created = new BasicObject[count];
+        // 每個群組收集已經建好的子物件，等群組本身輪到時再組起來
+        Map<Integer, List<BasicObject>> members = new HashMap<>();
+        List<BasicObject> roots = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            BasicObject obj;
+            if (kinds[i] == GROUP) {
+                obj = builder.group(members.remove(i));
+                obj.setLabel(labels[i]);
+            } else {
+                int x = geometry[4 * i] + dx, y = geometry[4 * i + 1] + dy;
+                int w = geometry[4 * i + 2], h = geometry[4 * i + 3];
+                obj = kinds[i] == OVAL ? builder.addOval(x, y, w, h, labels[i]) : builder.addRect(x, y, w, h, labels[i]);
+            }
+            obj.setLabelStyle(styles[i]);
+            created[i] = obj;
+            if (parents[i] >= 0) {
+                members.computeIfAbsent(parents[i], k -> new ArrayList<>()).add(obj);
+            } else {
+                roots.add(obj);
+            }
+        }
+        for (int k = 0; k < linkCount; k++) {
+            BasicObject start = created[linkEnds[2 * k]];
+            BasicObject end = created[linkEnds[2 * k + 1]];
+            Point startPort = new Point(start.getX() + portOffsets[4 * k], start.getY() + portOffsets[4 * k + 1]);
+            Point endPort = new Point(end.getX() + portOffsets[4 * k + 2], end.getY() + portOffsets[4 * k + 3]);
+            switch (linkKinds[k]) {
+                case GENERALIZATION:
+                    builder.addLink(new GeneralizationLink(start, end, startPort, endPort));
+                    break;
+                case COMPOSITION:
+                    builder.addLink(new CompositionLink(start, end, startPort, endPort));
+                    break;
+                default:
+                    builder.addLink(new AssociationLink(start, end, startPort, endPort));
+            }
+        }
+        return roots;
+    }
+}
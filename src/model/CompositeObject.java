@@ -6,48 +6,168 @@ import java.util.List;
 
 /**
  * CompositeObject 代表一個群組物件，由多個 BasicObject 組成，
- * 用於群組操作（例如移動、群組繪製等），
- * 並不允許直接連線：透過覆寫 getPorts() 與 getConnectableChild() 達到此效果。
+ * 用於群組操作（例如移動、群組繪製等）。
+ * 子物件以群組原點為基準存放相對座標，移動群組只需平移原點，
+ * 邊界則在子物件改變時標記為 dirty、等到需要時才重新計算。
+ * 群組本身沒有連接埠（覆寫 getPorts()），連線會透過 getConnectableChild()
+ * 連到群組內最深層的子物件。
  */
 public class CompositeObject extends BasicObject {
     private List<BasicObject> children = new ArrayList<>();
 
+    // 群組原點在父座標系中的位置，子物件以這個原點為基準存放相對座標
+    private int originX = 0;
+    private int originY = 0;
+
+    // 子物件在群組座標系中的邊界快取，子物件改變時才標記為 dirty
+    private int boundsMinX, boundsMinY, boundsMaxX, boundsMaxY;
+    private boolean boundsDirty = true;
+
+    // 以群組座標系索引子物件，用於往下找出可連線的子物件；第一次查詢時才建立
+    private SpatialIndex childIndex;
+
     public CompositeObject(List<BasicObject> children) {
-        // 初步以 (0,0,0,0) 初始化，待 updateBounds 計算正確邊界
+        // 邊界由子物件推算，不使用 BasicObject 自己的座標欄位
         super(0, 0, 0, 0);
         this.children.addAll(children);
-        updateBounds();
+        for (BasicObject child : this.children) {
+            child.reparent(this);
+        }
         // 群組物件本身不顯示連接埠
         setShowPorts(false);
     }
 
     /**
-     * 根據所有子物件計算群組的邊界
+     * 取得群組原點的絕對座標（子物件的相對座標以此為基準）
+     */
+    int getOriginX() {
+        CompositeObject p = getParent();
+        return (p == null ? 0 : p.getOriginX()) + originX;
+    }
+
+    int getOriginY() {
+        CompositeObject p = getParent();
+        return (p == null ? 0 : p.getOriginY()) + originY;
+    }
+
+    /**
+     * 子物件的幾何改變：邊界與子物件索引標記為 dirty，並繼續往上通知
+     */
+    void childGeometryChanged(BasicObject child) {
+        boundsDirty = true;
+        if (childIndex != null) {
+            childIndex.markDirty(child);
+        }
+        geometryChanged();
+    }
+
+    /**
+     * 從群組中拿掉一個子物件，子物件換回父群組外的座標系（絕對位置不變），
+     * 群組邊界重算並往上通知
+     */
+    void removeChild(BasicObject child) {
+        if (!children.remove(child)) return;
+        if (childIndex != null) {
+            childIndex.remove(child);
+        }
+        child.reparent(null);
+        boundsDirty = true;
+        geometryChanged();
+    }
+
+    /**
+     * 邊界為 dirty 時才根據所有子物件重新計算（群組座標系）
      */
-    private void updateBounds() {
+    private void ensureBounds() {
+        if (!boundsDirty) return;
+        boundsDirty = false;
         if (children.isEmpty()) {
-            setX(0);
-            setY(0);
-            setWidth(0);
-            setHeight(0);
+            boundsMinX = boundsMinY = boundsMaxX = boundsMaxY = 0;
             return;
         }
         int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
         int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
         for (BasicObject child : children) {
-            minX = Math.min(minX, child.getX());
-            minY = Math.min(minY, child.getY());
-            maxX = Math.max(maxX, child.getX() + child.getWidth());
-            maxY = Math.max(maxY, child.getY() + child.getHeight());
+            minX = Math.min(minX, child.getLocalX());
+            minY = Math.min(minY, child.getLocalY());
+            maxX = Math.max(maxX, child.getLocalX() + child.getWidth());
+            maxY = Math.max(maxY, child.getLocalY() + child.getHeight());
         }
-        setX(minX);
-        setY(minY);
-        setWidth(maxX - minX);
-        setHeight(maxY - minY);
+        boundsMinX = minX;
+        boundsMinY = minY;
+        boundsMaxX = maxX;
+        boundsMaxY = maxY;
+    }
+
+    @Override
+    public int getX() {
+        ensureBounds();
+        return getOriginX() + boundsMinX;
+    }
+
+    @Override
+    public int getY() {
+        ensureBounds();
+        return getOriginY() + boundsMinY;
+    }
+
+    @Override
+    public int getWidth() {
+        ensureBounds();
+        return boundsMaxX - boundsMinX;
+    }
+
+    @Override
+    public int getHeight() {
+        ensureBounds();
+        return boundsMaxY - boundsMinY;
+    }
+
+    /**
+     * 設定群組左上角的絕對座標：只平移群組原點
+     */
+    @Override
+    public void setX(int x) {
+        moveBy(x - getX(), 0);
+    }
+
+    @Override
+    public void setY(int y) {
+        moveBy(0, y - getY());
+    }
+
+    /**
+     * 群組的尺寸由子物件決定，不能直接設定
+     */
+    @Override
+    public void setWidth(int width) {
+    }
+
+    @Override
+    public void setHeight(int height) {
+    }
+
+    @Override
+    int getLocalX() {
+        ensureBounds();
+        return originX + boundsMinX;
+    }
+
+    @Override
+    int getLocalY() {
+        ensureBounds();
+        return originY + boundsMinY;
+    }
+
+    @Override
+    void shiftLocal(int dx, int dy) {
+        originX += dx;
+        originY += dy;
     }
 
     /**
-     * 繪製群組：先畫群組邊框，再依序繪製各子物件（避免重複顯示連接埠）
+     * 繪製群組：先畫群組邊框，再依序繪製各子物件。
+     * 子物件在群組化時已取消選取，只有 hover 到可連線的子物件時才會顯示它的連接埠
      */
     @Override
     public void draw(Graphics g) {
@@ -55,10 +175,7 @@ public class CompositeObject extends BasicObject {
         g.setColor(Color.MAGENTA);
         g.drawRect(getX(), getY(), getWidth(), getHeight());
         for (BasicObject child : children) {
-            boolean originalShowPorts = child.isShowPorts();
-            child.setShowPorts(false);
             child.draw(g);
-            child.setShowPorts(originalShowPorts);
         }
         // CompositeObject 本身不提供有效連接埠
         if (isShowPorts()) {
@@ -85,22 +202,37 @@ public class CompositeObject extends BasicObject {
     }
 
     /**
-     * 這裡修改：群組物件內部物件不允許直接連線，
-     * 故回傳 null 表示無可連線的子物件。
+     * 往下搜尋群組階層，找出包含指定點、最深層的可連線物件（非群組的 BasicObject）。
+     * 每一層都透過以群組座標系建立的子物件索引查詢，因此不需要掃描所有子物件。
+     *
+     * @param p 查詢點（絕對座標）
+     * @return 最深層的可連線物件，點落在子物件之間的空白處時回傳 null
      */
-    public BasicObject getConnectableChild() {
-        // 修改前可能回傳 children.get(0)，但現在群組後的子物件不可被連線
-        return null;
+    public BasicObject getConnectableChild(Point p) {
+        if (childIndex == null) {
+            childIndex = new SpatialIndex(true);
+            for (BasicObject child : children) {
+                childIndex.insert(child);
+            }
+        }
+        Point local = new Point(p.x - getOriginX(), p.y - getOriginY());
+        BasicObject hit = childIndex.findTopmostAt(local);
+        if (hit instanceof CompositeObject) {
+            return ((CompositeObject) hit).getConnectableChild(p);
+        }
+        return hit;
     }
 
     /**
-     * 移動群組：所有子物件同時移動，再重新計算邊界
+     * 移動群組：只平移群組原點，子物件存放相對座標所以不需要逐一移動，
+     * 邊界在群組座標系中也不變，因此是 O(1)
      */
+    @Override
     public void moveBy(int dx, int dy) {
-        for (BasicObject child : children) {
-            child.moveBy(dx, dy);
-        }
-        updateBounds();
+        if (dx == 0 && dy == 0) return;
+        originX += dx;
+        originY += dy;
+        geometryChanged();
     }
     
     @Override
@@ -114,9 +246,18 @@ public class CompositeObject extends BasicObject {
     }
 
 
+    /**
+     * 解散群組：子物件換回父座標系（絕對位置不變）後輸出
+     */
     @Override
     public void ungroupTo(List<BasicObject> output) {
+        for (BasicObject child : children) {
+            child.reparent(getParent());
+        }
         output.addAll(children);
+        children.clear();
+        childIndex = null;
+        boundsDirty = true;
     }
 
 }
\ No newline at end of file
@@ -28,24 +28,22 @@ public class CompositionLink extends LinkObject {
      * 3. 利用連線方向計算終點（上頂點）、底部頂點（延反方向延伸 2 * halfLength）
      *    以及中心點（tip 與 bottom 的中點）。
      * 4. 以中心點與與連線垂直的方向，計算菱形左右兩頂點。
-     * 5. 利用 Polygon 組成菱形，並繪製出菱形邊框。
+     * 5. 利用 Polygon 組成菱形，交由 LinkObject 快取並繪製菱形邊框。
      *
-     * @param g2d Graphics2D 物件，用於繪製菱形
+     * @param start 起點連接埠座標
+     * @param end   終點連接埠座標
+     * @return 菱形的 Polygon，起點與終點重疊時回傳 null
      */
     @Override
-    protected void drawDecoration(Graphics2D g2d) {
+    protected Shape createDecoration(Point start, Point end) {
         int halfLength = 10;   // 菱形上頂點到中心點的距離
         int diamondWidth = 10; // 中心點左右各偏移的距離
 
-        // 取得連線的起點與終點連接埠座標
-        Point start = getStartPort();
-        Point end = getEndPort();
-
         // 計算連線方向向量 (dx, dy)
         double dx = end.x - start.x;
         double dy = end.y - start.y;
         double len = Math.sqrt(dx * dx + dy * dy);
-        if (len == 0) return; // 避免除以零
+        if (len == 0) return null; // 避免除以零
 
         // 正規化方向向量 (ux, uy)
         double ux = dx / len;
@@ -77,6 +75,6 @@ public class CompositionLink extends LinkObject {
         diamond.addPoint(bottom.x, bottom.y); // 下頂點
         diamond.addPoint(lx, ly);             // 左頂點
 
-        g2d.drawPolygon(diamond);
+        return diamond;
     }
 }
@@ -0,0 +1,148 @@
+package model;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * DiagramBuilder 讓程式一次建立大量物件、連線與群組。
+ *
+ * 建立過程只在 builder 內累積，model、空間索引與標籤索引都不會變動；
+ * commit 時在單一交易內一次加入，監聽者只收到一批變動，畫面也只重畫一次。
+ * 由 CanvasModel.newBuilder() 取得，必須在 EDT 上 commit，且只能 commit 一次。
+ *
+ * <pre>
+ * DiagramBuilder b = model.newBuilder();
+ * RectObject order = b.addRect(100, 100, 120, 80, "Order");
+ * RectObject item = b.addRect(300, 100, 120, 80, "Item");
+ * b.compose(item, order);
+ * b.commit();
+ * </pre>
+ */
+public final class DiagramBuilder {
+    private final CanvasModel model;
+    private final List<BasicObject> objects = new ArrayList<>();
+    private final List<LinkObject> links = new ArrayList<>();
+    // 與 objects 內容相同的 identity set，用來確認群組的成員是這個 builder 的物件
+    private final Set<BasicObject> added = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    // 已經被放進群組、commit 時不再當作最上層物件的物件
+    private final Set<BasicObject> grouped = Collections.newSetFromMap(new IdentityHashMap<>());
+    private boolean committed = false;
+
+    DiagramBuilder(CanvasModel model) {
+        this.model = model;
+    }
+
+    /**
+     * 建立一個矩形物件
+     */
+    public RectObject addRect(int x, int y, int width, int height, String label) {
+        RectObject obj = new RectObject(x, y, width, height);
+        obj.setLabel(label);
+        return addObject(obj);
+    }
+
+    /**
+     * 建立一個橢圓物件
+     */
+    public OvalObject addOval(int x, int y, int width, int height, String label) {
+        OvalObject obj = new OvalObject(x, y, width, height);
+        obj.setLabel(label);
+        return addObject(obj);
+    }
+
+    /**
+     * 加入一個自行建立的最上層物件
+     */
+    public <T extends BasicObject> T addObject(T obj) {
+        checkOpen();
+        objects.add(obj);
+        added.add(obj);
+        return obj;
+    }
+
+    /**
+     * 加入一條自行建立的連線
+     */
+    public <T extends LinkObject> T addLink(T link) {
+        checkOpen();
+        links.add(link);
+        return link;
+    }
+
+    /**
+     * 在兩個物件之間建立 AssociationLink，兩端各取最靠近對方中心的連接埠
+     */
+    public AssociationLink associate(BasicObject from, BasicObject to) {
+        return addLink(new AssociationLink(from, to, portToward(from, to), portToward(to, from)));
+    }
+
+    /**
+     * 建立 GeneralizationLink，from 為子類別、to 為父類別
+     */
+    public GeneralizationLink generalize(BasicObject from, BasicObject to) {
+        return addLink(new GeneralizationLink(from, to, portToward(from, to), portToward(to, from)));
+    }
+
+    /**
+     * 建立 CompositionLink，part 為部分、whole 為整體（菱形畫在整體端）
+     */
+    public CompositionLink compose(BasicObject part, BasicObject whole) {
+        return addLink(new CompositionLink(part, whole, portToward(part, whole), portToward(whole, part)));
+    }
+
+    /**
+     * 把這個 builder 中的幾個最上層物件組成群組，成員之後不再是最上層物件
+     *
+     * @param members 要群組的物件，必須是透過這個 builder 加入且尚未被群組的物件
+     * @return 新的群組
+     */
+    public CompositeObject group(List<? extends BasicObject> members) {
+        checkOpen();
+        // 先檢查全部的成員，不合法時 builder 維持原狀
+        Set<BasicObject> checked = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (BasicObject member : members) {
+            if (!added.contains(member)) {
+                throw new IllegalArgumentException("物件不是透過這個 builder 加入的");
+            }
+            if (member.getParent() != null || grouped.contains(member) || !checked.add(member)) {
+                throw new IllegalArgumentException("物件已經在群組中");
+            }
+        }
+        grouped.addAll(checked);
+        CompositeObject composite = new CompositeObject(new ArrayList<>(members));
+        objects.add(composite);
+        added.add(composite);
+        return composite;
+    }
+
+    /**
+     * 把累積的物件與連線一次加入 model。
+     */
+    public void commit() {
+        checkOpen();
+        committed = true;
+        List<BasicObject> topLevel = objects;
+        if (!grouped.isEmpty()) {
+            topLevel = new ArrayList<>(objects.size() - grouped.size());
+            for (BasicObject obj : objects) {
+                if (!grouped.contains(obj)) topLevel.add(obj);
+            }
+        }
+        model.bulkInsert(topLevel, links);
+    }
+
+    private void checkOpen() {
+        if (committed) {
+            throw new IllegalStateException("DiagramBuilder 已經 commit");
+        }
+    }
+
+    private static Point portToward(BasicObject obj, BasicObject other) {
+        return obj.getClosestPort(new Point(other.getX() + other.getWidth() / 2, other.getY() + other.getHeight() / 2));
+    }
+}
@@ -1,6 +1,7 @@
 package model;
 
 import java.awt.Graphics;
+import java.util.concurrent.ThreadLocalRandom;
 
 public abstract class DisplayObject {
     protected static final int MIN_DEPTH = 0;
@@ -9,10 +10,33 @@ public abstract class DisplayObject {
 
     protected int depth;
 
+    // 穩定的識別碼，用來在不同版本或不同編輯器之間對應同一個物件。
+    // 以 64 位元亂數產生，多個編輯器各自建立物件也不必協調；0 保留給「沒有物件」
+    private long id = newId();
+
     public DisplayObject() {
         this.depth = nextDepth--;
     }
 
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * 指定識別碼，只用於還原或同步其他版本中的物件
+     */
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    private static long newId() {
+        long id;
+        do {
+            id = ThreadLocalRandom.current().nextLong();
+        } while (id == 0);
+        return id;
+    }
+
     public int getDepth() {
         return depth;
     }
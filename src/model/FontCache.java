@@ -0,0 +1,31 @@
+package model;
+
+import java.awt.Font;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * FontCache 以 (字體大小, 樣式) 為 key 共用 Font 物件，
+ * 避免每個物件在每次繪製時都重新 new Font。
+ */
+public final class FontCache {
+    private static final String FAMILY = "SansSerif";
+
+    // key 的低兩位放樣式 (PLAIN / BOLD / ITALIC)，其餘位元放字體大小
+    private static final Map<Integer, Font> CACHE = new ConcurrentHashMap<>();
+
+    private FontCache() {
+    }
+
+    /**
+     * 取得指定大小與樣式的共用 Font。
+     *
+     * @param size  字體大小
+     * @param style Font.PLAIN、Font.BOLD、Font.ITALIC 或其組合
+     * @return 快取中的 Font
+     */
+    public static Font get(int size, int style) {
+        int key = (size << 2) | (style & 3);
+        return CACHE.computeIfAbsent(key, k -> new Font(FAMILY, style, size));
+    }
+}
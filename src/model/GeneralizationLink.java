@@ -25,19 +25,17 @@ public class GeneralizationLink extends LinkObject {
      * 繪製箭頭裝飾：
      * 1. 取得連線的起點與終點。
      * 2. 根據終點與起點計算連線方向，並利用反向角度算出箭頭兩側頂點。
-     * 3. 用 Polygon 將終點與兩側頂點組成箭頭形狀，並繪製出來。
+     * 3. 用 Polygon 將終點與兩側頂點組成箭頭形狀，交由 LinkObject 快取與繪製。
      *
-     * @param g2d Graphics2D 物件，用於繪製箭頭
+     * @param start 起點連接埠座標
+     * @param end   終點連接埠座標
+     * @return 箭頭的 Polygon
      */
     @Override
-    protected void drawDecoration(Graphics2D g2d) {
+    protected Shape createDecoration(Point start, Point end) {
         int barb = 15; // 箭頭邊長
         double phi = Math.toRadians(40); // 箭頭角度 (40 度轉為弧度)
 
-        // 透過 getter 取得連線起點與終點的連接埠座標
-        Point start = getStartPort();
-        Point end = getEndPort();
-
         // 計算箭頭所依據的角度
         // 注意：atan2 的參數順序為 (y, x)
         double theta = Math.atan2(-start.y, end.x - start.x);
@@ -54,7 +52,6 @@ public class GeneralizationLink extends LinkObject {
         arrowHead.addPoint((int)x1, (int)y1);
         arrowHead.addPoint((int)x2, (int)y2);
 
-        // 繪製箭頭
-        g2d.draw(arrowHead);
+        return arrowHead;
     }
 }
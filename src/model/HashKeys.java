@@ -0,0 +1,26 @@
+package model;
+
+/**
+ * HashKeys 讓編碼成 long 的 HashMap key 分散得更均勻。
+ *
+ * Long.hashCode 只是把高低 32 位元互相 xor，把幾個小整數（格子座標、字元等）直接拼成 long 當 key 時，
+ * 大量 key 會得到相同的 hash，大圖時 HashMap 會退化成樹狀搜尋。
+ * 乘上一個奇數常數可以把每個位元的變化擴散到高位元，而且乘法可逆，不會讓不同的 key 重複。
+ */
+public final class HashKeys {
+    // 2^64 / 黃金比例，取最接近的奇數
+    private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+
+    private HashKeys() {
+    }
+
+    /**
+     * 把已經編碼好的 key 打散，不同的輸入一定得到不同的輸出
+     *
+     * @param key 編碼好的 key
+     * @return 打散後的 key
+     */
+    public static long spread(long key) {
+        return key * GOLDEN;
+    }
+}
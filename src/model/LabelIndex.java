@@ -0,0 +1,256 @@
+package model;
+
+import enums.LabelShape;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * LabelIndex 是標籤的全文與屬性索引，讓搜尋不用逐一掃描所有物件。
+ *
+ * 文字部分以 n-gram 倒排索引實作：每個標籤（轉小寫）的所有 1 ~ 3 字元片段各自對應到含有它的物件。
+ * 查詢時取查詢字串中物件數最少的片段當候選，再逐一確認是否真的包含整個字串，
+ * 候選數量通常遠小於物件總數。標籤顏色與形狀另外各有一張對照表。
+ *
+ * 物件以流水號表示，倒排列表只存 int，大量匯入時記憶體與 GC 的負擔都小。
+ * 標籤改變時只把新出現的片段加入列表、不從舊的列表刪除，刪除物件時也只讓它的流水號失效，
+ * 過時的項目在查詢時會被「確認目前屬性」這一步濾掉；標籤改回舊值時同一個物件可能在列表中出現兩次，查詢結果另外去除重複。
+ * 累積的過時項目（刪除與修改的次數）超過索引中的物件數時整個重建一次，攤還下來每次修改仍是常數成本。
+ */
+class LabelIndex {
+    private static final int MAX_GRAM = 3;
+    // 過時項目少於這個數量時不重建，小圖不必反覆整理
+    private static final int MIN_COMPACT = 1024;
+
+    private final Map<Long, IntList> grams = new HashMap<>();
+    private final Map<Integer, IntList> byColor = new HashMap<>();
+    private final Map<LabelShape, IntList> byShape = new EnumMap<>(LabelShape.class);
+
+    // 流水號 → 物件（已刪除的為 null），以及物件目前被索引的屬性
+    private List<BasicObject> objects = new ArrayList<>();
+    private final Map<BasicObject, Entry> entries = new IdentityHashMap<>();
+    // 自上次重建以來可能留下過時項目的刪除與修改次數
+    private int garbage = 0;
+
+    /**
+     * 把物件與其所有子物件加入索引。已經在索引中的物件連同子物件一起略過，
+     * 建立群組時只需要處理群組本身。
+     *
+     * @param obj 要加入的物件
+     */
+    void addTree(BasicObject obj) {
+        if (obj.labelIndex == this) return;
+        obj.labelIndex = this;
+        Entry entry = new Entry(objects.size(), normalize(obj.getLabel()), obj.getLabelStyle());
+        objects.add(obj);
+        entries.put(obj, entry);
+        index(entry, null);
+        for (BasicObject child : obj.getChildren()) {
+            addTree(child);
+        }
+    }
+
+    /**
+     * 物件的標籤屬性改變後更新索引
+     *
+     * @param obj 屬性改變的物件
+     */
+    void update(BasicObject obj) {
+        Entry old = entries.get(obj);
+        if (old == null) return;
+        Entry entry = new Entry(old.id, normalize(obj.getLabel()), obj.getLabelStyle());
+        entries.put(obj, entry);
+        index(entry, old);
+        garbage++;
+        compactIfNeeded();
+    }
+
+    /**
+     * 把一個物件移出索引（不含子物件），物件真的從畫布刪除時呼叫；
+     * 被包進群組的物件仍然可以搜尋，不走這條路
+     *
+     * @param obj 要移出的物件
+     */
+    void remove(BasicObject obj) {
+        if (obj.labelIndex != this) return;
+        obj.labelIndex = null;
+        Entry entry = entries.remove(obj);
+        objects.set(entry.id, null);
+        garbage++;
+        compactIfNeeded();
+    }
+
+    /**
+     * 過時項目比有效的物件還多時，以目前的物件重新編號並重建所有列表
+     */
+    private void compactIfNeeded() {
+        if (garbage < MIN_COMPACT || garbage < entries.size()) return;
+        List<BasicObject> live = new ArrayList<>(entries.size());
+        for (BasicObject obj : objects) {
+            if (obj != null) live.add(obj);
+        }
+        objects = live;
+        grams.clear();
+        byColor.clear();
+        byShape.clear();
+        for (int id = 0; id < live.size(); id++) {
+            Entry old = entries.get(live.get(id));
+            Entry entry = new Entry(id, old.text, old.style);
+            entries.put(live.get(id), entry);
+            index(entry, null);
+        }
+        garbage = 0;
+    }
+
+    /**
+     * 把 entry 加入它所屬的列表，old 中已經有的片段與屬性表示早就在列表裡，略過
+     */
+    private void index(Entry entry, Entry old) {
+        String text = entry.text;
+        for (int len = 1; len <= MAX_GRAM; len++) {
+            for (int i = 0; i + len <= text.length(); i++) {
+                // 同一個標籤裡重複的片段只加一次；舊標籤已經有的片段也不用再加
+                if (text.indexOf(text.substring(i, i + len)) < i) continue;
+                if (old != null && old.text.contains(text.substring(i, i + len))) continue;
+                grams.computeIfAbsent(gramKey(text, i, len), k -> new IntList()).add(entry.id);
+            }
+        }
+        int rgb = entry.style.getColor().getRGB();
+        if (old == null || old.style.getColor().getRGB() != rgb) {
+            byColor.computeIfAbsent(rgb, k -> new IntList()).add(entry.id);
+        }
+        if (old == null || old.style.getShape() != entry.style.getShape()) {
+            byShape.computeIfAbsent(entry.style.getShape(), k -> new IntList()).add(entry.id);
+        }
+    }
+
+    /**
+     * 搜尋標籤。查詢字串中 shape:rectangle / shape:oval 與 color:#RRGGBB 為屬性條件，
+     * 其餘文字以不分大小寫的子字串比對，所有條件都要符合。
+     *
+     * @param query  查詢字串
+     * @param limit  最多回傳幾筆
+     * @param filter 額外條件，例如只要目前還在畫布上的物件
+     * @return 符合的物件
+     */
+    List<BasicObject> search(String query, int limit, Predicate<BasicObject> filter) {
+        StringBuilder textBuilder = new StringBuilder();
+        Integer color = null;
+        LabelShape shape = null;
+        for (String token : query.trim().split("\\s+")) {
+            String lower = token.toLowerCase(Locale.ROOT);
+            if (lower.startsWith("shape:")) {
+                shape = parseShape(lower.substring(6));
+                if (shape == null) return Collections.emptyList();
+            } else if (lower.startsWith("color:")) {
+                try {
+                    color = Color.decode(lower.substring(6)).getRGB();
+                } catch (NumberFormatException e) {
+                    return Collections.emptyList();
+                }
+            } else if (!token.isEmpty()) {
+                if (textBuilder.length() > 0) textBuilder.append(' ');
+                textBuilder.append(lower);
+            }
+        }
+        String text = textBuilder.toString();
+
+        // 從最小的候選列表開始
+        IntList candidates = null;
+        if (!text.isEmpty()) candidates = smaller(candidates, rarestGram(text));
+        if (color != null) candidates = smaller(candidates, byColor.getOrDefault(color, IntList.EMPTY));
+        if (shape != null) candidates = smaller(candidates, byShape.getOrDefault(shape, IntList.EMPTY));
+        if (candidates == null) return Collections.emptyList();
+
+        List<BasicObject> result = new ArrayList<>();
+        Set<Integer> seen = new HashSet<>();
+        for (int k = 0; k < candidates.size; k++) {
+            BasicObject obj = objects.get(candidates.values[k]);
+            if (obj == null) continue;
+            Entry entry = entries.get(obj);
+            if (!text.isEmpty() && !entry.text.contains(text)) continue;
+            if (color != null && entry.style.getColor().getRGB() != color) continue;
+            if (shape != null && entry.style.getShape() != shape) continue;
+            if (!filter.test(obj) || !seen.add(entry.id)) continue;
+            result.add(obj);
+            if (result.size() >= limit) break;
+        }
+        return result;
+    }
+
+    private IntList rarestGram(String text) {
+        int len = Math.min(MAX_GRAM, text.length());
+        IntList best = null;
+        for (int i = 0; i + len <= text.length(); i++) {
+            IntList list = grams.getOrDefault(gramKey(text, i, len), IntList.EMPTY);
+            if (best == null || list.size < best.size) best = list;
+            if (best.size == 0) break;
+        }
+        return best;
+    }
+
+    private static IntList smaller(IntList current, IntList other) {
+        return current == null || other.size < current.size ? other : current;
+    }
+
+    private static LabelShape parseShape(String name) {
+        for (LabelShape shape : LabelShape.values()) {
+            if (shape.name().equalsIgnoreCase(name)) return shape;
+        }
+        return null;
+    }
+
+    private static String normalize(String label) {
+        return label == null ? "" : label.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 把長度 1 ~ 3 的片段編成一個 long：每個字元 16 位元，最高位元組放長度，再以 HashKeys 打散
+     */
+    private static long gramKey(String text, int start, int len) {
+        long key = len;
+        for (int i = 0; i < len; i++) {
+            key = (key << 16) | text.charAt(start + i);
+        }
+        return HashKeys.spread(key);
+    }
+
+    /**
+     * 只能附加的 int 列表
+     */
+    private static final class IntList {
+        static final IntList EMPTY = new IntList();
+
+        int[] values = new int[4];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+    }
+
+    private static final class Entry {
+        final int id;
+        final String text;
+        // 共用的外觀，不另外複製顏色與形狀
+        final LabelStyle style;
+
+        Entry(int id, String text, LabelStyle style) {
+            this.id = id;
+            this.text = text;
+            this.style = style;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package model;
+
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.font.FontRenderContext;
+import java.awt.font.TextLayout;
+
+/**
+ * LabelLayout 保存一個標籤已排版好的 TextLayout 與量測結果，
+ * 只要標籤文字、字體大小與繪製環境 (FontRenderContext) 不變就可以重複使用。
+ */
+final class LabelLayout {
+    private final FontRenderContext frc;
+    private final TextLayout textLayout;
+    private final int width;
+    private final int ascent;
+
+    LabelLayout(String text, Font font, FontRenderContext frc) {
+        this.frc = frc;
+        this.textLayout = new TextLayout(text, font, frc);
+        // 與 FontMetrics.stringWidth / getAscent 一樣取整數，維持原本的標籤位置
+        this.width = Math.round(textLayout.getAdvance());
+        this.ascent = (int) Math.ceil(textLayout.getAscent());
+    }
+
+    /**
+     * 排版結果與 FontRenderContext 綁定，例如開關反鋸齒後需要重新排版。
+     */
+    boolean isValidFor(FontRenderContext other) {
+        return frc.equals(other);
+    }
+
+    int getWidth() { return width; }
+    int getAscent() { return ascent; }
+
+    /**
+     * 以 (x, baselineY) 為基線起點繪製文字。
+     */
+    void draw(Graphics2D g2d, int x, int baselineY) {
+        textLayout.draw(g2d, x, baselineY);
+    }
+}
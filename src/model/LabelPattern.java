@@ -0,0 +1,113 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * LabelPattern 是批次修改標籤文字時使用的樣板。
+ * 樣板中的 {label} 會換成物件原本的標籤，{n} 會換成物件在這次修改中的序號（從 1 開始），
+ * 其餘文字原樣保留。例如 "{label}" 保留原標籤，"Step {n}" 依序編號。
+ * 樣板在建立時就拆成片段，套用到大量物件時不需要重複解析。
+ * 只修改一個物件時以 literal 建立，輸入的文字原樣成為標籤，不解析佔位符。
+ */
+public final class LabelPattern {
+    public static final String LABEL = "{label}";
+    public static final String NUMBER = "{n}";
+
+    private enum Kind { TEXT, LABEL, NUMBER }
+
+    /**
+     * 樣板的一個片段：一般文字或一種佔位符
+     */
+    private static final class Part {
+        final Kind kind;
+        final String text;
+
+        Part(Kind kind, String text) {
+            this.kind = kind;
+            this.text = text;
+        }
+    }
+
+    private final List<Part> parts;
+    private final boolean identity;
+
+    private LabelPattern(List<Part> parts) {
+        this.parts = parts;
+        this.identity = parts.size() == 1 && parts.get(0).kind == Kind.LABEL;
+    }
+
+    /**
+     * 解析樣板
+     *
+     * @param pattern 樣板文字
+     * @return 解析後的樣板
+     */
+    public static LabelPattern compile(String pattern) {
+        List<Part> parts = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        int i = 0;
+        while (i < pattern.length()) {
+            Kind kind = pattern.startsWith(LABEL, i) ? Kind.LABEL : pattern.startsWith(NUMBER, i) ? Kind.NUMBER : null;
+            if (kind == null) {
+                text.append(pattern.charAt(i++));
+                continue;
+            }
+            if (text.length() > 0) {
+                parts.add(new Part(Kind.TEXT, text.toString()));
+                text.setLength(0);
+            }
+            parts.add(new Part(kind, null));
+            i += kind == Kind.LABEL ? LABEL.length() : NUMBER.length();
+        }
+        if (text.length() > 0 || parts.isEmpty()) {
+            parts.add(new Part(Kind.TEXT, text.toString()));
+        }
+        return new LabelPattern(parts);
+    }
+
+    /**
+     * 建立把標籤設成固定文字的樣板，文字中的 {label}、{n} 不會被替換
+     *
+     * @param label 新標籤
+     * @return 樣板
+     */
+    public static LabelPattern literal(String label) {
+        List<Part> parts = new ArrayList<>(1);
+        parts.add(new Part(Kind.TEXT, label));
+        return new LabelPattern(parts);
+    }
+
+    /**
+     * 樣板是否只是 {label}，也就是不改變任何標籤
+     */
+    public boolean isIdentity() {
+        return identity;
+    }
+
+    /**
+     * 產生物件的新標籤
+     *
+     * @param current 物件目前的標籤
+     * @param number  物件的序號
+     * @return 新標籤
+     */
+    public String apply(String current, int number) {
+        if (identity) return current;
+        if (parts.size() == 1 && parts.get(0).kind == Kind.TEXT) return parts.get(0).text;
+        StringBuilder sb = new StringBuilder();
+        for (Part part : parts) {
+            switch (part.kind) {
+                case LABEL:
+                    sb.append(current);
+                    break;
+                case NUMBER:
+                    sb.append(number);
+                    break;
+                default:
+                    sb.append(part.text);
+            }
+        }
+        return sb.toString();
+    }
+}
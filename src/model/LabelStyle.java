@@ -0,0 +1,89 @@
+package model;
+
+import enums.LabelShape;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * LabelStyle 是物件標籤外觀（形狀、底色、字體大小）的不可變紀錄。
+ * 相同外觀的物件共用同一個實例：一律透過 {@link #of} 取得，同樣的組合只會建立一次，
+ * 因此物件只需保留一個參考，改變外觀也只是換一個參考。
+ * 底色與字型在建立時就準備好，繪製時直接使用。
+ */
+public final class LabelStyle {
+    // key：形狀序號放最高 8 位，字體大小放接下來的 24 位，最低 32 位放 ARGB
+    private static final Map<Long, LabelStyle> POOL = new ConcurrentHashMap<>();
+
+    public static final LabelStyle DEFAULT = of(LabelShape.RECTANGLE, Color.WHITE, 12);
+
+    private final LabelShape shape;
+    private final Color color;
+    private final int fontSize;
+    private final Font font;
+
+    private LabelStyle(LabelShape shape, Color color, int fontSize) {
+        this.shape = shape;
+        this.color = color;
+        this.fontSize = fontSize;
+        this.font = FontCache.get(fontSize, Font.PLAIN);
+    }
+
+    /**
+     * 取得指定外觀的共用實例
+     *
+     * @param shape    標籤形狀
+     * @param color    標籤底色，只看 ARGB 值
+     * @param fontSize 字體大小
+     * @return 共用的 LabelStyle
+     */
+    public static LabelStyle of(LabelShape shape, Color color, int fontSize) {
+        return of(shape, color.getRGB(), fontSize);
+    }
+
+    /**
+     * 以 ARGB 值指定底色，命中快取時不需要另外建立 Color
+     */
+    public static LabelStyle of(LabelShape shape, int argb, int fontSize) {
+        if (shape == null) {
+            throw new IllegalArgumentException("標籤形狀不可為 null");
+        }
+        if (fontSize <= 0 || fontSize >= (1 << 24)) {
+            throw new IllegalArgumentException("字體大小超出範圍：" + fontSize);
+        }
+        long key = ((long) shape.ordinal() << 56) | ((long) fontSize << 32) | (argb & 0xFFFFFFFFL);
+        LabelStyle style = POOL.get(key);
+        if (style == null) {
+            style = POOL.computeIfAbsent(key, k -> new LabelStyle(shape, new Color(argb, true), fontSize));
+        }
+        return style;
+    }
+
+    public LabelShape getShape() { return shape; }
+    public Color getColor() { return color; }
+    public int getFontSize() { return fontSize; }
+
+    /**
+     * 取得對應字體大小的共用 Font
+     */
+    public Font getFont() { return font; }
+
+    public LabelStyle withShape(LabelShape shape) {
+        return shape == this.shape ? this : of(shape, color.getRGB(), fontSize);
+    }
+
+    public LabelStyle withColor(Color color) {
+        return color.getRGB() == this.color.getRGB() ? this : of(shape, color.getRGB(), fontSize);
+    }
+
+    public LabelStyle withFontSize(int fontSize) {
+        return fontSize == this.fontSize ? this : of(shape, color.getRGB(), fontSize);
+    }
+
+    @Override
+    public String toString() {
+        return "LabelStyle[" + shape + ", #" + Integer.toHexString(color.getRGB()) + ", " + fontSize + "]";
+    }
+}
@@ -0,0 +1,241 @@
+package model;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * LinkIndex 以固定大小的格子索引 model 中的連線外框，並記錄每個物件是哪些連線的端點，
+ * 讓局部重畫、繞線與分束只需要處理附近或端點移動過的連線，而不用掃描所有連線。
+ *
+ * 與 SpatialIndex 相同採延後更新：最上層物件移動時只記下它，繞線結果改變的連線只標記為 dirty，
+ * 等到下一次查詢時才找出端點在這些物件（含群組內）上的連線，重新放進正確的格子。
+ * 外框跨過太多格子的長連線不放進格子，每次查詢直接檢查。
+ */
+final class LinkIndex {
+    private static final int CELL_SIZE = 256;
+    // 外框超過這麼多格子的連線改放進 wide，避免一條對角線佔滿整張格子表
+    private static final int MAX_CELLS_PER_LINK = 64;
+    private static final int[] WIDE = new int[0];
+
+    // 格子座標 → 外框落在該格子內的連線
+    private final Map<Long, List<LinkObject>> cells = new HashMap<>();
+    // 連線 → 目前所佔的格子範圍 {minCx, minCy, maxCx, maxCy}，放在 wide 的連線為 WIDE
+    private final Map<LinkObject, int[]> entries = new IdentityHashMap<>();
+    private final Set<LinkObject> wide = Collections.newSetFromMap(new IdentityHashMap<>());
+    // 端點物件 → 以它為起點或終點的連線
+    private final Map<BasicObject, List<LinkObject>> byEndpoint = new IdentityHashMap<>();
+
+    private final Set<LinkObject> dirty = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Set<BasicObject> movedRoots = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    void insert(LinkObject link) {
+        if (entries.containsKey(link)) return;
+        addEndpoint(link.getStartObject(), link);
+        if (link.getEndObject() != link.getStartObject()) {
+            addEndpoint(link.getEndObject(), link);
+        }
+        int[] range = cellRange(link);
+        entries.put(link, range);
+        addToCells(link, range);
+    }
+
+    /**
+     * 一次移除多條連線
+     *
+     * @param links 要移除的連線
+     */
+    void removeAll(Collection<LinkObject> links) {
+        for (LinkObject link : links) {
+            int[] range = entries.remove(link);
+            if (range == null) continue;
+            removeFromCells(link, range);
+            dirty.remove(link);
+            removeEndpoint(link.getStartObject(), link);
+            removeEndpoint(link.getEndObject(), link);
+        }
+    }
+
+    /**
+     * 連線本身的外框改變（例如繞線結果更新），延後到下一次查詢再更新格子
+     */
+    void markDirty(LinkObject link) {
+        if (entries.containsKey(link)) {
+            dirty.add(link);
+        }
+    }
+
+    /**
+     * 連線的其中一端換成另一個物件，在欄位改變前呼叫；外框由 markDirty 另外更新
+     *
+     * @param other 沒有改變的另一端
+     * @param oldObj 原本的端點
+     * @param newObj 新的端點
+     */
+    void endpointChanged(LinkObject link, BasicObject other, BasicObject oldObj, BasicObject newObj) {
+        if (!entries.containsKey(link) || oldObj == newObj) return;
+        if (oldObj != other) removeEndpoint(oldObj, link);
+        if (newObj != other) addEndpoint(newObj, link);
+    }
+
+    /**
+     * 最上層物件的位置或尺寸改變，端點在它或它子物件上的連線到下一次查詢時再更新
+     */
+    void rootMoved(BasicObject root) {
+        movedRoots.add(root);
+    }
+
+    /**
+     * 以指定物件為起點或終點的連線（不含它的子物件）
+     *
+     * @param obj 端點物件
+     * @return 唯讀的連線列表，沒有時為空列表
+     */
+    List<LinkObject> linksOf(BasicObject obj) {
+        List<LinkObject> links = byEndpoint.get(obj);
+        return links == null ? Collections.emptyList() : Collections.unmodifiableList(links);
+    }
+
+    /**
+     * 找出外框與指定矩形相交的連線（不保證順序）
+     *
+     * @param area 查詢範圍
+     * @return 與範圍相交的連線
+     */
+    List<LinkObject> query(Rectangle area) {
+        flushDirty();
+        List<LinkObject> result = new ArrayList<>();
+        int minCx = cell(area.x), minCy = cell(area.y);
+        int maxCx = cell(area.x + area.width), maxCy = cell(area.y + area.height);
+        long cellCount = (long) (maxCx - minCx + 1) * (maxCy - minCy + 1);
+
+        // 查詢範圍比連線數量還大時，直接逐一檢查比走訪格子便宜
+        if (cellCount > entries.size()) {
+            for (LinkObject link : entries.keySet()) {
+                if (link.intersects(area)) result.add(link);
+            }
+            return result;
+        }
+
+        Set<LinkObject> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int cx = minCx; cx <= maxCx; cx++) {
+            for (int cy = minCy; cy <= maxCy; cy++) {
+                List<LinkObject> bucket = cells.get(key(cx, cy));
+                if (bucket == null) continue;
+                for (LinkObject link : bucket) {
+                    if (link.intersects(area) && seen.add(link)) {
+                        result.add(link);
+                    }
+                }
+            }
+        }
+        for (LinkObject link : wide) {
+            if (link.intersects(area)) result.add(link);
+        }
+        return result;
+    }
+
+    private void flushDirty() {
+        if (!movedRoots.isEmpty()) {
+            for (BasicObject root : movedRoots) {
+                collectLinks(root);
+            }
+            movedRoots.clear();
+        }
+        if (dirty.isEmpty()) return;
+        for (LinkObject link : dirty) {
+            int[] oldRange = entries.get(link);
+            int[] newRange = cellRange(link);
+            if (sameRange(oldRange, newRange)) continue;
+            removeFromCells(link, oldRange);
+            addToCells(link, newRange);
+            entries.put(link, newRange);
+        }
+        dirty.clear();
+    }
+
+    private void collectLinks(BasicObject obj) {
+        List<LinkObject> links = byEndpoint.get(obj);
+        if (links != null) dirty.addAll(links);
+        for (BasicObject child : obj.getChildren()) {
+            collectLinks(child);
+        }
+    }
+
+    private void addEndpoint(BasicObject obj, LinkObject link) {
+        byEndpoint.computeIfAbsent(obj, k -> new ArrayList<>(2)).add(link);
+    }
+
+    private void removeEndpoint(BasicObject obj, LinkObject link) {
+        List<LinkObject> links = byEndpoint.get(obj);
+        if (links == null) return;
+        links.remove(link);
+        if (links.isEmpty()) byEndpoint.remove(obj);
+    }
+
+    private void addToCells(LinkObject link, int[] range) {
+        if (range == WIDE) {
+            wide.add(link);
+            return;
+        }
+        for (int cx = range[0]; cx <= range[2]; cx++) {
+            for (int cy = range[1]; cy <= range[3]; cy++) {
+                cells.computeIfAbsent(key(cx, cy), k -> new ArrayList<>()).add(link);
+            }
+        }
+    }
+
+    private void removeFromCells(LinkObject link, int[] range) {
+        if (range == WIDE) {
+            wide.remove(link);
+            return;
+        }
+        for (int cx = range[0]; cx <= range[2]; cx++) {
+            for (int cy = range[1]; cy <= range[3]; cy++) {
+                long k = key(cx, cy);
+                List<LinkObject> bucket = cells.get(k);
+                if (bucket == null) continue;
+                // 以 identity 比對移除，並用最後一個元素補位避免搬移整個 list
+                for (int i = 0; i < bucket.size(); i++) {
+                    if (bucket.get(i) == link) {
+                        int last = bucket.size() - 1;
+                        bucket.set(i, bucket.get(last));
+                        bucket.remove(last);
+                        break;
+                    }
+                }
+                if (bucket.isEmpty()) cells.remove(k);
+            }
+        }
+    }
+
+    private static boolean sameRange(int[] a, int[] b) {
+        if (a == WIDE || b == WIDE) return a == b;
+        return a[0] == b[0] && a[1] == b[1] && a[2] == b[2] && a[3] == b[3];
+    }
+
+    private static int[] cellRange(LinkObject link) {
+        Rectangle b = link.getBounds();
+        int minCx = cell(b.x), minCy = cell(b.y);
+        int maxCx = cell(b.x + b.width), maxCy = cell(b.y + b.height);
+        if ((long) (maxCx - minCx + 1) * (maxCy - minCy + 1) > MAX_CELLS_PER_LINK) return WIDE;
+        return new int[] {minCx, minCy, maxCx, maxCy};
+    }
+
+    private static int cell(int coord) {
+        return Math.floorDiv(coord, CELL_SIZE);
+    }
+
+    /**
+     * 格子座標編成 long 後以 HashKeys 打散
+     */
+    private static long key(int cx, int cy) {
+        return HashKeys.spread(((long) cx << 32) | (cy & 0xFFFFFFFFL));
+    }
+}
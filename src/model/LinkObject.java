@@ -1,8 +1,13 @@
 package model;
 
 import java.awt.*;
+import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
 
 public abstract class LinkObject extends DisplayObject {
+    // 外框往外擴的距離，涵蓋線寬與反鋸齒
+    private static final int STROKE_MARGIN = 2;
+
     private BasicObject startObject;
     private BasicObject endObject;
     private Point startPort;
@@ -12,6 +17,22 @@ public abstract class LinkObject extends DisplayObject {
     private int startPortOffsetX, startPortOffsetY;
     private int endPortOffsetX, endPortOffsetY;
 
+    // 快取的線段與裝飾圖形，只有端點物件的幾何版本改變時才重新計算
+    private Shape path;
+    private Shape decoration;
+    // 線段與裝飾的外框，已經以 STROKE_MARGIN 外擴
+    private Rectangle bounds;
+    private long startVersion = -1;
+    private long endVersion = -1;
+
+    // 繞線結果 {x0, y0, x1, y1, ...}，以及計算時兩端物件的幾何版本；端點移動後即失效
+    private int[] route;
+    private long routeStartVersion = -1;
+    private long routeEndVersion = -1;
+
+    // 所在 model 的連線索引，不在 model 中時為 null
+    LinkIndex linkIndex;
+
     public LinkObject(BasicObject start, BasicObject end, Point startPort, Point endPort) {
         super();
         this.startObject = start;
@@ -26,16 +47,36 @@ public abstract class LinkObject extends DisplayObject {
     }
 
     public BasicObject getStartObject() { return startObject; }
-    public void setStartObject(BasicObject startObject) { this.startObject = startObject; }
+    public void setStartObject(BasicObject startObject) {
+        if (linkIndex != null) {
+            linkIndex.endpointChanged(this, endObject, this.startObject, startObject);
+        }
+        this.startObject = startObject;
+        routeStartVersion = -1;
+        invalidateGeometry();
+    }
 
     public BasicObject getEndObject() { return endObject; }
-    public void setEndObject(BasicObject endObject) { this.endObject = endObject; }
+    public void setEndObject(BasicObject endObject) {
+        if (linkIndex != null) {
+            linkIndex.endpointChanged(this, startObject, this.endObject, endObject);
+        }
+        this.endObject = endObject;
+        routeEndVersion = -1;
+        invalidateGeometry();
+    }
 
     public Point getStartPort() { return startPort; }
-    public void setStartPort(Point startPort) { this.startPort = startPort; }
+    public void setStartPort(Point startPort) {
+        this.startPort = startPort;
+        invalidateGeometry();
+    }
 
     public Point getEndPort() { return endPort; }
-    public void setEndPort(Point endPort) { this.endPort = endPort; }
+    public void setEndPort(Point endPort) {
+        this.endPort = endPort;
+        invalidateGeometry();
+    }
 
     public int getStartPortOffsetX() { return startPortOffsetX; }
     public int getStartPortOffsetY() { return startPortOffsetY; }
@@ -43,31 +84,175 @@ public abstract class LinkObject extends DisplayObject {
     public int getEndPortOffsetY() { return endPortOffsetY; }
 
     /**
-     * 依據連線兩端物件的 depth 重新計算連線的 depth，這裡直接取兩者中的較小值
+     * 依據連線兩端物件的 depth 重新計算連線的 depth，這裡直接取兩者中的較小值。
+     * 端點在群組內時以最外層群組的 depth 為準，連線才不會被群組蓋住。
      */
     public void reCalcDepth() {
-        depth = Math.min(startObject.getDepth(), endObject.getDepth());
+        depth = Math.min(startObject.getRoot().getDepth(), endObject.getRoot().getDepth());
     }
 
     /**
-     * 更新端口位置，並重新計算 depth
+     * 更新端口位置與快取的圖形，並重新計算 depth。
+     * 兩端物件的幾何版本都沒變時直接沿用上次的結果。
      */
     public void updatePorts() {
-        startPort = new Point(startObject.getX() + startPortOffsetX, startObject.getY() + startPortOffsetY);
-        endPort = new Point(endObject.getX() + endPortOffsetX, endObject.getY() + endPortOffsetY);
+        long sv = startObject.getGeometryVersion();
+        long ev = endObject.getGeometryVersion();
+        if (path == null || sv != startVersion || ev != endVersion) {
+            startPort = new Point(startObject.getX() + startPortOffsetX, startObject.getY() + startPortOffsetY);
+            endPort = new Point(endObject.getX() + endPortOffsetX, endObject.getY() + endPortOffsetY);
+            if (route != null && sv == routeStartVersion && ev == routeEndVersion) {
+                Path2D.Float p = new Path2D.Float();
+                p.moveTo(route[0], route[1]);
+                for (int i = 2; i < route.length; i += 2) {
+                    p.lineTo(route[i], route[i + 1]);
+                }
+                path = p;
+                Point last = route.length >= 4
+                        ? new Point(route[route.length - 4], route[route.length - 3])
+                        : startPort;
+                decoration = createDecoration(last, endPort);
+            } else {
+                // 沒有繞線（或還沒算好）時畫兩端之間的直線
+                path = new Line2D.Float(startPort, endPort);
+                decoration = createDecoration(startPort, endPort);
+            }
+            bounds = path.getBounds();
+            if (decoration != null) {
+                bounds.add(decoration.getBounds());
+            }
+            bounds.grow(STROKE_MARGIN, STROKE_MARGIN);
+            startVersion = sv;
+            endVersion = ev;
+        }
         reCalcDepth();
     }
 
+    /**
+     * 目前的繞線結果是否已經不符合兩端物件的位置（或還沒有繞線）
+     */
+    public boolean isRouteStale() {
+        return routeStartVersion != startObject.getGeometryVersion()
+                || routeEndVersion != endObject.getGeometryVersion();
+    }
+
+    /**
+     * 設定背景計算好的繞線結果。
+     * 計算期間端點又移動過（版本不同）的結果直接丟棄。
+     * 找不到路徑時也要記錄版本，改畫直線，避免同樣的位置一再重算。
+     *
+     * @param points       折線座標 {x0, y0, x1, y1, ...}，null 表示沒有可用的路徑
+     * @param startVersion 計算時起點物件的幾何版本
+     * @param endVersion   計算時終點物件的幾何版本
+     * @return 是否採用了這份結果
+     */
+    public boolean setRoute(int[] points, long startVersion, long endVersion) {
+        if (startVersion != startObject.getGeometryVersion() || endVersion != endObject.getGeometryVersion()) {
+            return false;
+        }
+        route = points;
+        routeStartVersion = startVersion;
+        routeEndVersion = endVersion;
+        invalidateGeometry();
+        return true;
+    }
+
+    /**
+     * 丟掉繞線結果，改回畫兩端之間的直線；關閉正交繞線時使用
+     */
+    public void clearRoute() {
+        route = null;
+        routeStartVersion = -1;
+        routeEndVersion = -1;
+        invalidateGeometry();
+    }
+
+    private void invalidateGeometry() {
+        path = null;
+        if (linkIndex != null) {
+            linkIndex.markDirty(this);
+        }
+    }
+
+    /**
+     * 取得連線本體的圖形（直線，開啟繞線時為正交折線）
+     */
+    public Shape getPath() {
+        updatePorts();
+        return path;
+    }
+
+    /**
+     * 取得連線裝飾的圖形，例如箭頭或菱形；無法計算時回傳 null
+     */
+    public Shape getDecoration() {
+        updatePorts();
+        return decoration;
+    }
+
+    /**
+     * 以指定的兩點計算裝飾，連線不照自己的路徑畫（例如合併成束）時使用。
+     * 只做幾何計算，不讀取端點物件。
+     *
+     * @param from 最後一段線段的起點
+     * @param end  終點連接埠座標
+     */
+    public Shape createDecorationBetween(Point from, Point end) {
+        return createDecoration(from, end);
+    }
+
+    /**
+     * 取得連線（含裝飾與線寬）的外框範圍，用於判斷是否落在重畫區域內
+     */
+    public Rectangle getBounds() {
+        updatePorts();
+        return new Rectangle(bounds);
+    }
+
+    /**
+     * 連線（含裝飾與線寬）是否與指定範圍相交，不配置任何物件；
+     * 水平或垂直的連線外框寬或高為 0，因此外框先以線寬外擴再判斷
+     *
+     * @param area 要判斷的範圍
+     */
+    public boolean intersects(Rectangle area) {
+        updatePorts();
+        return bounds.intersects(area);
+    }
+
     public void draw(Graphics g) {
         updatePorts();
         Graphics2D g2d = (Graphics2D) g;
         g2d.setColor(Color.BLACK);
-        g2d.drawLine(startPort.x, startPort.y, endPort.x, endPort.y);
+        g2d.draw(path);
         drawDecoration(g2d);
     }
 
     /**
-     * 由子類別實作連線的裝飾，例如箭頭、菱形等。
+     * 繪製連線的裝飾，依 isDecorationFilled() 決定填滿或只畫外框。
+     */
+    protected void drawDecoration(Graphics2D g2d) {
+        if (decoration == null) return;
+        if (isDecorationFilled()) {
+            g2d.fill(decoration);
+        } else {
+            g2d.draw(decoration);
+        }
+    }
+
+    /**
+     * 由子類別計算連線的裝飾圖形，例如箭頭、菱形等。
+     *
+     * @param start 起點連接埠座標
+     * @param end   終點連接埠座標
+     * @return 裝飾圖形，無法計算時回傳 null
      */
-    protected abstract void drawDecoration(Graphics2D g2d);
+    protected abstract Shape createDecoration(Point start, Point end);
+
+    /**
+     * 裝飾是否以填滿方式繪製，預設只畫外框
+     */
+    public boolean isDecorationFilled() {
+        return false;
+    }
 }
@@ -0,0 +1,71 @@
+package model;
+
+import enums.ChangeType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 一批 model 變動，依 ChangeType 分類，每一類保留第一次出現的順序並去除重複的物件。
+ * 交易結束（或目前的 EDT 事件處理完）時才送出，送出後不再改變。
+ */
+public final class ModelChangeBatch {
+    private final Map<ChangeType, List<DisplayObject>> targets = new EnumMap<>(ChangeType.class);
+    private final Map<ChangeType, Set<DisplayObject>> seen = new EnumMap<>(ChangeType.class);
+
+    ModelChangeBatch() {
+    }
+
+    void add(ChangeType type, DisplayObject target) {
+        Set<DisplayObject> set = seen.computeIfAbsent(type, k -> Collections.newSetFromMap(new IdentityHashMap<>()));
+        if (set.add(target)) {
+            targets.computeIfAbsent(type, k -> new ArrayList<>()).add(target);
+        }
+    }
+
+    public boolean isEmpty() {
+        return targets.isEmpty();
+    }
+
+    /**
+     * 批次中是否有這一類變動
+     */
+    public boolean contains(ChangeType type) {
+        return targets.containsKey(type);
+    }
+
+    /**
+     * 取得某一類變動涉及的物件或連線
+     */
+    public List<DisplayObject> getTargets(ChangeType type) {
+        List<DisplayObject> list = targets.get(type);
+        return list == null ? Collections.emptyList() : Collections.unmodifiableList(list);
+    }
+
+    /**
+     * 取得某一類變動涉及的 BasicObject
+     */
+    public List<BasicObject> getObjects(ChangeType type) {
+        List<BasicObject> result = new ArrayList<>();
+        for (DisplayObject target : getTargets(type)) {
+            if (target instanceof BasicObject) result.add((BasicObject) target);
+        }
+        return result;
+    }
+
+    /**
+     * 取得某一類變動涉及的連線
+     */
+    public List<LinkObject> getLinks(ChangeType type) {
+        List<LinkObject> result = new ArrayList<>();
+        for (DisplayObject target : getTargets(type)) {
+            if (target instanceof LinkObject) result.add((LinkObject) target);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,9 @@
+package model;
+
+/**
+ * 監聽 CanvasModel 的變動。每批變動只通知一次，同一個物件的同一種變動在批次內只會出現一次。
+ */
+@FunctionalInterface
+public interface ModelListener {
+    void modelChanged(ModelChangeBatch batch);
+}
@@ -0,0 +1,86 @@
+package model;
+
+import javax.swing.undo.AbstractUndoableEdit;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+
+/**
+ * MoveObjectsEdit 記錄一批物件移動前後的位置，
+ * 讓自動排版這類一次搬動大量物件的操作可以整批復原 / 重做。
+ */
+public class MoveObjectsEdit extends AbstractUndoableEdit {
+    private final String name;
+    private final BasicObject[] objects;
+    private final int[] oldX, oldY, newX, newY;
+
+    /**
+     * 建立移動紀錄，舊位置取自物件目前的座標。
+     *
+     * @param name    顯示在 Undo / Redo 選單上的名稱
+     * @param objects 要移動的物件
+     * @param newX    新的左上角 x 座標
+     * @param newY    新的左上角 y 座標
+     */
+    public MoveObjectsEdit(String name, BasicObject[] objects, int[] newX, int[] newY) {
+        this.name = name;
+        this.objects = objects;
+        this.newX = newX;
+        this.newY = newY;
+        this.oldX = new int[objects.length];
+        this.oldY = new int[objects.length];
+        for (int i = 0; i < objects.length; i++) {
+            oldX[i] = objects[i].getX();
+            oldY[i] = objects[i].getY();
+        }
+    }
+
+    /**
+     * 建立移動紀錄，物件已經移動過（例如排版動畫結束後）時使用，明確指定移動前的位置。
+     *
+     * @param name    顯示在 Undo / Redo 選單上的名稱
+     * @param objects 被移動的物件
+     * @param oldX    移動前的左上角 x 座標
+     * @param oldY    移動前的左上角 y 座標
+     * @param newX    移動後的左上角 x 座標
+     * @param newY    移動後的左上角 y 座標
+     */
+    public MoveObjectsEdit(String name, BasicObject[] objects, int[] oldX, int[] oldY, int[] newX, int[] newY) {
+        this.name = name;
+        this.objects = objects;
+        this.oldX = oldX;
+        this.oldY = oldY;
+        this.newX = newX;
+        this.newY = newY;
+    }
+
+    /**
+     * 套用新的位置
+     */
+    public void apply() {
+        moveAll(newX, newY);
+    }
+
+    @Override
+    public void undo() throws CannotUndoException {
+        super.undo();
+        moveAll(oldX, oldY);
+    }
+
+    @Override
+    public void redo() throws CannotRedoException {
+        super.redo();
+        moveAll(newX, newY);
+    }
+
+    @Override
+    public String getPresentationName() {
+        return name;
+    }
+
+    private void moveAll(int[] xs, int[] ys) {
+        for (int i = 0; i < objects.length; i++) {
+            BasicObject obj = objects[i];
+            obj.moveBy(xs[i] - obj.getX(), ys[i] - obj.getY());
+        }
+    }
+}
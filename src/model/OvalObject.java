@@ -20,7 +20,7 @@ public class OvalObject extends BasicObject {
      */
     @Override
     public void draw(Graphics g) {
-        g.setColor(Color.decode("#F6F0F0"));
+        g.setColor(FILL_COLOR);
         g.fillOval(getX(), getY(), getWidth(), getHeight());
 
         g.setColor(Color.BLACK);
@@ -36,12 +36,10 @@ public class OvalObject extends BasicObject {
 
         if (!getLabel().isEmpty()) {
             Graphics2D g2d = (Graphics2D) g;
-            g2d.setFont(new Font("SansSerif", Font.PLAIN, getFontSize()));
-            FontMetrics fm = g2d.getFontMetrics();
+            LabelLayout layout = getLabelLayout(g2d);
 
-            String text = getLabel();
-            int textWidth = fm.stringWidth(text);  // 文字寬度
-            int textHeight = fm.getAscent();         // 文字高度（以字體上升高度計算）
+            int textWidth = layout.getWidth();    // 文字寬度
+            int textHeight = layout.getAscent();  // 文字高度（以字體上升高度計算）
 
             int centerX = getX() + getWidth() / 2;
             int centerY = getY() + getHeight() / 2;
@@ -49,15 +47,16 @@ public class OvalObject extends BasicObject {
             int labelX = centerX - textWidth / 2;
             int labelY = centerY + textHeight / 4;
 
-            g2d.setColor(getLabelColor());
-            if (getLabelShape() == LabelShape.RECTANGLE) {
+            LabelStyle style = getLabelStyle();
+            g2d.setColor(style.getColor());
+            if (style.getShape() == LabelShape.RECTANGLE) {
                 g2d.fillRect(labelX, labelY - textHeight, textWidth, textHeight);
-            } else if (getLabelShape() == LabelShape.OVAL) {
+            } else if (style.getShape() == LabelShape.OVAL) {
                 g2d.fillOval(labelX, labelY - textHeight, textWidth, textHeight);
             }
 
             g2d.setColor(Color.BLACK);
-            g2d.drawString(text, labelX, labelY);
+            layout.draw(g2d, labelX, labelY);
         }
     }
 
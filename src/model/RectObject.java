@@ -20,14 +20,14 @@ public class RectObject extends BasicObject {
      * 2. 繪製矩形外框
      * 3. 繪製兩條水平分隔線（將矩形分成三部分）
      * 4. 根據 isShowPorts() 判斷是否繪製連接埠（8 個小方塊）
-     * 5. 如果 label 不為空，計算文字置中位置後，先繪製標籤背景，
-     *    再繪製標籤文字
+     * 5. 如果 label 不為空，取得快取的標籤排版並計算置中位置後，
+     *    先繪製標籤背景，再繪製標籤文字
      *
      * @param g Graphics 物件，用於進行繪製操作
      */
     @Override
     public void draw(Graphics g) {
-        g.setColor(Color.decode("#F6F0F0"));
+        g.setColor(FILL_COLOR);
         g.fillRect(getX(), getY(), getWidth(), getHeight());
 
         g.setColor(Color.BLACK);
@@ -48,25 +48,24 @@ public class RectObject extends BasicObject {
 
         if (!getLabel().isEmpty()) {
             Graphics2D g2d = (Graphics2D) g;
-            g2d.setFont(new Font("SansSerif", Font.PLAIN, getFontSize()));
-            FontMetrics fm = g2d.getFontMetrics();
+            LabelLayout layout = getLabelLayout(g2d);
 
-            String text = getLabel();
-            int textWidth = fm.stringWidth(text);  // 文字寬度
-            int textHeight = fm.getAscent();         // 文字上升高度
+            int textWidth = layout.getWidth();    // 文字寬度
+            int textHeight = layout.getAscent();  // 文字上升高度
 
             int labelX = getX() + (getWidth() - textWidth) / 2;
-            int labelY = getY() + (getHeight() - textHeight) / 2 + fm.getAscent();
+            int labelY = getY() + (getHeight() - textHeight) / 2 + textHeight;
 
-            g2d.setColor(getLabelColor());
-            if (getLabelShape() == LabelShape.RECTANGLE) {
+            LabelStyle style = getLabelStyle();
+            g2d.setColor(style.getColor());
+            if (style.getShape() == LabelShape.RECTANGLE) {
                 g2d.fillRect(labelX, labelY - textHeight, textWidth, textHeight);
-            } else if (getLabelShape() == LabelShape.OVAL) {
+            } else if (style.getShape() == LabelShape.OVAL) {
                 g2d.fillOval(labelX, labelY - textHeight, textWidth, textHeight);
             }
 
             g2d.setColor(Color.BLACK);
-            g2d.drawString(text, labelX, labelY);
+            layout.draw(g2d, labelX, labelY);
         }
     }
 
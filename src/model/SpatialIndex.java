@@ -0,0 +1,249 @@
+package model;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * SpatialIndex 以固定大小的格子 (uniform grid) 索引畫布上的最上層物件，
+ * 讓點選、hover 與框選只需要檢查附近格子裡的物件，而不用掃描整個 model。
+ *
+ * 物件移動時只會被標記為 dirty，等到下一次查詢時才重新放進正確的格子，
+ * 因此拖曳大量物件時不會每一步都重建索引。
+ *
+ * 群組內部也可以各自建立一個以群組座標系 (local) 索引子物件的 SpatialIndex，
+ * 群組移動時子物件的區域座標不變，索引也就不需要更新。
+ */
+public class SpatialIndex {
+    private static final int CELL_SIZE = 128;
+
+    // true 表示以父群組座標系 (getLocalX / getLocalY) 建立索引
+    private final boolean localCoordinates;
+
+    // 格子座標 → 落在該格子內的物件
+    private final Map<Long, List<BasicObject>> cells = new HashMap<>();
+
+    // 物件 → 目前所佔的格子範圍 {minCx, minCy, maxCx, maxCy}
+    private final Map<BasicObject, int[]> entries = new IdentityHashMap<>();
+
+    // 幾何改變過、尚未重新放入格子的物件
+    private final Set<BasicObject> dirty = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    // 同一個 model 的連線索引，物件移動時一併通知；群組內部的索引沒有連線索引
+    LinkIndex linkIndex;
+
+    /**
+     * 建立以絕對座標索引最上層物件的 SpatialIndex
+     */
+    public SpatialIndex() {
+        this(false);
+    }
+
+    SpatialIndex(boolean localCoordinates) {
+        this.localCoordinates = localCoordinates;
+    }
+
+    public void insert(BasicObject obj) {
+        int[] range = cellRange(obj);
+        entries.put(obj, range);
+        addToCells(obj, range);
+    }
+
+    public void remove(BasicObject obj) {
+        int[] range = entries.remove(obj);
+        if (range != null) {
+            removeFromCells(obj, range);
+        }
+        dirty.remove(obj);
+    }
+
+    /**
+     * 一次移除多個物件：先收集受影響的格子，每個格子只過濾一次
+     *
+     * @param objs 要移除的物件
+     */
+    public void removeAll(Collection<BasicObject> objs) {
+        Set<BasicObject> removing = Collections.newSetFromMap(new IdentityHashMap<>());
+        Set<Long> touchedCells = new HashSet<>();
+        for (BasicObject obj : objs) {
+            int[] range = entries.remove(obj);
+            if (range == null) continue;
+            removing.add(obj);
+            dirty.remove(obj);
+            for (int cx = range[0]; cx <= range[2]; cx++) {
+                for (int cy = range[1]; cy <= range[3]; cy++) {
+                    touchedCells.add(key(cx, cy));
+                }
+            }
+        }
+        for (Long k : touchedCells) {
+            List<BasicObject> bucket = cells.get(k);
+            if (bucket == null) continue;
+            bucket.removeIf(removing::contains);
+            if (bucket.isEmpty()) cells.remove(k);
+        }
+    }
+
+    public void clear() {
+        cells.clear();
+        entries.clear();
+        dirty.clear();
+    }
+
+    /**
+     * 標記物件的位置或尺寸已改變，延後到下一次查詢再更新格子
+     */
+    public void markDirty(BasicObject obj) {
+        if (entries.containsKey(obj)) {
+            dirty.add(obj);
+            if (linkIndex != null) {
+                linkIndex.rootMoved(obj);
+            }
+        }
+    }
+
+    /**
+     * 找出所有邊界與指定矩形相交的物件（不保證順序）
+     *
+     * @param area 查詢範圍
+     * @return 與範圍相交的物件
+     */
+    public List<BasicObject> query(Rectangle area) {
+        flushDirty();
+        List<BasicObject> result = new ArrayList<>();
+        int minCx = cell(area.x), minCy = cell(area.y);
+        int maxCx = cell(area.x + area.width), maxCy = cell(area.y + area.height);
+        long cellCount = (long) (maxCx - minCx + 1) * (maxCy - minCy + 1);
+
+        // 查詢範圍比物件數量還大時，直接逐一檢查比走訪格子便宜
+        if (cellCount > entries.size()) {
+            for (BasicObject obj : entries.keySet()) {
+                if (intersects(obj, area)) result.add(obj);
+            }
+            return result;
+        }
+
+        Set<BasicObject> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int cx = minCx; cx <= maxCx; cx++) {
+            for (int cy = minCy; cy <= maxCy; cy++) {
+                List<BasicObject> bucket = cells.get(key(cx, cy));
+                if (bucket == null) continue;
+                for (BasicObject obj : bucket) {
+                    if (intersects(obj, area) && seen.add(obj)) {
+                        result.add(obj);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 找出包含指定點、depth 最小（最上層）的物件
+     *
+     * @param p 查詢點
+     * @return 最上層的物件，沒有則回傳 null
+     */
+    public BasicObject findTopmostAt(Point p) {
+        flushDirty();
+        List<BasicObject> bucket = cells.get(key(cell(p.x), cell(p.y)));
+        if (bucket == null) return null;
+        BasicObject top = null;
+        for (BasicObject obj : bucket) {
+            if (containsPoint(obj, p) && (top == null || obj.getDepth() < top.getDepth())) {
+                top = obj;
+            }
+        }
+        return top;
+    }
+
+    private void flushDirty() {
+        if (dirty.isEmpty()) return;
+        for (BasicObject obj : dirty) {
+            int[] oldRange = entries.get(obj);
+            int[] newRange = cellRange(obj);
+            if (oldRange == null || Arrays.equals(oldRange, newRange)) continue;
+            removeFromCells(obj, oldRange);
+            addToCells(obj, newRange);
+            entries.put(obj, newRange);
+        }
+        dirty.clear();
+    }
+
+    private void addToCells(BasicObject obj, int[] range) {
+        for (int cx = range[0]; cx <= range[2]; cx++) {
+            for (int cy = range[1]; cy <= range[3]; cy++) {
+                cells.computeIfAbsent(key(cx, cy), k -> new ArrayList<>()).add(obj);
+            }
+        }
+    }
+
+    private void removeFromCells(BasicObject obj, int[] range) {
+        for (int cx = range[0]; cx <= range[2]; cx++) {
+            for (int cy = range[1]; cy <= range[3]; cy++) {
+                long k = key(cx, cy);
+                List<BasicObject> bucket = cells.get(k);
+                if (bucket == null) continue;
+                // 以 identity 比對移除，並用最後一個元素補位避免搬移整個 list
+                for (int i = 0; i < bucket.size(); i++) {
+                    if (bucket.get(i) == obj) {
+                        int last = bucket.size() - 1;
+                        bucket.set(i, bucket.get(last));
+                        bucket.remove(last);
+                        break;
+                    }
+                }
+                if (bucket.isEmpty()) cells.remove(k);
+            }
+        }
+    }
+
+    private int xOf(BasicObject obj) {
+        return localCoordinates ? obj.getLocalX() : obj.getX();
+    }
+
+    private int yOf(BasicObject obj) {
+        return localCoordinates ? obj.getLocalY() : obj.getY();
+    }
+
+    private int[] cellRange(BasicObject obj) {
+        int x = xOf(obj), y = yOf(obj);
+        return new int[] {
+                cell(x),
+                cell(y),
+                cell(x + obj.getWidth()),
+                cell(y + obj.getHeight())
+        };
+    }
+
+    private boolean intersects(BasicObject obj, Rectangle area) {
+        int x = xOf(obj), y = yOf(obj);
+        return x <= area.x + area.width && x + obj.getWidth() >= area.x
+                && y <= area.y + area.height && y + obj.getHeight() >= area.y;
+    }
+
+    private boolean containsPoint(BasicObject obj, Point p) {
+        int x = xOf(obj), y = yOf(obj);
+        return p.x >= x && p.x <= x + obj.getWidth() && p.y >= y && p.y <= y + obj.getHeight();
+    }
+
+    private static int cell(int coord) {
+        return Math.floorDiv(coord, CELL_SIZE);
+    }
+
+    /**
+     * 格子座標編成 long 後以 HashKeys 打散
+     */
+    private static long key(int cx, int cy) {
+        return HashKeys.spread(((long) cx << 32) | (cy & 0xFFFFFFFFL));
+    }
+}
@@ -0,0 +1,263 @@
+package routing;
+
+import java.util.Arrays;
+
+/**
+ * OrthogonalRouter 在障礙物之間找出只由水平、垂直線段組成的連線路徑。
+ *
+ * 作法是只取障礙物外擴後的邊界與兩端出口的 x、y 座標組成格線，格線上穿過障礙物內部的邊視為不可走，
+ * 再以 A* 搜尋；成本為曼哈頓距離加上每次轉彎的懲罰，因此結果會偏好轉彎少的路徑。
+ * 格線的每個交點都會配置（nx × ny 個節點），記憶體與障礙物數量的平方成正比，
+ * 因此障礙物超過 MAX_OBSTACLES 個時不搜尋，直接回傳兩端之間的直線。
+ *
+ * 只處理 int 陣列，不碰 model，可以安全地在背景執行緒執行。
+ */
+public final class OrthogonalRouter {
+    // 障礙物向外擴張的距離，連線會沿著這條通道繞過物件
+    public static final int MARGIN = 12;
+    // 每轉彎一次額外加上的成本
+    private static final int BEND_PENALTY = 40;
+    // 障礙物數量上限，格線最多約 (2 * 256 + 4)² 個節點
+    public static final int MAX_OBSTACLES = 256;
+
+    private OrthogonalRouter() {
+    }
+
+    /**
+     * 計算一條正交路徑。
+     *
+     * @param sx        起點連接埠 x
+     * @param sy        起點連接埠 y
+     * @param sDir      起點離開物件的方向 {dx, dy}，例如 {1, 0} 表示從右側離開
+     * @param ex        終點連接埠 x
+     * @param ey        終點連接埠 y
+     * @param eDir      終點離開物件的方向
+     * @param obstacles 障礙物外框，每四個數字一組 {x, y, width, height}，包含兩端物件本身
+     * @return 折線座標 {x0, y0, x1, y1, ...}，第一點與最後一點為兩端連接埠；找不到路徑時回傳 null，
+     *         障礙物太多時回傳兩端之間的直線
+     */
+    public static int[] route(int sx, int sy, int[] sDir, int ex, int ey, int[] eDir, int[] obstacles) {
+        if (obstacles.length / 4 > MAX_OBSTACLES) {
+            return new int[]{sx, sy, ex, ey};
+        }
+        // 先從連接埠沿著離開方向走出外擴範圍，再在兩個出口之間搜尋
+        int ax = sx + sDir[0] * MARGIN, ay = sy + sDir[1] * MARGIN;
+        int bx = ex + eDir[0] * MARGIN, by = ey + eDir[1] * MARGIN;
+
+        int count = obstacles.length / 4;
+        int[] xs = new int[2 * count + 4];
+        int[] ys = new int[2 * count + 4];
+        int minX = Math.min(ax, bx), maxX = Math.max(ax, bx);
+        int minY = Math.min(ay, by), maxY = Math.max(ay, by);
+        for (int k = 0; k < count; k++) {
+            int left = obstacles[4 * k] - MARGIN;
+            int top = obstacles[4 * k + 1] - MARGIN;
+            int right = obstacles[4 * k] + obstacles[4 * k + 2] + MARGIN;
+            int bottom = obstacles[4 * k + 1] + obstacles[4 * k + 3] + MARGIN;
+            xs[2 * k] = left;
+            xs[2 * k + 1] = right;
+            ys[2 * k] = top;
+            ys[2 * k + 1] = bottom;
+            minX = Math.min(minX, left);
+            maxX = Math.max(maxX, right);
+            minY = Math.min(minY, top);
+            maxY = Math.max(maxY, bottom);
+        }
+        // 外圍再留一圈通道，保證可以從所有障礙物外側繞過去
+        xs[2 * count] = ax;
+        xs[2 * count + 1] = bx;
+        xs[2 * count + 2] = minX - MARGIN;
+        xs[2 * count + 3] = maxX + MARGIN;
+        ys[2 * count] = ay;
+        ys[2 * count + 1] = by;
+        ys[2 * count + 2] = minY - MARGIN;
+        ys[2 * count + 3] = maxY + MARGIN;
+        xs = sortedUnique(xs);
+        ys = sortedUnique(ys);
+        int nx = xs.length, ny = ys.length;
+
+        // hBlocked[j * nx + i]：(i, j) → (i + 1, j) 的水平邊；vBlocked[j * nx + i]：(i, j) → (i, j + 1) 的垂直邊
+        boolean[] hBlocked = new boolean[nx * ny];
+        boolean[] vBlocked = new boolean[nx * ny];
+        for (int k = 0; k < count; k++) {
+            int i0 = Arrays.binarySearch(xs, obstacles[4 * k] - MARGIN);
+            int i1 = Arrays.binarySearch(xs, obstacles[4 * k] + obstacles[4 * k + 2] + MARGIN);
+            int j0 = Arrays.binarySearch(ys, obstacles[4 * k + 1] - MARGIN);
+            int j1 = Arrays.binarySearch(ys, obstacles[4 * k + 1] + obstacles[4 * k + 3] + MARGIN);
+            // 只封鎖落在障礙物內部的邊，外擴後的邊界本身仍然可以走
+            for (int j = j0 + 1; j < j1; j++) {
+                for (int i = i0; i < i1; i++) {
+                    hBlocked[j * nx + i] = true;
+                }
+            }
+            for (int i = i0 + 1; i < i1; i++) {
+                for (int j = j0; j < j1; j++) {
+                    vBlocked[j * nx + i] = true;
+                }
+            }
+        }
+
+        int start = Arrays.binarySearch(ys, ay) * nx + Arrays.binarySearch(xs, ax);
+        int goal = Arrays.binarySearch(ys, by) * nx + Arrays.binarySearch(xs, bx);
+        int[] states = search(xs, ys, hBlocked, vBlocked, start, sDir[0] != 0 ? 0 : 1, goal, eDir[0] != 0 ? 0 : 1);
+        if (states == null) return null;
+
+        // 組合完整折線並去掉共線的中間點
+        int[] pts = new int[2 * (states.length + 2)];
+        int n = 0;
+        pts[n++] = sx;
+        pts[n++] = sy;
+        for (int s : states) {
+            int node = s >> 1;
+            n = append(pts, n, xs[node % nx], ys[node / nx]);
+        }
+        n = append(pts, n, ex, ey);
+        return Arrays.copyOf(pts, n);
+    }
+
+    /**
+     * 在格線上做 A*，狀態為 (節點, 進入方向)，回傳經過的狀態序列；不可達時回傳 null
+     */
+    private static int[] search(int[] xs, int[] ys, boolean[] hBlocked, boolean[] vBlocked,
+                                int start, int startOrient, int goal, int goalOrient) {
+        int nx = xs.length;
+        int stateCount = 2 * nx * ys.length;
+        int[] dist = new int[stateCount];
+        int[] prev = new int[stateCount];
+        Arrays.fill(dist, Integer.MAX_VALUE);
+        int gx = xs[goal % nx], gy = ys[goal / nx];
+
+        LongHeap open = new LongHeap();
+        int s0 = start * 2 + startOrient;
+        dist[s0] = 0;
+        prev[s0] = -1;
+        open.push(key(heuristic(xs, ys, nx, start, gx, gy), s0));
+
+        while (!open.isEmpty()) {
+            long top = open.pop();
+            int state = (int) top;
+            int node = state >> 1;
+            int orient = state & 1;
+            int d = dist[state];
+            if ((int) (top >>> 32) > d + heuristic(xs, ys, nx, node, gx, gy)) continue; // 已有更短的紀錄
+            if (node == goal) {
+                if (orient != goalOrient) {
+                    // 抵達時方向不對，仍需在出口轉一次彎
+                    int turned = node * 2 + goalOrient;
+                    if (d + BEND_PENALTY < dist[turned]) {
+                        dist[turned] = d + BEND_PENALTY;
+                        prev[turned] = state;
+                        open.push(key(dist[turned], turned));
+                    }
+                    continue;
+                }
+                return trace(prev, state);
+            }
+            int i = node % nx, j = node / nx;
+            // 四個方向：右、左、下、上
+            for (int dir = 0; dir < 4; dir++) {
+                int ni = i, nj = j;
+                boolean blocked;
+                if (dir == 0) { ni = i + 1; blocked = ni >= nx || hBlocked[j * nx + i]; }
+                else if (dir == 1) { ni = i - 1; blocked = ni < 0 || hBlocked[j * nx + ni]; }
+                else if (dir == 2) { nj = j + 1; blocked = nj >= ys.length || vBlocked[j * nx + i]; }
+                else { nj = j - 1; blocked = nj < 0 || vBlocked[nj * nx + i]; }
+                if (blocked) continue;
+                int nOrient = dir < 2 ? 0 : 1;
+                int next = nj * nx + ni;
+                int nd = d + Math.abs(xs[ni] - xs[i]) + Math.abs(ys[nj] - ys[j])
+                        + (nOrient != orient ? BEND_PENALTY : 0);
+                int nState = next * 2 + nOrient;
+                if (nd < dist[nState]) {
+                    dist[nState] = nd;
+                    prev[nState] = state;
+                    open.push(key(nd + heuristic(xs, ys, nx, next, gx, gy), nState));
+                }
+            }
+        }
+        return null;
+    }
+
+    private static int heuristic(int[] xs, int[] ys, int nx, int node, int gx, int gy) {
+        return Math.abs(xs[node % nx] - gx) + Math.abs(ys[node / nx] - gy);
+    }
+
+    private static long key(int priority, int state) {
+        return ((long) priority << 32) | (state & 0xFFFFFFFFL);
+    }
+
+    private static int[] trace(int[] prev, int state) {
+        int length = 0;
+        for (int s = state; s != -1; s = prev[s]) length++;
+        int[] path = new int[length];
+        for (int s = state; s != -1; s = prev[s]) path[--length] = s;
+        return path;
+    }
+
+    /**
+     * 加入一個點：與前一點重複時略過，與前兩點共線時取代中間點
+     */
+    private static int append(int[] pts, int n, int x, int y) {
+        if (n >= 2 && pts[n - 2] == x && pts[n - 1] == y) return n;
+        if (n >= 4) {
+            int px = pts[n - 4], py = pts[n - 3], mx = pts[n - 2], my = pts[n - 1];
+            if ((px == mx && mx == x) || (py == my && my == y)) {
+                pts[n - 2] = x;
+                pts[n - 1] = y;
+                return n;
+            }
+        }
+        pts[n++] = x;
+        pts[n++] = y;
+        return n;
+    }
+
+    private static int[] sortedUnique(int[] values) {
+        Arrays.sort(values);
+        int n = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (i == 0 || values[i] != values[i - 1]) values[n++] = values[i];
+        }
+        return Arrays.copyOf(values, n);
+    }
+
+    /**
+     * 以 long 存放 (priority, state) 的二元堆積，避免 PriorityQueue 的裝箱成本
+     */
+    private static final class LongHeap {
+        private long[] heap = new long[64];
+        private int size;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void push(long value) {
+            if (size == heap.length) heap = Arrays.copyOf(heap, size * 2);
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >> 1;
+                if (heap[parent] <= value) break;
+                heap[i] = heap[parent];
+                i = parent;
+            }
+            heap[i] = value;
+        }
+
+        long pop() {
+            long result = heap[0];
+            long last = heap[--size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) break;
+                if (child + 1 < size && heap[child + 1] < heap[child]) child++;
+                if (heap[child] >= last) break;
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = last;
+            return result;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package validation;
+
+import enums.ValidationRule;
+import model.DisplayObject;
+
+/**
+ * 一筆驗證結果：違反的規則、出問題的物件或連線，以及要顯示給使用者的訊息。
+ */
+public final class Diagnostic {
+    private final ValidationRule rule;
+    private final DisplayObject target;
+    private final String message;
+
+    public Diagnostic(ValidationRule rule, DisplayObject target, String message) {
+        this.rule = rule;
+        this.target = target;
+        this.message = message;
+    }
+
+    public ValidationRule getRule() { return rule; }
+    public DisplayObject getTarget() { return target; }
+    public String getMessage() { return message; }
+}
@@ -0,0 +1,453 @@
+package validation;
+
+import enums.ChangeType;
+import enums.ValidationRule;
+import analysis.AnalysisGraph;
+import analysis.GraphAnalysis;
+import model.BasicObject;
+import model.CanvasModel;
+import model.CompositeObject;
+import model.CompositionLink;
+import model.DisplayObject;
+import model.GeneralizationLink;
+import model.LinkObject;
+import model.ModelChangeBatch;
+import model.ModelListener;
+
+import javax.swing.SwingUtilities;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * ModelValidator 在編輯過程中持續檢查圖的規則：
+ * 繼承不可形成循環、連線不可連回自己、組合關係必須是森林（每個部分只有一個整體且沒有循環）、
+ * 同一個群組內的標籤不可重複。
+ *
+ * 每次變動只重新檢查受影響的規則：新增連線只從這條連線出發找循環，
+ * 標籤或群組成員改變只重新檢查那一個群組。
+ * 需要的資料在 EDT 上取好後交給單一背景執行緒，驗證用的狀態只在那個執行緒上存取；
+ * 結果改變時再回到 EDT 通知畫布。
+ *
+ * 註冊成 CanvasModel 的監聽者後，新增連線、建立或解散群組、修改標籤都會自動觸發檢查。
+ */
+public class ModelValidator implements ModelListener {
+    // 一批新增超過這麼多條連線（例如批次匯入）時，改用 SCC 一次重新檢查全部，避免逐條搜尋變成平方時間
+    private static final int BULK_THRESHOLD = 256;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "model-validation");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final CanvasModel model;
+    private final Consumer<List<Diagnostic>> listener;
+
+    // 以下欄位只在背景執行緒上存取
+    private final List<LinkObject> allLinks = new ArrayList<>();
+    // 繼承與組合關係的出邊：起點物件 → 以它為起點的連線
+    private final Map<BasicObject, List<LinkObject>> generalizationOut = new IdentityHashMap<>();
+    private final Map<BasicObject, List<LinkObject>> compositionOut = new IdentityHashMap<>();
+    private final Map<ValidationRule, Map<DisplayObject, Diagnostic>> linkDiagnostics = new EnumMap<>(ValidationRule.class);
+    private final Map<CompositeObject, List<Diagnostic>> labelDiagnostics = new IdentityHashMap<>();
+
+    /**
+     * @param model    要檢查的 model，用來判斷物件是否還在畫布上
+     * @param listener 診斷結果改變時在 EDT 上收到完整的結果列表
+     */
+    public ModelValidator(CanvasModel model, Consumer<List<Diagnostic>> listener) {
+        this.model = model;
+        this.listener = listener;
+        for (ValidationRule rule : ValidationRule.values()) {
+            linkDiagnostics.put(rule, new IdentityHashMap<>());
+        }
+    }
+
+    @Override
+    public void modelChanged(ModelChangeBatch batch) {
+        List<LinkObject> added = batch.getLinks(ChangeType.LINK_ADDED);
+        if (!added.isEmpty()) {
+            linksAdded(added);
+        }
+        List<LinkObject> removed = batch.getLinks(ChangeType.LINK_REMOVED);
+        if (!removed.isEmpty()) {
+            linksRemoved(removed);
+        }
+        // 被包進新群組的物件仍在畫布上，不算移除；刪除或解散的物件連同整棵子樹一起清掉
+        List<BasicObject> gone = new ArrayList<>();
+        for (BasicObject obj : batch.getObjects(ChangeType.OBJECT_REMOVED)) {
+            if (!model.contains(obj)) collectTree(obj, gone);
+        }
+        if (!gone.isEmpty()) {
+            objectsRemoved(gone);
+        }
+        // 復原刪除時整棵子樹回到畫布，裡面每個群組都要重新檢查
+        for (BasicObject obj : batch.getObjects(ChangeType.OBJECT_ADDED)) {
+            checkGroups(obj);
+        }
+        for (BasicObject obj : batch.getObjects(ChangeType.LABEL_CHANGED)) {
+            labelChanged(obj);
+        }
+    }
+
+    /**
+     * 新增連線後呼叫，必須在 EDT 上呼叫
+     *
+     * @param links 新的連線
+     */
+    public void linksAdded(List<LinkObject> links) {
+        List<LinkObject> copy = new ArrayList<>(links);
+        executor.execute(() -> {
+            boolean changed = false;
+            if (copy.size() > BULK_THRESHOLD) {
+                for (LinkObject link : copy) {
+                    register(link);
+                }
+                changed = checkAll();
+            } else {
+                for (LinkObject link : copy) {
+                    changed |= checkLink(link);
+                }
+            }
+            if (changed) publish();
+        });
+    }
+
+    /**
+     * 移除連線後呼叫，必須在 EDT 上呼叫。
+     * 拿掉連線只會解除循環或多重整體，因此只重新檢查與被移除連線的端點相連、目前仍被標記的連線；
+     * 一次移除超過 BULK_THRESHOLD 條時改用 SCC 重新檢查全部。
+     *
+     * @param links 被移除的連線
+     */
+    public void linksRemoved(List<LinkObject> links) {
+        List<LinkObject> copy = new ArrayList<>(links);
+        Set<LinkObject> removing = Collections.newSetFromMap(new IdentityHashMap<>());
+        removing.addAll(links);
+        executor.execute(() -> {
+            allLinks.removeIf(removing::contains);
+            generalizationOut.values().removeIf(out -> out.removeIf(removing::contains) && out.isEmpty());
+            compositionOut.values().removeIf(out -> out.removeIf(removing::contains) && out.isEmpty());
+            boolean changed = false;
+            for (Map<DisplayObject, Diagnostic> byTarget : linkDiagnostics.values()) {
+                changed |= byTarget.keySet().removeIf(removing::contains);
+            }
+            if (copy.size() > BULK_THRESHOLD) {
+                changed = checkAll();
+            } else {
+                changed |= recheckAround(copy, GeneralizationLink.class, ValidationRule.GENERALIZATION_CYCLE);
+                changed |= recheckAround(copy, CompositionLink.class, ValidationRule.COMPOSITION_FOREST);
+            }
+            if (changed) publish();
+        });
+    }
+
+    /**
+     * 群組成員或其中的標籤改變後呼叫，必須在 EDT 上呼叫
+     *
+     * @param group 需要重新檢查的群組
+     */
+    public void groupChanged(CompositeObject group) {
+        List<BasicObject> children = new ArrayList<>(group.getChildren());
+        String[] labels = new String[children.size()];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = children.get(i).getLabel();
+        }
+        executor.execute(() -> {
+            if (checkLabels(group, children, labels)) publish();
+        });
+    }
+
+    /**
+     * 物件被刪除或群組被解散後呼叫，必須在 EDT 上呼叫。
+     * 清掉這些群組的診斷結果；仍在畫布上的群組若有診斷指向被拿掉的子物件，回到 EDT 重新檢查。
+     *
+     * @param objs 不在畫布上的物件，包含整棵子樹
+     */
+    public void objectsRemoved(List<BasicObject> objs) {
+        Set<BasicObject> gone = Collections.newSetFromMap(new IdentityHashMap<>());
+        gone.addAll(objs);
+        executor.execute(() -> {
+            boolean changed = labelDiagnostics.keySet().removeIf(gone::contains);
+            List<CompositeObject> stale = new ArrayList<>();
+            for (Map.Entry<CompositeObject, List<Diagnostic>> entry : labelDiagnostics.entrySet()) {
+                for (Diagnostic d : entry.getValue()) {
+                    if (gone.contains(d.getTarget())) {
+                        stale.add(entry.getKey());
+                        break;
+                    }
+                }
+            }
+            if (changed) publish();
+            if (!stale.isEmpty()) {
+                SwingUtilities.invokeLater(() -> {
+                    for (CompositeObject group : stale) {
+                        if (model.contains(group)) {
+                            groupChanged(group);
+                        } else {
+                            groupRemoved(group);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * 群組解散後呼叫，清掉這個群組的診斷結果
+     *
+     * @param group 已解散的群組
+     */
+    public void groupRemoved(CompositeObject group) {
+        executor.execute(() -> {
+            if (labelDiagnostics.remove(group) != null) publish();
+        });
+    }
+
+    /**
+     * 物件標籤改變後呼叫，只需要重新檢查它所在的群組
+     *
+     * @param obj 標籤改變的物件
+     */
+    public void labelChanged(BasicObject obj) {
+        if (obj.getParent() != null) {
+            groupChanged(obj.getParent());
+        }
+    }
+
+    private void checkGroups(BasicObject obj) {
+        if (obj instanceof CompositeObject) {
+            groupChanged((CompositeObject) obj);
+        }
+        for (BasicObject child : obj.getChildren()) {
+            checkGroups(child);
+        }
+    }
+
+    private static void collectTree(BasicObject obj, List<BasicObject> output) {
+        output.add(obj);
+        for (BasicObject child : obj.getChildren()) {
+            collectTree(child, output);
+        }
+    }
+
+    /**
+     * 把連線記錄到鄰接表，不做任何檢查
+     */
+    private void register(LinkObject link) {
+        allLinks.add(link);
+        BasicObject start = link.getStartObject();
+        if (link instanceof GeneralizationLink) {
+            generalizationOut.computeIfAbsent(start, k -> new ArrayList<>()).add(link);
+        } else if (link instanceof CompositionLink) {
+            compositionOut.computeIfAbsent(start, k -> new ArrayList<>()).add(link);
+        }
+    }
+
+    private boolean checkLink(LinkObject link) {
+        register(link);
+        BasicObject start = link.getStartObject();
+        BasicObject end = link.getEndObject();
+        if (start == end) {
+            put(ValidationRule.SELF_LINK, link, "連線不可連回同一個物件");
+            return true;
+        }
+        if (link instanceof GeneralizationLink) {
+            List<LinkObject> cycle = findPath(generalizationOut, end, start);
+            if (cycle != null) {
+                cycle.add(link);
+                for (LinkObject l : cycle) {
+                    put(ValidationRule.GENERALIZATION_CYCLE, l, "繼承關係形成循環");
+                }
+                return true;
+            }
+        } else if (link instanceof CompositionLink) {
+            // 菱形在終點：起點是部分、終點是整體
+            List<LinkObject> owners = compositionOut.get(start);
+            boolean changed = false;
+            List<BasicObject> wholes = new ArrayList<>();
+            for (LinkObject l : owners) {
+                if (!wholes.contains(l.getEndObject())) wholes.add(l.getEndObject());
+            }
+            if (wholes.size() > 1) {
+                for (LinkObject l : owners) {
+                    put(ValidationRule.COMPOSITION_FOREST, l, "一個部分只能屬於一個整體");
+                }
+                changed = true;
+            }
+            List<LinkObject> cycle = findPath(compositionOut, end, start);
+            if (cycle != null) {
+                cycle.add(link);
+                for (LinkObject l : cycle) {
+                    put(ValidationRule.COMPOSITION_FOREST, l, "組合關係形成循環");
+                }
+                changed = true;
+            }
+            return changed;
+        }
+        return false;
+    }
+
+    /**
+     * 從被移除的 kind 連線的端點出發，沿著仍被 rule 標記的連線找出受影響的範圍（原本同一個強連通元件或同一個部分），
+     * 再逐條確認這些連線是否仍在循環上或仍屬於多個整體
+     */
+    private boolean recheckAround(List<LinkObject> removed, Class<? extends LinkObject> kind, ValidationRule rule) {
+        Map<DisplayObject, Diagnostic> flagged = linkDiagnostics.get(rule);
+        Map<BasicObject, List<LinkObject>> touching = new IdentityHashMap<>();
+        for (DisplayObject target : flagged.keySet()) {
+            if (!kind.isInstance(target)) continue;
+            LinkObject link = (LinkObject) target;
+            touching.computeIfAbsent(link.getStartObject(), k -> new ArrayList<>()).add(link);
+            touching.computeIfAbsent(link.getEndObject(), k -> new ArrayList<>()).add(link);
+        }
+        Set<BasicObject> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        ArrayDeque<BasicObject> queue = new ArrayDeque<>();
+        for (LinkObject link : removed) {
+            if (!kind.isInstance(link)) continue;
+            if (visited.add(link.getStartObject())) queue.add(link.getStartObject());
+            if (visited.add(link.getEndObject())) queue.add(link.getEndObject());
+        }
+        Set<LinkObject> affected = Collections.newSetFromMap(new IdentityHashMap<>());
+        while (!queue.isEmpty()) {
+            for (LinkObject link : touching.getOrDefault(queue.poll(), Collections.emptyList())) {
+                if (!affected.add(link)) continue;
+                if (visited.add(link.getStartObject())) queue.add(link.getStartObject());
+                if (visited.add(link.getEndObject())) queue.add(link.getEndObject());
+            }
+        }
+        boolean changed = false;
+        Map<BasicObject, List<LinkObject>> out = rule == ValidationRule.GENERALIZATION_CYCLE ? generalizationOut : compositionOut;
+        for (LinkObject link : affected) {
+            String message = null;
+            if (findPath(out, link.getEndObject(), link.getStartObject()) != null) {
+                message = rule == ValidationRule.GENERALIZATION_CYCLE ? "繼承關係形成循環" : "組合關係形成循環";
+            } else if (rule == ValidationRule.COMPOSITION_FOREST && hasMultipleOwners(link.getStartObject())) {
+                message = "一個部分只能屬於一個整體";
+            }
+            if (message == null) {
+                flagged.remove(link);
+                changed = true;
+            } else if (!message.equals(flagged.get(link).getMessage())) {
+                put(rule, link, message);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private boolean hasMultipleOwners(BasicObject part) {
+        BasicObject whole = null;
+        for (LinkObject l : compositionOut.getOrDefault(part, Collections.emptyList())) {
+            if (whole == null) {
+                whole = l.getEndObject();
+            } else if (whole != l.getEndObject()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 以強連通元件重新檢查所有連線：兩端落在同一個元件內的繼承或組合連線就在循環上
+     */
+    private boolean checkAll() {
+        for (Map<DisplayObject, Diagnostic> byTarget : linkDiagnostics.values()) {
+            byTarget.clear();
+        }
+        AnalysisGraph g = AnalysisGraph.fromLinks(allLinks);
+        int[] genComp = GraphAnalysis.stronglyConnectedComponents(g, AnalysisGraph.GENERALIZATION);
+        int[] compComp = GraphAnalysis.stronglyConnectedComponents(g, AnalysisGraph.COMPOSITION);
+        int[] owners = GraphAnalysis.compositionOwners(g);
+        for (LinkObject link : allLinks) {
+            int s = g.indexOf(link.getStartObject());
+            int t = g.indexOf(link.getEndObject());
+            if (s == t) {
+                put(ValidationRule.SELF_LINK, link, "連線不可連回同一個物件");
+            } else if (link instanceof GeneralizationLink) {
+                if (genComp[s] == genComp[t]) {
+                    put(ValidationRule.GENERALIZATION_CYCLE, link, "繼承關係形成循環");
+                }
+            } else if (link instanceof CompositionLink) {
+                if (compComp[s] == compComp[t]) {
+                    put(ValidationRule.COMPOSITION_FOREST, link, "組合關係形成循環");
+                } else if (owners[s] == GraphAnalysis.MULTIPLE_OWNERS) {
+                    put(ValidationRule.COMPOSITION_FOREST, link, "一個部分只能屬於一個整體");
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 沿著出邊從 from 找一條到 to 的路徑（非遞迴 DFS），回傳經過的連線；找不到時回傳 null
+     */
+    private static List<LinkObject> findPath(Map<BasicObject, List<LinkObject>> out, BasicObject from, BasicObject to) {
+        Map<BasicObject, LinkObject> via = new IdentityHashMap<>();
+        ArrayDeque<BasicObject> stack = new ArrayDeque<>();
+        stack.push(from);
+        via.put(from, null);
+        while (!stack.isEmpty()) {
+            BasicObject v = stack.pop();
+            if (v == to) {
+                List<LinkObject> path = new ArrayList<>();
+                for (LinkObject l = via.get(v); l != null; l = via.get(l.getStartObject())) {
+                    path.add(l);
+                }
+                return path;
+            }
+            for (LinkObject l : out.getOrDefault(v, Collections.emptyList())) {
+                BasicObject w = l.getEndObject();
+                if (!via.containsKey(w)) {
+                    via.put(w, l);
+                    stack.push(w);
+                }
+            }
+        }
+        return null;
+    }
+
+    private boolean checkLabels(CompositeObject group, List<BasicObject> children, String[] labels) {
+        Map<String, List<BasicObject>> byLabel = new HashMap<>();
+        for (int i = 0; i < labels.length; i++) {
+            if (labels[i] == null || labels[i].isEmpty()) continue;
+            byLabel.computeIfAbsent(labels[i], k -> new ArrayList<>()).add(children.get(i));
+        }
+        List<Diagnostic> found = new ArrayList<>();
+        for (Map.Entry<String, List<BasicObject>> entry : byLabel.entrySet()) {
+            if (entry.getValue().size() < 2) continue;
+            for (BasicObject obj : entry.getValue()) {
+                found.add(new Diagnostic(ValidationRule.DUPLICATE_LABEL, obj,
+                        "群組內有重複的標籤「" + entry.getKey() + "」"));
+            }
+        }
+        List<Diagnostic> previous = found.isEmpty() ? labelDiagnostics.remove(group) : labelDiagnostics.put(group, found);
+        return previous != null || !found.isEmpty();
+    }
+
+    private void put(ValidationRule rule, DisplayObject target, String message) {
+        linkDiagnostics.get(rule).put(target, new Diagnostic(rule, target, message));
+    }
+
+    private void publish() {
+        List<Diagnostic> all = new ArrayList<>();
+        for (Map<DisplayObject, Diagnostic> byTarget : linkDiagnostics.values()) {
+            all.addAll(byTarget.values());
+        }
+        for (List<Diagnostic> list : labelDiagnostics.values()) {
+            all.addAll(list);
+        }
+        List<Diagnostic> result = Collections.unmodifiableList(all);
+        SwingUtilities.invokeLater(() -> listener.accept(result));
+    }
+}
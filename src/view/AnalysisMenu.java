@@ -0,0 +1,137 @@
+package view;
+
+import analysis.AnalysisGraph;
+import analysis.GraphAnalysis;
+import model.BasicObject;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * AnalysisMenu 是 Analyze 選單，把 GraphAnalysis 的結果標示在畫布上。
+ * AnalysisGraph 在連線沒有增減時重複使用，分析本身是線性時間，直接在 EDT 上完成。
+ */
+public class AnalysisMenu extends JMenu {
+    private static final int HOT_SPOT_COUNT = 10;
+
+    private final Canvas canvas;
+
+    private AnalysisGraph graph;
+    private long graphLinkVersion = -1;
+
+    public AnalysisMenu(Canvas canvas) {
+        super("Analyze");
+        this.canvas = canvas;
+
+        addItem("Inheritance Cycles", this::showInheritanceCycles);
+        addItem("Strongly Connected Components", this::showStronglyConnected);
+        addItem("Reachable From Selection", this::showReachable);
+        addItem("Composition Tree of Selection", this::showCompositionTree);
+        addItem("Fan-in / Fan-out Hot Spots", this::showHotSpots);
+        addSeparator();
+        addItem("Clear Highlights", () -> canvas.setHighlights(Collections.emptyList()));
+    }
+
+    private void addItem(String name, Runnable action) {
+        JMenuItem item = new JMenuItem(name);
+        item.addActionListener(e -> action.run());
+        add(item);
+    }
+
+    private void showInheritanceCycles() {
+        AnalysisGraph g = compile();
+        List<int[]> cycles = GraphAnalysis.cycles(g, AnalysisGraph.GENERALIZATION);
+        highlight(g, cycles, cycles.isEmpty() ? "沒有繼承循環" : "找到 " + cycles.size() + " 個繼承循環");
+    }
+
+    private void showStronglyConnected() {
+        AnalysisGraph g = compile();
+        List<int[]> components = GraphAnalysis.cycles(g, AnalysisGraph.ALL);
+        highlight(g, components, components.isEmpty() ? "沒有包含環的強連通元件" : "找到 " + components.size() + " 個強連通元件");
+    }
+
+    private void showReachable() {
+        AnalysisGraph g = compile();
+        int[] sources = selectedIndices(g);
+        if (sources.length == 0) {
+            message("請先選取有連線的物件");
+            return;
+        }
+        canvas.setHighlights(toObjects(g, GraphAnalysis.reachable(g, sources, AnalysisGraph.ALL, true)));
+    }
+
+    private void showCompositionTree() {
+        AnalysisGraph g = compile();
+        int[] roots = selectedIndices(g);
+        if (roots.length == 0) {
+            message("請先選取有連線的物件");
+            return;
+        }
+        canvas.setHighlights(toObjects(g, GraphAnalysis.compositionTree(g, roots)));
+
+        int[] owners = GraphAnalysis.compositionOwners(g);
+        int shared = 0;
+        for (int owner : owners) {
+            if (owner == GraphAnalysis.MULTIPLE_OWNERS) shared++;
+        }
+        if (shared > 0) {
+            message("有 " + shared + " 個物件同時屬於多個整體");
+        }
+    }
+
+    private void showHotSpots() {
+        AnalysisGraph g = compile();
+        int[] top = GraphAnalysis.hotSpots(g, AnalysisGraph.ALL, HOT_SPOT_COUNT);
+        List<BasicObject> objs = new ArrayList<>(top.length);
+        for (int v : top) {
+            objs.add(g.getNode(v));
+        }
+        canvas.setHighlights(objs);
+    }
+
+    private AnalysisGraph compile() {
+        long version = canvas.getModel().getLinkVersion();
+        if (graph == null || version != graphLinkVersion) {
+            graph = AnalysisGraph.fromModel(canvas.getModel());
+            graphLinkVersion = version;
+        }
+        return graph;
+    }
+
+    private void highlight(AnalysisGraph g, List<int[]> groups, String summary) {
+        List<BasicObject> objs = new ArrayList<>();
+        for (int[] group : groups) {
+            for (int v : group) {
+                objs.add(g.getNode(v));
+            }
+        }
+        canvas.setHighlights(objs);
+        message(summary);
+    }
+
+    private int[] selectedIndices(AnalysisGraph g) {
+        List<BasicObject> selected = canvas.getSelectedObjects();
+        int[] result = new int[selected.size()];
+        int n = 0;
+        for (BasicObject obj : selected) {
+            int v = g.indexOf(obj);
+            if (v >= 0) result[n++] = v;
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    private static List<BasicObject> toObjects(AnalysisGraph g, boolean[] mask) {
+        List<BasicObject> objs = new ArrayList<>();
+        for (int v = 0; v < mask.length; v++) {
+            if (mask[v]) objs.add(g.getNode(v));
+        }
+        return objs;
+    }
+
+    private void message(String text) {
+        JOptionPane.showMessageDialog(SwingUtilities.getWindowAncestor(canvas), text, "提示", JOptionPane.INFORMATION_MESSAGE);
+    }
+}
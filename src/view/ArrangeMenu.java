@@ -0,0 +1,48 @@
+package view;
+
+import controller.CanvasController;
+import controller.SnapEngine;
+import enums.Alignment;
+
+import javax.swing.*;
+
+/**
+ * ArrangeMenu 是 Arrange 選單：切換拖曳時的吸附方式，以及對齊、等距排列選取的物件。
+ */
+public class ArrangeMenu extends JMenu {
+
+    public ArrangeMenu(Canvas canvas) {
+        super("Arrange");
+        CanvasController controller = canvas.getController();
+        SnapEngine snapEngine = controller.getSnapEngine();
+
+        JCheckBoxMenuItem gridItem = new JCheckBoxMenuItem("Snap to Grid", snapEngine.isSnapToGrid());
+        gridItem.addActionListener(e -> snapEngine.setSnapToGrid(gridItem.isSelected()));
+        JCheckBoxMenuItem objectsItem = new JCheckBoxMenuItem("Snap to Objects", snapEngine.isSnapToObjects());
+        objectsItem.addActionListener(e -> snapEngine.setSnapToObjects(objectsItem.isSelected()));
+        add(gridItem);
+        add(objectsItem);
+        addSeparator();
+
+        addAlignItem(controller, "Align Left", Alignment.LEFT);
+        addAlignItem(controller, "Align Center", Alignment.CENTER);
+        addAlignItem(controller, "Align Right", Alignment.RIGHT);
+        addAlignItem(controller, "Align Top", Alignment.TOP);
+        addAlignItem(controller, "Align Middle", Alignment.MIDDLE);
+        addAlignItem(controller, "Align Bottom", Alignment.BOTTOM);
+        addSeparator();
+
+        JMenuItem horizontalItem = new JMenuItem("Distribute Horizontally");
+        horizontalItem.addActionListener(e -> controller.distributeSelection(true));
+        JMenuItem verticalItem = new JMenuItem("Distribute Vertically");
+        verticalItem.addActionListener(e -> controller.distributeSelection(false));
+        add(horizontalItem);
+        add(verticalItem);
+    }
+
+    private void addAlignItem(CanvasController controller, String name, Alignment alignment) {
+        JMenuItem item = new JMenuItem(name);
+        item.addActionListener(e -> controller.alignSelection(alignment));
+        add(item);
+    }
+}
@@ -1,15 +1,26 @@
 package view;
 
 import controller.CanvasController;
+import model.AssociationLink;
 import model.BasicObject;
 import model.CanvasModel;
 import model.DisplayObject;
 import model.LinkObject;
+import model.ModelChangeBatch;
+import enums.ChangeType;
+import validation.Diagnostic;
 
 import javax.swing.*;
+import java.awt.BasicStroke;
 import java.awt.Color;
+import java.awt.Dimension;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.Stroke;
+import java.awt.event.MouseEvent;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.List;
 
@@ -20,10 +31,33 @@ public class Canvas extends JPanel {
 	public static final int DEFAULT_WIDTH = 120;
 	public static final int DEFAULT_HEIGHT = 80;
 
+	// 連接埠小方塊會超出物件邊界 3px，重畫與裁切時多留一點空間
+	private static final int PORT_MARGIN = 4;
+
+	// 物件最右下角之外再多留的可捲動空間
+	private static final int SCROLL_MARGIN = 200;
+
 	private ToolPanel toolPanel;
 	private CanvasModel model;
 	private CanvasController controller;
 
+	// 連續的連線合併成同一批 Path2D 繪製
+	private final LinkBatchRenderer linkBatch = new LinkBatchRenderer();
+
+	// 開啟時 AssociationLink 改以合併後的束繪製
+	private final EdgeBundler edgeBundler = new EdgeBundler();
+	private boolean bundleAssociations = false;
+
+	// 分析結果要標示的物件（例如繼承循環），畫在所有物件之上
+	private List<BasicObject> highlights = new ArrayList<>();
+	private static final Color HIGHLIGHT_COLOR = new Color(255, 140, 0);
+	private static final BasicStroke HIGHLIGHT_STROKE = new BasicStroke(3f);
+
+	// 背景驗證回報的問題，以紅色標記畫在物件右上角或連線中央
+	private List<Diagnostic> diagnostics = new ArrayList<>();
+	private static final int MARKER_SIZE = 14;
+	private static final Color MARKER_COLOR = new Color(220, 40, 40);
+
 	/**
 	 * 建構子，初始化toolPanel、modle、controller，設定背景顏色與滑鼠監聽器。
 	 *
@@ -38,6 +72,9 @@ public class Canvas extends JPanel {
 		this.controller = new CanvasController(toolPanel, model, this);
 		addMouseListener(controller);
 		addMouseMotionListener(controller);
+		this.model.addModelListener(this::modelChanged);
+		// 讓 getToolTipText(MouseEvent) 生效，滑到標記上時顯示訊息
+		setToolTipText("");
 	}
 
 	/**
@@ -51,27 +88,263 @@ public class Canvas extends JPanel {
 
 	/**
 	 * 繪製畫布上的所有圖形與連線物件。 會根據物件的 depth進行排序，depth 越小的物件顯示在越上層。 
-	 * 繪製順序為物件與連線依照 depth 排序 → 個別呼叫 draw 方法繪製。 最後繪製額外的輔助元素，例如拖曳線或選取框
+	 * 繪製順序為物件與連線依照 depth 排序 → 物件個別呼叫 draw 方法繪製，相鄰的連線合併成一批繪製。 最後繪製額外的輔助元素，例如拖曳線或選取框
 	 * 呼叫 repaint 的時候 ， Swing 會在事件處理 thread 安排呼叫 paintComponent
 	 */
 	@Override
 	protected void paintComponent(Graphics g) {
 	    super.paintComponent(g);
 
+	    // 只重畫部分區域時（例如 hover），透過空間索引只取出與重畫區域相交的物件與連線
+	    Rectangle clip = g.getClipBounds();
+	    Graphics2D g2d = (Graphics2D) g;
+
+	    // 合併後的束畫在最底層，個別的 AssociationLink 不再加入繪製列表
+	    if (bundleAssociations) {
+	        edgeBundler.update(model);
+	        edgeBundler.draw(g2d, clip);
+	    }
+
 	    List<DisplayObject> drawList = new ArrayList<>();
-	    drawList.addAll(model.getObjects());  // List<BasicObject> extends DisplayObject
-	    drawList.addAll(model.getLinks());    // List<LinkObject> extends DisplayObject
+	    if (clip == null) {
+	        drawList.addAll(model.getObjects());  // List<BasicObject> extends DisplayObject
+	        for (LinkObject link : model.getLinks()) {
+	            if (!(bundleAssociations && link instanceof AssociationLink)) {
+	                drawList.add(link);
+	            }
+	        }
+	    } else {
+	        Rectangle area = new Rectangle(clip);
+	        area.grow(PORT_MARGIN, PORT_MARGIN);
+	        drawList.addAll(model.queryObjects(area));
+	        // 連線也透過連線索引只取出附近的，hover 時不用走訪所有連線
+	        for (LinkObject link : model.queryLinks(area)) {
+	            if (!(bundleAssociations && link instanceof AssociationLink)) {
+	                drawList.add(link);
+	            }
+	        }
+	    }
 
 	    drawList.sort(Comparator.comparingInt(DisplayObject::getDepth).reversed());
 
+	    boolean routing = controller.getLinkRouter().isEnabled();
 	    for (DisplayObject obj : drawList) {
-	        obj.draw(g);
+	        if (obj instanceof LinkObject) {
+	            LinkObject link = (LinkObject) obj;
+	            // 開啟繞線時，端點移動過的連線先畫成直線，同時交給背景重新繞線
+	            if (routing && link.isRouteStale()) {
+	                controller.getLinkRouter().request(link);
+	            }
+	            linkBatch.add(link);
+	        } else {
+	            linkBatch.flush(g2d);
+	            obj.draw(g);
+	        }
 	    }
+	    linkBatch.flush(g2d);
 
+	    drawHighlights(g2d, clip);
+	    drawDiagnostics(g2d, clip);
 	    controller.drawAdditionalGuides(g);
 	}
 
 
+	private void drawHighlights(Graphics2D g2d, Rectangle clip) {
+		if (highlights.isEmpty()) return;
+		Stroke oldStroke = g2d.getStroke();
+		g2d.setColor(HIGHLIGHT_COLOR);
+		g2d.setStroke(HIGHLIGHT_STROKE);
+		for (BasicObject obj : highlights) {
+			Rectangle r = obj.getBounds();
+			r.grow(PORT_MARGIN, PORT_MARGIN);
+			if (clip == null || r.intersects(clip)) {
+				g2d.draw(r);
+			}
+		}
+		g2d.setStroke(oldStroke);
+	}
+
+	private void drawDiagnostics(Graphics2D g2d, Rectangle clip) {
+		for (Diagnostic d : diagnostics) {
+			Rectangle marker = markerBounds(d);
+			if (marker == null || (clip != null && !marker.intersects(clip))) continue;
+			g2d.setColor(MARKER_COLOR);
+			g2d.fillOval(marker.x, marker.y, marker.width, marker.height);
+			g2d.setColor(Color.WHITE);
+			g2d.fillRect(marker.x + MARKER_SIZE / 2 - 1, marker.y + 3, 2, MARKER_SIZE - 8);
+			g2d.fillRect(marker.x + MARKER_SIZE / 2 - 1, marker.y + MARKER_SIZE - 4, 2, 2);
+		}
+	}
+
+	/**
+	 * 標記的位置：物件畫在右上角，連線畫在外框中央；目標已不在畫布上時回傳 null
+	 */
+	private Rectangle markerBounds(Diagnostic d) {
+		if (d.getTarget() instanceof BasicObject) {
+			BasicObject obj = (BasicObject) d.getTarget();
+			if (!model.contains(obj)) return null;
+			return new Rectangle(obj.getX() + obj.getWidth() - MARKER_SIZE / 2, obj.getY() - MARKER_SIZE / 2,
+					MARKER_SIZE, MARKER_SIZE);
+		}
+		if (d.getTarget() instanceof LinkObject) {
+			LinkObject link = (LinkObject) d.getTarget();
+			if (!model.containsLink(link)) return null;
+			Rectangle b = link.getBounds();
+			return new Rectangle((int) b.getCenterX() - MARKER_SIZE / 2, (int) b.getCenterY() - MARKER_SIZE / 2,
+					MARKER_SIZE, MARKER_SIZE);
+		}
+		return null;
+	}
+
+	/**
+	 * 更新驗證結果並重畫新舊標記所在的位置，由 ModelValidator 在 EDT 上呼叫。
+	 *
+	 * @param list 目前所有的驗證結果
+	 */
+	public void setDiagnostics(List<Diagnostic> list) {
+		for (Diagnostic d : diagnostics) {
+			repaintMarker(d);
+		}
+		diagnostics = list;
+		for (Diagnostic d : diagnostics) {
+			repaintMarker(d);
+		}
+	}
+
+	private void repaintMarker(Diagnostic d) {
+		Rectangle r = markerBounds(d);
+		if (r != null) repaint(r);
+	}
+
+	@Override
+	public String getToolTipText(MouseEvent e) {
+		for (Diagnostic d : diagnostics) {
+			Rectangle r = markerBounds(d);
+			if (r != null && r.contains(e.getPoint())) {
+				return d.getMessage();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * model 變動後決定重畫的範圍：物件增減、移動或連線改變時整張重畫，
+	 * 只有標籤或選取改變時只重畫那些物件。
+	 */
+	private void modelChanged(ModelChangeBatch batch) {
+		if (bundleAssociations) {
+			edgeBundler.modelChanged(batch);
+		}
+		boolean structural = batch.contains(ChangeType.OBJECT_ADDED) || batch.contains(ChangeType.OBJECT_REMOVED);
+		if (structural) {
+			revalidate();
+		}
+		if (structural || batch.contains(ChangeType.GEOMETRY_CHANGED)
+				|| batch.contains(ChangeType.LINK_ADDED) || batch.contains(ChangeType.LINK_REMOVED)) {
+			repaint();
+			return;
+		}
+		// 批次修改標籤時可能有上萬個物件，先合併成一個範圍再重畫一次
+		Rectangle dirty = null;
+		for (BasicObject obj : batch.getObjects(ChangeType.LABEL_CHANGED)) {
+			dirty = union(dirty, obj);
+		}
+		for (BasicObject obj : batch.getObjects(ChangeType.SELECTION_CHANGED)) {
+			dirty = union(dirty, obj);
+		}
+		if (dirty != null) {
+			repaint(dirty);
+		}
+	}
+
+	private static Rectangle union(Rectangle dirty, BasicObject obj) {
+		Rectangle r = new Rectangle(obj.getX() - PORT_MARGIN, obj.getY() - PORT_MARGIN,
+				obj.getWidth() + 2 * PORT_MARGIN, obj.getHeight() + 2 * PORT_MARGIN);
+		if (dirty == null) return r;
+		dirty.add(r);
+		return dirty;
+	}
+
+	/**
+	 * 依目前所有物件的範圍回報偏好大小，放在 JScrollPane 裡時才能捲動到畫面外的物件。
+	 */
+	@Override
+	public Dimension getPreferredSize() {
+		int w = 0, h = 0;
+		for (BasicObject obj : model.getObjects()) {
+			w = Math.max(w, obj.getX() + obj.getWidth());
+			h = Math.max(h, obj.getY() + obj.getHeight());
+		}
+		return new Dimension(w + SCROLL_MARGIN, h + SCROLL_MARGIN);
+	}
+
+	/**
+	 * 捲動畫布讓指定物件出現在畫面中央附近。
+	 *
+	 * @param obj 要顯示的物件
+	 */
+	public void reveal(BasicObject obj) {
+		revalidate();
+		Rectangle target = obj.getBounds();
+		Rectangle visible = getVisibleRect();
+		target.grow(Math.max(0, (visible.width - target.width) / 2), Math.max(0, (visible.height - target.height) / 2));
+		// revalidate 之後偏好大小才會更新，等版面配置完成再捲動
+		SwingUtilities.invokeLater(() -> scrollRectToVisible(target));
+		repaint();
+	}
+
+	/**
+	 * 設定要標示的物件，傳入空的集合即清除標示。
+	 *
+	 * @param objs 要標示的物件
+	 */
+	public void setHighlights(Collection<BasicObject> objs) {
+		highlights = new ArrayList<>(objs);
+		repaint();
+	}
+
+	/**
+	 * 設定是否將 AssociationLink 合併成束繪製，適合連線非常密集的圖。
+	 *
+	 * @param enabled true 表示開啟
+	 */
+	public void setBundleAssociations(boolean enabled) {
+		if (bundleAssociations == enabled) return;
+		bundleAssociations = enabled;
+		if (!enabled) {
+			edgeBundler.clear();
+		}
+		repaint();
+	}
+
+	public boolean isBundleAssociations() {
+		return bundleAssociations;
+	}
+
+	/**
+	 * 設定是否讓連線以正交折線繞過物件，關閉時連線畫成直線。
+	 *
+	 * @param enabled true 表示開啟
+	 */
+	public void setOrthogonalRouting(boolean enabled) {
+		controller.getLinkRouter().setEnabled(enabled);
+		repaint();
+	}
+
+	public boolean isOrthogonalRouting() {
+		return controller.getLinkRouter().isEnabled();
+	}
+
+	/**
+	 * 只重畫指定物件所在的範圍（包含連接埠）。
+	 *
+	 * @param obj 需要重畫的物件
+	 */
+	public void repaintObject(BasicObject obj) {
+		repaint(obj.getX() - PORT_MARGIN, obj.getY() - PORT_MARGIN,
+				obj.getWidth() + 2 * PORT_MARGIN, obj.getHeight() + 2 * PORT_MARGIN);
+	}
+
 	/**
 	 * 將目前選取的物件進行群組化。
 	 */
@@ -86,6 +359,29 @@ public class Canvas extends JPanel {
 		controller.ungroupSelectedObject();
 	}
 
+	/**
+	 * 復原上一個可復原的操作（例如自動排版）。
+	 */
+	public void undo() {
+		controller.undo();
+	}
+
+	/**
+	 * 重做上一個被復原的操作。
+	 */
+	public void redo() {
+		controller.redo();
+	}
+
+	/**
+	 * 取得畫布的控制器，供需要在背景執行並回寫 model 的工作（例如自動排版）使用。
+	 *
+	 * @return CanvasController
+	 */
+	public CanvasController getController() {
+		return controller;
+	}
+
 	/**
 	 * 取得目前畫布的模型。
 	 *
@@ -0,0 +1,130 @@
+package view;
+
+import diff.DiagramDiff;
+import diff.DiagramSnapshot;
+import diff.Difference;
+import diff.MergeConflict;
+import diff.MergeResult;
+import diff.ThreeWayMerge;
+import model.BasicObject;
+
+import javax.swing.*;
+import java.awt.Dimension;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * CompareMenu 是 Compare 選單：記下目前的版本，之後與它比較，
+ * 列出差異並在畫布上標示有變動的物件。
+ *
+ * 也可以從記下的版本分出兩條修改再合併：Shelve Changes 把目前的修改收起來並回到記下的版本，
+ * 接著做另一組修改，Merge Shelved Changes 以記下的版本為共同祖先把兩組修改合併回畫布，衝突時採用畫布上的修改。
+ */
+public class CompareMenu extends JMenu {
+    // 差異清單最多列出幾項，全部的數量另外顯示
+    private static final int MAX_LISTED = 1000;
+
+    private final Canvas canvas;
+    private DiagramSnapshot snapshot;
+    // 收起來、等待合併的修改，與 snapshot 共用同一個祖先
+    private DiagramSnapshot shelved;
+
+    public CompareMenu(Canvas canvas) {
+        super("Compare");
+        this.canvas = canvas;
+
+        JMenuItem takeItem = new JMenuItem("Take Snapshot");
+        takeItem.addActionListener(e -> {
+            snapshot = DiagramSnapshot.capture(canvas.getModel());
+            shelved = null;
+        });
+        JMenuItem compareItem = new JMenuItem("Compare with Snapshot");
+        compareItem.addActionListener(e -> compare());
+        JMenuItem shelveItem = new JMenuItem("Shelve Changes");
+        shelveItem.addActionListener(e -> shelve());
+        JMenuItem mergeItem = new JMenuItem("Merge Shelved Changes");
+        mergeItem.addActionListener(e -> mergeShelved());
+        add(takeItem);
+        add(compareItem);
+        addSeparator();
+        add(shelveItem);
+        add(mergeItem);
+    }
+
+    /**
+     * 記下目前的修改，畫布回到記下的版本
+     */
+    private void shelve() {
+        if (snapshot == null) {
+            JOptionPane.showMessageDialog(SwingUtilities.getWindowAncestor(canvas), "請先記下一個版本", "提示", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        shelved = DiagramSnapshot.capture(canvas.getModel());
+        snapshot.applyTo(canvas.getModel());
+    }
+
+    /**
+     * 以記下的版本為祖先，把收起來的修改與畫布上的修改合併，列出衝突
+     */
+    private void mergeShelved() {
+        if (shelved == null) {
+            JOptionPane.showMessageDialog(SwingUtilities.getWindowAncestor(canvas), "沒有收起來的修改", "提示", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        MergeResult result = ThreeWayMerge.merge(snapshot, DiagramSnapshot.capture(canvas.getModel()), shelved);
+        result.getMerged().applyTo(canvas.getModel());
+        shelved = null;
+        if (result.isClean()) {
+            JOptionPane.showMessageDialog(SwingUtilities.getWindowAncestor(canvas), "合併完成，沒有衝突", "合併", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        StringBuilder text = new StringBuilder();
+        for (MergeConflict conflict : result.getConflicts()) {
+            text.append(conflict.getDescription()).append('\n');
+        }
+        JTextArea area = new JTextArea(text.toString());
+        area.setEditable(false);
+        JScrollPane scroll = new JScrollPane(area);
+        scroll.setPreferredSize(new Dimension(480, 320));
+        JOptionPane.showMessageDialog(SwingUtilities.getWindowAncestor(canvas), scroll,
+                result.getConflicts().size() + " 項衝突", JOptionPane.WARNING_MESSAGE);
+    }
+
+    private void compare() {
+        if (snapshot == null) {
+            JOptionPane.showMessageDialog(SwingUtilities.getWindowAncestor(canvas), "請先記下一個版本", "提示", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        DiagramDiff diff = DiagramDiff.compute(snapshot, DiagramSnapshot.capture(canvas.getModel()));
+
+        Set<Long> changed = diff.getChangedIds();
+        List<BasicObject> objs = new ArrayList<>();
+        for (BasicObject obj : canvas.getModel().getObjects()) {
+            collectChanged(obj, changed, objs);
+        }
+        canvas.setHighlights(objs);
+
+        StringBuilder text = new StringBuilder();
+        List<Difference> differences = diff.getDifferences();
+        for (int i = 0; i < Math.min(MAX_LISTED, differences.size()); i++) {
+            text.append(differences.get(i).getDescription()).append('\n');
+        }
+        if (differences.size() > MAX_LISTED) {
+            text.append("…共 ").append(differences.size()).append(" 項差異\n");
+        }
+        JTextArea area = new JTextArea(diff.isEmpty() ? "沒有差異" : text.toString());
+        area.setEditable(false);
+        JScrollPane scroll = new JScrollPane(area);
+        scroll.setPreferredSize(new Dimension(480, 320));
+        JOptionPane.showMessageDialog(SwingUtilities.getWindowAncestor(canvas), scroll,
+                differences.size() + " 項差異", JOptionPane.INFORMATION_MESSAGE);
+    }
+
+    private static void collectChanged(BasicObject obj, Set<Long> changed, List<BasicObject> out) {
+        if (changed.contains(obj.getId())) out.add(obj);
+        for (BasicObject child : obj.getChildren()) {
+            collectChanged(child, changed, out);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package view;
 
 import enums.LabelShape;
+import model.LabelPattern;
 
 import javax.swing.*;
 import java.awt.*;
@@ -8,6 +9,7 @@ import java.awt.*;
 /**
  * CustomLabelDialog 用於自訂 Label 樣式，包括標籤文字、形狀、背景顏色與字體大小。
  * 此對話框會根據傳入的初始值初始化各個元件，並在使用者按下 OK 或 Cancel 後結束對話。
+ * 一次修改多個物件時，標籤文字視為樣板：{label} 代表原本的標籤，{n} 代表序號。
  */
 public class CustomLabelDialog extends JDialog {
     private JTextField labelNameField;
@@ -28,10 +30,23 @@ public class CustomLabelDialog extends JDialog {
      * @param currentFontSize 當前字體大小
      */
     public CustomLabelDialog(Frame owner, String currentLabel, LabelShape currentShape, Color currentColor, int currentFontSize) {
-        super(owner, "Customize Label Style", true);
+        this(owner, currentLabel, currentShape, currentColor, currentFontSize, 1);
+    }
 
-        // 建立標籤名稱文字欄位
-        labelNameField = new JTextField(currentLabel, 20);
+    /**
+     * 建構子，targetCount 大於 1 時標題顯示物件數，標籤欄位預設為保留原標籤的樣板。
+     *
+     * @param targetCount 要修改的物件數
+     */
+    public CustomLabelDialog(Frame owner, String currentLabel, LabelShape currentShape, Color currentColor,
+                             int currentFontSize, int targetCount) {
+        super(owner, targetCount > 1 ? "Customize Label Style (" + targetCount + " objects)" : "Customize Label Style", true);
+
+        // 建立標籤名稱文字欄位，多個物件時預設保留各自的標籤
+        labelNameField = new JTextField(targetCount > 1 ? LabelPattern.LABEL : currentLabel, 20);
+        if (targetCount > 1) {
+            labelNameField.setToolTipText(LabelPattern.LABEL + " = current label, " + LabelPattern.NUMBER + " = sequence number");
+        }
 
         // 建立標籤形狀的選擇按鈕，並組成 ButtonGroup 保證互斥
         rectButton = new JRadioButton("Rectangle");
@@ -0,0 +1,362 @@
+package view;
+
+import enums.ChangeType;
+import model.AssociationLink;
+import model.BasicObject;
+import model.CanvasModel;
+import model.HashKeys;
+import model.LinkObject;
+import model.ModelChangeBatch;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.geom.Path2D;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 將兩端落在相近區域的 AssociationLink 合併成同一束 (edge bundling)：
+ * 每條連線只畫從連接埠到束端點的一小段，中間共用一條主幹，
+ * 數萬條連線會變成數千個 Path2D，畫面也不再糊成一片。
+ * 每條連線的裝飾（箭頭）仍然畫在自己的終點，方向沿著最後那一小段，看得出每條連線指向哪裡。
+ *
+ * 第一次使用時建立全部的束，之後由 Canvas 轉交 model 的變動批次 (modelChanged)：
+ * 只處理新增、移除的連線，以及端點落在移動過的物件（含群組內）上的連線，
+ * 透過 CanvasModel.getLinksOf 反查，不需要走訪所有連線；受影響的束再平行重建。
+ * 只在 EDT 上使用。
+ */
+class EdgeBundler {
+	// 端點量化的最小格子大小，兩端都落在同一對格子裡的連線歸為同一束
+	private static final int BUNDLE_CELL = 192;
+	// 圖很大時格子跟著放大，讓每個方向最多切成這麼多格，束的數量才不會隨連線數一起暴增
+	private static final int GRID_DIVISIONS = 12;
+	// 主幹往兩側彎曲的比例，讓方向相反的束不會疊在同一條線上
+	private static final double CURVATURE = 0.12;
+	// 外框多留的空間，涵蓋最粗的線寬
+	private static final int MAX_HALF_STROKE = 16;
+
+	private final Map<LinkObject, Entry> entries = new IdentityHashMap<>();
+	private final Map<Long, Bundle> bundles = new HashMap<>();
+	private final List<Bundle> dirty = new ArrayList<>();
+
+	private int cellSize = BUNDLE_CELL;
+	// false 表示還沒建立過（或已清空），下一次 update 從 model 的全部連線重建
+	private boolean built;
+
+	// 上次 update 之後累積的變動
+	private final Set<LinkObject> addedLinks = Collections.newSetFromMap(new IdentityHashMap<>());
+	private final Set<LinkObject> removedLinks = Collections.newSetFromMap(new IdentityHashMap<>());
+	private final Set<BasicObject> movedRoots = Collections.newSetFromMap(new IdentityHashMap<>());
+
+	/**
+	 * 記下一批 model 變動，到下一次 update 才重新分束；還沒建立過時不需要記錄
+	 *
+	 * @param batch 變動批次
+	 */
+	void modelChanged(ModelChangeBatch batch) {
+		if (!built) return;
+		addedLinks.addAll(batch.getLinks(ChangeType.LINK_ADDED));
+		removedLinks.addAll(batch.getLinks(ChangeType.LINK_REMOVED));
+		movedRoots.addAll(batch.getObjects(ChangeType.GEOMETRY_CHANGED));
+	}
+
+	/**
+	 * 依累積的變動更新快取，沒有變動時直接返回
+	 *
+	 * @param model 畫布模型
+	 */
+	void update(CanvasModel model) {
+		if (!built) {
+			rebuildAll(model);
+		} else if (!addedLinks.isEmpty() || !removedLinks.isEmpty()) {
+			// 格子大小只在連線增減時依圖的範圍調整，移動物件時保持不變，分束才穩定
+			int size = cellSizeFor(model);
+			if (size != cellSize) {
+				rebuildAll(model);
+			} else {
+				applyLinkChanges(model);
+			}
+		}
+		if (!movedRoots.isEmpty()) {
+			for (BasicObject root : movedRoots) {
+				reassignLinksOf(model, root);
+			}
+			movedRoots.clear();
+		}
+		if (dirty.isEmpty()) return;
+
+		// 各束的路徑只讀取快照下來的座標，可以平行建立
+		dirty.parallelStream().forEach(Bundle::rebuild);
+		for (Bundle bundle : dirty) {
+			bundle.dirty = false;
+			if (bundle.members.isEmpty()) bundles.remove(bundle.key);
+		}
+		dirty.clear();
+	}
+
+	private void rebuildAll(CanvasModel model) {
+		entries.clear();
+		bundles.clear();
+		dirty.clear();
+		addedLinks.clear();
+		removedLinks.clear();
+		movedRoots.clear();
+		cellSize = cellSizeFor(model);
+		for (LinkObject link : model.getLinks()) {
+			if (link instanceof AssociationLink) {
+				add(link);
+			}
+		}
+		built = true;
+	}
+
+	/**
+	 * 先移除再新增：同一批裡移除後又加回的連線會重新放進束，新增後又移除的連線則不會留下
+	 */
+	private void applyLinkChanges(CanvasModel model) {
+		for (LinkObject link : removedLinks) {
+			Entry entry = entries.remove(link);
+			if (entry != null) detach(entry);
+		}
+		for (LinkObject link : addedLinks) {
+			if (link instanceof AssociationLink && model.containsLink(link) && !entries.containsKey(link)) {
+				add(link);
+			}
+		}
+		addedLinks.clear();
+		removedLinks.clear();
+	}
+
+	private void add(LinkObject link) {
+		Entry entry = new Entry(link);
+		entries.put(link, entry);
+		refresh(entry);
+	}
+
+	/**
+	 * 重新分配端點在指定物件或它的子物件上的連線
+	 */
+	private void reassignLinksOf(CanvasModel model, BasicObject obj) {
+		for (LinkObject link : model.getLinksOf(obj)) {
+			Entry entry = entries.get(link);
+			if (entry != null) refresh(entry);
+		}
+		for (BasicObject child : obj.getChildren()) {
+			reassignLinksOf(model, child);
+		}
+	}
+
+	/**
+	 * 端點的幾何版本改變時才重新分配，兩端都在移動範圍內的連線只處理一次
+	 */
+	private void refresh(Entry entry) {
+		long sv = entry.link.getStartObject().getGeometryVersion();
+		long ev = entry.link.getEndObject().getGeometryVersion();
+		if (entry.bundle == null || sv != entry.startVersion || ev != entry.endVersion) {
+			entry.startVersion = sv;
+			entry.endVersion = ev;
+			assign(entry);
+		}
+	}
+
+	/**
+	 * 重新讀取連接埠座標並放到對應的束
+	 */
+	private void assign(Entry entry) {
+		LinkObject link = entry.link;
+		BasicObject start = link.getStartObject();
+		BasicObject end = link.getEndObject();
+		entry.sx = start.getX() + link.getStartPortOffsetX();
+		entry.sy = start.getY() + link.getStartPortOffsetY();
+		entry.ex = end.getX() + link.getEndPortOffsetX();
+		entry.ey = end.getY() + link.getEndPortOffsetY();
+
+		long key = key(Math.floorDiv(entry.sx, cellSize), Math.floorDiv(entry.sy, cellSize),
+				Math.floorDiv(entry.ex, cellSize), Math.floorDiv(entry.ey, cellSize));
+		if (entry.bundle != null && entry.bundle.key == key) {
+			markDirty(entry.bundle);
+			return;
+		}
+		detach(entry);
+		Bundle bundle = bundles.computeIfAbsent(key, Bundle::new);
+		bundle.members.add(entry);
+		entry.bundle = bundle;
+		markDirty(bundle);
+	}
+
+	private void detach(Entry entry) {
+		if (entry.bundle == null) return;
+		entry.bundle.members.remove(entry);
+		markDirty(entry.bundle);
+		entry.bundle = null;
+	}
+
+	private void markDirty(Bundle bundle) {
+		if (!bundle.dirty) {
+			bundle.dirty = true;
+			dirty.add(bundle);
+		}
+	}
+
+	private static int cellSize(int extent) {
+		return Math.max(BUNDLE_CELL, (extent + GRID_DIVISIONS - 1) / GRID_DIVISIONS);
+	}
+
+	private static int cellSizeFor(CanvasModel model) {
+		int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+		int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+		for (BasicObject obj : model.getObjects()) {
+			minX = Math.min(minX, obj.getX());
+			minY = Math.min(minY, obj.getY());
+			maxX = Math.max(maxX, obj.getX() + obj.getWidth());
+			maxY = Math.max(maxY, obj.getY() + obj.getHeight());
+		}
+		if (minX > maxX) return BUNDLE_CELL;
+		return cellSize(Math.max(maxX - minX, maxY - minY));
+	}
+
+	private static long key(int scx, int scy, int ecx, int ecy) {
+		return HashKeys.spread(((long) (scx & 0xFFFF) << 48) | ((long) (scy & 0xFFFF) << 32)
+				| ((long) (ecx & 0xFFFF) << 16) | (ecy & 0xFFFF));
+	}
+
+	/**
+	 * 畫出與重畫範圍相交的束，線寬隨束內連線數量對數成長
+	 *
+	 * @param g2d  畫布的 Graphics2D
+	 * @param clip 重畫範圍，null 表示全部
+	 */
+	void draw(Graphics2D g2d, Rectangle clip) {
+		Stroke oldStroke = g2d.getStroke();
+		g2d.setColor(Color.BLACK);
+		int currentWidth = -1;
+		for (Bundle bundle : bundles.values()) {
+			if (bundle.path == null || (clip != null && !bundle.bounds.intersects(clip))) continue;
+			int width = 1 + (31 - Integer.numberOfLeadingZeros(bundle.members.size()));
+			if (width != currentWidth) {
+				g2d.setStroke(new BasicStroke(width, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+				currentWidth = width;
+			}
+			g2d.draw(bundle.path);
+		}
+		// 裝飾以原本的線寬畫，不跟著束變粗
+		g2d.setStroke(oldStroke);
+		for (Bundle bundle : bundles.values()) {
+			if (bundle.decorations == null || (clip != null && !bundle.bounds.intersects(clip))) continue;
+			if (bundle.decorationsFilled) {
+				g2d.fill(bundle.decorations);
+			} else {
+				g2d.draw(bundle.decorations);
+			}
+		}
+	}
+
+	/**
+	 * 清空快取，例如關閉 bundling 時釋放記憶體
+	 */
+	void clear() {
+		entries.clear();
+		bundles.clear();
+		dirty.clear();
+		addedLinks.clear();
+		removedLinks.clear();
+		movedRoots.clear();
+		cellSize = BUNDLE_CELL;
+		built = false;
+	}
+
+	private static final class Entry {
+		final LinkObject link;
+		long startVersion = -1, endVersion = -1;
+		int sx, sy, ex, ey;
+		Bundle bundle;
+
+		Entry(LinkObject link) {
+			this.link = link;
+		}
+	}
+
+	private static final class Bundle {
+		final long key;
+		final List<Entry> members = new ArrayList<>();
+		boolean dirty;
+		Path2D.Float path;
+		// 所有成員的裝飾合併成一個 Path2D
+		Path2D.Float decorations;
+		boolean decorationsFilled;
+		Rectangle bounds;
+
+		Bundle(long key) {
+			this.key = key;
+		}
+
+		/**
+		 * 以成員連接埠的重心當作主幹兩端：各連接埠先收攏到重心，再以一條微彎的曲線連到另一端
+		 */
+		void rebuild() {
+			int n = members.size();
+			if (n == 0) {
+				path = null;
+				decorations = null;
+				return;
+			}
+			Path2D.Float p = new Path2D.Float(Path2D.WIND_NON_ZERO, n == 1 ? 2 : 4 * n + 4);
+			Path2D.Float d = new Path2D.Float();
+			if (n == 1) {
+				Entry e = members.get(0);
+				p.moveTo(e.sx, e.sy);
+				p.lineTo(e.ex, e.ey);
+				appendDecoration(d, e, e.sx, e.sy);
+			} else {
+				float cx0 = 0, cy0 = 0, cx1 = 0, cy1 = 0;
+				for (Entry e : members) {
+					cx0 += e.sx;
+					cy0 += e.sy;
+					cx1 += e.ex;
+					cy1 += e.ey;
+				}
+				cx0 /= n;
+				cy0 /= n;
+				cx1 /= n;
+				cy1 /= n;
+				for (Entry e : members) {
+					p.moveTo(e.sx, e.sy);
+					p.lineTo(cx0, cy0);
+					p.moveTo(cx1, cy1);
+					p.lineTo(e.ex, e.ey);
+					appendDecoration(d, e, Math.round(cx1), Math.round(cy1));
+				}
+				// 控制點往主幹方向的右手邊偏移，相反方向的兩束會分在兩側
+				float dx = cx1 - cx0, dy = cy1 - cy0;
+				float mx = (cx0 + cx1) / 2 - (float) (CURVATURE * dy);
+				float my = (cy0 + cy1) / 2 + (float) (CURVATURE * dx);
+				p.moveTo(cx0, cy0);
+				p.quadTo(mx, my, cx1, cy1);
+			}
+			path = p;
+			decorations = d;
+			decorationsFilled = members.get(0).link.isDecorationFilled();
+			bounds = p.getBounds();
+			bounds.add(d.getBounds());
+			bounds.grow(MAX_HALF_STROKE, MAX_HALF_STROKE);
+		}
+
+		/**
+		 * 加入一條成員連線在終點的裝飾，方向由 (fromX, fromY) 指向終點
+		 */
+		private static void appendDecoration(Path2D.Float out, Entry e, int fromX, int fromY) {
+			Shape decoration = e.link.createDecorationBetween(new Point(fromX, fromY), new Point(e.ex, e.ey));
+			if (decoration != null) out.append(decoration, false);
+		}
+	}
+}
@@ -0,0 +1,52 @@
+package view;
+
+import model.LinkObject;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Shape;
+import java.awt.geom.Path2D;
+
+/**
+ * 將連續的連線累積成兩條 Path2D（需描邊的、需填滿的），
+ * flush 時各用一次 draw / fill 畫完，取代每條連線各自呼叫繪圖 API。
+ * 遇到 BasicObject 時先 flush，以維持原本依 depth 排序的上下層關係。
+ */
+class LinkBatchRenderer {
+	private final Path2D.Float strokePath = new Path2D.Float();
+	private final Path2D.Float fillPath = new Path2D.Float();
+	private boolean empty = true;
+
+	/**
+	 * 把連線的線段與裝飾加入批次中。
+	 *
+	 * @param link 要繪製的連線
+	 */
+	void add(LinkObject link) {
+		strokePath.append(link.getPath(), false);
+		Shape decoration = link.getDecoration();
+		if (decoration != null) {
+			if (link.isDecorationFilled()) {
+				fillPath.append(decoration, false);
+			} else {
+				strokePath.append(decoration, false);
+			}
+		}
+		empty = false;
+	}
+
+	/**
+	 * 畫出目前累積的連線並清空批次。
+	 *
+	 * @param g2d 畫布的 Graphics2D
+	 */
+	void flush(Graphics2D g2d) {
+		if (empty) return;
+		g2d.setColor(Color.BLACK);
+		g2d.draw(strokePath);
+		g2d.fill(fillPath);
+		strokePath.reset();
+		fillPath.reset();
+		empty = true;
+	}
+}
@@ -1,20 +1,39 @@
 package view;
 
+import controller.ForceLayoutAnimator;
+import controller.ImportTask;
+import controller.LayoutTask;
+import layout.ForceDirectedLayout;
+import layout.HierarchicalLayout;
+import layout.LayoutAlgorithm;
 import model.BasicObject;
 import model.CanvasModel;
+import model.LabelPattern;
+import model.LabelStyle;
 
 import javax.swing.*;
+import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.*;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 /**
  * MainFrame 是整個應用程式的主要視窗，
  * 包含工具面板、畫布以及選單列，負責初始化與配置應用程式的主要組件。
  */
 public class MainFrame extends JFrame {
+    // 匯入期間檢查進度視窗是否按了取消的間隔
+    private static final int CANCEL_POLL_MS = 100;
 
     private ToolPanel toolPanel;
     private Canvas canvas;
+    private ForceLayoutAnimator forceAnimator;
+    private SearchBar searchBar;
 
     /**
      * 建構子：初始化主視窗，設置版面配置、工具面板、畫布與選單列。
@@ -30,18 +49,40 @@ public class MainFrame extends JFrame {
         CanvasModel model = CanvasModel.getInstance();
 
         canvas = new Canvas(toolPanel, model);
-        add(canvas, BorderLayout.CENTER);
+        add(new JScrollPane(canvas), BorderLayout.CENTER);
+
+        // 右側放整張圖的縮圖，點擊即可捲動到該處
+        JPanel overview = new JPanel(new BorderLayout());
+        overview.add(new Minimap(canvas), BorderLayout.NORTH);
+        add(overview, BorderLayout.EAST);
+
+        searchBar = new SearchBar(canvas);
+        add(searchBar, BorderLayout.NORTH);
+        forceAnimator = new ForceLayoutAnimator(canvas.getController());
+        // 使用者一開始在畫布上操作就停止排版動畫，避免動畫蓋掉拖曳
+        canvas.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                forceAnimator.stop();
+            }
+        });
+
+        canvas.getController().setOnSessionLost(() -> JOptionPane.showMessageDialog(this,
+                "與共同編輯的連線已中斷，畫布上的內容保留在本機", "共同編輯", JOptionPane.WARNING_MESSAGE));
 
         setJMenuBar(createMenuBar());
 
-        setSize(800, 600);
+        setSize(1000, 600);
         setLocationRelativeTo(null);
     }
 
     /**
      * 建立選單列 (JMenuBar)，包含 File 與 Edit 選單。
      *
-     * File 選單目前只有 Exit 選項；Edit 選單提供群組、解群組與自訂標籤樣式功能。
+     * File 選單提供匯入與離開；Edit 選單提供復原、重做、複製貼上、群組、解群組與自訂標籤樣式功能；
+     * Layout 選單提供自動排版；Arrange 選單切換拖曳吸附並對齊、等距排列選取的物件；
+     * View 選單切換顯示方式；Analyze 選單分析連線結構；Compare 選單比較目前與先前記下的版本；
+     * Collaborate 選單啟動或加入本機的共同編輯。
      *
      * @return 建立好的 JMenuBar 物件
      */
@@ -49,58 +90,274 @@ public class MainFrame extends JFrame {
         JMenuBar menuBar = new JMenuBar();
 
         JMenu fileMenu = new JMenu("File");
+        JMenuItem importItem = new JMenuItem("Import...");
+        importItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_O, Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx()));
+        importItem.addActionListener(e -> chooseImportFile());
         JMenuItem exitItem = new JMenuItem("Exit");
         exitItem.addActionListener(e -> System.exit(0));
+        fileMenu.add(importItem);
+        fileMenu.addSeparator();
         fileMenu.add(exitItem);
         menuBar.add(fileMenu);
 
         JMenu editMenu = new JMenu("Edit");
+        JMenuItem undoItem = new JMenuItem("Undo");
+        JMenuItem redoItem = new JMenuItem("Redo");
         JMenuItem groupItem = new JMenuItem("Group");
         JMenuItem unGroupItem = new JMenuItem("Ungroup");
         JMenuItem customLabelItem = new JMenuItem("Custom Label Style");
 
+        undoItem.addActionListener(e -> canvas.undo());
+        redoItem.addActionListener(e -> canvas.redo());
         groupItem.addActionListener(e -> canvas.groupSelectedObjects());
         unGroupItem.addActionListener(e -> canvas.ungroupSelectedObject());
 
         customLabelItem.addActionListener(e -> {
             List<BasicObject> selected = canvas.getSelectedObjects();
-            if (selected.size() == 1) {
-                BasicObject obj = selected.get(0);
+            if (!selected.isEmpty()) {
+                // 樣式套用在葉物件上，對話框的初始值取第一個葉物件
+                BasicObject obj = firstLeaf(selected.get(0));
+                int count = 0;
+                for (BasicObject root : selected) {
+                    count += countLeaves(root);
+                }
 
                 CustomLabelDialog dialog = new CustomLabelDialog(
                         MainFrame.this,
                         obj.getLabel(),
                         obj.getLabelShape(),
                         obj.getLabelColor(),
-                        obj.getFontSize()
+                        obj.getFontSize(),
+                        count
                 );
                 dialog.setVisible(true);
 
                 if (dialog.isConfirmed()) {
-                    obj.setLabel(dialog.getLabelName());
-                    obj.setLabelShape(dialog.getLabelShape());
-                    obj.setLabelColor(dialog.getChosenColor());
-                    obj.setFontSize(dialog.getFontSize());
-                    canvas.repaint();
+                    // 只有一個物件時輸入的文字就是標籤本身，多個物件時才當成樣板解析
+                    String text = dialog.getLabelName();
+                    LabelPattern pattern = count > 1 ? LabelPattern.compile(text) : LabelPattern.literal(text);
+                    canvas.getController().restyleSelection(pattern,
+                            LabelStyle.of(dialog.getLabelShape(), dialog.getChosenColor(), dialog.getFontSize()));
                 }
             } else {
                 JOptionPane.showMessageDialog(
                         MainFrame.this,
-                        "只能選取一個物件",
+                        "請先選取物件",
                         "提示",
                         JOptionPane.INFORMATION_MESSAGE
                 );
             }
         });
 
+        int shortcut = Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx();
+        JMenuItem copyItem = new JMenuItem("Copy");
+        copyItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_C, shortcut));
+        copyItem.addActionListener(e -> canvas.getController().copySelection());
+        JMenuItem pasteItem = new JMenuItem("Paste");
+        pasteItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_V, shortcut));
+        pasteItem.addActionListener(e -> canvas.getController().paste());
+        JMenuItem duplicateItem = new JMenuItem("Duplicate");
+        duplicateItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_D, shortcut));
+        duplicateItem.addActionListener(e -> canvas.getController().duplicateSelection());
+
+        editMenu.add(undoItem);
+        editMenu.add(redoItem);
+        editMenu.addSeparator();
+        editMenu.add(copyItem);
+        editMenu.add(pasteItem);
+        editMenu.add(duplicateItem);
+        editMenu.addSeparator();
         editMenu.add(groupItem);
         editMenu.add(unGroupItem);
         editMenu.add(customLabelItem);
+        editMenu.addSeparator();
+        JMenuItem findItem = new JMenuItem("Find");
+        findItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_F, Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx()));
+        findItem.addActionListener(e -> searchBar.focusField());
+        editMenu.add(findItem);
         menuBar.add(editMenu);
 
+        JMenu layoutMenu = new JMenu("Layout");
+        JMenuItem hierarchicalItem = new JMenuItem("Hierarchical Layout");
+        hierarchicalItem.addActionListener(e -> runLayout(new HierarchicalLayout(), "Hierarchical Layout"));
+        JMenuItem forceItem = new JMenuItem("Force-Directed Layout");
+        forceItem.addActionListener(e -> runLayout(new ForceDirectedLayout(), "Force-Directed Layout"));
+        JMenuItem animateItem = new JMenuItem("Animate Force-Directed Layout");
+        animateItem.addActionListener(e -> forceAnimator.start());
+        JMenuItem stopItem = new JMenuItem("Stop Animation");
+        stopItem.addActionListener(e -> forceAnimator.stop());
+        layoutMenu.add(hierarchicalItem);
+        layoutMenu.add(forceItem);
+        layoutMenu.addSeparator();
+        layoutMenu.add(animateItem);
+        layoutMenu.add(stopItem);
+        menuBar.add(layoutMenu);
+
+        menuBar.add(new ArrangeMenu(canvas));
+
+        JMenu viewMenu = new JMenu("View");
+        JCheckBoxMenuItem bundleItem = new JCheckBoxMenuItem("Bundle Associations");
+        bundleItem.addActionListener(e -> canvas.setBundleAssociations(bundleItem.isSelected()));
+        viewMenu.add(bundleItem);
+        JCheckBoxMenuItem routingItem = new JCheckBoxMenuItem("Orthogonal Routing");
+        routingItem.addActionListener(e -> canvas.setOrthogonalRouting(routingItem.isSelected()));
+        viewMenu.add(routingItem);
+        menuBar.add(viewMenu);
+
+        menuBar.add(new AnalysisMenu(canvas));
+        menuBar.add(new CompareMenu(canvas));
+
+        JMenu collaborateMenu = new JMenu("Collaborate");
+        JMenuItem hostItem = new JMenuItem("Host Session");
+        hostItem.addActionListener(e -> runSessionAction(() -> {
+            int port = canvas.getController().hostSession();
+            JOptionPane.showMessageDialog(this, "其他編輯器請加入連接埠 " + port, "共同編輯", JOptionPane.INFORMATION_MESSAGE);
+        }));
+        JMenuItem joinItem = new JMenuItem("Join Session...");
+        joinItem.addActionListener(e -> {
+            String port = JOptionPane.showInputDialog(this, "連接埠", "加入共同編輯", JOptionPane.QUESTION_MESSAGE);
+            if (port != null) {
+                runSessionAction(() -> canvas.getController().joinSession(Integer.parseInt(port.trim())));
+            }
+        });
+        JMenuItem leaveItem = new JMenuItem("Leave Session");
+        leaveItem.addActionListener(e -> runSessionAction(() -> canvas.getController().leaveSession()));
+        collaborateMenu.add(hostItem);
+        collaborateMenu.add(joinItem);
+        collaborateMenu.add(leaveItem);
+        menuBar.add(collaborateMenu);
+
         return menuBar;
     }
 
+    /**
+     * 計算物件底下葉物件的數量（物件本身不是群組時為 1），顯示在標籤樣式對話框的標題上
+     */
+    private static int countLeaves(BasicObject obj) {
+        if (obj.getChildren().isEmpty()) return 1;
+        int count = 0;
+        for (BasicObject child : obj.getChildren()) {
+            count += countLeaves(child);
+        }
+        return count;
+    }
+
+    private static BasicObject firstLeaf(BasicObject obj) {
+        while (!obj.getChildren().isEmpty()) {
+            obj = obj.getChildren().get(0);
+        }
+        return obj;
+    }
+
+    /**
+     * 在背景執行緒上執行自動排版，並以 ProgressMonitor 顯示進度、提供取消。
+     *
+     * @param algorithm 排版演算法
+     * @param name      顯示在進度視窗與 Undo 選單上的名稱
+     */
+    private void runLayout(LayoutAlgorithm algorithm, String name) {
+        runLayout(algorithm, name, true);
+    }
+
+    /**
+     * @param retry 排版期間圖結構改變、結果被丟棄時是否以目前的圖再排一次；只重排一次，避免持續編輯時無限重來
+     */
+    private void runLayout(LayoutAlgorithm algorithm, String name, boolean retry) {
+        LayoutTask task = new LayoutTask(canvas.getController(), algorithm, name);
+        task.setOnDiscarded(() -> {
+            if (retry) {
+                runLayout(algorithm, name, false);
+            } else {
+                JOptionPane.showMessageDialog(this, "排版期間圖被修改，結果已捨棄，請再執行一次", name, JOptionPane.WARNING_MESSAGE);
+            }
+        });
+        task.setOnFailed(e -> JOptionPane.showMessageDialog(this, "排版失敗：" + e.getMessage(), name, JOptionPane.ERROR_MESSAGE));
+        ProgressMonitor monitor = new ProgressMonitor(this, name, null, 0, 100);
+        monitor.setMillisToDecideToPopup(200);
+        task.addPropertyChangeListener(evt -> {
+            if ("progress".equals(evt.getPropertyName())) {
+                monitor.setProgress((Integer) evt.getNewValue());
+                if (monitor.isCanceled()) {
+                    task.cancel(false);
+                }
+            } else if ("state".equals(evt.getPropertyName()) && task.isDone()) {
+                monitor.close();
+            }
+        });
+        task.execute();
+    }
+
+    private interface SessionAction {
+        void run() throws IOException;
+    }
+
+    /**
+     * 執行共同編輯相關的動作，失敗時顯示錯誤訊息
+     */
+    private void runSessionAction(SessionAction action) {
+        try {
+            action.run();
+        } catch (IOException | NumberFormatException e) {
+            JOptionPane.showMessageDialog(this, "無法連線：" + e.getMessage(), "共同編輯", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    /**
+     * 選擇 CSV 或 JSON 檔案並匯入
+     */
+    private void chooseImportFile() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setFileFilter(new FileNameExtensionFilter("Graph (*.csv, *.json)", "csv", "json"));
+        if (chooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+            runImport(chooser.getSelectedFile().toPath());
+        }
+    }
+
+    /**
+     * 在背景執行緒上匯入檔案，並以 ProgressMonitor 顯示進度、提供取消；
+     * 取消或失敗時已經加入的內容會被移除。
+     *
+     * @param file 要匯入的檔案
+     */
+    private void runImport(Path file) {
+        ImportTask task = new ImportTask(canvas.getModel(), file);
+        ProgressMonitor monitor = new ProgressMonitor(this, "Importing " + file.getFileName(), null, 0, 100);
+        monitor.setMillisToDecideToPopup(200);
+        // 進度停在同一個百分比時（例如等 EDT 建立物件）不會有 progress 事件，另外定期檢查是否按了取消
+        Timer cancelPoll = new Timer(CANCEL_POLL_MS, e -> {
+            if (monitor.isCanceled()) {
+                task.cancel(false);
+            }
+        });
+        task.addPropertyChangeListener(evt -> {
+            if ("progress".equals(evt.getPropertyName())) {
+                monitor.setProgress((Integer) evt.getNewValue());
+            } else if ("state".equals(evt.getPropertyName()) && task.isDone()) {
+                cancelPoll.stop();
+                monitor.close();
+                showImportResult(task);
+            }
+        });
+        cancelPoll.start();
+        task.execute();
+    }
+
+    private void showImportResult(ImportTask task) {
+        if (task.isCancelled()) return;
+        try {
+            ImportTask.Summary summary = task.get();
+            String message = "匯入 " + summary.objects + " 個物件、" + summary.links + " 條連線";
+            if (summary.skippedLinks > 0) {
+                message += "\n略過 " + summary.skippedLinks + " 條端點不存在或連回自己的連線";
+            }
+            JOptionPane.showMessageDialog(this, message, "匯入完成", JOptionPane.INFORMATION_MESSAGE);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            JOptionPane.showMessageDialog(this, "匯入失敗：" + e.getCause().getMessage(), "匯入失敗", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
     public static void main(String[] args) {
         SwingUtilities.invokeLater(() -> {
             MainFrame frame = new MainFrame();
@@ -0,0 +1,274 @@
+package view;
+
+import enums.ChangeType;
+import model.BasicObject;
+import model.CanvasModel;
+import model.ModelChangeBatch;
+
+import javax.swing.*;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimap 以縮小的點陣圖顯示整張圖，並框出畫布目前可見的範圍；點擊或拖曳即可捲動畫布。
+ *
+ * 點陣圖只在第一次顯示、縮放比例改變或大小改變時整張重畫。之後依 model 變動只重畫受影響的小區域：
+ * 每個物件記下它上次畫在點陣圖上的位置，移動或刪除時把新舊位置標成待重畫，
+ * 再以空間索引查詢該區域內的物件重新畫上。拖曳物件時的成本只和移動的物件與附近的物件數有關，
+ * 與整張圖的大小無關；重畫也合併到下一次計時器觸發時才做，不會每個影格都畫。
+ */
+public class Minimap extends JPanel {
+    private static final int WIDTH = 200;
+    private static final int HEIGHT = 150;
+    // 待重畫區域合併後延遲這麼久才重畫點陣圖
+    private static final int RENDER_DELAY_MS = 100;
+    // 待重畫區域超過這麼多個時合併成一個
+    private static final int MAX_DIRTY_REGIONS = 32;
+    // 一批新增的物件超過這麼多時直接整張重畫
+    private static final int REBUILD_THRESHOLD = 10000;
+    // 整張重畫時，範圍比物件實際佔的範圍多留的比例，圖稍微變大時不必馬上改縮放比例
+    private static final double EXTENT_SLACK = 1.25;
+
+    private static final Color BACKGROUND = new Color(245, 245, 245);
+    private static final Color OBJECT_COLOR = new Color(120, 120, 140);
+    private static final Color VIEWPORT_COLOR = new Color(220, 40, 40);
+
+    private final Canvas canvas;
+    private final CanvasModel model;
+
+    private BufferedImage raster;
+    // 點陣圖涵蓋的 model 範圍（從原點開始）與縮放比例
+    private int extentWidth, extentHeight;
+    private double scale;
+
+    // 每個最上層物件上次畫在點陣圖上的位置（點陣圖座標）
+    private final Map<BasicObject, Rectangle> drawn = new IdentityHashMap<>();
+    private final List<Rectangle> dirty = new ArrayList<>();
+    private boolean rebuildNeeded = true;
+    private final Timer renderTimer;
+
+    public Minimap(Canvas canvas) {
+        this.canvas = canvas;
+        this.model = canvas.getModel();
+        setPreferredSize(new Dimension(WIDTH, HEIGHT));
+        setBorder(BorderFactory.createLineBorder(Color.GRAY));
+
+        renderTimer = new Timer(RENDER_DELAY_MS, e -> {
+            if (!rebuildNeeded) renderDirty();
+            repaint();
+        });
+        renderTimer.setRepeats(false);
+
+        model.addModelListener(this::modelChanged);
+
+        MouseAdapter navigator = new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                navigate(e.getPoint());
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                navigate(e.getPoint());
+            }
+        };
+        addMouseListener(navigator);
+        addMouseMotionListener(navigator);
+    }
+
+    /**
+     * 畫布捲動時重畫可見範圍的框
+     */
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        JViewport viewport = getViewport();
+        if (viewport != null) {
+            viewport.addChangeListener(e -> repaint());
+        }
+    }
+
+    private JViewport getViewport() {
+        return (JViewport) SwingUtilities.getAncestorOfClass(JViewport.class, canvas);
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        if (raster == null || raster.getWidth() != getWidth() || raster.getHeight() != getHeight()) {
+            rebuildNeeded = true;
+        }
+        if (rebuildNeeded) {
+            rebuild();
+        }
+        g.drawImage(raster, 0, 0, null);
+
+        JViewport viewport = getViewport();
+        if (viewport != null) {
+            Rectangle view = viewport.getViewRect();
+            g.setColor(VIEWPORT_COLOR);
+            g.drawRect((int) (view.x * scale), (int) (view.y * scale),
+                    Math.max(2, (int) (view.width * scale)), Math.max(2, (int) (view.height * scale)));
+        }
+    }
+
+    private void modelChanged(ModelChangeBatch batch) {
+        if (rebuildNeeded) {
+            // 整張重畫時會重新記下所有物件的位置，這之前的變動都不用處理
+            repaint();
+            return;
+        }
+        if (batch.getTargets(ChangeType.OBJECT_ADDED).size() > REBUILD_THRESHOLD) {
+            rebuildNeeded = true;
+            repaint();
+            return;
+        }
+        boolean changed = false;
+        for (BasicObject obj : batch.getObjects(ChangeType.OBJECT_REMOVED)) {
+            Rectangle old = drawn.remove(obj);
+            if (old != null) {
+                markDirty(old);
+                changed = true;
+            }
+        }
+        changed |= track(batch.getObjects(ChangeType.OBJECT_ADDED));
+        changed |= track(batch.getObjects(ChangeType.GEOMETRY_CHANGED));
+        if (changed) {
+            renderTimer.restart();
+        }
+    }
+
+    /**
+     * 物件新增或移動後把新舊位置都標成待重畫；超出目前範圍時改成整張重畫
+     */
+    private boolean track(List<BasicObject> objs) {
+        for (BasicObject obj : objs) {
+            if (obj.getX() + obj.getWidth() > extentWidth || obj.getY() + obj.getHeight() > extentHeight) {
+                rebuildNeeded = true;
+                repaint();
+                return false;
+            }
+            Rectangle old = drawn.get(obj);
+            if (old != null) {
+                markDirty(old);
+            }
+            Rectangle now = toRaster(obj);
+            drawn.put(obj, now);
+            markDirty(now);
+        }
+        return !objs.isEmpty();
+    }
+
+    private void markDirty(Rectangle area) {
+        Rectangle r = new Rectangle(area);
+        for (int i = dirty.size() - 1; i >= 0; i--) {
+            if (dirty.get(i).intersects(r)) {
+                r.add(dirty.remove(i));
+            }
+        }
+        dirty.add(r);
+        if (dirty.size() > MAX_DIRTY_REGIONS) {
+            Rectangle all = dirty.get(0);
+            for (Rectangle d : dirty) {
+                all.add(d);
+            }
+            dirty.clear();
+            dirty.add(all);
+        }
+    }
+
+    /**
+     * 重新決定縮放比例並整張重畫
+     */
+    private void rebuild() {
+        rebuildNeeded = false;
+        dirty.clear();
+        drawn.clear();
+        int w = Math.max(1, getWidth()), h = Math.max(1, getHeight());
+        if (raster == null || raster.getWidth() != w || raster.getHeight() != h) {
+            raster = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        }
+
+        int maxX = 0, maxY = 0;
+        List<BasicObject> objects = model.getObjects();
+        for (BasicObject obj : objects) {
+            maxX = Math.max(maxX, obj.getX() + obj.getWidth());
+            maxY = Math.max(maxY, obj.getY() + obj.getHeight());
+        }
+        JViewport viewport = getViewport();
+        Dimension view = viewport == null ? new Dimension(w, h) : viewport.getExtentSize();
+        extentWidth = Math.max(view.width, (int) (maxX * EXTENT_SLACK));
+        extentHeight = Math.max(view.height, (int) (maxY * EXTENT_SLACK));
+        scale = Math.min((double) w / extentWidth, (double) h / extentHeight);
+
+        Graphics2D g = raster.createGraphics();
+        g.setColor(BACKGROUND);
+        g.fillRect(0, 0, w, h);
+        g.setColor(OBJECT_COLOR);
+        for (BasicObject obj : objects) {
+            Rectangle r = toRaster(obj);
+            drawn.put(obj, r);
+            g.fillRect(r.x, r.y, r.width, r.height);
+        }
+        g.dispose();
+    }
+
+    /**
+     * 重畫待重畫的區域：清掉後以空間索引找出區域內的物件重新畫上
+     */
+    private void renderDirty() {
+        if (raster == null || dirty.isEmpty()) return;
+        Graphics2D g = raster.createGraphics();
+        for (Rectangle area : dirty) {
+            g.setClip(area);
+            g.setColor(BACKGROUND);
+            g.fillRect(area.x, area.y, area.width, area.height);
+            g.setColor(OBJECT_COLOR);
+            for (BasicObject obj : model.queryObjects(toModel(area))) {
+                Rectangle r = toRaster(obj);
+                g.fillRect(r.x, r.y, r.width, r.height);
+            }
+        }
+        g.dispose();
+        dirty.clear();
+    }
+
+    // 物件在點陣圖上的範圍，再小也至少佔一個像素
+    private Rectangle toRaster(BasicObject obj) {
+        int x = (int) (obj.getX() * scale), y = (int) (obj.getY() * scale);
+        return new Rectangle(x, y, Math.max(1, (int) Math.ceil(obj.getWidth() * scale)),
+                Math.max(1, (int) Math.ceil(obj.getHeight() * scale)));
+    }
+
+    // 點陣圖上的區域對應到的 model 範圍，多留一個像素避免邊界上的物件漏掉
+    private Rectangle toModel(Rectangle area) {
+        int x = (int) Math.floor((area.x - 1) / scale), y = (int) Math.floor((area.y - 1) / scale);
+        return new Rectangle(x, y, (int) Math.ceil((area.width + 2) / scale), (int) Math.ceil((area.height + 2) / scale));
+    }
+
+    /**
+     * 把畫布捲動到以點擊位置為中心的範圍
+     */
+    private void navigate(Point p) {
+        JViewport viewport = getViewport();
+        if (viewport == null || scale <= 0) return;
+        Dimension extent = viewport.getExtentSize();
+        Dimension size = viewport.getViewSize();
+        int x = (int) (p.x / scale) - extent.width / 2;
+        int y = (int) (p.y / scale) - extent.height / 2;
+        x = Math.max(0, Math.min(x, size.width - extent.width));
+        y = Math.max(0, Math.min(y, size.height - extent.height));
+        viewport.setViewPosition(new Point(x, y));
+    }
+}
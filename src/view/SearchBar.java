@@ -0,0 +1,113 @@
+package view;
+
+import model.BasicObject;
+import model.CanvasModel;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.awt.*;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * SearchBar 是畫布上方的搜尋列：輸入時即時透過標籤索引搜尋，
+ * 標示符合的物件並捲動到第一筆，按 Enter 依序跳到下一筆。
+ * 搜尋不會改變選取，按 Select All 才把結果選取起來。
+ */
+public class SearchBar extends JPanel {
+	// 一次最多選取與標示的筆數，避免輸入單一字母時選取整張圖
+	private static final int MAX_RESULTS = 500;
+
+	private final Canvas canvas;
+	private final CanvasModel model;
+	private final JTextField field = new JTextField(24);
+	private final JLabel status = new JLabel(" ");
+	private final JButton selectButton = new JButton("Select All");
+
+	private List<BasicObject> results = Collections.emptyList();
+	private int current = 0;
+
+	/**
+	 * 建構子：建立輸入框與結果數量的顯示。
+	 *
+	 * @param canvas 要選取與捲動的畫布
+	 */
+	public SearchBar(Canvas canvas) {
+		this.canvas = canvas;
+		this.model = canvas.getModel();
+		setLayout(new FlowLayout(FlowLayout.LEFT));
+		add(new JLabel("Search"));
+		add(field);
+		add(selectButton);
+		add(status);
+		selectButton.setEnabled(false);
+		selectButton.setToolTipText("選取所有搜尋結果");
+		selectButton.addActionListener(e -> selectResults());
+		field.setToolTipText("標籤文字，可加上 shape:oval 或 color:#RRGGBB");
+
+		field.getDocument().addDocumentListener(new DocumentListener() {
+			@Override
+			public void insertUpdate(DocumentEvent e) { search(); }
+			@Override
+			public void removeUpdate(DocumentEvent e) { search(); }
+			@Override
+			public void changedUpdate(DocumentEvent e) { search(); }
+		});
+		field.addActionListener(e -> next());
+	}
+
+	/**
+	 * 依輸入框的內容重新搜尋，標示結果並跳到第一筆；目前的選取維持不變。
+	 */
+	private void search() {
+		String query = field.getText();
+		results = query.trim().isEmpty() ? Collections.emptyList() : model.searchLabels(query, MAX_RESULTS);
+		current = 0;
+
+		canvas.setHighlights(results);
+		selectButton.setEnabled(!results.isEmpty());
+
+		if (results.isEmpty()) {
+			status.setText(query.trim().isEmpty() ? " " : "找不到符合的物件");
+		} else {
+			status.setText(results.size() >= MAX_RESULTS ? MAX_RESULTS + "+ 筆" : results.size() + " 筆");
+			canvas.reveal(results.get(0));
+		}
+	}
+
+	/**
+	 * 以搜尋結果取代目前的選取
+	 */
+	private void selectResults() {
+		if (results.isEmpty()) return;
+		model.runInTransaction(() -> {
+			model.clearSelection();
+			for (BasicObject obj : results) {
+				// 選取只作用在最上層物件，群組內的結果選取它所在的群組
+				BasicObject root = obj.getRoot();
+				if (model.contains(root) && !model.isSelected(root)) {
+					model.select(root);
+				}
+			}
+		});
+	}
+
+	/**
+	 * 跳到下一筆結果
+	 */
+	private void next() {
+		if (results.isEmpty()) return;
+		current = (current + 1) % results.size();
+		canvas.reveal(results.get(current));
+		status.setText((current + 1) + " / " + results.size());
+	}
+
+	/**
+	 * 將焦點移到搜尋框，供快捷鍵使用。
+	 */
+	public void focusField() {
+		field.requestFocusInWindow();
+		field.selectAll();
+	}
+}
@@ -0,0 +1,117 @@
+package diff;
+
+import enums.LabelShape;
+import enums.LinkKind;
+import enums.NodeKind;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * ThreeWayMerge 衝突規則的測試：一邊刪除一邊修改、兩邊放進不同群組、
+ * 兩邊把同一條連線改接到不同物件、兩邊的群組互相包含。
+ *
+ * 專案沒有測試框架，以 main 執行，任何一項失敗時丟出 AssertionError。
+ */
+public class ThreeWayMergeTest {
+
+    public static void main(String[] args) {
+        deleteVersusModifyKeepsModifiedNode();
+        regroupOnBothSidesPrefersOurs();
+        linkRetargetedOnBothSidesPrefersOurs();
+        cyclicParentsAreBroken();
+        System.out.println("ThreeWayMergeTest: all passed");
+    }
+
+    static void deleteVersusModifyKeepsModifiedNode() {
+        DiagramSnapshot base = snapshot(nodes(rect(1, 0, 0, 0, "A"), rect(2, 0, 200, 0, "B")), links());
+        DiagramSnapshot ours = snapshot(nodes(rect(2, 0, 200, 0, "B")), links());
+        DiagramSnapshot theirs = snapshot(nodes(rect(1, 0, 50, 60, "A"), rect(2, 0, 200, 0, "B")), links());
+
+        MergeResult result = ThreeWayMerge.merge(base, ours, theirs);
+
+        DiagramSnapshot.Node a = result.getMerged().getNode(1);
+        check(a != null, "被修改的物件應該保留");
+        check(a.x == 50 && a.y == 60, "保留的應該是修改後的位置");
+        check(result.getConflicts().size() == 1, "應該記錄一項衝突");
+        check(result.getConflicts().get(0).getId() == 1, "衝突應該指向被修改的物件");
+    }
+
+    static void regroupOnBothSidesPrefersOurs() {
+        DiagramSnapshot base = snapshot(nodes(rect(1, 0, 0, 0, "A"), rect(2, 0, 200, 0, "B")), links());
+        DiagramSnapshot ours = snapshot(nodes(group(10, 0), rect(1, 10, 0, 0, "A"), rect(2, 10, 200, 0, "B")), links());
+        DiagramSnapshot theirs = snapshot(nodes(group(20, 0), rect(1, 20, 0, 0, "A"), rect(2, 20, 200, 0, "B")), links());
+
+        MergeResult result = ThreeWayMerge.merge(base, ours, theirs);
+
+        DiagramSnapshot merged = result.getMerged();
+        check(merged.getNode(1).parent == 10 && merged.getNode(2).parent == 10, "兩邊放進不同群組時應該採用 ours");
+        check(merged.getNode(20) == null, "沒有子物件的群組應該被移除");
+        check(result.getConflicts().size() == 2, "每個物件各記錄一項衝突");
+    }
+
+    static void linkRetargetedOnBothSidesPrefersOurs() {
+        List<DiagramSnapshot.Node> four = nodes(rect(1, 0, 0, 0, "A"), rect(2, 0, 200, 0, "B"),
+                rect(3, 0, 400, 0, "C"), rect(4, 0, 600, 0, "D"));
+        DiagramSnapshot base = snapshot(four, links(link(100, 1, 2)));
+        DiagramSnapshot ours = snapshot(four, links(link(100, 1, 3)));
+        DiagramSnapshot theirs = snapshot(four, links(link(100, 1, 4)));
+
+        MergeResult result = ThreeWayMerge.merge(base, ours, theirs);
+
+        DiagramSnapshot.Link merged = result.getMerged().getLink(100);
+        check(merged != null && merged.start == 1 && merged.end == 3, "兩邊改接到不同物件時應該採用 ours");
+        check(result.getConflicts().size() == 1 && result.getConflicts().get(0).getId() == 100, "應該記錄連線的衝突");
+    }
+
+    static void cyclicParentsAreBroken() {
+        DiagramSnapshot base = snapshot(nodes(group(10, 0), rect(1, 10, 0, 0, "A"),
+                group(20, 0), rect(2, 20, 200, 0, "B")), links());
+        // ours 把群組 10 放進群組 20，theirs 把群組 20 放進群組 10
+        DiagramSnapshot ours = snapshot(nodes(group(10, 20), rect(1, 10, 0, 0, "A"),
+                group(20, 0), rect(2, 20, 200, 0, "B")), links());
+        DiagramSnapshot theirs = snapshot(nodes(group(10, 0), rect(1, 10, 0, 0, "A"),
+                group(20, 10), rect(2, 20, 200, 0, "B")), links());
+
+        MergeResult result = ThreeWayMerge.merge(base, ours, theirs);
+
+        DiagramSnapshot merged = result.getMerged();
+        int topLevel = 0;
+        for (DiagramSnapshot.Node node : merged.getNodes()) {
+            if (node.parent == DiagramSnapshot.NO_PARENT) topLevel++;
+        }
+        check(topLevel == 1, "互相包含的群組應該有一個被移到最上層");
+        check(merged.getNode(10).parent != 20 || merged.getNode(20).parent != 10, "合併結果不可有循環");
+        check(result.getConflicts().size() == 1, "應該記錄一項衝突");
+    }
+
+    private static DiagramSnapshot snapshot(List<DiagramSnapshot.Node> nodes, List<DiagramSnapshot.Link> links) {
+        return new DiagramSnapshot(nodes, links);
+    }
+
+    private static List<DiagramSnapshot.Node> nodes(DiagramSnapshot.Node... nodes) {
+        return new ArrayList<>(Arrays.asList(nodes));
+    }
+
+    private static List<DiagramSnapshot.Link> links(DiagramSnapshot.Link... links) {
+        return links.length == 0 ? Collections.emptyList() : Arrays.asList(links);
+    }
+
+    private static DiagramSnapshot.Node rect(long id, long parent, int x, int y, String label) {
+        return new DiagramSnapshot.Node(id, NodeKind.RECT, parent, x, y, 100, 60, label, LabelShape.RECTANGLE, 0xFF000000, 12);
+    }
+
+    private static DiagramSnapshot.Node group(long id, long parent) {
+        return new DiagramSnapshot.Node(id, NodeKind.GROUP, parent, 0, 0, 0, 0, "", LabelShape.RECTANGLE, 0xFF000000, 12);
+    }
+
+    private static DiagramSnapshot.Link link(long id, long start, long end) {
+        return new DiagramSnapshot.Link(id, LinkKind.ASSOCIATION, start, end);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}